@@ -0,0 +1,24 @@
+package com.sixsense;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*Entry point of the benchmarks profile (mvn -P benchmarks -DskipTests verify)
+ * Runs every benchmark matching the regex passed as the first argument (all benchmarks by default).
+ * The GC profiler is always attached, so every suite reports it's allocation rate (gc.alloc.rate.norm is bytes allocated per operation)*/
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 && !args[0].isBlank() ? args[0] : ".*";
+
+        Options options = new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class)
+            .jvmArgsAppend("-Dlog4j.configurationFile=log4j2-benchmark.xml") //keeps session trails and the general log off the disk while measuring
+            .build();
+
+        new Runner(options).run();
+    }
+}
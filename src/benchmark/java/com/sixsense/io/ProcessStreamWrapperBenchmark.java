@@ -0,0 +1,57 @@
+package com.sixsense.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Measures the work done by the process stream wrapper for every chunk read from a channel: decoding, substitution criteria, splitting into lines and appending to the output*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessStreamWrapperBenchmark {
+    private static final int MaximumOutputLines = 1000; //the session clears the output between commands, so it never grows without bound
+
+    @Param({"64", "512", "1024"}) //the wrapper reads up to 1024 bytes at a time
+    private int chunkSize;
+
+    @Param({"1", "16"})
+    private int linesPerChunk;
+
+    private byte[] chunk;
+    private List<String> processOutput;
+    private ProcessStreamWrapper wrapper;
+
+    @Setup
+    public void setup() throws InstantiationException {
+        StringBuilder chunkBuilder = new StringBuilder();
+        int lineLength = Math.max(chunkSize / linesPerChunk, 2);
+        while(chunkBuilder.length() < chunkSize){
+            chunkBuilder.append("x".repeat(lineLength - 2)).append(" \r\n");
+        }
+
+        this.chunk = chunkBuilder.substring(0, chunkSize).getBytes(StandardCharsets.UTF_8);
+        this.processOutput = new ArrayList<>();
+
+        Session session = new Session(null, Collections.emptySet(), "benchmark-operation");
+        this.wrapper = new ProcessStreamWrapper(InputStream.nullInputStream(), session, this.processOutput, new ReentrantLock(), new AtomicLong());
+    }
+
+    @Benchmark
+    public List<String> processChunk() {
+        if(this.processOutput.size() >= MaximumOutputLines){
+            this.processOutput.clear();
+        }
+        this.wrapper.processChunk(this.chunk, this.chunk.length);
+        return this.processOutput;
+    }
+}
@@ -0,0 +1,54 @@
+package com.sixsense.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*Measures the per-wakeup output handling of a session: scanning for the prompt and command (removeOutdatedChunks) and flattening the output (filterRawOutput)
+ * removeOutdatedChunks() edits the output in place, so it runs on a fresh copy each time. copyOutput() measures the copy alone, and should be subtracted from it*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionOutputBenchmark {
+    private static final String Prompt = "[SixSensePrompt ~]# ";
+    private static final String EvaluatedCommand = "tmsh list sys hardware | grep -A 3 'Chassis Serial'";
+
+    @Param({"10", "100", "1000", "10000"})
+    private int outputLines;
+
+    private List<String> output;
+
+    //Leftovers of a previous command, followed by the prompt, the command, it's output and the next prompt
+    @Setup
+    public void setup() {
+        this.output = new ArrayList<>();
+        this.output.add(Prompt + "echo previous command");
+        this.output.add("previous command");
+        this.output.add(Prompt + EvaluatedCommand);
+        for(int line = 0; line < this.outputLines; line++){
+            this.output.add("Chassis Serial    f5-abcd-" + line + "   Platform ID    Z100   Registration Key    ABCDE-FGHIJ\r");
+        }
+        this.output.add(Prompt);
+    }
+
+    @Benchmark
+    public List<String> copyOutput() {
+        return new ArrayList<>(this.output);
+    }
+
+    @Benchmark
+    public boolean removeOutdatedChunks() {
+        return Session.removeOutdatedChunks(new ArrayList<>(this.output), new AtomicLong(), EvaluatedCommand, Prompt);
+    }
+
+    @Benchmark
+    public String filterRawOutput() {
+        return Session.filterRawOutput(this.output, EvaluatedCommand, Prompt);
+    }
+}
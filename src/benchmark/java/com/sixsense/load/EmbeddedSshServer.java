@@ -0,0 +1,58 @@
+package com.sixsense.load;
+
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/*An in-process ssh server, standing in for HostConfig.local during load tests
+ * Every channel the engine opens spawns a shell process as the current os user, so any credentials generated here are only valid for this server
+ * The server listens on the loopback interface only, on a random free port*/
+public class EmbeddedSshServer implements Closeable {
+    private static final String LoopbackHost = "127.0.0.1";
+
+    private final SshServer sshServer;
+    private final String username;
+    private final String password;
+
+    public EmbeddedSshServer(String shell, Path hostKeyFile) {
+        this.username = "sixsense";
+        this.password = UUID.randomUUID().toString();
+
+        this.sshServer = SshServer.setUpDefaultServer();
+        this.sshServer.setHost(LoopbackHost);
+        this.sshServer.setPort(0);
+        this.sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(hostKeyFile)); //a persisted host key keeps nested ssh connections (remote-echo) from warning about a changed host identification
+        this.sshServer.setPasswordAuthenticator((username, password, serverSession) -> this.username.equals(username) && this.password.equals(password));
+        this.sshServer.setShellFactory(new ProcessShellFactory(shell, shell, "-i")); //interactive, so the shell prints a prompt like the login shell of a real host
+    }
+
+    public void start() throws IOException {
+        this.sshServer.start();
+    }
+
+    public String getHost() {
+        return LoopbackHost;
+    }
+
+    public int getPort() {
+        return this.sshServer.getPort();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.sshServer.stop(true);
+    }
+}
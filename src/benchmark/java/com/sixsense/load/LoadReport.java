@@ -0,0 +1,137 @@
+package com.sixsense.load;
+
+import com.sixsense.model.logic.ResultStatus;
+import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.threading.ThreadPool;
+import com.sixsense.threading.ThreadingManager;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*Collects the measurements of a load test run: operation latencies, outcomes and errors, and periodic samples of the engine threads and heap
+ * Latencies are recorded in microseconds with 3 significant digits, from the moment an operation was due to start until it's result was available*/
+public class LoadReport {
+    private static final Logger logger = LogManager.getLogger(LoadReport.class);
+    private static final double[] ReportedPercentiles = {50, 90, 99, 99.9};
+    private static final double toMillisCoefficient = 0.001;
+
+    private final Recorder latencyRecorder = new Recorder(3);
+    private final Map<ResultStatus, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>(); //key: error message, value: frequency
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private long sampleCount = 0;
+    private long heapUsedTotal = 0;
+    private long heapUsedPeak = 0;
+    private int engineThreadsPeak = 0;
+    private long collectionCountAtStart = 0;
+    private long collectionMillisAtStart = 0;
+
+    private long measurementStartNanos;
+    private long measurementEndNanos;
+
+    public void startMeasurement(){
+        this.latencyRecorder.reset();
+        this.threadBean.resetPeakThreadCount();
+        this.collectionCountAtStart = getCollectionCount();
+        this.collectionMillisAtStart = getCollectionMillis();
+        this.measurementStartNanos = System.nanoTime();
+    }
+
+    public void endMeasurement(){
+        this.measurementEndNanos = System.nanoTime();
+    }
+
+    public void recordResult(long latencyNanos, OperationResult operationResult){
+        this.latencyRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        ResultStatus outcome = operationResult.getExpressionResult().getOutcome();
+        this.outcomes.computeIfAbsent(outcome, status -> new LongAdder()).increment();
+
+        String message = operationResult.getExpressionResult().getMessage();
+        if(!outcome.equals(ResultStatus.SUCCESS) && message != null && !message.isBlank()){
+            this.errors.computeIfAbsent(message, error -> new LongAdder()).increment();
+        }
+    }
+
+    //Operations that never produced a result (failed futures, timeouts) are counted as errors, and are not part of the latency distribution
+    public void recordError(Throwable error){
+        this.outcomes.computeIfAbsent(ResultStatus.FAILURE, status -> new LongAdder()).increment();
+        this.errors.computeIfAbsent(error.getClass().getSimpleName() + ": " + error.getMessage(), message -> new LongAdder()).increment();
+    }
+
+    //Invoked once a second by the runner, from a single thread
+    public void sampleResources(ThreadingManager threadingManager){
+        long heapUsed = this.memoryBean.getHeapMemoryUsage().getUsed();
+        this.sampleCount++;
+        this.heapUsedTotal += heapUsed;
+        this.heapUsedPeak = Math.max(this.heapUsedPeak, heapUsed);
+        this.engineThreadsPeak = Math.max(this.engineThreadsPeak, threadingManager.getActiveThreads(ThreadPool.Engine));
+    }
+
+    public void print(LoadTestOptions options){
+        Histogram latencies = this.latencyRecorder.getIntervalHistogram();
+        double measuredSeconds = (this.measurementEndNanos - this.measurementStartNanos) / (double)TimeUnit.SECONDS.toNanos(1);
+        long completed = this.outcomes.values().stream().mapToLong(LongAdder::sum).sum();
+        long successes = getOutcomeCount(ResultStatus.SUCCESS);
+        double successPercentage = completed == 0 ? 0 : Math.floor((double)successes / (double)completed * 10000) / 100;
+
+        logger.info(" "); //new line without breaking log format
+        logger.info("Load test finished: " + options);
+        logger.info("Completed " + completed + " operations in " + measuredSeconds + " seconds (" + completed / measuredSeconds + " operations per second)");
+        logger.info(successes + " operations were successful (" + successPercentage + "%), " + getOutcomeCount(ResultStatus.FAILURE) + " failed and " + getOutcomeCount(ResultStatus.SKIP) + " were skipped");
+
+        if(latencies.getTotalCount() > 0) {
+            StringBuilder percentiles = new StringBuilder("Latency (ms):");
+            for (double percentile : ReportedPercentiles) {
+                percentiles.append(" p").append(percentile).append("=").append(latencies.getValueAtPercentile(percentile) * toMillisCoefficient);
+            }
+            percentiles.append(" max=").append(latencies.getMaxValue() * toMillisCoefficient);
+            percentiles.append(" mean=").append(latencies.getMean() * toMillisCoefficient);
+            logger.info(percentiles.toString());
+        }
+
+        if(this.errors.isEmpty()){
+            logger.info("No errors encountered, therefore there is no need for an error frequency table");
+        }else{
+            logger.info("Error frequency by type:");
+            List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(this.errors.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> -entry.getValue().sum()));
+            for(Map.Entry<String, LongAdder> entry : entries){
+                logger.info(entry.getValue().sum() + " occurrences of: " + entry.getKey());
+            }
+        }
+
+        long averageHeap = this.sampleCount == 0 ? 0 : this.heapUsedTotal / this.sampleCount;
+        logger.info("Heap used: average " + toMegabytes(averageHeap) + "MB, peak " + toMegabytes(this.heapUsedPeak) + "MB");
+        logger.info("Threads: peak " + this.threadBean.getPeakThreadCount() + " live threads, peak " + this.engineThreadsPeak + " active engine threads");
+        logger.info("Garbage collection: " + (getCollectionCount() - this.collectionCountAtStart) + " collections, " + (getCollectionMillis() - this.collectionMillisAtStart) + "ms total");
+    }
+
+    private long getOutcomeCount(ResultStatus outcome){
+        LongAdder count = this.outcomes.get(outcome);
+        return count == null ? 0 : count.sum();
+    }
+
+    private static long getCollectionCount(){
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+    }
+
+    private static long getCollectionMillis(){
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(millis -> millis > 0).sum();
+    }
+
+    private static long toMegabytes(long bytes){
+        return bytes / (1024 * 1024);
+    }
+}
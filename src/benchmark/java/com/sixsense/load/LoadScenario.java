@@ -0,0 +1,79 @@
+package com.sixsense.load;
+
+import com.sixsense.mocks.OperationMocks;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.ChannelType;
+import com.sixsense.model.logic.ExpectedOutcome;
+import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.model.retention.RetentionMode;
+import com.sixsense.model.wrappers.RawExecutionConfig;
+
+import java.util.Collections;
+
+/*Operations the load test can drive through the engine. Scenarios target the embedded ssh server or the simulated device farm, so no real device is required
+ * Scenarios must not use database retention modes, since the load test runs without a message broker*/
+public enum LoadScenario {
+    LocalEcho("local-echo"){ //a single command on the local channel (the same as DiagnosticController.stressTestLocal())
+        @Override
+        public RawExecutionConfig compose(Credentials credentials) {
+            return new RawExecutionConfig()
+                .addDevice(new Device().withCredentials(credentials))
+                .withOperation(
+                    new Operation()
+                        .withOperationName("Load test local echo")
+                        .withExecutionBlock(
+                            new Command()
+                                .withChannel(ChannelType.LOCAL)
+                                .withCommandText("echo lorem ipsum")
+                                .withSecondsToTimeout(30)
+                                .withExpectedOutcome(
+                                    new LogicalExpression<ExpectedOutcome>()
+                                        .addResolvable(
+                                            new ExpectedOutcome()
+                                                .withBinaryRelation(BinaryRelation.CONTAINS)
+                                                .withExpectedValue("lorem ipsum")
+                                        )
+                                )
+                                .withSaveTo(
+                                    new ResultRetention()
+                                        .withName("var.lorem.ipsum")
+                                        .withRetentionMode(RetentionMode.Variable)
+                                )
+                        )
+                        .addChannel(ChannelType.LOCAL)
+                );
+        }
+    },
+    RemoteEcho("remote-echo"){ //connects from the session shell to the target device over ssh, then echoes and exits (the same as DiagnosticController.stressTestRemote())
+        @Override
+        public RawExecutionConfig compose(Credentials credentials) {
+            return OperationMocks.tinycoreLabEcho(Collections.singletonList(credentials));
+        }
+    };
+
+    private final String scenarioName;
+
+    LoadScenario(String scenarioName) {
+        this.scenarioName = scenarioName;
+    }
+
+    public abstract RawExecutionConfig compose(Credentials credentials);
+
+    public String getScenarioName() {
+        return scenarioName;
+    }
+
+    public static LoadScenario fromScenarioName(String scenarioName){
+        for(LoadScenario scenario : values()){
+            if(scenario.scenarioName.equals(scenarioName)){
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Unknown load scenario " + scenarioName);
+    }
+}
@@ -0,0 +1,114 @@
+package com.sixsense.load;
+
+import java.util.*;
+
+/*Command line options of the load test runner, passed as --name=value
+ * Options starting with --sixsense. or --spring. are not load test options, and are passed on to the engine as configuration overrides*/
+public class LoadTestOptions {
+    private int concurrency = 50; //closed loop: number of clients, each submitting it's next operation once the previous one completes
+    private double rate = 0; //open loop: operations submitted per second regardless of completion. Takes precedence over concurrency when positive
+    private int durationSeconds = 60;
+    private int warmupSeconds = 10; //operations started during warmup are executed, but not measured
+    private String shell = "/bin/bash"; //the shell spawned by the embedded ssh server for every engine channel
+    private String farm = ""; //device farm population (e.g. linux:900,flaky:100). When empty, operations target the embedded ssh server
+    private final Map<LoadScenario, Integer> mix = new EnumMap<>(LoadScenario.class); //key: scenario, value: relative weight
+    private final List<String> engineProperties = new ArrayList<>();
+
+    public static LoadTestOptions parse(String[] args){
+        LoadTestOptions options = new LoadTestOptions();
+        for(String arg : args){
+            if(arg.isBlank()){
+                continue;
+            }else if(!arg.startsWith("--") || !arg.contains("=")){
+                throw new IllegalArgumentException("Load test options should be written as --name=value (found " + arg + ")");
+            }
+
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if(name.startsWith("sixsense.") || name.startsWith("spring.")){
+                options.engineProperties.add(name + "=" + value);
+                continue;
+            }
+
+            switch (name){
+                case "concurrency": options.concurrency = Integer.parseInt(value); break;
+                case "rate": options.rate = Double.parseDouble(value); break;
+                case "duration": options.durationSeconds = Integer.parseInt(value); break;
+                case "warmup": options.warmupSeconds = Integer.parseInt(value); break;
+                case "shell": options.shell = value; break;
+                case "farm": options.farm = value; break;
+                case "mix": options.parseMix(value); break;
+                default: throw new IllegalArgumentException("Unknown load test option " + name);
+            }
+        }
+
+        if(options.mix.isEmpty()){
+            options.mix.put(LoadScenario.LocalEcho, 1);
+        }
+        if(options.concurrency <= 0 && options.rate <= 0){
+            throw new IllegalArgumentException("Either concurrency or rate must be positive");
+        }
+        return options;
+    }
+
+    //Mixes are written as scenario:weight pairs, e.g. local-echo:3,remote-echo:1 (the weight defaults to 1)
+    private void parseMix(String value){
+        for(String entry : value.split(",")){
+            String[] scenarioWeight = entry.trim().split(":");
+            int weight = scenarioWeight.length > 1 ? Integer.parseInt(scenarioWeight[1]) : 1;
+            if(weight > 0) {
+                this.mix.put(LoadScenario.fromScenarioName(scenarioWeight[0]), weight);
+            }
+        }
+    }
+
+    public boolean isOpenLoop(){
+        return this.rate > 0;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public String getShell() {
+        return shell;
+    }
+
+    public String getFarm() {
+        return farm;
+    }
+
+    public Map<LoadScenario, Integer> getMix() {
+        return Collections.unmodifiableMap(mix);
+    }
+
+    public List<String> getEngineProperties() {
+        return Collections.unmodifiableList(engineProperties);
+    }
+
+    @Override
+    public String toString() {
+        return "LoadTestOptions{" +
+            "concurrency=" + concurrency +
+            ", rate=" + rate +
+            ", durationSeconds=" + durationSeconds +
+            ", warmupSeconds=" + warmupSeconds +
+            ", shell='" + shell + '\'' +
+            ", farm='" + farm + '\'' +
+            ", mix=" + mix +
+            ", engineProperties=" + engineProperties +
+            '}';
+    }
+}
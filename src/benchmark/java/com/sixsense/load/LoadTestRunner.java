@@ -0,0 +1,213 @@
+package com.sixsense.load;
+
+import com.sixsense.Main;
+import com.sixsense.model.commands.ParallelWorkflow;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.retention.OperationResult;
+import com.sixsense.services.WorkflowManager;
+import com.sixsense.simulation.DeviceFarm;
+import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.OperatingSystemUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Runs the engine against an embedded ssh server, and drives a weighted mix of operations through the workflow manager
+ * In closed loop mode (--concurrency), each client submits it's next operation as soon as the previous one completes
+ * In open loop mode (--rate), operations are submitted on a fixed schedule, and latencies are measured from the scheduled start time (so a stalled engine is not hidden by submitting less)
+ * With --farm, operations are spread across the devices of a simulated device farm (round robin) instead of targeting the embedded ssh server
+ *
+ * To run from your local cli: mvn -P benchmarks -DskipTests test-compile exec:exec@run-load-test -Dload.args="--concurrency=50 --duration=60 --mix=local-echo:3,remote-echo:1"*/
+public class LoadTestRunner {
+    private static final Logger logger = LogManager.getLogger(LoadTestRunner.class);
+    private static final String EngineConfigDirectory = "classpath:/ansible_control/dir_skeleton/config/";
+    private static final String[] EngineConfigFiles = {"sixsense-admission.yaml", "sixsense-compression.yaml", "sixsense-consumers.yaml", "sixsense-hosts.yaml", "sixsense-logging.yaml", "sixsense-outbox.yaml", "sixsense-rate-limit.yaml", "sixsense-retention.yaml", "sixsense-session.yaml", "sixsense-sharding.yaml", "sixsense-threading.yaml"};
+    private static final int OperationTimeoutSeconds = 300;
+
+    private final LoadTestOptions options;
+    private final LoadReport report = new LoadReport();
+    private final List<LoadScenario> weightedScenarios = new ArrayList<>(); //each scenario appears as many times as it's weight
+
+    private WorkflowManager workflowManager;
+    private ThreadingManager threadingManager;
+    private List<Credentials> deviceCredentials;
+    private final AtomicInteger nextDevice = new AtomicInteger();
+
+    private LoadTestRunner(LoadTestOptions options) {
+        this.options = options;
+        for(Map.Entry<LoadScenario, Integer> scenario : options.getMix().entrySet()){
+            for(int weight = 0; weight < scenario.getValue(); weight++){
+                this.weightedScenarios.add(scenario.getKey());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path workingDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "sixsense-load-test");
+        Files.createDirectories(workingDirectory);
+
+        try(EmbeddedSshServer sshServer = new EmbeddedSshServer(options.getShell(), workingDirectory.resolve("hostkey.ser"));
+            DeviceFarm deviceFarm = new DeviceFarm(workingDirectory.resolve("farm-hostkey.ser"))) {
+            sshServer.start();
+            logger.info("Embedded ssh server is listening on " + sshServer.getHost() + ":" + sshServer.getPort());
+            if(!options.getFarm().isEmpty()){
+                deviceFarm.populate(options.getFarm());
+            }
+
+            ConfigurableApplicationContext appContext = startEngine(options, sshServer);
+            try {
+                LoadTestRunner runner = new LoadTestRunner(options);
+                runner.workflowManager = appContext.getBean(WorkflowManager.class);
+                runner.threadingManager = appContext.getBean(ThreadingManager.class);
+                runner.deviceCredentials = deviceFarm.getDevices().isEmpty() ? List.of(
+                    new Credentials()
+                        .withHost(sshServer.getHost())
+                        .withUsername(sshServer.getUsername())
+                        .withPassword(sshServer.getPassword())
+                        .withPort(sshServer.getPort())
+                ) : deviceFarm.getCredentials();
+
+                runner.run();
+            } finally {
+                OperatingSystemUtils.finalizeCloseableResource(appContext.getBean(ThreadingManager.class));
+                SpringApplication.exit(appContext);
+            }
+        }
+    }
+
+    /*The engine runs with the default configuration files, except for the local host (the embedded ssh server) and the limits that assume every device has a different address
+     * Every device in the load test is the same loopback address, so per device admission and the subnet rate limit are disabled. Any --sixsense.* option overrides these defaults*/
+    private static ConfigurableApplicationContext startEngine(LoadTestOptions options, EmbeddedSshServer sshServer){
+        StringBuilder configLocations = new StringBuilder();
+        for(String configFile : EngineConfigFiles){
+            configLocations.append(configLocations.length() > 0 ? "," : "").append(EngineConfigDirectory).append(configFile);
+        }
+
+        List<String> properties = new ArrayList<>();
+        properties.add("spring.config.additional-location=" + configLocations);
+        properties.add("server.port=0");
+        properties.add("sixsense.hosts.local.host=" + sshServer.getHost());
+        properties.add("sixsense.hosts.local.port=" + sshServer.getPort());
+        properties.add("sixsense.hosts.local.username=" + sshServer.getUsername());
+        properties.add("sixsense.hosts.local.password=" + sshServer.getPassword());
+        properties.add("sixsense.admission.maximum-operations-per-device=0");
+        properties.add("sixsense.rate-limit.subnet.sessions-per-second=0");
+        properties.addAll(options.getEngineProperties());
+
+        return new SpringApplicationBuilder(Main.class)
+            .properties(properties.toArray(String[]::new))
+            .run();
+    }
+
+    private void run() throws InterruptedException {
+        long warmupNanos = TimeUnit.SECONDS.toNanos(this.options.getWarmupSeconds());
+        long durationNanos = TimeUnit.SECONDS.toNanos(this.options.getDurationSeconds());
+        long runStart = System.nanoTime();
+        long measurementStart = runStart + warmupNanos;
+        long runEnd = measurementStart + durationNanos;
+
+        logger.info("Starting load test: " + this.options);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        scheduler.schedule(this.report::startMeasurement, warmupNanos, TimeUnit.NANOSECONDS);
+        scheduler.scheduleAtFixedRate(() -> this.report.sampleResources(this.threadingManager), warmupNanos, TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS);
+
+        try {
+            if (this.options.isOpenLoop()) {
+                runOpenLoop(scheduler, runStart, measurementStart, runEnd);
+            } else {
+                runClosedLoop(measurementStart, runEnd);
+            }
+        }finally {
+            this.report.endMeasurement();
+            scheduler.shutdownNow();
+        }
+
+        this.report.print(this.options);
+    }
+
+    private void runClosedLoop(long measurementStart, long runEnd) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(this.options.getConcurrency());
+        for(int client = 0; client < this.options.getConcurrency(); client++){
+            clients.submit(() -> {
+                while(System.nanoTime() < runEnd && !Thread.currentThread().isInterrupted()){
+                    long operationStart = System.nanoTime();
+                    CompletableFuture<Map<String, OperationResult>> workflowResult = submitNextWorkflow();
+                    try {
+                        Map<String, OperationResult> results = workflowResult.get(OperationTimeoutSeconds, TimeUnit.SECONDS);
+                        recordResults(operationStart, measurementStart, results, null);
+                    } catch (ExecutionException e) {
+                        recordResults(operationStart, measurementStart, null, e.getCause());
+                    } catch (TimeoutException e) {
+                        recordResults(operationStart, measurementStart, null, e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        clients.shutdown();
+        if(!clients.awaitTermination(runEnd - System.nanoTime() + TimeUnit.SECONDS.toNanos(OperationTimeoutSeconds), TimeUnit.NANOSECONDS)){
+            logger.warn("Load test clients did not finish in time, and will be interrupted");
+            clients.shutdownNow();
+        }
+    }
+
+    private void runOpenLoop(ScheduledExecutorService scheduler, long runStart, long measurementStart, long runEnd) throws InterruptedException {
+        long intervalNanos = (long)(TimeUnit.SECONDS.toNanos(1) / this.options.getRate());
+        long totalOperations = (runEnd - runStart) / intervalNanos;
+        CountDownLatch completedOperations = new CountDownLatch((int)totalOperations);
+
+        for(long ordinal = 0; ordinal < totalOperations; ordinal++){
+            long scheduledStart = runStart + ordinal * intervalNanos;
+            scheduler.schedule(() -> submitNextWorkflow().whenComplete((results, error) -> {
+                recordResults(scheduledStart, measurementStart, results, error);
+                completedOperations.countDown();
+            }), scheduledStart - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        if(!completedOperations.await(runEnd - System.nanoTime() + TimeUnit.SECONDS.toNanos(OperationTimeoutSeconds), TimeUnit.NANOSECONDS)){
+            logger.warn(completedOperations.getCount() + " operations did not complete in time, and will not be reported");
+        }
+    }
+
+    private CompletableFuture<Map<String, OperationResult>> submitNextWorkflow(){
+        LoadScenario scenario = this.weightedScenarios.get(ThreadLocalRandom.current().nextInt(this.weightedScenarios.size()));
+        Credentials credentials = this.deviceCredentials.get(Math.floorMod(this.nextDevice.getAndIncrement(), this.deviceCredentials.size()));
+        ParallelWorkflow workflow = CommandUtils.composeWorkflow(scenario.compose(credentials));
+        try {
+            return this.workflowManager.executeWorkflow(workflow);
+        }catch (Exception e){
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    //Operations started during warmup are not measured
+    private void recordResults(long operationStart, long measurementStart, Map<String, OperationResult> results, Throwable error){
+        if(operationStart < measurementStart){
+            return;
+        }
+
+        long latencyNanos = System.nanoTime() - operationStart;
+        if(error != null){
+            this.report.recordError(error);
+        }else{
+            for(OperationResult result : results.values()){
+                this.report.recordResult(latencyNanos, result);
+            }
+        }
+    }
+}
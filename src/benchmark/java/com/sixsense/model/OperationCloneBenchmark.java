@@ -0,0 +1,54 @@
+package com.sixsense.model;
+
+import com.sixsense.mocks.OperationMocks;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.ICommand;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.utillity.CommandUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/*Measures copying and resetting the command tree of an operation, compared with instantiating an operation over a shared command tree (done once per device before every execution)*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OperationCloneBenchmark {
+    private Operation operation;
+    private Block executionBlock;
+
+    @Setup
+    public void setup() {
+        this.operation = CommandUtils.composeWorkflow(OperationMocks.f5BigIpBackup(
+            Collections.singletonList(
+                new Credentials()
+                    .withHost("10.0.0.1")
+                    .withUsername("benchmark")
+                    .withPassword("benchmark")
+            )
+        )).getParallelOperations().get(0);
+
+        ICommand executionBlock = this.operation.getExecutionBlock();
+        this.executionBlock = executionBlock instanceof Block ? (Block)executionBlock : new Block().addChildBlock(executionBlock);
+    }
+
+    @Benchmark
+    public Operation deepCloneOperation() {
+        return this.operation.deepClone();
+    }
+
+    @Benchmark
+    public Operation instantiateOperation() {
+        return this.operation.instantiate();
+    }
+
+    @Benchmark
+    public Block resetBlock() {
+        return this.executionBlock.reset();
+    }
+}
@@ -0,0 +1,68 @@
+package com.sixsense.services;
+
+import com.sixsense.io.Session;
+import com.sixsense.model.events.EngineEventType;
+import com.sixsense.model.events.IEngineEventHandler;
+import com.sixsense.model.events.OutputReceivedEvent;
+import com.sixsense.threading.ThreadingManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/*Measures event emission from several session threads at once, with and without a registered event handler
+ * When no handler is registered (and the event type isn't logged), emit() should neither build the event nor allocate*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class DiagnosticManagerBenchmark {
+    private static final String BenchmarkConfig = "classpath:/ansible_control/dir_skeleton/config/sixsense-threading.yaml,classpath:/ansible_control/dir_skeleton/config/sixsense-logging.yaml";
+
+    @Param({"false", "true"})
+    private boolean observed;
+
+    private ConfigurableApplicationContext context;
+    private DiagnosticManager diagnosticManager;
+    private Session session;
+
+    @Configuration
+    @Import({ConfigurationPropertiesAutoConfiguration.class, ThreadingManager.class, LoggingManager.class, DiagnosticManager.class})
+    static class DiagnosticBenchmarkConfig {
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws InstantiationException {
+        this.context = new SpringApplicationBuilder(DiagnosticBenchmarkConfig.class)
+            .web(WebApplicationType.NONE)
+            .properties("spring.config.additional-location=" + BenchmarkConfig)
+            .run();
+
+        this.diagnosticManager = this.context.getBean(DiagnosticManager.class);
+        this.session = new Session(null, Collections.emptySet(), "benchmark-operation");
+        if(this.observed){
+            IEngineEventHandler noopHandler = event -> {};
+            this.diagnosticManager.registerHandler(noopHandler, EnumSet.of(EngineEventType.OutputReceived));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public void emit() {
+        this.diagnosticManager.emit(this.session, EngineEventType.OutputReceived, () -> new OutputReceivedEvent(this.session, null, 0, "Chassis Serial    f5-abcd-1234"));
+    }
+}
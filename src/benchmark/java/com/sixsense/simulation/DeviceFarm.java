@@ -0,0 +1,98 @@
+package com.sixsense.simulation;
+
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.common.keyprovider.KeyPairProvider;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*An embeddable farm of simulated network devices, each listening on it's own loopback port and playing a scripted persona
+ * Devices share a persisted host key (unless their persona rotates it), so clients only ask to verify a device's identity the first time they see it's port
+ *
+ * Usage: try(DeviceFarm farm = new DeviceFarm(hostKeyFile)){ farm.populate(DevicePersona.linux(), 1000); ... OperationMocks.tinycoreLabEcho(farm.getCredentials()) ... }*/
+public class DeviceFarm implements Closeable {
+    private static final Logger logger = LogManager.getLogger(DeviceFarm.class);
+
+    private final KeyPairProvider sharedHostKey;
+    private final ExecutorService shellPool; //shells block while reading their input, so every open shell holds a thread
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+
+    public DeviceFarm(Path hostKeyFile) {
+        this.sharedHostKey = new SimpleGeneratorHostKeyProvider(hostKeyFile);
+
+        AtomicInteger shellCounter = new AtomicInteger();
+        this.shellPool = Executors.newCachedThreadPool(runnable -> {
+            Thread shellThread = new Thread(runnable, "simulated-shell-" + shellCounter.incrementAndGet());
+            shellThread.setDaemon(true);
+            return shellThread;
+        });
+    }
+
+    public SimulatedDevice addDevice(DevicePersona persona) throws IOException {
+        SimulatedDevice device = new SimulatedDevice(persona, this.sharedHostKey, this.shellPool);
+        device.start();
+        this.devices.add(device);
+        return device;
+    }
+
+    public List<SimulatedDevice> populate(DevicePersona persona, int deviceCount) throws IOException {
+        List<SimulatedDevice> added = new ArrayList<>();
+        for(int deviceIdx = 0; deviceIdx < deviceCount; deviceIdx++){
+            added.add(addDevice(persona));
+        }
+
+        logger.info("Device farm started " + deviceCount + " " + persona.getPersonaName() + " devices");
+        return added;
+    }
+
+    //Populations are written as persona:count pairs, e.g. linux:900,flaky:50,slow-link:50
+    public void populate(String population) throws IOException {
+        for(String entry : population.split(",")){
+            String[] personaCount = entry.trim().split(":");
+            int deviceCount = personaCount.length > 1 ? Integer.parseInt(personaCount[1]) : 1;
+            populate(DevicePersona.fromPersonaName(personaCount[0]), deviceCount);
+        }
+    }
+
+    public List<SimulatedDevice> getDevices() {
+        return Collections.unmodifiableList(devices);
+    }
+
+    public List<Credentials> getCredentials() {
+        return this.devices.stream().map(SimulatedDevice::toCredentials).collect(Collectors.toList());
+    }
+
+    public List<Device> toDevices() {
+        return this.devices.stream().map(SimulatedDevice::toDevice).collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException firstFailure = null;
+        for(SimulatedDevice device : this.devices){
+            try {
+                device.close();
+            }catch (IOException e){
+                if(firstFailure == null){
+                    firstFailure = e;
+                }
+            }
+        }
+
+        this.devices.clear();
+        this.shellPool.shutdownNow();
+        if(firstFailure != null){
+            throw new IOException("Failed to stop every simulated device. Caused by: " + firstFailure.getMessage(), firstFailure);
+        }
+    }
+}
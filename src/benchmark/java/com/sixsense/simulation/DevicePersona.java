@@ -0,0 +1,417 @@
+package com.sixsense.simulation;
+
+import com.sixsense.model.devices.VendorProductVersion;
+
+import java.time.Duration;
+import java.util.*;
+
+/*Scripts the behaviour of a simulated device: it's prompts, responses, timing and faults
+ * Personas are shared by every device playing them, and should not be modified once the device farm has started*/
+public class DevicePersona {
+    private String personaName;
+    private VendorProductVersion vpv;
+    private String username;
+    private String password;
+    private String banner; //written once, before the first prompt
+    private String prompt;
+    private String pagerPrompt; //written after every page of output, until a key is pressed
+    private int linesPerPage; //0 disables paging
+    private String unknownCommandOutput; //%s is replaced by the command name
+    private Set<String> exitCommands;
+    private List<SimulatedResponse> responses; //the first matching response is used
+
+    private Duration authenticationLatency; //delay before accepting (or rejecting) a password
+    private Duration firstByteLatency; //delay between receiving a command and starting to respond
+    private Duration byteLatency; //delay per byte of output, simulating a slow link or a slow device
+    private Duration jitter; //random delay (up to this value) added to every chunk of output
+    private int chunkSize; //output is written in chunks of this many bytes
+
+    private double hangProbability; //chance that a command is never answered (the device stops responding until disconnected)
+    private double disconnectProbability; //chance that a command causes the device to drop the connection
+    private boolean rotateHostKey; //if true, the device generates a new host key every time it starts (clients will report a changed host identification)
+
+    public DevicePersona() {
+        this.personaName = "";
+        this.vpv = new VendorProductVersion();
+        this.username = "sixsense";
+        this.password = "sixsense";
+        this.banner = "";
+        this.prompt = "$ ";
+        this.pagerPrompt = "--More--";
+        this.linesPerPage = 0;
+        this.unknownCommandOutput = "-sh: %s: not found";
+        this.exitCommands = new HashSet<>(Collections.singleton("exit"));
+        this.responses = new ArrayList<>();
+
+        this.authenticationLatency = Duration.ZERO;
+        this.firstByteLatency = Duration.ZERO;
+        this.byteLatency = Duration.ZERO;
+        this.jitter = Duration.ZERO;
+        this.chunkSize = 256;
+
+        this.hangProbability = 0;
+        this.disconnectProbability = 0;
+        this.rotateHostKey = false;
+    }
+
+    public DevicePersona(String personaName, VendorProductVersion vpv, String username, String password, String banner, String prompt, String pagerPrompt, int linesPerPage, String unknownCommandOutput, Set<String> exitCommands, List<SimulatedResponse> responses, Duration authenticationLatency, Duration firstByteLatency, Duration byteLatency, Duration jitter, int chunkSize, double hangProbability, double disconnectProbability, boolean rotateHostKey) {
+        this.personaName = personaName;
+        this.vpv = vpv;
+        this.username = username;
+        this.password = password;
+        this.banner = banner;
+        this.prompt = prompt;
+        this.pagerPrompt = pagerPrompt;
+        this.linesPerPage = linesPerPage;
+        this.unknownCommandOutput = unknownCommandOutput;
+        this.exitCommands = exitCommands;
+        this.responses = responses;
+        this.authenticationLatency = authenticationLatency;
+        this.firstByteLatency = firstByteLatency;
+        this.byteLatency = byteLatency;
+        this.jitter = jitter;
+        this.chunkSize = chunkSize;
+        this.hangProbability = hangProbability;
+        this.disconnectProbability = disconnectProbability;
+        this.rotateHostKey = rotateHostKey;
+    }
+
+    /*----------------Built-in personas----------------*/
+    //A generic linux box (the tinycore lab devices used by OperationMocks.tinycoreLabEcho())
+    public static DevicePersona linux(){
+        return new DevicePersona()
+            .withPersonaName("linux")
+            .withVpv(new VendorProductVersion().withVendor("Linux").withProduct("Generic").withVersion("TinyCore kernel"))
+            .withPrompt("tc@box:~$ ")
+            .addResponse(new SimulatedResponse().withCommandPattern("uptime").withOutput(" 12:00:00 up 42 days,  3:14,  1 user,  load average: 0.00, 0.01, 0.05"))
+            .addResponse(new SimulatedResponse().withCommandPattern("cat /proc/meminfo").withOutput("MemTotal:        2048000 kB").withGeneratedLines(45))
+            .addResponse(new SimulatedResponse().withCommandPattern("cat /proc/cpuinfo").withGeneratedLines(26))
+            .addResponse(new SimulatedResponse().withCommandPattern("df -lh").withOutput("Filesystem      Size  Used Avail Use% Mounted on").withGeneratedLines(8));
+    }
+
+    //An F5 BigIP, with a bash prompt, a tmsh prompt and a pager that must be disabled before reading long outputs
+    public static DevicePersona f5BigIp(){
+        String bashPrompt = "[root@bigip1:Active:Standalone] config # ";
+        String tmshPrompt = "root@(bigip1)(cfg-sync Standalone)(Active)(/Common)(tmos)# ";
+        return new DevicePersona()
+            .withPersonaName("f5-bigip")
+            .withVpv(new VendorProductVersion().withVendor("F5").withProduct("BigIP").withVersion("11 and above"))
+            .withBanner("Last login: Mon Jan  1 00:00:00 2024 from 10.0.0.1")
+            .withPrompt(bashPrompt)
+            .withPagerPrompt("---(less 42%)---")
+            .withLinesPerPage(24)
+            .withUnknownCommandOutput("-bash: %s: command not found")
+            .addResponse(new SimulatedResponse().withCommandPattern("tmsh modify cli preference pager disabled").withDisablesPager(true))
+            .addResponse(new SimulatedResponse().withCommandPattern("tmsh").withPromptAfter(tmshPrompt))
+            .addResponse(new SimulatedResponse().withCommandPattern("quit").withPromptAfter(bashPrompt))
+            .addResponse(new SimulatedResponse().withCommandPattern("show sys hardware.*").withOutput("  Chassis Serial    f5-abcd-efgh"))
+            .addResponse(new SimulatedResponse().withCommandPattern("(tmsh )?show running-config.*").withGeneratedLines(2000).withLineLength(100))
+            .addResponse(new SimulatedResponse().withCommandPattern("uptime").withOutput(" 12:00:00 up 420 days,  3:14,  1 user,  load average: 0.10, 0.11, 0.15"))
+            .addResponse(new SimulatedResponse().withCommandPattern("cat /proc/meminfo").withOutput("MemTotal:        16384000 kB").withGeneratedLines(45))
+            .addResponse(new SimulatedResponse().withCommandPattern("cat /proc/cpuinfo").withGeneratedLines(200))
+            .addResponse(new SimulatedResponse().withCommandPattern("df -lh").withOutput("Filesystem      Size  Used Avail Use% Mounted on").withGeneratedLines(20));
+    }
+
+    //A linux box behind a slow link (roughly 64kbps, with up to 50ms of jitter per chunk)
+    public static DevicePersona slowLink(){
+        return linux()
+            .withPersonaName("slow-link")
+            .withAuthenticationLatency(Duration.ofMillis(500))
+            .withFirstByteLatency(Duration.ofMillis(200))
+            .withByteLatency(Duration.ofNanos(125_000))
+            .withJitter(Duration.ofMillis(50));
+    }
+
+    //A linux box that sometimes stops responding, or drops the connection
+    public static DevicePersona flaky(){
+        return linux()
+            .withPersonaName("flaky")
+            .withHangProbability(0.02)
+            .withDisconnectProbability(0.02);
+    }
+
+    //A linux box that was re-imaged since it was last connected to
+    public static DevicePersona rekeyed(){
+        return linux()
+            .withPersonaName("rekeyed")
+            .withRotateHostKey(true);
+    }
+
+    public static DevicePersona fromPersonaName(String personaName){
+        switch (personaName){
+            case "linux": return linux();
+            case "f5-bigip": return f5BigIp();
+            case "slow-link": return slowLink();
+            case "flaky": return flaky();
+            case "rekeyed": return rekeyed();
+            default: throw new IllegalArgumentException("Unknown device persona " + personaName);
+        }
+    }
+
+    public SimulatedResponse findResponse(String command){
+        for(SimulatedResponse response : this.responses){
+            if(response.matches(command)){
+                return response;
+            }
+        }
+        return null;
+    }
+
+    public String getPersonaName() {
+        return personaName;
+    }
+
+    public void setPersonaName(String personaName) {
+        this.personaName = personaName;
+    }
+
+    public DevicePersona withPersonaName(String personaName) {
+        this.personaName = personaName;
+        return this;
+    }
+
+    public VendorProductVersion getVpv() {
+        return vpv;
+    }
+
+    public void setVpv(VendorProductVersion vpv) {
+        this.vpv = vpv;
+    }
+
+    public DevicePersona withVpv(VendorProductVersion vpv) {
+        this.vpv = vpv;
+        return this;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public DevicePersona withUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public DevicePersona withPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    public String getBanner() {
+        return banner;
+    }
+
+    public void setBanner(String banner) {
+        this.banner = banner;
+    }
+
+    public DevicePersona withBanner(String banner) {
+        this.banner = banner;
+        return this;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    public DevicePersona withPrompt(String prompt) {
+        this.prompt = prompt;
+        return this;
+    }
+
+    public String getPagerPrompt() {
+        return pagerPrompt;
+    }
+
+    public void setPagerPrompt(String pagerPrompt) {
+        this.pagerPrompt = pagerPrompt;
+    }
+
+    public DevicePersona withPagerPrompt(String pagerPrompt) {
+        this.pagerPrompt = pagerPrompt;
+        return this;
+    }
+
+    public int getLinesPerPage() {
+        return linesPerPage;
+    }
+
+    public void setLinesPerPage(int linesPerPage) {
+        this.linesPerPage = linesPerPage;
+    }
+
+    public DevicePersona withLinesPerPage(int linesPerPage) {
+        this.linesPerPage = linesPerPage;
+        return this;
+    }
+
+    public String getUnknownCommandOutput() {
+        return unknownCommandOutput;
+    }
+
+    public void setUnknownCommandOutput(String unknownCommandOutput) {
+        this.unknownCommandOutput = unknownCommandOutput;
+    }
+
+    public DevicePersona withUnknownCommandOutput(String unknownCommandOutput) {
+        this.unknownCommandOutput = unknownCommandOutput;
+        return this;
+    }
+
+    public Set<String> getExitCommands() {
+        return exitCommands;
+    }
+
+    public DevicePersona addExitCommand(String exitCommand) {
+        this.exitCommands.add(exitCommand);
+        return this;
+    }
+
+    public List<SimulatedResponse> getResponses() {
+        return responses;
+    }
+
+    public DevicePersona addResponse(SimulatedResponse response) {
+        this.responses.add(response);
+        return this;
+    }
+
+    public Duration getAuthenticationLatency() {
+        return authenticationLatency;
+    }
+
+    public void setAuthenticationLatency(Duration authenticationLatency) {
+        this.authenticationLatency = authenticationLatency;
+    }
+
+    public DevicePersona withAuthenticationLatency(Duration authenticationLatency) {
+        this.authenticationLatency = authenticationLatency;
+        return this;
+    }
+
+    public Duration getFirstByteLatency() {
+        return firstByteLatency;
+    }
+
+    public void setFirstByteLatency(Duration firstByteLatency) {
+        this.firstByteLatency = firstByteLatency;
+    }
+
+    public DevicePersona withFirstByteLatency(Duration firstByteLatency) {
+        this.firstByteLatency = firstByteLatency;
+        return this;
+    }
+
+    public Duration getByteLatency() {
+        return byteLatency;
+    }
+
+    public void setByteLatency(Duration byteLatency) {
+        this.byteLatency = byteLatency;
+    }
+
+    public DevicePersona withByteLatency(Duration byteLatency) {
+        this.byteLatency = byteLatency;
+        return this;
+    }
+
+    public Duration getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(Duration jitter) {
+        this.jitter = jitter;
+    }
+
+    public DevicePersona withJitter(Duration jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public DevicePersona withChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public double getHangProbability() {
+        return hangProbability;
+    }
+
+    public void setHangProbability(double hangProbability) {
+        this.hangProbability = hangProbability;
+    }
+
+    public DevicePersona withHangProbability(double hangProbability) {
+        this.hangProbability = hangProbability;
+        return this;
+    }
+
+    public double getDisconnectProbability() {
+        return disconnectProbability;
+    }
+
+    public void setDisconnectProbability(double disconnectProbability) {
+        this.disconnectProbability = disconnectProbability;
+    }
+
+    public DevicePersona withDisconnectProbability(double disconnectProbability) {
+        this.disconnectProbability = disconnectProbability;
+        return this;
+    }
+
+    public boolean isRotateHostKey() {
+        return rotateHostKey;
+    }
+
+    public void setRotateHostKey(boolean rotateHostKey) {
+        this.rotateHostKey = rotateHostKey;
+    }
+
+    public DevicePersona withRotateHostKey(boolean rotateHostKey) {
+        this.rotateHostKey = rotateHostKey;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "DevicePersona{" +
+            "personaName='" + personaName + '\'' +
+            ", vpv=" + vpv +
+            ", prompt='" + prompt + '\'' +
+            ", linesPerPage=" + linesPerPage +
+            ", responses=" + responses.size() +
+            ", authenticationLatency=" + authenticationLatency +
+            ", firstByteLatency=" + firstByteLatency +
+            ", byteLatency=" + byteLatency +
+            ", jitter=" + jitter +
+            ", chunkSize=" + chunkSize +
+            ", hangProbability=" + hangProbability +
+            ", disconnectProbability=" + disconnectProbability +
+            ", rotateHostKey=" + rotateHostKey +
+            '}';
+    }
+}
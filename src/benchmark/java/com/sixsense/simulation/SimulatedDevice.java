@@ -0,0 +1,84 @@
+package com.sixsense.simulation;
+
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import org.apache.sshd.common.FactoryManager;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.keyprovider.KeyPairProvider;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/*A single ssh endpoint of the device farm, playing a persona on it's own loopback port
+ * Each endpoint uses a single nio worker, so that thousands of them can run in the same jvm*/
+public class SimulatedDevice implements Closeable {
+    private static final String LoopbackHost = "127.0.0.1";
+
+    private final DevicePersona persona;
+    private final SshServer sshServer;
+
+    public SimulatedDevice(DevicePersona persona, KeyPairProvider sharedHostKey, Executor shellPool) {
+        this.persona = persona;
+
+        this.sshServer = SshServer.setUpDefaultServer();
+        this.sshServer.setHost(LoopbackHost);
+        this.sshServer.setPort(0);
+        PropertyResolverUtils.updateProperty(this.sshServer, FactoryManager.NIO_WORKERS, 1);
+        this.sshServer.setKeyPairProvider(persona.isRotateHostKey() ? new SimpleGeneratorHostKeyProvider() : sharedHostKey);
+        this.sshServer.setPasswordAuthenticator((username, password, serverSession) -> {
+            long authenticationNanos = persona.getAuthenticationLatency().toNanos();
+            if(authenticationNanos > 0){
+                LockSupport.parkNanos(authenticationNanos);
+            }
+            return persona.getUsername().equals(username) && persona.getPassword().equals(password);
+        });
+        this.sshServer.setShellFactory(channel -> new SimulatedShell(persona, shellPool));
+    }
+
+    public void start() throws IOException {
+        this.sshServer.start();
+    }
+
+    public DevicePersona getPersona() {
+        return persona;
+    }
+
+    public String getHost() {
+        return LoopbackHost;
+    }
+
+    public int getPort() {
+        return this.sshServer.getPort();
+    }
+
+    public Credentials toCredentials(){
+        return new Credentials()
+            .withHost(LoopbackHost)
+            .withUsername(this.persona.getUsername())
+            .withPassword(this.persona.getPassword())
+            .withPort(getPort());
+    }
+
+    public Device toDevice(){
+        return new Device()
+            .withCredentials(toCredentials())
+            .withVpv(this.persona.getVpv().deepClone());
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.sshServer.stop(true);
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedDevice{" +
+            "persona=" + persona.getPersonaName() +
+            ", port=" + getPort() +
+            '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.sixsense.simulation;
+
+import java.util.regex.Pattern;
+
+/*The scripted response of a simulated device to commands matching a pattern
+ * The output is written as-is, followed by any generated lines (used to simulate large outputs without scripting them)*/
+public class SimulatedResponse {
+    private Pattern commandPattern;
+    private String output;
+    private int generatedLines; //number of filler lines appended to the output
+    private int lineLength; //length of every generated line
+    private String promptAfter; //if not empty, the device switches to this prompt after responding (e.g. entering tmsh)
+    private boolean disablesPager; //if true, the device stops paging output after responding
+
+    public SimulatedResponse() {
+        this.commandPattern = Pattern.compile("");
+        this.output = "";
+        this.generatedLines = 0;
+        this.lineLength = 80;
+        this.promptAfter = "";
+        this.disablesPager = false;
+    }
+
+    public SimulatedResponse(Pattern commandPattern, String output, int generatedLines, int lineLength, String promptAfter, boolean disablesPager) {
+        this.commandPattern = commandPattern;
+        this.output = output;
+        this.generatedLines = generatedLines;
+        this.lineLength = lineLength;
+        this.promptAfter = promptAfter;
+        this.disablesPager = disablesPager;
+    }
+
+    public boolean matches(String command){
+        return this.commandPattern.matcher(command).matches();
+    }
+
+    public Pattern getCommandPattern() {
+        return commandPattern;
+    }
+
+    public void setCommandPattern(Pattern commandPattern) {
+        this.commandPattern = commandPattern;
+    }
+
+    public SimulatedResponse withCommandPattern(String commandRegex) {
+        this.commandPattern = Pattern.compile(commandRegex);
+        return this;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public SimulatedResponse withOutput(String output) {
+        this.output = output;
+        return this;
+    }
+
+    public int getGeneratedLines() {
+        return generatedLines;
+    }
+
+    public void setGeneratedLines(int generatedLines) {
+        this.generatedLines = generatedLines;
+    }
+
+    public SimulatedResponse withGeneratedLines(int generatedLines) {
+        this.generatedLines = generatedLines;
+        return this;
+    }
+
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    public void setLineLength(int lineLength) {
+        this.lineLength = lineLength;
+    }
+
+    public SimulatedResponse withLineLength(int lineLength) {
+        this.lineLength = lineLength;
+        return this;
+    }
+
+    public String getPromptAfter() {
+        return promptAfter;
+    }
+
+    public void setPromptAfter(String promptAfter) {
+        this.promptAfter = promptAfter;
+    }
+
+    public SimulatedResponse withPromptAfter(String promptAfter) {
+        this.promptAfter = promptAfter;
+        return this;
+    }
+
+    public boolean isDisablesPager() {
+        return disablesPager;
+    }
+
+    public void setDisablesPager(boolean disablesPager) {
+        this.disablesPager = disablesPager;
+    }
+
+    public SimulatedResponse withDisablesPager(boolean disablesPager) {
+        this.disablesPager = disablesPager;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedResponse{" +
+            "commandPattern=" + commandPattern +
+            ", output='" + output + '\'' +
+            ", generatedLines=" + generatedLines +
+            ", lineLength=" + lineLength +
+            ", promptAfter='" + promptAfter + '\'' +
+            ", disablesPager=" + disablesPager +
+            '}';
+    }
+}
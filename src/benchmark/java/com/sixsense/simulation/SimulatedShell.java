@@ -0,0 +1,252 @@
+package com.sixsense.simulation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/*The interactive shell of a simulated device, created for every shell channel opened against it
+ * Behaves like a shell on a pseudo-terminal: input is echoed, lines end with \r\n, and output is followed by the current prompt
+ * Each shell reads it's input on a thread of the device farm shell pool, until the channel is closed*/
+public class SimulatedShell implements Command {
+    private static final Logger logger = LogManager.getLogger(SimulatedShell.class);
+    private static final String LineBreak = "\r\n";
+    private static final char FillerCharacter = 'x';
+
+    private final DevicePersona persona;
+    private final Executor shellPool;
+
+    private InputStream in;
+    private OutputStream out;
+    private ExitCallback exitCallback;
+    private ChannelSession channel;
+
+    private String currentPrompt;
+    private boolean pagerEnabled;
+    private volatile boolean isClosed = false;
+
+    public SimulatedShell(DevicePersona persona, Executor shellPool) {
+        this.persona = persona;
+        this.shellPool = shellPool;
+        this.currentPrompt = persona.getPrompt();
+        this.pagerEnabled = persona.getLinesPerPage() > 0;
+    }
+
+    @Override
+    public void start(ChannelSession channel, Environment env) throws IOException {
+        this.channel = channel;
+        this.shellPool.execute(this::run);
+    }
+
+    private void run(){
+        try {
+            if(!this.persona.getBanner().isEmpty()) {
+                write(this.persona.getBanner() + LineBreak);
+            }
+            write(this.currentPrompt);
+
+            StringBuilder line = new StringBuilder();
+            boolean lastWasCarriageReturn = false;
+            int input;
+            while(!this.isClosed && (input = this.in.read()) != -1){
+                if(input == '\n' && lastWasCarriageReturn){ //\r\n is a single line break
+                    lastWasCarriageReturn = false;
+                    continue;
+                }
+                lastWasCarriageReturn = input == '\r';
+
+                if(input == '\r' || input == '\n'){
+                    write(LineBreak);
+                    String command = line.toString().trim();
+                    line.setLength(0);
+                    if(!handleCommand(command)){
+                        return;
+                    }
+                }else if(input == 3){ //ctrl+c discards the current line
+                    line.setLength(0);
+                    write("^C" + LineBreak + this.currentPrompt);
+                }else if(input == 127 || input == '\b'){
+                    if(line.length() > 0){
+                        line.setLength(line.length() - 1);
+                        write("\b \b");
+                    }
+                }else{
+                    line.append((char)input);
+                    this.out.write(input);
+                    this.out.flush();
+                }
+            }
+        }catch (IOException e){
+            if(!this.isClosed) {
+                logger.debug("Simulated " + this.persona.getPersonaName() + " shell failed. Caused by: " + e.getMessage());
+            }
+        }finally {
+            exit(0, "");
+        }
+    }
+
+    //Returns false if the shell should stop reading input (the device exited, hung or disconnected)
+    private boolean handleCommand(String command) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if(command.isEmpty()){
+            write(this.currentPrompt);
+            return true;
+        }else if(this.persona.getExitCommands().contains(command)){
+            write("logout" + LineBreak);
+            return false;
+        }else if(random.nextDouble() < this.persona.getHangProbability()){
+            logger.debug("Simulated " + this.persona.getPersonaName() + " device hangs on command " + command);
+            drainUntilClosed();
+            return false;
+        }else if(random.nextDouble() < this.persona.getDisconnectProbability()){
+            logger.debug("Simulated " + this.persona.getPersonaName() + " device disconnects on command " + command);
+            this.isClosed = true; //the session is closed abruptly, so there is no exit status to report
+            this.channel.getSession().close(true);
+            return false;
+        }
+
+        sleep(this.persona.getFirstByteLatency().toNanos());
+        SimulatedResponse response = this.persona.findResponse(command);
+        if(response == null){
+            writeOutput(resolveBuiltinCommand(command));
+        }else{
+            writeOutput(renderResponse(response));
+            if(response.isDisablesPager()){
+                this.pagerEnabled = false;
+            }
+            if(!response.getPromptAfter().isEmpty()){
+                this.currentPrompt = response.getPromptAfter();
+            }
+        }
+
+        write(this.currentPrompt);
+        return true;
+    }
+
+    //Commands every shell understands, unless the persona scripts them otherwise
+    private String resolveBuiltinCommand(String command){
+        if(command.equals("echo")){
+            return "";
+        }else if(command.startsWith("echo ")){
+            return command.substring("echo ".length()).replace("'", "").replace("\"", "");
+        }
+
+        String commandName = command.split("\\s+")[0];
+        return String.format(this.persona.getUnknownCommandOutput(), commandName);
+    }
+
+    private String renderResponse(SimulatedResponse response){
+        StringBuilder output = new StringBuilder(response.getOutput());
+        for(int generatedLine = 0; generatedLine < response.getGeneratedLines(); generatedLine++){
+            if(output.length() > 0){
+                output.append('\n');
+            }
+            String lineNumber = String.valueOf(generatedLine + 1);
+            output.append(lineNumber).append(' ');
+            for(int character = lineNumber.length() + 1; character < response.getLineLength(); character++){
+                output.append(FillerCharacter);
+            }
+        }
+        return output.toString();
+    }
+
+    /*Writes the output line by line, pausing on the pager prompt after every full page (if the pager is enabled)
+     * While paging, any key shows the next page, and q discards the rest of the output*/
+    private void writeOutput(String output) throws IOException {
+        if(output.isEmpty()){
+            return;
+        }
+
+        String[] lines = output.split("\n", -1);
+        int linesPerPage = this.persona.getLinesPerPage();
+        for(int lineIdx = 0; lineIdx < lines.length; lineIdx++){
+            write(lines[lineIdx] + LineBreak);
+
+            boolean pageFull = this.pagerEnabled && (lineIdx + 1) % linesPerPage == 0 && lineIdx + 1 < lines.length;
+            if(pageFull){
+                write(this.persona.getPagerPrompt());
+                int key = this.in.read();
+                write("\r" + " ".repeat(this.persona.getPagerPrompt().length()) + "\r");
+                if(key == -1 || key == 'q'){
+                    return;
+                }
+            }
+        }
+    }
+
+    //Writes in chunks, applying the byte latency and jitter of the persona to every chunk
+    private void write(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int chunkSize = Math.max(this.persona.getChunkSize(), 1);
+        long byteLatencyNanos = this.persona.getByteLatency().toNanos();
+        long jitterNanos = this.persona.getJitter().toNanos();
+
+        for(int offset = 0; offset < bytes.length; offset += chunkSize){
+            int length = Math.min(chunkSize, bytes.length - offset);
+            long delayNanos = byteLatencyNanos * length;
+            if(jitterNanos > 0){
+                delayNanos += ThreadLocalRandom.current().nextLong(jitterNanos);
+            }
+            sleep(delayNanos);
+
+            this.out.write(bytes, offset, length);
+            this.out.flush();
+        }
+    }
+
+    //A hung device keeps the connection open, but ignores any input
+    private void drainUntilClosed() throws IOException {
+        byte[] discarded = new byte[1024];
+        while(!this.isClosed && this.in.read(discarded) != -1){
+            //keep draining
+        }
+    }
+
+    private static void sleep(long nanos){
+        if(nanos > 0){
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private void exit(int exitValue, String exitMessage){
+        if(!this.isClosed) {
+            this.isClosed = true;
+            this.exitCallback.onExit(exitValue, exitMessage);
+        }
+    }
+
+    @Override
+    public void destroy(ChannelSession channel) {
+        this.isClosed = true;
+    }
+
+    @Override
+    public void setInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void setErrorStream(OutputStream err) {
+        //Pseudo-terminals do not separate errors from output, so errors are written to the output stream as well
+    }
+
+    @Override
+    public void setExitCallback(ExitCallback callback) {
+        this.exitCallback = callback;
+    }
+}
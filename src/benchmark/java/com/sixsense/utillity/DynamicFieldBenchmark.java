@@ -0,0 +1,42 @@
+package com.sixsense.utillity;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*Measures the substitution of session variables into command text, which runs for every command and every expected outcome of an operation*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DynamicFieldBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    private int fieldCount;
+
+    private String commandText;
+    private Map<String, String> dynamicFields;
+
+    //The command text references a handful of variables, while the session holds fieldCount variables
+    @Setup
+    public void setup() {
+        this.dynamicFields = new HashMap<>();
+        for(int field = 0; field < this.fieldCount; field++){
+            this.dynamicFields.put("sixsense.benchmark.field" + field, "value-" + field);
+        }
+
+        StringBuilder commandBuilder = new StringBuilder("tmsh save sys ucs");
+        for(int field = 0; field < Math.min(this.fieldCount, 4); field++){
+            commandBuilder.append(" ").append(Literals.VariableMark).append("sixsense.benchmark.field").append(field);
+        }
+        this.commandText = commandBuilder.toString();
+    }
+
+    @Benchmark
+    public String evaluateAgainstDynamicFields() {
+        return CommandUtils.evaluateAgainstDynamicFields(this.commandText, this.dynamicFields);
+    }
+}
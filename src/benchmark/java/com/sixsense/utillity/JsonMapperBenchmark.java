@@ -0,0 +1,69 @@
+package com.sixsense.utillity;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sixsense.mocks.OperationMocks;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.wrappers.RawExecutionConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*Measures the polymorphic (de)serialization of execution configs, as done for every message consumed from and published to the broker
+* The pretty printed json benchmark is the baseline, matching how results were encoded before binary formats were supported
+* The encoded size of each format is printed once per trial, since jmh only reports timings*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonMapperBenchmark {
+    @Param({"1", "10", "1000"})
+    private int deviceCount;
+
+    @Param({"Json", "Smile", "Cbor"})
+    private WireFormat wireFormat;
+
+    private RawExecutionConfig executionConfig;
+    private byte[] serializedConfig;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        List<Credentials> credentialList = new ArrayList<>();
+        for(int device = 0; device < this.deviceCount; device++){
+            credentialList.add(
+                new Credentials()
+                    .withHost("10.0." + (device / 250) + "." + (device % 250 + 1))
+                    .withUsername("benchmark")
+                    .withPassword("benchmark")
+            );
+        }
+
+        this.executionConfig = OperationMocks.f5BigIpBackup(credentialList);
+        this.serializedConfig = PolymorphicJsonMapper.serialize(this.executionConfig, this.wireFormat);
+
+        int prettySize = PolymorphicJsonMapper.serializePretty(this.executionConfig).getBytes().length;
+        System.out.println(
+            "Encoded size for " + this.deviceCount + " devices: " + this.wireFormat.name() + " = " + this.serializedConfig.length + " bytes, " +
+            "pretty printed json = " + prettySize + " bytes"
+        );
+    }
+
+    @Benchmark
+    public String serializePretty() throws JsonProcessingException {
+        return PolymorphicJsonMapper.serializePretty(this.executionConfig);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return PolymorphicJsonMapper.serialize(this.executionConfig, this.wireFormat);
+    }
+
+    @Benchmark
+    public RawExecutionConfig deserialize() throws IOException {
+        return PolymorphicJsonMapper.deserialize(this.serializedConfig, RawExecutionConfig.class, this.wireFormat);
+    }
+}
@@ -0,0 +1,42 @@
+package com.sixsense.utillity;
+
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.ExpectedOutcome;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.logic.LogicalExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*Measures outcome resolution for each binary relation, against a short command output*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogicalExpressionBenchmark {
+    @Param({"EQUALS", "NOT_EQUALS", "CONTAINS", "NOT_CONTAINS", "CONTAINED_BY", "NOT_CONTAINED_BY", "STARTS_WITH", "ENDS_WITH",
+        "LESSER_THAN", "GREATER_THAN", "LESSER_OR_EQUAL_TO", "GREATER_OR_EQUAL_TO", "MATCHES_REGEX"})
+    private BinaryRelation binaryRelation;
+
+    private final String commandOutput = "42";
+    private final Map<String, String> sessionFields = Collections.emptyMap();
+    private LogicalExpression<ExpectedOutcome> logicalExpression;
+
+    @Setup
+    public void setup() {
+        this.logicalExpression = new LogicalExpression<ExpectedOutcome>().addResolvable(
+            new ExpectedOutcome()
+                .withBinaryRelation(this.binaryRelation)
+                .withExpectedValue("42")
+        );
+    }
+
+    @Benchmark
+    public ExpressionResult resolveLogicalExpression() {
+        return LogicalExpressionResolver.resolveLogicalExpression(this.commandOutput, this.sessionFields, this.logicalExpression);
+    }
+}
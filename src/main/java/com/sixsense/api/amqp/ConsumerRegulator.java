@@ -0,0 +1,208 @@
+package com.sixsense.api.amqp;
+
+import com.rabbitmq.client.Channel;
+import com.sixsense.config.AdmissionConfig;
+import com.sixsense.config.ConsumerConfig;
+import com.sixsense.model.threading.AdmissionStatistics;
+import com.sixsense.model.threading.ThreadPool;
+import com.sixsense.services.AdmissionManager;
+import com.sixsense.services.MetricsManager;
+import com.sixsense.threading.ThreadingManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Adjusts how many execution requests each consumer of engine.operations.execute may hold, according to the engine load (see ConsumerConfig.FeedbackProperties)
+ * Execution requests stay unacknowledged until they finish executing, so a channel level prefetch (basic.qos with global=true) caps the requests held by each consumer channel.
+ * Pausing a consumer clamps it's prefetch to the requests it already holds, and lowers the clamp whenever one of them is acknowledged, so it receives no new requests until the consumers resume.
+ * Consumers are never stopped or cancelled here, as closing their channel would requeue the requests still executing on them (which would then execute twice)*/
+@Component
+@EnableConfigurationProperties({AdmissionConfig.class, ConsumerConfig.class})
+public class ConsumerRegulator implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ConsumerRegulator.class);
+    private final AdmissionManager admissionManager;
+    private final ThreadingManager threadingManager;
+    private final AdmissionConfig admissionConfig;
+    private final ConsumerConfig.ExecuteConsumerProperties consumerProperties;
+    private final ConsumerConfig.FeedbackProperties feedbackProperties;
+    private final ScheduledExecutorService feedbackLoop;
+
+    //All of the fields below are guarded by the regulationLock
+    private final Lock regulationLock = new ReentrantLock();
+    private final Map<Channel, Integer> heldRequests = new HashMap<>(); //key: consumer channel, value: unacknowledged execution requests on that channel
+    private final Map<Channel, Integer> appliedPrefetch = new HashMap<>(); //key: consumer channel, value: the last prefetch applied to that channel
+    private int currentPrefetch;
+    private boolean paused = false;
+
+    @Autowired
+    public ConsumerRegulator(AdmissionManager admissionManager, ThreadingManager threadingManager, MetricsManager metricsManager, AdmissionConfig admissionConfig, ConsumerConfig consumerConfig) {
+        this.admissionManager = admissionManager;
+        this.threadingManager = threadingManager;
+        this.admissionConfig = admissionConfig;
+        this.consumerProperties = consumerConfig.getExecute();
+        this.feedbackProperties = consumerConfig.getFeedback();
+        this.currentPrefetch = this.consumerProperties.getMaximumPrefetch();
+
+        if(this.feedbackProperties.isEnabled()) {
+            this.feedbackLoop = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread regulatorThread = new Thread(runnable, "engine-consumer-regulator");
+                regulatorThread.setDaemon(true);
+                return regulatorThread;
+            });
+
+            long intervalMillis = this.feedbackProperties.getInterval().toMillis();
+            this.feedbackLoop.scheduleWithFixedDelay(this::regulate, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }else{
+            this.feedbackLoop = null;
+        }
+
+        metricsManager.registerGauge("sixsense.consumers.load", "Engine load, as sampled by the execution request consumer feedback loop", this, ConsumerRegulator::getCurrentLoad);
+        metricsManager.registerGauge("sixsense.consumers.prefetch", "Current prefetch of each execution request consumer", this, ConsumerRegulator::getCurrentPrefetch);
+        metricsManager.registerGauge("sixsense.consumers.held", "Execution requests consumed but not yet acknowledged", this, ConsumerRegulator::getHeldRequests);
+    }
+
+    //Called by the consumer when it receives an execution request on the channel
+    public void requestReceived(Channel channel){
+        this.regulationLock.lock();
+        try {
+            this.heldRequests.merge(channel, 1, Integer::sum);
+            if(!this.appliedPrefetch.containsKey(channel)){
+                //first request on a new consumer channel - until now, it was only limited by the container's per consumer prefetch
+                applyPrefetch(channel);
+            }
+        }finally {
+            this.regulationLock.unlock();
+        }
+    }
+
+    /*Called by the consumer after it acknowledged (or rejected) an execution request on the channel
+     * While paused, the prefetch is clamped again to the requests still held. Otherwise the clamp would stay at the old count, and the broker would deliver a replacement for every acknowledged request*/
+    public void requestReleased(Channel channel){
+        this.regulationLock.lock();
+        try {
+            this.heldRequests.computeIfPresent(channel, (key, held) -> held > 1 ? held - 1 : null);
+            if(this.paused && this.appliedPrefetch.containsKey(channel)){
+                applyPrefetch(channel);
+            }
+        }finally {
+            this.regulationLock.unlock();
+        }
+    }
+
+    private void regulate(){
+        try {
+            double load = getCurrentLoad();
+            this.regulationLock.lock();
+            try {
+                //forget channels closed by the container (i.e. after a connection recovery)
+                this.appliedPrefetch.keySet().removeIf(channel -> !channel.isOpen());
+                this.heldRequests.keySet().removeIf(channel -> !channel.isOpen());
+
+                if (load >= this.feedbackProperties.getHighWatermark()) {
+                    if (!this.paused) {
+                        logger.info("Engine load is " + String.format("%.2f", load) + ". Pausing execution request consumers");
+                    }
+                    this.paused = true;
+                    this.currentPrefetch = this.consumerProperties.getMinimumPrefetch();
+                } else if (load > this.feedbackProperties.getLowWatermark()) {
+                    this.currentPrefetch = Math.max(this.currentPrefetch - 1, this.consumerProperties.getMinimumPrefetch());
+                } else {
+                    if (this.paused) {
+                        logger.info("Engine load is " + String.format("%.2f", load) + ". Resuming execution request consumers");
+                    }
+                    this.paused = false;
+                    this.currentPrefetch = Math.min(this.currentPrefetch + 1, this.consumerProperties.getMaximumPrefetch());
+                }
+
+                for (Channel channel : this.appliedPrefetch.keySet()) {
+                    applyPrefetch(channel);
+                }
+            } finally {
+                this.regulationLock.unlock();
+            }
+        }catch (Exception e){
+            //an exception would cancel all subsequent executions of the feedback loop, so it must not escape
+            logger.error("Failed to regulate execution request consumers. Caused by: " + e.getMessage());
+        }
+    }
+
+    /*This method assumes we are holding the regulationLock
+     * basic.qos does not accept a prefetch of zero (which means unlimited), so a paused channel holding no requests may still receive a single request*/
+    private void applyPrefetch(Channel channel){
+        int prefetch = this.paused ? Math.max(this.heldRequests.getOrDefault(channel, 0), 1) : this.currentPrefetch;
+        Integer previousPrefetch = this.appliedPrefetch.get(channel);
+        if(previousPrefetch != null && previousPrefetch == prefetch){
+            return;
+        }
+
+        try {
+            //basicQos(int prefetchCount, boolean global)
+            channel.basicQos(prefetch, true);
+            this.appliedPrefetch.put(channel, prefetch);
+        } catch (IOException e) {
+            logger.error("Failed to update prefetch of consumer channel " + channel.getChannelNumber() + " to " + prefetch + ". Caused by: " + e.getMessage());
+        }
+    }
+
+    //The higher of the admission load (running and pending operations relative to the running operation limit) and the engine pool saturation. Unlimited values are ignored
+    public double getCurrentLoad(){
+        double load = 0;
+        int maximumRunningOperations = this.admissionConfig.getMaximumRunningOperations();
+        if(maximumRunningOperations > 0){
+            AdmissionStatistics admissionStatistics = this.admissionManager.getAdmissionStatistics();
+            load = (admissionStatistics.getRunningOperations() + admissionStatistics.getPendingOperations()) / (double)maximumRunningOperations;
+        }
+
+        double poolSaturation = this.threadingManager.getPoolSaturation(ThreadPool.Engine);
+        if(!Double.isNaN(poolSaturation)){
+            load = Math.max(load, poolSaturation);
+        }
+        return load;
+    }
+
+    public int getCurrentPrefetch(){
+        this.regulationLock.lock();
+        try {
+            return this.paused ? 0 : this.currentPrefetch;
+        }finally {
+            this.regulationLock.unlock();
+        }
+    }
+
+    public int getHeldRequests(){
+        this.regulationLock.lock();
+        try {
+            return this.heldRequests.values().stream().mapToInt(Integer::intValue).sum();
+        }finally {
+            this.regulationLock.unlock();
+        }
+    }
+
+    public boolean isPaused(){
+        this.regulationLock.lock();
+        try {
+            return this.paused;
+        }finally {
+            this.regulationLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if(this.feedbackLoop != null){
+            this.feedbackLoop.shutdownNow();
+        }
+    }
+}
@@ -2,18 +2,24 @@ package com.sixsense.api.amqp;
 
 import com.sixsense.api.ApiDebuggingAware;
 import com.sixsense.api.amqp.config.AMQPConfig;
+import com.sixsense.api.amqp.config.ResultMode;
+import com.sixsense.config.CompressionConfig;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.ParallelWorkflow;
 import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.wrappers.DeviceResult;
+import com.sixsense.model.wrappers.ExecutionSummary;
 import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.wrappers.RawTerminationConfig;
-import com.sixsense.services.SessionEngine;
+import com.sixsense.services.AdmissionManager;
 import com.sixsense.services.WorkflowManager;
 import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.BulkSubmissionReader;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.FieldGlossary;
+import com.sixsense.utillity.PayloadCompression;
 import com.sixsense.utillity.PolymorphicJsonMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sixsense.utillity.WireFormat;
 import com.rabbitmq.client.Channel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,8 +33,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -41,19 +49,26 @@ public class OperationConsumer extends ApiDebuggingAware {
     //Engine entities
     private final WorkflowManager workflowManager;
     private final ThreadingManager threadingManager;
-    private final SessionEngine sessionEngine;
+    private final AdmissionManager admissionManager;
     private final OperationProducer operationProducer;
+    private final ConsumerRegulator consumerRegulator;
+    private final ShardRouter shardRouter;
+    private final CompressionConfig compressionConfig;
 
     @Autowired
-    public OperationConsumer(WorkflowManager workflowManager, ThreadingManager threadingManager, SessionEngine sessionEngine, OperationProducer operationProducer) {
+    public OperationConsumer(WorkflowManager workflowManager, ThreadingManager threadingManager, AdmissionManager admissionManager, OperationProducer operationProducer, ConsumerRegulator consumerRegulator, ShardRouter shardRouter, CompressionConfig compressionConfig) {
         super();
         this.workflowManager = workflowManager;
         this.threadingManager = threadingManager;
-        this.sessionEngine = sessionEngine;
+        this.admissionManager = admissionManager;
         this.operationProducer = operationProducer;
+        this.consumerRegulator = consumerRegulator;
+        this.shardRouter = shardRouter;
+        this.compressionConfig = compressionConfig;
     }
 
     @RabbitListener(
+            containerFactory = "executeListenerContainerFactory",
             bindings = @QueueBinding(
                     exchange = @Exchange(
                             value = "engine.operations",
@@ -67,44 +82,159 @@ public class OperationConsumer extends ApiDebuggingAware {
             )
     )
     public void executeOperation(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
-        String operationJSON = new String(message.getBody(), StandardCharsets.UTF_8);
+        //when sharding is enabled, requests from the execute queue are only split and distributed among the engine nodes
+        consumeExecutionRequest(message, channel, deliveryTag, shardRouter.isEnabled());
+    }
+
+    //Consumes the per-device requests routed to this node by the shard exchange. Only started when sharding is enabled
+    @RabbitListener(
+            containerFactory = "executeListenerContainerFactory",
+            queues = "#{shardRouter.nodeQueueName}",
+            autoStartup = "#{shardRouter.enabled}"
+    )
+    public void executeShard(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        consumeExecutionRequest(message, channel, deliveryTag, false);
+    }
+
+    private void consumeExecutionRequest(Message message, Channel channel, long deliveryTag, boolean distribute) {
+        WireFormat wireFormat = WireFormat.fromContentType(message.getMessageProperties().getContentType());
         String queueName = message.getMessageProperties().getConsumerQueue();
         RawExecutionConfig rawExecutionConfig;
+        consumerRegulator.requestReceived(channel);
 
         try {
             logger.info("Consumed message with delivery tag " + deliveryTag + " from queue " + message.getMessageProperties().getConsumerQueue());
-            rawExecutionConfig = PolymorphicJsonMapper.deserialize(operationJSON, RawExecutionConfig.class);
+            rawExecutionConfig = PolymorphicJsonMapper.deserialize(decompressBody(message), RawExecutionConfig.class, wireFormat);
             logger.info("Generated raw execution config by deserializing message with delivery tag " + deliveryTag + " from queue " + queueName);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             /*deserializing the same faulty message twice will just throw the same exception twice
             * so we send a channel.ack() to the broker allowing it to discard the message
             * since the engine is logging the failure*/
             logger.error("Failed to deserialize message with delivery tag " + deliveryTag + " from queue " + queueName + ". Caused by: " + e.getMessage());
             AMQPConfig.acknowledgeMessage(channel, message.getMessageProperties().getConsumerQueue(), true, deliveryTag);
+            consumerRegulator.requestReleased(channel);
             rawExecutionConfig = null;
         }
 
-        if (rawExecutionConfig != null) {
+        if (rawExecutionConfig != null && distribute) {
+            if(shardRouter.distribute(message, rawExecutionConfig, wireFormat)){
+                AMQPConfig.acknowledgeMessage(channel, queueName, true, deliveryTag);
+            }else{
+                AMQPConfig.requeueMessage(channel, queueName, deliveryTag);
+            }
+            consumerRegulator.requestReleased(channel);
+        } else if (rawExecutionConfig != null) {
             rawExecutionConfig.setStartTime(Instant.now());
             ParallelWorkflow workflow = CommandUtils.composeWorkflow(rawExecutionConfig);
-            final RawExecutionConfig asFinalCopy = rawExecutionConfig; //this ugly line is needed because lambda expressions require final variables
+            ResultMode resultMode = ResultMode.fromHeader(message.getMessageProperties().getHeaders().get(AMQPConfig.ResultModeHeader));
+            //sharded requests have a request id of their own, and their replies carry the id of the request they were split from (and their shard index and count)
+            Map<String, Object> replyHeaders = ShardRouter.shardHeaders(message.getMessageProperties());
+
+            CompletableFuture<Boolean> publishedResults;
+            if(resultMode.equals(ResultMode.Streaming)){
+                Object requestId = message.getMessageProperties().getHeaders().getOrDefault(AMQPConfig.RequestIdHeader, rawExecutionConfig.getOperation().getUUID());
+                publishedResults = streamOperationResults(rawExecutionConfig, workflow, String.valueOf(requestId), replyHeaders, queueName, deliveryTag, wireFormat);
+            }else{
+                publishedResults = aggregateOperationResults(rawExecutionConfig, workflow, replyHeaders, queueName, deliveryTag, wireFormat);
+            }
 
-            workflowManager.executeWorkflow(workflow).thenApply(map -> {
-                for (Operation operation : workflow.getParallelOperations()) {
-                    OperationResult result = map.get(operation.getUUID());
-                    asFinalCopy.addResult(operation.getDynamicFields().get(FieldGlossary.device_internal_id), result);
+            //the request is settled either way, so a failure while publishing the results never leaves it unacknowledged (and holding a consumer slot)
+            publishedResults.whenComplete((successful, throwable) -> {
+                if(throwable != null){
+                    logger.error("Failed to publish the results of message with delivery tag " + deliveryTag + " from queue " + queueName + ". Caused by: " + throwable.getMessage());
                 }
+                AMQPConfig.acknowledgeMessage(channel, message.getMessageProperties().getConsumerQueue(), throwable == null && successful, deliveryTag);
+                consumerRegulator.requestReleased(channel);
+            });
+        }
+    }
 
-                /* As of writing this comment, the only checked exception thrown by the operation producer is JsonProcessingException,
-                 * which is highly unlikely (unless the serializer is configured wrong)
-                 * If such an exception does occur, it is pointless to retry consuming a message, since it will continuously fail to serialize
-                 * So we currently just return true (and ack(); the message)*/
-                operationProducer.produceOperationResults(asFinalCopy, queueName, deliveryTag);
-                return true;
-            }).thenAccept(successful -> AMQPConfig.acknowledgeMessage(
-                channel, message.getMessageProperties().getConsumerQueue(), successful, deliveryTag)
-            );
+    /*Consumes a bulk submission - the operation followed by a newline delimited stream of devices (see BulkSubmissionReader)
+     * Devices are parsed and submitted one at a time, and their results are always streamed (see ResultMode.Streaming), followed by an execution summary.
+     * Devices are read on a bulk reader thread of the workflow manager, so the listener thread is released as soon as the submission is handed over,
+     * and the message is acked once every device has finished*/
+    @RabbitListener(
+            containerFactory = "executeListenerContainerFactory",
+            bindings = @QueueBinding(
+                    exchange = @Exchange(
+                            value = "engine.operations",
+                            type = ExchangeTypes.DIRECT
+                    ),
+                    value = @Queue(
+                            value = "engine.operations.bulk",
+                            durable = "true"
+                    ),
+                    key = "bulk"
+            )
+    )
+    public void executeBulk(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        //devices are json documents (one per line) regardless of the declared content type, which is application/x-ndjson for bulk submissions
+        WireFormat resultFormat = WireFormat.fromContentType(message.getMessageProperties().getContentType());
+        String queueName = message.getMessageProperties().getConsumerQueue();
+        consumerRegulator.requestReceived(channel);
+        logger.info("Consumed message with delivery tag " + deliveryTag + " from queue " + queueName);
+
+        BulkSubmissionReader submission;
+        try {
+            submission = new BulkSubmissionReader(new ByteArrayInputStream(decompressBody(message)), WireFormat.Json);
+        } catch (IOException e) {
+            //same as for execution requests - reading the same faulty submission again will just fail again
+            logger.error("Failed to read bulk submission with delivery tag " + deliveryTag + " from queue " + queueName + ". Caused by: " + e.getMessage());
+            AMQPConfig.acknowledgeMessage(channel, queueName, true, deliveryTag);
+            consumerRegulator.requestReleased(channel);
+            return;
         }
+
+        Object requestId = message.getMessageProperties().getHeaders().getOrDefault(AMQPConfig.RequestIdHeader, submission.getOperation().getUUID());
+        ExecutionSummary executionSummary = new ExecutionSummary(String.valueOf(requestId), 0, Instant.now());
+        workflowManager.executeBulk(submission, (operation, result) -> {
+            int sequenceNumber = executionSummary.countResult(result.getExpressionResult().getOutcome());
+            String deviceId = operation.getDynamicFields().get(FieldGlossary.device_internal_id);
+            operationProducer.produceDeviceResult(new DeviceResult(executionSummary.getRequestId(), sequenceNumber, deviceId, result), Collections.emptyMap(), resultFormat);
+        }).whenComplete((devicesRead, throwable) -> {
+            //a submission failing part way is not retried either, since the devices read so far were already executed
+            executionSummary.setTotalDevices(executionSummary.getPublishedResults());
+            operationProducer.produceExecutionSummary(executionSummary, Collections.emptyMap(), queueName, deliveryTag, resultFormat);
+            AMQPConfig.acknowledgeMessage(channel, queueName, true, deliveryTag);
+            consumerRegulator.requestReleased(channel);
+        });
+    }
+
+    //Publishes all device results in a single message, once every device has finished
+    private CompletableFuture<Boolean> aggregateOperationResults(RawExecutionConfig rawExecutionConfig, ParallelWorkflow workflow, Map<String, Object> replyHeaders, String queueName, long deliveryTag, WireFormat wireFormat){
+        return workflowManager.executeWorkflow(workflow).thenApply(map -> {
+            for (Operation operation : workflow.getParallelOperations()) {
+                OperationResult result = map.get(operation.getUUID());
+                rawExecutionConfig.addResult(operation.getDynamicFields().get(FieldGlossary.device_internal_id), result);
+            }
+
+            /* As of writing this comment, the only checked exception thrown by the operation producer is JsonProcessingException,
+             * which is highly unlikely (unless the serializer is configured wrong)
+             * If such an exception does occur, it is pointless to retry consuming a message, since it will continuously fail to serialize
+             * So we currently just return true (and ack(); the message)*/
+            operationProducer.produceOperationResults(rawExecutionConfig, replyHeaders, queueName, deliveryTag, wireFormat);
+            return true;
+        });
+    }
+
+    /*Publishes each device result as soon as it's operation ends, followed by an execution summary once every device has finished
+     * Results are not collected anywhere, so neither publishing nor memory usage wait for the slowest device*/
+    private CompletableFuture<Boolean> streamOperationResults(RawExecutionConfig rawExecutionConfig, ParallelWorkflow workflow, String requestId, Map<String, Object> replyHeaders, String queueName, long deliveryTag, WireFormat wireFormat){
+        ExecutionSummary executionSummary = new ExecutionSummary(requestId, workflow.getParallelOperations().size(), rawExecutionConfig.getStartTime());
+
+        return workflowManager.executeWorkflow(workflow, (operation, result) -> {
+            int sequenceNumber = executionSummary.countResult(result.getExpressionResult().getOutcome());
+            String deviceId = operation.getDynamicFields().get(FieldGlossary.device_internal_id);
+            operationProducer.produceDeviceResult(new DeviceResult(requestId, sequenceNumber, deviceId, result), replyHeaders, wireFormat);
+        }).handle((voidStub, throwable) -> {
+            /*same as above - serialization failures are logged by the producer, and the message is acked regardless
+             * if handing a result to the producer failed, the summary is still published (counting every result handed to the producer), and the message is rejected rather than retried*/
+            if(throwable != null){
+                logger.error("Failed to publish a device result of request " + requestId + ". Caused by: " + throwable.getMessage());
+            }
+            operationProducer.produceExecutionSummary(executionSummary, replyHeaders, queueName, deliveryTag, wireFormat);
+            return throwable == null;
+        });
     }
 
     @RabbitListener(
@@ -121,17 +251,17 @@ public class OperationConsumer extends ApiDebuggingAware {
             )
     )
     public void terminateOperation(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
-        String terminationJSON = new String(message.getBody(), StandardCharsets.UTF_8);
+        WireFormat wireFormat = WireFormat.fromContentType(message.getMessageProperties().getContentType());
         String queueName = message.getMessageProperties().getConsumerQueue();
         RawTerminationConfig rawTerminationConfig;
 
         try {
             logger.info("Consumed message with delivery tag " + deliveryTag + " from queue " + message.getMessageProperties().getConsumerQueue());
             rawTerminationConfig = new RawTerminationConfig(
-                PolymorphicJsonMapper.deserialize(terminationJSON, Set.class)
+                PolymorphicJsonMapper.deserialize(decompressBody(message), Set.class, wireFormat)
             );
             logger.info("Parsed operation ids for termination by deserializing message with delivery tag " + deliveryTag + " from queue " + queueName);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             /*deserializing the same faulty message twice will just throw the same exception twice
              * so we send a channel.ack() to the broker allowing it to discard the message
              * since the engine is logging the failure*/
@@ -145,7 +275,7 @@ public class OperationConsumer extends ApiDebuggingAware {
 
             Map<String, CompletableFuture<OperationResult>> futureTerminations = new HashMap<>();
             for(String operationId : rawTerminationConfig.getOperationIds()) {
-                CompletableFuture<OperationResult> futureTermination = threadingManager.submit(() -> sessionEngine.terminateOperation(operationId));
+                CompletableFuture<OperationResult> futureTermination = threadingManager.submit(() -> admissionManager.terminateOperation(operationId));
                 futureTerminations.put(operationId, futureTermination);
             }
 
@@ -165,11 +295,16 @@ public class OperationConsumer extends ApiDebuggingAware {
                  * which is highly unlikely (unless the serializer is configured wrong)
                  * If such an exception does occur, it is pointless to retry consuming a message, since it will continuously fail to serialize
                  * So we currently just return true (and ack(); the message)*/
-                operationProducer.produceTerminationResults(asFinalCopy, queueName, deliveryTag);
+                operationProducer.produceTerminationResults(asFinalCopy, queueName, deliveryTag, wireFormat);
                 return true;
             }).thenAccept(successful -> AMQPConfig.acknowledgeMessage(
                 channel, message.getMessageProperties().getConsumerQueue(), successful, deliveryTag)
             );
         }
     }
+
+    //Compressed messages are signalled by their content encoding. Messages without one are returned as they are
+    private byte[] decompressBody(Message message) throws IOException {
+        return PayloadCompression.decompress(message.getBody(), message.getMessageProperties().getContentEncoding(), compressionConfig.getMaximumSize().toBytes());
+    }
 }
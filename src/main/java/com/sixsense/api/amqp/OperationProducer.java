@@ -2,103 +2,177 @@ package com.sixsense.api.amqp;
 
 import com.sixsense.api.ApiDebuggingAware;
 import com.sixsense.api.amqp.config.AMQPConfig;
-import com.sixsense.api.amqp.config.EngineCorrelationData;
+import com.sixsense.config.CompressionConfig;
 import com.sixsense.model.retention.DatabaseVariable;
+import com.sixsense.model.retention.RetentionBatch;
+import com.sixsense.model.wrappers.DeviceResult;
+import com.sixsense.model.wrappers.ExecutionSummary;
 import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.wrappers.RawTerminationConfig;
+import com.sixsense.utillity.PayloadCompression;
 import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.Map;
 
 @Component
+@EnableConfigurationProperties(CompressionConfig.class)
 public class OperationProducer extends ApiDebuggingAware {
     private static final Logger logger = LogManager.getLogger(OperationProducer.class);
 
-    //AMQP entities
-    private final RabbitTemplate rabbitTemplate;
-    private final DirectExchange resultExchange;
+    //Results are published through the outbox, so that producing threads never wait for the broker
+    private final OutboxPublisher outboxPublisher;
+    private final CompressionConfig compressionConfig;
 
     @Autowired
-    public OperationProducer(RabbitTemplate rabbitTemplate, DirectExchange resultExchange) {
+    public OperationProducer(OutboxPublisher outboxPublisher, CompressionConfig compressionConfig) {
         super();
-        this.rabbitTemplate = rabbitTemplate;
-        this.resultExchange = resultExchange;
+        this.outboxPublisher = outboxPublisher;
+        this.compressionConfig = compressionConfig;
     }
 
-    public void produceOperationResults(RawExecutionConfig rawExecutionConfig, String queue, long deliveryTag) {
+    //Reply headers are copied from the request the results answer (i.e. the shard headers of a sharded request, see ShardRouter.shardHeaders())
+    public void produceOperationResults(RawExecutionConfig rawExecutionConfig, Map<String, Object> replyHeaders, String queue, long deliveryTag, WireFormat wireFormat) {
         try {
             rawExecutionConfig.setEndTime(Instant.now());
-            String asJSON = PolymorphicJsonMapper.serialize(rawExecutionConfig);
-
-            Message response = MessageBuilder.withBody(asJSON.getBytes())
+            //results are encoded the same way as the message they answer
+            Message response = withBody(PolymorphicJsonMapper.serialize(rawExecutionConfig, wireFormat))
+                .copyHeaders(replyHeaders)
+                .setContentType(wireFormat.getContentType())
                 .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
                 .build();
 
-            EngineCorrelationData correlationData = new EngineCorrelationData(
-                rawExecutionConfig.getOperation().getUUID() + "-result",
-                resultExchange.getName(),
+            outboxPublisher.enqueue(
+                replyHeaders.getOrDefault(AMQPConfig.RequestIdHeader, rawExecutionConfig.getOperation().getUUID()) + "-result",
                 AMQPConfig.OperationResultBindingKey,
                 "Operation " + rawExecutionConfig.getOperation().getShortUUID() + ", producing operation result",
                 response
             );
-
-            rabbitTemplate.convertAndSend(resultExchange.getName(), AMQPConfig.OperationResultBindingKey, response, correlationData);
         } catch (JsonProcessingException e) {
             logger.error("Failed to serialize operation result for message with delivery tag " + deliveryTag + " from queue " + queue + ". Caused by: " + e.getMessage());
             logger.error("Check the engine logs for details about the operation and it's result ");
         }
     }
 
-    public void produceRetentionResult(String operationId, DatabaseVariable result){
+    public void produceDeviceResult(DeviceResult deviceResult, Map<String, Object> replyHeaders, WireFormat wireFormat) {
         try {
-            String asJSON = PolymorphicJsonMapper.serialize(result);
+            Message response = withBody(PolymorphicJsonMapper.serialize(deviceResult, wireFormat))
+                .copyHeaders(replyHeaders)
+                .setContentType(wireFormat.getContentType())
+                .setHeader(AMQPConfig.RequestIdHeader, deviceResult.getRequestId())
+                .setHeader(AMQPConfig.SequenceNumberHeader, deviceResult.getSequenceNumber())
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
+
+            outboxPublisher.enqueue(
+                deviceResult.getRequestId() + "-result-" + deviceResult.getSequenceNumber(),
+                AMQPConfig.DeviceResultBindingKey,
+                "Operation " + deviceResult.getRequestId() + ", producing result #" + deviceResult.getSequenceNumber() + " for device " + deviceResult.getDeviceId(),
+                response
+            );
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize result #" + deviceResult.getSequenceNumber() + " of operation " + deviceResult.getRequestId() + ". Caused by: " + e.getMessage());
+            logger.error("Check the engine logs for details about the operation and it's result ");
+        }
+    }
 
-            Message response = MessageBuilder.withBody(asJSON.getBytes())
+    public void produceExecutionSummary(ExecutionSummary executionSummary, Map<String, Object> replyHeaders, String queue, long deliveryTag, WireFormat wireFormat) {
+        try {
+            executionSummary.setEndTime(Instant.now());
+            Message response = withBody(PolymorphicJsonMapper.serialize(executionSummary, wireFormat))
+                .copyHeaders(replyHeaders)
+                .setContentType(wireFormat.getContentType())
+                .setHeader(AMQPConfig.RequestIdHeader, executionSummary.getRequestId())
+                .setHeader(AMQPConfig.SequenceNumberHeader, executionSummary.getPublishedResults())
                 .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
                 .build();
 
-            EngineCorrelationData correlationData = new EngineCorrelationData(
+            outboxPublisher.enqueue(
+                executionSummary.getRequestId() + "-summary",
+                AMQPConfig.ExecutionSummaryBindingKey,
+                "Operation " + executionSummary.getRequestId() + ", producing execution summary",
+                response
+            );
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize execution summary for message with delivery tag " + deliveryTag + " from queue " + queue + ". Caused by: " + e.getMessage());
+            logger.error("Check the engine logs for details about the operation and it's result ");
+        }
+    }
+
+    public void produceRetentionResult(String operationId, DatabaseVariable result){
+        try {
+            Message response = withBody(PolymorphicJsonMapper.serialize(result, WireFormat.Json))
+                .setContentType(WireFormat.Json.getContentType())
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
+
+            outboxPublisher.enqueue(
                 operationId + "-retention-"+result.getName(),
-                resultExchange.getName(),
                 AMQPConfig.RetentionResultBindingKey,
                 "Operation " + operationId + ", producing retention value " + result.getName(),
                 response
             );
-
-            rabbitTemplate.convertAndSend(resultExchange.getName(), AMQPConfig.RetentionResultBindingKey, response, correlationData);
         } catch (JsonProcessingException e) {
             logger.error("Failed to serialize database retention for operation with id " + operationId + ". Caused by: " + e.getMessage());
             logger.error("Check the engine logs for details about the failed database retention");
         }
     }
 
-    public void produceTerminationResults(RawTerminationConfig rawTerminationConfig, String queue, long deliveryTag) {
+    public void produceRetentionBatch(RetentionBatch batch){
         try {
-            String asJSON = PolymorphicJsonMapper.serialize(rawTerminationConfig);
+            Message response = withBody(PolymorphicJsonMapper.serialize(batch, WireFormat.Json))
+                .setContentType(WireFormat.Json.getContentType())
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
 
-            Message response = MessageBuilder.withBody(asJSON.getBytes())
+            //one outbox record (and publisher confirm) per batch, regardless of the amount of variables in it
+            outboxPublisher.enqueue(
+                batch.getBatchId(),
+                AMQPConfig.RetentionBatchBindingKey,
+                "Retention batch " + batch.getBatchId() + ", producing " + batch.getSize() + " retention values of " + batch.getVariables().size() + " operations",
+                response
+            );
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize retention batch " + batch.getBatchId() + ". Caused by: " + e.getMessage());
+            logger.error("Check the engine logs for details about the failed database retentions");
+        }
+    }
+
+    public void produceTerminationResults(RawTerminationConfig rawTerminationConfig, String queue, long deliveryTag, WireFormat wireFormat) {
+        try {
+            Message response = withBody(PolymorphicJsonMapper.serialize(rawTerminationConfig, wireFormat))
+                    .setContentType(wireFormat.getContentType())
                     .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
                     .build();
 
-            EngineCorrelationData correlationData = new EngineCorrelationData(
+            outboxPublisher.enqueue(
                 "termination-by-tag-" + deliveryTag,
-                resultExchange.getName(),
                 AMQPConfig.TerminationResultBindingKey,
                 "Termination with delivery tag " + deliveryTag + ", terminating running operations",
                 response
             );
-
-            rabbitTemplate.convertAndSend(resultExchange.getName(), AMQPConfig.TerminationResultBindingKey, response, correlationData);
         } catch (JsonProcessingException e) {
             logger.error("Failed to serialize termination results for message with delivery tag " + deliveryTag + " from queue " + queue + ". Caused by: " + e.getMessage());
             logger.error("Check the engine logs for details about the failed database retention");
         }
     }
+
+    //Large bodies (i.e. backups and inventories) are compressed before they are written to the outbox, signalled by the content encoding of the message
+    private MessageBuilderSupport<Message> withBody(byte[] body){
+        if(compressionConfig.isEnabled() && body.length >= compressionConfig.getThreshold().toBytes()){
+            byte[] compressedBody = PayloadCompression.compress(body);
+            if(compressedBody.length < body.length){
+                return MessageBuilder.withBody(compressedBody).setContentEncoding(PayloadCompression.Lz4Encoding);
+            }
+        }
+        return MessageBuilder.withBody(body);
+    }
 }
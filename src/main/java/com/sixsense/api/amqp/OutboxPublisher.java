@@ -0,0 +1,282 @@
+package com.sixsense.api.amqp;
+
+import com.sixsense.api.amqp.config.EngineCorrelationData;
+import com.sixsense.config.OutboxConfig;
+import com.sixsense.io.ResultOutbox;
+import com.sixsense.model.retention.OutboxRecord;
+import com.sixsense.model.retention.OutboxSyncPolicy;
+import com.sixsense.services.MetricsManager;
+import com.sixsense.utillity.Literals;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Publishes results, retentions and termination results to the broker through the result outbox (see OutboxConfig)
+ * Producing threads only append the message to the outbox, and never wait for the broker. A single publisher thread drains the outbox,
+ * keeps up to maximumUnconfirmed messages waiting for publisher confirms, and re-publishes nacked (or failed) messages with exponential backoff.
+ * A message is removed from the outbox only once the broker has confirmed it, so unconfirmed messages are published again after the engine restarts.
+ * A message nacked maximumRejections times is moved to the dead letter outbox (which is never published from), so it cannot hold up the rest of the outbox forever*/
+@Component
+@EnableConfigurationProperties(OutboxConfig.class)
+public class OutboxPublisher implements Closeable {
+    private static final Logger logger = LogManager.getLogger(OutboxPublisher.class);
+
+    //AMQP entities
+    private final RabbitTemplate rabbitTemplate;
+    private final DirectExchange resultExchange;
+
+    private final OutboxConfig outboxConfig;
+    private final ResultOutbox resultOutbox;
+    private final ResultOutbox deadLetterOutbox; //only appended to. Kept until removed by hand
+    private final Semaphore unconfirmedPermits; //one permit per message published and not yet confirmed
+    private final ConcurrentLinkedQueue<OutboxRecord> failedRecords = new ConcurrentLinkedQueue<>(); //re-published before reading further from the outbox
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final CountDownLatch shutdownSignal = new CountDownLatch(1);
+    private final Thread publisherThread;
+    private volatile boolean isRunning = true;
+
+    @Autowired
+    public OutboxPublisher(RabbitTemplate rabbitTemplate, DirectExchange resultExchange, MetricsManager metricsManager, OutboxConfig outboxConfig) throws IOException {
+        this.rabbitTemplate = rabbitTemplate;
+        this.resultExchange = resultExchange;
+        this.outboxConfig = outboxConfig;
+        this.resultOutbox = new ResultOutbox(Paths.get(Literals.OutboxDirectory), outboxConfig.getSegmentSize().toBytes(), outboxConfig.getSyncPolicy());
+        this.deadLetterOutbox = new ResultOutbox(Paths.get(Literals.DeadLetterDirectory), outboxConfig.getSegmentSize().toBytes(), OutboxSyncPolicy.Always);
+        this.unconfirmedPermits = new Semaphore(outboxConfig.getMaximumUnconfirmed());
+
+        this.publisherThread = new Thread(this::publishRecords, "engine-outbox-publisher");
+        this.publisherThread.setDaemon(true);
+        this.publisherThread.start();
+
+        metricsManager.registerGauge("sixsense.outbox.unread", "Messages appended to the result outbox and not yet published", this.resultOutbox, ResultOutbox::getUnreadRecords);
+        metricsManager.registerGauge("sixsense.outbox.unconfirmed", "Messages in the result outbox not yet confirmed by the broker", this.resultOutbox, ResultOutbox::getUnconfirmedRecords);
+        metricsManager.registerGauge("sixsense.outbox.dead.letters", "Messages moved to the dead letter outbox after being rejected by the broker", this.deadLetterOutbox, ResultOutbox::getUnreadRecords);
+    }
+
+    //Appends the message to the outbox, to be published by the publisher thread. Falls back to publishing directly if the outbox cannot be written to
+    public void enqueue(String correlationId, String bindingKey, String logText, Message message){
+        MessageProperties properties = message.getMessageProperties();
+        //Header values keep their type (i.e. numeric sequence numbers and shard indexes), unless the outbox cannot store it
+        Map<String, Object> headers = new LinkedHashMap<>();
+        properties.getHeaders().forEach((name, value) -> headers.put(name, isStoredHeaderValue(value) ? value : String.valueOf(value)));
+
+        OutboxRecord record = new OutboxRecord(0, correlationId, bindingKey, logText, properties.getContentType(), properties.getContentEncoding(), headers, message.getBody());
+        try {
+            this.resultOutbox.append(record);
+        } catch (IOException e) {
+            logger.error(logText + ", Failed to append to the result outbox. Publishing directly to the broker instead. Caused by: " + e.getMessage());
+            publishDirectly(record, message);
+        }
+    }
+
+    /*Publishes a record which could not be appended to the outbox. The record holds no unconfirmed permit, and has no address in the outbox
+     * If the broker does not confirm it, the record is routed back into the outbox - or if the outbox still cannot be written to, handed to the publisher thread*/
+    private void publishDirectly(OutboxRecord record, Message message){
+        EngineCorrelationData correlationData = new EngineCorrelationData(record.getCorrelationId(), this.resultExchange.getName(), record.getBindingKey(), record.getLogText(), message);
+        AtomicBoolean isSettled = new AtomicBoolean(false);
+        correlationData.getFuture().addCallback(
+            confirm -> {
+                if((confirm == null || !confirm.isAck()) && isSettled.compareAndSet(false, true)){
+                    logger.error(record.getLogText() + ", Failed to publish to exchange " + this.resultExchange.getName() + ". Caused by: " + (confirm == null ? "unknown" : confirm.getReason()));
+                    reroute(record);
+                }
+            },
+            failure -> {
+                if(isSettled.compareAndSet(false, true)){
+                    logger.error(record.getLogText() + ", Failed to receive a publisher confirm. Caused by: " + failure.getMessage());
+                    reroute(record);
+                }
+            }
+        );
+
+        try {
+            this.rabbitTemplate.convertAndSend(this.resultExchange.getName(), record.getBindingKey(), message, correlationData);
+        } catch (AmqpException e) {
+            if(isSettled.compareAndSet(false, true)){
+                logger.error(record.getLogText() + ", Failed to publish to exchange " + this.resultExchange.getName() + ". Caused by: " + e.getMessage());
+                reroute(record);
+            }
+        }
+    }
+
+    //Routes a directly published record which failed back into the outbox. Failing that, the publisher thread re-publishes it (with backoff) like any other failed record
+    private void reroute(OutboxRecord record){
+        try {
+            this.resultOutbox.append(record);
+        } catch (IOException e) {
+            logger.error(record.getLogText() + ", Failed to append to the result outbox. Caused by: " + e.getMessage());
+            this.consecutiveFailures.incrementAndGet();
+            this.failedRecords.add(record);
+        }
+    }
+
+    private void publishRecords(){
+        long pollTimeout = this.outboxConfig.getSyncInterval().toMillis();
+        long nextSyncTime = System.currentTimeMillis() + pollTimeout;
+
+        while(this.isRunning){
+            try {
+                int failures = this.consecutiveFailures.get();
+                if(failures > 0 && this.shutdownSignal.await(backoff(failures), TimeUnit.MILLISECONDS)){
+                    return;
+                }
+
+                OutboxRecord record = nextRecord(pollTimeout);
+                if(record != null){
+                    publish(record);
+                }
+
+                if(this.outboxConfig.getSyncPolicy().equals(OutboxSyncPolicy.Interval) && System.currentTimeMillis() >= nextSyncTime){
+                    this.resultOutbox.sync();
+                    nextSyncTime = System.currentTimeMillis() + pollTimeout;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                logger.error("Failed to read from the result outbox. Caused by: " + e.getMessage());
+                this.consecutiveFailures.incrementAndGet();
+            }
+        }
+    }
+
+    /*Returns the next record to publish (failed records first) along with an unconfirmed permit for it, or null without holding a permit
+     * The permit is acquired before reading the record, and handed over to publish() only once there is a record to publish - so it is released here
+     * whenever there is none, or reading the record fails*/
+    private OutboxRecord nextRecord(long pollTimeout) throws InterruptedException, IOException {
+        if(!this.unconfirmedPermits.tryAcquire(pollTimeout, TimeUnit.MILLISECONDS)){
+            return null;
+        }
+
+        OutboxRecord record = null;
+        try {
+            record = this.failedRecords.poll();
+            if(record == null){
+                record = this.resultOutbox.poll(pollTimeout, TimeUnit.MILLISECONDS);
+            }
+            return record;
+        }finally {
+            if(record == null){
+                this.unconfirmedPermits.release();
+            }
+        }
+    }
+
+    //This method assumes we are holding an unconfirmed permit for the record, which is released once the record is either confirmed or failed
+    private void publish(OutboxRecord record){
+        Message message = toMessage(record);
+        EngineCorrelationData correlationData = new EngineCorrelationData(record.getCorrelationId(), this.resultExchange.getName(), record.getBindingKey(), record.getLogText(), message);
+
+        //a record may be failed by both the publishing thread and a nack of the same publish - only the first of them counts
+        AtomicBoolean isSettled = new AtomicBoolean(false);
+        correlationData.getFuture().addCallback(
+            confirm -> {
+                if(confirm != null && confirm.isAck()){
+                    if(isSettled.compareAndSet(false, true)){
+                        this.consecutiveFailures.set(0);
+                        this.resultOutbox.confirm(record.getAddress());
+                        this.unconfirmedPermits.release();
+                    }
+                }else if(isSettled.compareAndSet(false, true)){
+                    logger.error(record.getLogText() + ", Failed to publish to exchange " + this.resultExchange.getName() + ". Caused by: " + (confirm == null ? "unknown" : confirm.getReason()));
+                    retry(record.withRejections(record.getRejections() + 1));
+                }
+            },
+            failure -> {
+                if(isSettled.compareAndSet(false, true)){
+                    logger.error(record.getLogText() + ", Failed to receive a publisher confirm. Caused by: " + failure.getMessage());
+                    retry(record);
+                }
+            }
+        );
+
+        try {
+            this.rabbitTemplate.convertAndSend(this.resultExchange.getName(), record.getBindingKey(), message, correlationData);
+        } catch (AmqpException e) {
+            if(isSettled.compareAndSet(false, true)){
+                logger.error(record.getLogText() + ", Failed to publish to exchange " + this.resultExchange.getName() + ". Caused by: " + e.getMessage());
+                retry(record);
+            }
+        }
+    }
+
+    private void retry(OutboxRecord record){
+        this.consecutiveFailures.incrementAndGet();
+        if(record.getRejections() >= this.outboxConfig.getMaximumRejections()){
+            deadLetter(record);
+        }else {
+            this.failedRecords.add(record);
+        }
+        this.unconfirmedPermits.release();
+    }
+
+    //Moves a record the broker keeps rejecting to the dead letter outbox, and removes it from the result outbox as if it was confirmed
+    private void deadLetter(OutboxRecord record){
+        try {
+            this.deadLetterOutbox.append(record);
+            logger.error(record.getLogText() + ", The broker rejected the message " + record.getRejections() + " times. Moved it to the dead letter outbox");
+        } catch (IOException e) {
+            logger.error(record.getLogText() + ", The broker rejected the message " + record.getRejections() + " times, and it could not be moved to the dead letter outbox. The message is dropped. Caused by: " + e.getMessage());
+        }
+        this.resultOutbox.confirm(record.getAddress());
+    }
+
+    //Doubles the initial backoff on every consecutive failure, up to the maximum backoff
+    private long backoff(int failures){
+        long initialBackoff = this.outboxConfig.getInitialBackoff().toMillis();
+        long maximumBackoff = this.outboxConfig.getMaximumBackoff().toMillis();
+        int doublings = Math.min(failures - 1, 30);
+        return Math.min(initialBackoff << doublings, maximumBackoff);
+    }
+
+    private static boolean isStoredHeaderValue(Object value){
+        return value instanceof String || value instanceof Long || value instanceof Integer || value instanceof Boolean;
+    }
+
+    private static Message toMessage(OutboxRecord record){
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(record.getContentType());
+        properties.setContentEncoding(record.getContentEncoding());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        record.getHeaders().forEach(properties::setHeader);
+        return new Message(record.getBody(), properties);
+    }
+
+    /*Stops the publisher thread, and closes the outbox. Messages not yet confirmed by the broker remain in the outbox
+     * The publisher thread is signalled rather than interrupted, since it may be reading from the outbox at the time*/
+    @Override
+    public void close() throws IOException {
+        this.isRunning = false;
+        this.shutdownSignal.countDown();
+        try {
+            this.publisherThread.join(this.outboxConfig.getSyncInterval().toMillis() * 3);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.resultOutbox.close();
+        }finally {
+            this.deadLetterOutbox.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.sixsense.api.amqp;
+
+import com.sixsense.config.RetentionConfig;
+import com.sixsense.model.retention.DatabaseVariable;
+import com.sixsense.model.retention.RetentionBatch;
+import com.sixsense.services.MetricsManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Aggregates DatabaseImmediate retentions of all sessions into batches, so that each batch is serialized, published and confirmed once (see RetentionConfig.BatchProperties)
+ * A batch is published by the session adding it's last variable when the batch is full, or by the flushing thread once it's oldest variable has waited for the maximum latency*/
+@Component
+@EnableConfigurationProperties(RetentionConfig.class)
+public class RetentionBatcher implements Closeable {
+    private static final Logger logger = LogManager.getLogger(RetentionBatcher.class);
+    private final OperationProducer operationProducer;
+    private final RetentionConfig.BatchProperties batchProperties;
+    private final ScheduledExecutorService batchFlusher;
+
+    //The current batch is guarded by the batchLock
+    private final Lock batchLock = new ReentrantLock();
+    private RetentionBatch currentBatch;
+    private final AtomicLong batchSequence = new AtomicLong();
+    private final LongAdder publishedBatches = new LongAdder();
+    private final LongAdder publishedVariables = new LongAdder();
+
+    @Autowired
+    public RetentionBatcher(OperationProducer operationProducer, MetricsManager metricsManager, RetentionConfig retentionConfig) {
+        this.operationProducer = operationProducer;
+        this.batchProperties = retentionConfig.getBatch();
+
+        if(this.batchProperties.isEnabled()) {
+            this.batchFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread flusherThread = new Thread(runnable, "engine-retention-flusher");
+                flusherThread.setDaemon(true);
+                return flusherThread;
+            });
+        }else{
+            this.batchFlusher = null;
+        }
+
+        metricsManager.registerGauge("sixsense.retention.batches", "Retention batches published so far", this, batcher -> batcher.publishedBatches.sum());
+        metricsManager.registerGauge("sixsense.retention.variables", "DatabaseImmediate variables published so far", this, batcher -> batcher.publishedVariables.sum());
+    }
+
+    public void retain(String operationId, DatabaseVariable variable){
+        if(this.batchFlusher == null){
+            this.publishedVariables.increment();
+            this.operationProducer.produceRetentionResult(operationId, variable);
+            return;
+        }
+
+        RetentionBatch fullBatch = null;
+        this.batchLock.lock();
+        try {
+            if(this.currentBatch == null){
+                RetentionBatch newBatch = new RetentionBatch("retention-batch-" + this.batchSequence.incrementAndGet());
+                this.currentBatch = newBatch;
+                //the latency window starts with the first variable of each batch
+                this.batchFlusher.schedule(() -> flush(newBatch), this.batchProperties.getMaximumLatency().toMillis(), TimeUnit.MILLISECONDS);
+            }
+
+            this.currentBatch.addVariable(operationId, variable);
+            if(this.currentBatch.getSize() >= this.batchProperties.getMaximumSize()){
+                fullBatch = this.currentBatch;
+                this.currentBatch = null;
+            }
+        }finally {
+            this.batchLock.unlock();
+        }
+
+        if(fullBatch != null){
+            publish(fullBatch);
+        }
+    }
+
+    //Publishes the batch, unless it was already published when it filled up
+    private void flush(RetentionBatch batch){
+        this.batchLock.lock();
+        try {
+            if(this.currentBatch != batch){
+                return;
+            }
+            this.currentBatch = null;
+        }finally {
+            this.batchLock.unlock();
+        }
+
+        publish(batch);
+    }
+
+    private void publish(RetentionBatch batch){
+        try {
+            this.publishedBatches.increment();
+            this.publishedVariables.add(batch.getSize());
+            this.operationProducer.produceRetentionBatch(batch);
+        }catch (Exception e){
+            //the flushing thread must survive a failed publish, or no further batches would be flushed by latency
+            logger.error("Failed to publish retention batch " + batch.getBatchId() + " with " + batch.getSize() + " variables. Caused by: " + e.getMessage());
+        }
+    }
+
+    //Publishes the pending batch (if any) before shutting down, so retained variables are not lost
+    @Override
+    public void close() {
+        if(this.batchFlusher == null){
+            return;
+        }
+
+        RetentionBatch pendingBatch;
+        this.batchLock.lock();
+        try {
+            pendingBatch = this.currentBatch;
+            this.currentBatch = null;
+        }finally {
+            this.batchLock.unlock();
+        }
+
+        this.batchFlusher.shutdownNow();
+        if(pendingBatch != null){
+            publish(pendingBatch);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.sixsense.api.amqp;
+
+import com.sixsense.api.amqp.config.AMQPConfig;
+import com.sixsense.config.ShardingConfig;
+import com.sixsense.model.devices.Device;
+import com.sixsense.model.wrappers.RawExecutionConfig;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.rabbitmq.client.GetResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Routes execution requests to engine nodes by device affinity (see ShardingConfig)
+ * Any node consuming from the execute queue splits the request into one request per device, and publishes each of them to the shard exchange with the device host as it's routing key.
+ * The shard exchange is a consistent-hash exchange, to which every node binds it's own queue with it's weight as the binding key - so each device host maps to a single node.
+ * The broker rebalances the hash ring whenever a node binds or unbinds it's queue, moving only the devices of the joining (or leaving) node.
+ * Each per-device request gets a request id of it's own, along with the id of the request it was split from and it's shard index and count (see AMQPConfig),
+ * all of which are copied to it's replies - so the replies of every node can be told apart, and put back together, by the client*/
+@Component
+@EnableConfigurationProperties(ShardingConfig.class)
+public class ShardRouter implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ShardRouter.class);
+    public static final String ShardExchangeName = "engine.operations.shards";
+    public static final String ShardExchangeType = "x-consistent-hash";
+    public static final String NodeQueuePrefix = "engine.operations.shard.";
+
+    //AMQP entities
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final CustomExchange shardExchange;
+    private final Queue nodeQueue;
+    private final Binding nodeBinding;
+
+    private final ShardingConfig shardingConfig;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final CountDownLatch shutdownSignal = new CountDownLatch(1);
+
+    @Autowired
+    public ShardRouter(RabbitTemplate rabbitTemplate, AmqpAdmin amqpAdmin, ShardingConfig shardingConfig) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.shardingConfig = shardingConfig;
+
+        this.shardExchange = new CustomExchange(ShardExchangeName, ShardExchangeType, true, false);
+        QueueBuilder queueBuilder = QueueBuilder.durable(NodeQueuePrefix + shardingConfig.getNodeId());
+        if(!shardingConfig.getOrphanTimeout().isZero()){
+            queueBuilder.withArgument("x-expires", shardingConfig.getOrphanTimeout().toMillis());
+        }
+        this.nodeQueue = queueBuilder.build();
+        //the binding key of a consistent-hash exchange is the weight of the queue on the hash ring
+        this.nodeBinding = BindingBuilder.bind(this.nodeQueue).to(this.shardExchange).with(String.valueOf(shardingConfig.getWeight())).noargs();
+    }
+
+    public boolean isEnabled(){
+        return this.shardingConfig.isEnabled();
+    }
+
+    public String getNodeQueueName(){
+        return this.nodeQueue.getName();
+    }
+
+    //Declared by the rabbit admin (and re-declared whenever the connection is re-established) only when sharding is enabled
+    public Declarables getDeclarables(){
+        if(this.shardingConfig.isEnabled()){
+            return new Declarables(this.shardExchange, this.nodeQueue, this.nodeBinding);
+        }else{
+            return new Declarables();
+        }
+    }
+
+    /*Publishes one request per device to the shard exchange, and waits for the broker to confirm all of them
+     * Returns false if any of them was not confirmed (or could not be routed to any node), in which case the original request should be requeued.
+     * Requests which were confirmed before the failure are published again when the original request is consumed again.
+     * Consecutive failures are backed off before returning, so a request which cannot be distributed (i.e. while no node is bound) is not requeued in a tight loop*/
+    public boolean distribute(Message message, RawExecutionConfig rawExecutionConfig, WireFormat wireFormat){
+        MessageProperties originalProperties = message.getMessageProperties();
+        Object requestId = originalProperties.getHeaders().getOrDefault(AMQPConfig.RequestIdHeader, rawExecutionConfig.getOperation().getUUID());
+        Map<String, RawExecutionConfig> deviceRequests = split(rawExecutionConfig);
+        //a request handed off by a leaving node is already a per-device request, and keeps it's own id, parent and shard index
+        boolean isShard = originalProperties.getHeaders().containsKey(AMQPConfig.ShardIndexHeader);
+
+        List<CorrelationData> pendingConfirms = new ArrayList<>();
+        try {
+            int shardIndex = 0;
+            for (Map.Entry<String, RawExecutionConfig> deviceRequest : deviceRequests.entrySet()) {
+                MessageBuilderSupport<Message> builder = MessageBuilder.withBody(PolymorphicJsonMapper.serialize(deviceRequest.getValue(), wireFormat))
+                    .copyHeaders(originalProperties.getHeaders())
+                    .setContentType(wireFormat.getContentType())
+                    .setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+
+                String shardRequestId = String.valueOf(requestId);
+                if(!isShard){
+                    shardRequestId = requestId + "-shard-" + (++shardIndex);
+                    builder.setHeader(AMQPConfig.RequestIdHeader, shardRequestId)
+                        .setHeader(AMQPConfig.ParentRequestIdHeader, requestId)
+                        .setHeader(AMQPConfig.ShardCountHeader, deviceRequests.size())
+                        .setHeader(AMQPConfig.ShardIndexHeader, shardIndex);
+                }
+
+                CorrelationData correlationData = new CorrelationData(shardRequestId);
+                pendingConfirms.add(correlationData);
+                this.rabbitTemplate.send(ShardExchangeName, deviceRequest.getKey(), builder.build(), correlationData);
+            }
+        } catch (JsonProcessingException | AmqpException e) {
+            logger.error("Failed to distribute request " + requestId + " to the shard exchange. Caused by: " + e.getMessage());
+            return backOff();
+        }
+
+        if(!awaitConfirms(pendingConfirms, "distribute request", "no engine node is bound to the exchange")){
+            return backOff();
+        }
+
+        this.consecutiveFailures.set(0);
+        logger.info("Distributed request " + requestId + " to the shard exchange as " + deviceRequests.size() + " device requests");
+        return true;
+    }
+
+    //Returns true only if every message was confirmed by the broker (and routed to a queue) before the distribution timeout
+    private boolean awaitConfirms(List<CorrelationData> pendingConfirms, String action, String unroutedCause){
+        long deadline = System.nanoTime() + this.shardingConfig.getDistributionTimeout().toNanos();
+        for(CorrelationData correlationData : pendingConfirms){
+            try {
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if(!confirm.isAck()){
+                    logger.error("Failed to " + action + " " + correlationData.getId() + ". Caused by: " + confirm.getReason());
+                    return false;
+                }else if(correlationData.getReturnedMessage() != null){
+                    logger.error("Failed to " + action + " " + correlationData.getId() + ". Caused by: " + unroutedCause);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                logger.error("Failed to receive a publisher confirm for " + correlationData.getId() + ". Caused by: " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Waits before the failed request is requeued, doubling the initial backoff on every consecutive failure (up to the maximum backoff). Always returns false
+    private boolean backOff(){
+        int failures = this.consecutiveFailures.incrementAndGet();
+        long initialBackoff = this.shardingConfig.getInitialBackoff().toMillis();
+        long maximumBackoff = this.shardingConfig.getMaximumBackoff().toMillis();
+        long backoff = Math.min(initialBackoff << Math.min(failures - 1, 30), maximumBackoff);
+        try {
+            this.shutdownSignal.await(backoff, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    //Headers of a per-device request which are copied to each of it's replies. Empty for requests which were not sharded
+    public static Map<String, Object> shardHeaders(MessageProperties properties){
+        Map<String, Object> shardHeaders = new LinkedHashMap<>();
+        if(properties.getHeaders().containsKey(AMQPConfig.ShardIndexHeader)){
+            for(String header : Arrays.asList(AMQPConfig.RequestIdHeader, AMQPConfig.ParentRequestIdHeader, AMQPConfig.ShardIndexHeader, AMQPConfig.ShardCountHeader)){
+                Object value = properties.getHeaders().get(header);
+                if(value != null){
+                    shardHeaders.put(header, value);
+                }
+            }
+        }
+        return shardHeaders;
+    }
+
+    /*Splits the request into one request per device, keyed by the routing key of the device (it's host, or it's uuid if it has no host)
+     * Devices sharing a host are kept in the same request, since they would be routed to the same node anyway*/
+    public static Map<String, RawExecutionConfig> split(RawExecutionConfig rawExecutionConfig){
+        Map<String, RawExecutionConfig> deviceRequests = new LinkedHashMap<>();
+        for(Device device : rawExecutionConfig.getDevices()){
+            deviceRequests.computeIfAbsent(routingKey(device), key -> new RawExecutionConfig(new ArrayList<>(), rawExecutionConfig.getOperation())).addDevice(device);
+        }
+        return deviceRequests;
+    }
+
+    public static String routingKey(Device device){
+        String host = device.getCredentials() == null ? null : device.getCredentials().getHost();
+        return host == null || host.isEmpty() ? device.getUUID() : host;
+    }
+
+    /*Leaves the hash ring, so new requests for this node's devices are routed to the remaining nodes
+     * Requests still waiting in this node's queue are handed back to the execute queue, to be distributed again among the remaining nodes.
+     * Each request is only acknowledged (removed from this node's queue) once the broker confirmed it's copy in the execute queue, so a request is never lost -
+     * the first one which is not confirmed is returned to this node's queue, along with every request after it.
+     * Listener containers are stopped before this method is called, so requests this node was executing are back in it's queue by now*/
+    @Override
+    public void close() {
+        this.shutdownSignal.countDown();
+        if(!this.shardingConfig.isEnabled()){
+            return;
+        }
+
+        try {
+            this.amqpAdmin.removeBinding(this.nodeBinding);
+            Integer handedOff = this.rabbitTemplate.execute(channel -> {
+                int handedOffRequests = 0;
+                for(GetResponse pending = channel.basicGet(this.nodeQueue.getName(), false); pending != null; pending = channel.basicGet(this.nodeQueue.getName(), false)){
+                    long deliveryTag = pending.getEnvelope().getDeliveryTag();
+                    Message request = new Message(pending.getBody(), this.propertiesConverter.toMessageProperties(pending.getProps(), pending.getEnvelope(), StandardCharsets.UTF_8.name()));
+                    CorrelationData correlationData = new CorrelationData(this.shardingConfig.getNodeId() + "-handoff-" + deliveryTag);
+                    this.rabbitTemplate.send(AMQPConfig.OperationExchangeName, AMQPConfig.ExecuteBindingKey, request, correlationData);
+
+                    if(!awaitConfirms(Collections.singletonList(correlationData), "hand off request", "the execute queue is not bound to the operations exchange")){
+                        //basicNack(long deliveryTag, boolean multiple, boolean requeue)
+                        channel.basicNack(deliveryTag, false, true);
+                        break;
+                    }
+                    channel.basicAck(deliveryTag, false);
+                    handedOffRequests++;
+                }
+                return handedOffRequests;
+            });
+            logger.info("Node " + this.shardingConfig.getNodeId() + " left the shard exchange, handing off " + handedOff + " pending requests");
+        } catch (AmqpException e) {
+            logger.error("Failed to leave the shard exchange. Pending requests remain in queue " + this.nodeQueue.getName() + " until node " + this.shardingConfig.getNodeId() + " rejoins. Caused by: " + e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.sixsense.api.amqp.config;
 
 
 import com.rabbitmq.client.Channel;
+import com.sixsense.api.amqp.ShardRouter;
+import com.sixsense.config.ConsumerConfig;
 import com.sixsense.config.HostConfig;
 import com.sixsense.config.ThreadingConfig;
 import com.sixsense.threading.ThreadingManager;
@@ -10,17 +12,16 @@ import com.rabbitmq.client.ShutdownSignalException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.*;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 /*https://www.rabbitmq.com/tutorials/tutorial-four-spring-amqp.html
 * Should explain the whole class, read the article through
@@ -28,26 +29,38 @@ import java.util.Map;
 * https://groups.google.com/forum/#!topic/rabbitmq-users/f6AlwP6Tcv0
 * should give more insight as to some of the advanced configurations*/
 @Configuration
-@EnableConfigurationProperties({HostConfig.class, ThreadingConfig.class})
+@EnableConfigurationProperties({HostConfig.class, ThreadingConfig.class, ConsumerConfig.class})
 public class AMQPConfig {
     private static final Logger logger = LogManager.getLogger(AMQPConfig.class);
+    public static final String OperationExchangeName = "engine.operations";
+    public static final String ExecuteBindingKey = "execute";
     public static final String OperationResultBindingKey = "operation";
     public static final String RetentionResultBindingKey = "retention";
+    public static final String RetentionBatchBindingKey = "retention-batch";
     public static final String TerminationResultBindingKey = "terminate";
+    public static final String DeviceResultBindingKey = "device";
+    public static final String ExecutionSummaryBindingKey = "summary";
+
+    //Message headers used to select and correlate streamed results
+    public static final String ResultModeHeader = "x-result-mode";
+    public static final String RequestIdHeader = "x-request-id";
+    public static final String SequenceNumberHeader = "x-sequence-number";
+
+    /*Message headers added to each per-device request when requests are sharded across engine nodes, and copied to every reply of that request
+     * Each per-device request has it's own request id (so the sequence numbers and summary of it's streamed results are it's own), and keeps the id of the request it was split from as it's parent*/
+    public static final String ParentRequestIdHeader = "x-parent-request-id";
+    public static final String ShardCountHeader = "x-shard-count";
+    public static final String ShardIndexHeader = "x-shard-index";
 
     private final ThreadingManager threadingManager;
     private final HostConfig.RabbitHost rabbitHost;
-    private final ThreadingConfig.AMQPThreadingProperties amqpThreadingProperties;
-
-    private final Map<String, Integer> publishingRetryCounter;
+    private final ConsumerConfig.ExecuteConsumerProperties executeConsumerProperties;
 
     @Autowired
-    public AMQPConfig(ThreadingManager threadingManager, HostConfig hostConfig, ThreadingConfig threadingConfig){
+    public AMQPConfig(ThreadingManager threadingManager, HostConfig hostConfig, ConsumerConfig consumerConfig){
         this.threadingManager = threadingManager;
         this.rabbitHost = hostConfig.getRabbit();
-        this.amqpThreadingProperties = threadingConfig.getAmqp();
-
-        this.publishingRetryCounter = Collections.synchronizedMap(new HashMap<>());
+        this.executeConsumerProperties = consumerConfig.getExecute();
     }
 
 
@@ -107,41 +120,12 @@ public class AMQPConfig {
         template.setMandatory(true); //must be set to "true" for publisher confirms
         template.setUsePublisherConnection(true); //uses a separate connection(s) from separate connection factories for publishing and consuming (to avoid blocking consumers while publishing)
         template.setConfirmCallback((CorrelationData correlationData, boolean ack, String cause) -> {
-            if(!ack){
-                if(correlationData != null) {
-                    EngineCorrelationData asEngineCorrelationData = (EngineCorrelationData)correlationData;
-                    String correlationId = asEngineCorrelationData.getId();
-                    logger.error(asEngineCorrelationData.getLogText() + ", Failed to publish to exchange " + asEngineCorrelationData.getExchangeName() + ". Caused by: " + cause);
-
-                    publishingRetryCounter.putIfAbsent(correlationId, 1); //remember the first produce(); (the one to start the producing cycle) also counts towards the max-retries
-                    if(publishingRetryCounter.get(correlationId) < amqpThreadingProperties.getMaximumProduceRetries()){
-                        /*According to https://www.rabbitmq.com/tutorials/tutorial-seven-java.html (under Re-publishing nack-ed Messages?)
-                        * The thread used for confirm callbacks is low-performance thread dedicated for callbacks.
-                        * It is recommended to delegate the publishing retry to the standard publishing threads (in our case, via ThreadingManager)*/
-                        try {
-                            threadingManager.submit(() -> {
-                                publishingRetryCounter.put(correlationId, publishingRetryCounter.get(correlationId) + 1);
-                                template.convertAndSend(
-                                    asEngineCorrelationData.getExchangeName(),
-                                    asEngineCorrelationData.getBindingKey(),
-                                    asEngineCorrelationData.getReturnedMessage(),
-                                    correlationData
-                                );
-                            });
-                        } catch (Exception e) {
-                            logger.error("Failed to submit message for re-publishing to threading manager. Caused by: " + e.getMessage());
-                        }
-                    }else{
-                        publishingRetryCounter.remove(correlationId);
-                        logger.warn("Maximum publishing retries reached for operation " + correlationId + ". No more retries will be made.");
-                    }
-                }else{
-                    logger.warn("Failed to publish a message to AMQP broker. Caused by: " + cause);
-                    logger.warn("The failed message does not have a correlation id. No more retries will be made.");
-                }
+            /*Failed messages are re-published by the OutboxPublisher, which listens on the future of each engine correlation data - both for messages published
+            * from the outbox, and for messages published directly when the outbox could not be written to. Nacks are only logged here, for messages published without one*/
+            if(!ack && !(correlationData instanceof EngineCorrelationData)){
+                logger.warn("Failed to publish a message to AMQP broker. Caused by: " + cause);
+                logger.warn("The failed message does not have a correlation id. No more retries will be made.");
             }
-
-
         });
         template.setReturnCallback((Message message, int replyCode, String replyText, String exchange, String routingKey) -> {
             if(replyCode != 200){
@@ -151,6 +135,24 @@ public class AMQPConfig {
         return template;
     }
 
+    /*Listener containers for the execution request queue. Starts from the spring.rabbitmq.listener.simple properties (i.e. manual acknowledgement)
+    * The number of consumers is fixed, since the container stops surplus consumers by closing their channel, which would requeue any request still executing
+    * The per consumer prefetch is the upper bound; The ConsumerRegulator lowers the effective prefetch of each consumer channel according to the engine load*/
+    @Bean
+    public SimpleRabbitListenerContainerFactory executeListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, rabbitConnectionFactory());
+        factory.setConcurrentConsumers(executeConsumerProperties.getConcurrentConsumers());
+        factory.setMaxConcurrentConsumers(executeConsumerProperties.getConcurrentConsumers());
+        factory.setPrefetchCount(executeConsumerProperties.getMaximumPrefetch());
+        return factory;
+    }
+
+    @Bean
+    public Declarables shardingDeclarables(ShardRouter shardRouter){
+        return shardRouter.getDeclarables();
+    }
+
     @Bean
     public DirectExchange resultsExchange(){
         return new DirectExchange("engine.results");
@@ -168,12 +170,30 @@ public class AMQPConfig {
         return new Queue("engine.results.retention", true);
     }
 
+    @Bean
+    public Queue retentionBatchesQueue(){
+        //Queue(String name, boolean durable)
+        return new Queue("engine.results.retention.batch", true);
+    }
+
     @Bean
     public Queue terminationResultsQueue(){
         //Queue(String name, boolean durable)
         return new Queue("engine.results.terminate", true);
     }
 
+    @Bean
+    public Queue deviceResultsQueue(){
+        //Queue(String name, boolean durable)
+        return new Queue("engine.results.device", true);
+    }
+
+    @Bean
+    public Queue executionSummaryQueue(){
+        //Queue(String name, boolean durable)
+        return new Queue("engine.results.summary", true);
+    }
+
     @Bean
     public Binding bindOperationResults(DirectExchange resultsExchange, Queue operationResultsQueue){
         return BindingBuilder.bind(operationResultsQueue).to(resultsExchange).with(OperationResultBindingKey);
@@ -184,11 +204,26 @@ public class AMQPConfig {
         return BindingBuilder.bind(retentionResultsQueue).to(resultsExchange).with(RetentionResultBindingKey);
     }
 
+    @Bean
+    public Binding bindRetentionBatches(DirectExchange resultsExchange, Queue retentionBatchesQueue){
+        return BindingBuilder.bind(retentionBatchesQueue).to(resultsExchange).with(RetentionBatchBindingKey);
+    }
+
     @Bean
     public Binding bindTerminationResults(DirectExchange resultsExchange, Queue terminationResultsQueue){
         return BindingBuilder.bind(terminationResultsQueue).to(resultsExchange).with(TerminationResultBindingKey);
     }
 
+    @Bean
+    public Binding bindDeviceResults(DirectExchange resultsExchange, Queue deviceResultsQueue){
+        return BindingBuilder.bind(deviceResultsQueue).to(resultsExchange).with(DeviceResultBindingKey);
+    }
+
+    @Bean
+    public Binding bindExecutionSummaries(DirectExchange resultsExchange, Queue executionSummaryQueue){
+        return BindingBuilder.bind(executionSummaryQueue).to(resultsExchange).with(ExecutionSummaryBindingKey);
+    }
+
     public static void acknowledgeMessage(Channel channel, String queueName, boolean successful, long deliveryTag){
         try {
             if (successful) {
@@ -202,4 +237,14 @@ public class AMQPConfig {
             logger.error("Failed to acknowledge message with delivery tag " + deliveryTag + " from queue " + queueName + ". Caused by: " + e.getMessage());
         }
     }
+
+    //Returns the message to it's queue, to be consumed again (possibly by another engine node)
+    public static void requeueMessage(Channel channel, String queueName, long deliveryTag){
+        try {
+            //basicNack(long deliveryTag, boolean multiple, boolean requeue)
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            logger.error("Failed to requeue message with delivery tag " + deliveryTag + " from queue " + queueName + ". Caused by: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.sixsense.api.amqp.config;
+
+/*How the results of an execution request are published back to the broker, selected by the result mode header of the request
+* Aggregate: a single message holding the execution config and the results of all devices, published once the slowest device has finished (default)
+* Streaming: one message per device, published as soon as the device's operation ends, followed by a small execution summary*/
+public enum ResultMode {
+    Aggregate,
+    Streaming;
+
+    public static ResultMode fromHeader(Object headerValue){
+        if(headerValue != null) {
+            for (ResultMode mode : ResultMode.values()) {
+                if (mode.name().equalsIgnoreCase(headerValue.toString().trim())) {
+                    return mode;
+                }
+            }
+        }
+        return ResultMode.Aggregate;
+    }
+}
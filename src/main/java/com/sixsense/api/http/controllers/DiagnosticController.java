@@ -7,11 +7,17 @@ import com.sixsense.model.commands.ICommand;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.ParallelWorkflow;
 import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.logging.Loggers;
+import com.sixsense.model.logging.TrailRange;
 import com.sixsense.model.logic.*;
 import com.sixsense.model.retention.OperationResult;
 import com.sixsense.model.retention.ResultRetention;
 import com.sixsense.model.retention.RetentionMode;
+import com.sixsense.model.threading.AdmissionStatistics;
 import com.sixsense.model.threading.MonitoredThreadState;
+import com.sixsense.model.timeline.OperationTimeline;
+import com.sixsense.services.AdmissionManager;
+import com.sixsense.services.LoggingManager;
 import com.sixsense.services.SessionEngine;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.CommandUtils;
@@ -20,8 +26,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -35,15 +45,20 @@ public class DiagnosticController extends ApiDebuggingAware {
     private static final Logger logger = LogManager.getLogger(DiagnosticController.class);
     private final SessionEngine sessionEngine;
     private final ThreadingManager threadingManager;
+    private final AdmissionManager admissionManager;
+    private final LoggingManager loggingManager;
     private final CachingConnectionFactory amqpConnectionFactory;
 
     private static final double toSecondCoefficient = Math.pow(10, -9);
+    private static final Map<String, Loggers> trailLoggers = Map.of("session", Loggers.SessionLogger, "command", Loggers.CommandLogger, "terminal", Loggers.TerminalLogger);
 
     @Autowired
-    public DiagnosticController(SessionEngine sessionEngine, ThreadingManager threadingManager, CachingConnectionFactory amqpConnectionFactory) {
+    public DiagnosticController(SessionEngine sessionEngine, ThreadingManager threadingManager, AdmissionManager admissionManager, LoggingManager loggingManager, CachingConnectionFactory amqpConnectionFactory) {
         super();
         this.sessionEngine = sessionEngine;
         this.threadingManager = threadingManager;
+        this.admissionManager = admissionManager;
+        this.loggingManager = loggingManager;
         this.amqpConnectionFactory = amqpConnectionFactory;
     }
 
@@ -80,15 +95,50 @@ public class DiagnosticController extends ApiDebuggingAware {
         return runningDevices;
     }
 
+    @GetMapping("/admission")
+    public AdmissionStatistics getAdmissionStatistics() {
+        return admissionManager.getAdmissionStatistics();
+    }
+
+    @GetMapping("/timeline/{operationId}")
+    public ResponseEntity<OperationTimeline> getOperationTimeline(@PathVariable String operationId) {
+        OperationTimeline timeline = sessionEngine.getTimeline(operationId);
+        return timeline == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(timeline);
+    }
+
     @GetMapping("/amqp/cacheProperties")
     public Properties getAMQPCacheProperties(){
         return amqpConnectionFactory.getCacheProperties();
     }
 
-    /*@GetMapping("/logs/{sessionId}")
-    public Map<String, String> getSessionLogs() {
+    /*Streams a session's session, command or terminal trail using chunked transfer, optionally restricted to a byte range and/or a range of records (lines).
+     * Both ranges are half open - [fromByte, toByte) and [fromOrdinal, toOrdinal)*/
+    @GetMapping("/logs/{sessionId}")
+    public ResponseEntity<StreamingResponseBody> getSessionLogs(@PathVariable String sessionId,
+                                                                @RequestParam(defaultValue = "session") String trail,
+                                                                @RequestParam(required = false) Long fromByte,
+                                                                @RequestParam(required = false) Long toByte,
+                                                                @RequestParam(required = false) Integer fromOrdinal,
+                                                                @RequestParam(required = false) Integer toOrdinal) {
+        Loggers trailLogger = trailLoggers.get(trail.toLowerCase());
+        if(trailLogger == null){
+            return ResponseEntity.badRequest().build();
+        }else if(!loggingManager.hasTrail(sessionId, trailLogger)){
+            return ResponseEntity.notFound().build();
+        }
 
-    }*/
+        TrailRange trailRange = new TrailRange(
+            fromByte == null ? 0 : fromByte,
+            toByte == null ? Long.MAX_VALUE : toByte,
+            fromOrdinal == null ? 0 : fromOrdinal,
+            toOrdinal == null ? Integer.MAX_VALUE : toOrdinal
+        );
+
+        StreamingResponseBody trailStream = outputStream -> loggingManager.streamTrail(sessionId, trailLogger, trailRange, outputStream);
+        return ResponseEntity.ok()
+            .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+            .body(trailStream);
+    }
 
     @GetMapping("/debugMethod")
     public void debugMethod(){
@@ -139,7 +189,7 @@ public class DiagnosticController extends ApiDebuggingAware {
                     Instant sessionStart = Instant.now();
                     logger.debug("Before starting session #" + ordinalRef.get());
                     try {
-                        operationResult = sessionEngine.executeOperation(operation.deepClone());
+                        operationResult = sessionEngine.executeOperation(operation.instantiate());
                     } catch (Exception e) {
                         logger.info("Failed to execute session #" + ordinalRef.get() + ". Caused by: ", e);
                     }
@@ -209,7 +259,7 @@ public class DiagnosticController extends ApiDebuggingAware {
         logger.info("Operation name: " + operation.getOperationName());
         for(int i = 1; i<=operationCount; i++) {
             AtomicInteger ordinal = new AtomicInteger(i);
-            Operation clonedOperation = operation.deepClone();
+            Operation clonedOperation = operation.instantiate();
 
             threadingManager.submit(() -> {
                 OperationResult operationResult = null;
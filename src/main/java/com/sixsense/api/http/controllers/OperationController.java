@@ -4,41 +4,53 @@ import com.sixsense.api.ApiDebuggingAware;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.ParallelWorkflow;
 import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.wrappers.DeviceResult;
+import com.sixsense.model.wrappers.ExecutionSummary;
 import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.retention.OperationResult;
 import com.sixsense.model.wrappers.RawTerminationConfig;
-import com.sixsense.services.SessionEngine;
+import com.sixsense.services.AdmissionManager;
 import com.sixsense.services.WorkflowManager;
 import com.sixsense.mocks.OperationMocks;
 import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.BulkSubmissionReader;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.FieldGlossary;
 import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 @RestController
 @RequestMapping("/api/operations")
 public class OperationController extends ApiDebuggingAware {
     private static final Logger logger = LogManager.getLogger(OperationController.class);
-    private final SessionEngine sessionEngine;
+    private static final String NdJsonMediaType = BulkSubmissionReader.NdJsonContentType;
+    private final AdmissionManager admissionManager;
     private final WorkflowManager workflowManager;
     private final ThreadingManager threadingManager;
 
     @Autowired
-    public OperationController(SessionEngine sessionEngine, WorkflowManager workflowManager, ThreadingManager threadingManager) {
+    public OperationController(AdmissionManager admissionManager, WorkflowManager workflowManager, ThreadingManager threadingManager) {
         super();
-        this.sessionEngine = sessionEngine;
+        this.admissionManager = admissionManager;
         this.workflowManager = workflowManager;
         this.threadingManager = threadingManager;
     }
@@ -58,7 +70,7 @@ public class OperationController extends ApiDebuggingAware {
     @GetMapping("/f5Json")
     public String f5Json() {
         try {
-            return wrapForHtml(PolymorphicJsonMapper.serialize(OperationMocks.f5BigIpBackup(
+            return wrapForHtml(PolymorphicJsonMapper.serializePretty(OperationMocks.f5BigIpBackup(
                 Collections.singletonList(
                     new Credentials()
                         .withHost("172.31.252.179")
@@ -71,49 +83,160 @@ public class OperationController extends ApiDebuggingAware {
         }
     }
 
+    //Returns a future, so the servlet thread is released while the workflow executes. The response is written once every device has finished
     @PostMapping("/execute")
-    public RawExecutionConfig execute(@RequestBody RawExecutionConfig rawExecutionConfig){
+    public CompletableFuture<RawExecutionConfig> execute(@RequestBody RawExecutionConfig rawExecutionConfig){
         rawExecutionConfig.setStartTime(Instant.now());
         ParallelWorkflow workflow = CommandUtils.composeWorkflow(rawExecutionConfig);
 
-        Map<String, OperationResult> workflowResult = workflowManager.executeWorkflow(workflow).join();  //key: operation id, value: operation result
-        for(Operation operation : workflow.getParallelOperations()) {
-            OperationResult result = workflowResult.get(operation.getUUID());
-            rawExecutionConfig.addResult(operation.getDynamicFields().get(FieldGlossary.device_internal_id), result);
+        return workflowManager.executeWorkflow(workflow).thenApply(workflowResult -> {  //key: operation id, value: operation result
+            for(Operation operation : workflow.getParallelOperations()) {
+                OperationResult result = workflowResult.get(operation.getUUID());
+                rawExecutionConfig.addResult(operation.getDynamicFields().get(FieldGlossary.device_internal_id), result);
+            }
+
+            rawExecutionConfig.setEndTime(Instant.now());
+            return rawExecutionConfig;
+        });
+    }
+
+    //Streams each device result as a server-sent "result" event as soon as it's operation ends, followed by a single "summary" event
+    @PostMapping(value = "/execute/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter executeAsEvents(@RequestBody RawExecutionConfig rawExecutionConfig){
+        SseEmitter emitter = new SseEmitter();
+        streamResults(rawExecutionConfig, emitter, (eventName, sequenceNumber, json) -> emitter.send(
+            SseEmitter.event().name(eventName).id(String.valueOf(sequenceNumber)).data(json, MediaType.APPLICATION_JSON)
+        ));
+        return emitter;
+    }
+
+    //Streams each device result as a line of newline delimited json as soon as it's operation ends, followed by a single summary line
+    @PostMapping(value = "/execute/stream", produces = NdJsonMediaType)
+    public ResponseBodyEmitter executeAsNdJson(@RequestBody RawExecutionConfig rawExecutionConfig){
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        MediaType ndJson = MediaType.parseMediaType(NdJsonMediaType);
+        streamResults(rawExecutionConfig, emitter, (eventName, sequenceNumber, json) -> emitter.send(json + "\n", ndJson));
+        return emitter;
+    }
+
+    /*Reads the operation, and then one device at a time, from a newline delimited json body (see BulkSubmissionReader), submitting each device as soon as it is read
+     * Results are streamed back as newline delimited json, followed by a summary line. Only the operation is read on the servlet thread -
+     * devices are read on a bulk reader thread of the workflow manager, since reading waits for the operations in flight to complete once there are maximumBulkInFlight of them*/
+    @PostMapping(value = "/bulk", consumes = NdJsonMediaType, produces = NdJsonMediaType)
+    public ResponseBodyEmitter executeBulk(HttpServletRequest request){
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        MediaType ndJson = MediaType.parseMediaType(NdJsonMediaType);
+        ResultWriter resultWriter = (eventName, sequenceNumber, json) -> emitter.send(json + "\n", ndJson);
+        AtomicBoolean isDisconnected = watchDisconnection(emitter);
+
+        BulkSubmissionReader submission;
+        try {
+            submission = new BulkSubmissionReader(request.getInputStream(), WireFormat.Json);
+        } catch (IOException e) {
+            logger.error("Failed to read bulk submission. Caused by: " + e.getMessage());
+            emitter.completeWithError(e);
+            return emitter;
         }
 
-        rawExecutionConfig.setEndTime(Instant.now());
-        return rawExecutionConfig;
+        ExecutionSummary executionSummary = new ExecutionSummary(submission.getOperation().getUUID(), 0, Instant.now());
+        workflowManager.executeBulk(submission, streamResult(executionSummary, isDisconnected, resultWriter))
+            .whenComplete((devicesRead, throwable) -> {
+                executionSummary.setTotalDevices(executionSummary.getPublishedResults());
+                completeStream(emitter, executionSummary, isDisconnected, resultWriter, throwable);
+            });
+        return emitter;
+    }
+
+    //Results are not collected anywhere, so the response starts as soon as the first device finishes, and memory usage does not grow with the number of devices
+    private void streamResults(RawExecutionConfig rawExecutionConfig, ResponseBodyEmitter emitter, ResultWriter resultWriter){
+        rawExecutionConfig.setStartTime(Instant.now());
+        ParallelWorkflow workflow = CommandUtils.composeWorkflow(rawExecutionConfig);
+        ExecutionSummary executionSummary = new ExecutionSummary(rawExecutionConfig.getOperation().getUUID(), workflow.getParallelOperations().size(), rawExecutionConfig.getStartTime());
+        AtomicBoolean isDisconnected = watchDisconnection(emitter);
+
+        workflowManager.executeWorkflow(workflow, streamResult(executionSummary, isDisconnected, resultWriter)).whenComplete(
+            (voidStub, throwable) -> completeStream(emitter, executionSummary, isDisconnected, resultWriter, throwable)
+        );
     }
 
+    //Operations keep running if the client disconnects - their results are just no longer sent
+    private static AtomicBoolean watchDisconnection(ResponseBodyEmitter emitter){
+        AtomicBoolean isDisconnected = new AtomicBoolean(false);
+        emitter.onError(throwable -> isDisconnected.set(true));
+        emitter.onTimeout(() -> isDisconnected.set(true));
+        return isDisconnected;
+    }
+
+    private static BiConsumer<Operation, OperationResult> streamResult(ExecutionSummary executionSummary, AtomicBoolean isDisconnected, ResultWriter resultWriter){
+        String requestId = executionSummary.getRequestId();
+        return (operation, result) -> {
+            int sequenceNumber = executionSummary.countResult(result.getExpressionResult().getOutcome());
+            String deviceId = operation.getDynamicFields().get(FieldGlossary.device_internal_id);
+            if(!isDisconnected.get()) {
+                try {
+                    resultWriter.write("result", sequenceNumber, PolymorphicJsonMapper.serialize(new DeviceResult(requestId, sequenceNumber, deviceId, result)));
+                } catch (IOException | IllegalStateException e) {
+                    isDisconnected.set(true);
+                    logger.warn("Failed to stream result #" + sequenceNumber + " of operation " + requestId + ". No further results will be streamed. Caused by: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    //Writes the summary and completes the response. If the execution failed part way (i.e. a malformed bulk submission), the response is completed with the error after the summary
+    private static void completeStream(ResponseBodyEmitter emitter, ExecutionSummary executionSummary, AtomicBoolean isDisconnected, ResultWriter resultWriter, Throwable failure){
+        if(isDisconnected.get()){
+            return;
+        }
+
+        try {
+            executionSummary.setEndTime(Instant.now());
+            resultWriter.write("summary", executionSummary.getPublishedResults(), PolymorphicJsonMapper.serialize(executionSummary));
+            if(failure == null) {
+                emitter.complete();
+            }else{
+                emitter.completeWithError(failure);
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Failed to stream execution summary of operation " + executionSummary.getRequestId() + ". Caused by: " + e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    //Returns a future, so the servlet thread is released while the operations are terminated
     @PostMapping("/terminate")
-    public RawTerminationConfig terminate(@RequestBody Set<String> operationIdSet) {
+    public CompletableFuture<RawTerminationConfig> terminate(@RequestBody Set<String> operationIdSet) {
         RawTerminationConfig rawTerminationConfig = new RawTerminationConfig(operationIdSet);
         rawTerminationConfig.setStartTime(Instant.now());
 
         Map<String, CompletableFuture<OperationResult>> futureTerminations = new HashMap<>();
         for(String operationId : rawTerminationConfig.getOperationIds()) {
-            CompletableFuture<OperationResult> futureTermination = threadingManager.submit(() -> sessionEngine.terminateOperation(operationId));
+            CompletableFuture<OperationResult> futureTermination = threadingManager.submit(() -> admissionManager.terminateOperation(operationId));
             futureTerminations.put(operationId, futureTermination);
         }
 
-        CompletableFuture.allOf(
+        return CompletableFuture.allOf(
             //Wait for all terminations to finish asynchronously
             futureTerminations.values().toArray(CompletableFuture[]::new)
-        ).thenAccept(voidStub -> {
+        ).thenApply(voidStub -> {
             //map each operation id to the termination result
             for(Map.Entry<String, CompletableFuture<OperationResult>> termination : futureTerminations.entrySet()){
                 String operationId = termination.getKey();
                 rawTerminationConfig.addResult(operationId, termination.getValue().join()); //add to the raw config
             }
-        }).join(); //and join the aggregated future with the invoking thread (this one)
 
-
-        rawTerminationConfig.setEndTime(Instant.now());
-        return rawTerminationConfig;
+            rawTerminationConfig.setEndTime(Instant.now());
+            return rawTerminationConfig;
+        });
     }
 
     private static String wrapForHtml(String text){
         return "<p style=\"white-space: pre;\">" + text + "</p>";
     }
+
+    //Writes a single serialized result to the response, in the format of the streaming endpoint
+    @FunctionalInterface
+    private interface ResultWriter {
+        void write(String eventName, int sequenceNumber, String json) throws IOException;
+    }
 }
@@ -1,5 +1,6 @@
 package com.sixsense.api.http.overrides;
 
+import com.sixsense.model.threading.IMonitoredThread;
 import com.sixsense.model.threading.MonitoredThread;
 import com.sixsense.threading.IThreadMonitoingFactory;
 import org.apache.logging.log4j.LogManager;
@@ -12,7 +13,7 @@ import java.util.Set;
 
 public class HTTPThreadFactory extends TaskThreadFactory implements IThreadMonitoingFactory {
     private static final Logger logger = LogManager.getLogger(HTTPThreadFactory.class);
-    private final Set<MonitoredThread> monitoredThreads;
+    private final Set<IMonitoredThread> monitoredThreads;
 
     HTTPThreadFactory(String namePrefix, boolean daemon, int priority) {
         super(namePrefix, daemon, priority);
@@ -27,18 +28,18 @@ public class HTTPThreadFactory extends TaskThreadFactory implements IThreadMonit
     }
 
     @Override
-    public Set<MonitoredThread> getMonitoredThreads(){
+    public Set<IMonitoredThread> getMonitoredThreads(){
         return Collections.unmodifiableSet(this.monitoredThreads);
     }
 
     @Override
-    public boolean watch(MonitoredThread monitoredThread) {
+    public boolean watch(IMonitoredThread monitoredThread) {
         logger.debug("Watching thread " + monitoredThread.getName());
         return this.monitoredThreads.add(monitoredThread);
     }
 
     @Override
-    public boolean unwatch(MonitoredThread monitoredThread) {
+    public boolean unwatch(IMonitoredThread monitoredThread) {
         logger.debug("Unwatching thread " + monitoredThread.getName());
         monitoredThread.getCurrentThreadState().resetState();
         return this.monitoredThreads.remove(monitoredThread);
@@ -0,0 +1,36 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.admission")
+public class AdmissionConfig {
+    private final int maximumRunningOperations; //Global limit of operations (i.e. sessions) running at the same time
+    private final int maximumOperationsPerDevice; //Limit of operations running against the same device at the same time
+    private final int maximumPendingOperations; //Operations submitted beyond this limit are rejected
+    private final int maximumBulkInFlight; //Operations of a single bulk submission admitted at the same time. Further devices are read from the submission only as these complete
+
+    public AdmissionConfig(int maximumRunningOperations, int maximumOperationsPerDevice, int maximumPendingOperations, int maximumBulkInFlight) {
+        this.maximumRunningOperations = maximumRunningOperations;
+        this.maximumOperationsPerDevice = maximumOperationsPerDevice;
+        this.maximumPendingOperations = maximumPendingOperations;
+        this.maximumBulkInFlight = maximumBulkInFlight > 0 ? maximumBulkInFlight : 1000;
+    }
+
+    public int getMaximumRunningOperations() {
+        return maximumRunningOperations;
+    }
+
+    public int getMaximumOperationsPerDevice() {
+        return maximumOperationsPerDevice;
+    }
+
+    public int getMaximumPendingOperations() {
+        return maximumPendingOperations;
+    }
+
+    public int getMaximumBulkInFlight() {
+        return maximumBulkInFlight;
+    }
+}
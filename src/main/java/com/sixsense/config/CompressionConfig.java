@@ -0,0 +1,33 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
+
+/*Bodies of published messages at least as large as the threshold are compressed with lz4 (see PayloadCompression), unless compression does not make them any smaller
+* Compressed inbound messages are always decompressed, regardless of this configuration - as long as they do not decompress to more than the maximum size*/
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.compression")
+public class CompressionConfig {
+    private final boolean enabled;
+    private final DataSize threshold;
+    private final DataSize maximumSize; //Compressed inbound messages which declare (or decompress to) a larger body are rejected
+
+    public CompressionConfig(boolean enabled, DataSize threshold, DataSize maximumSize) {
+        this.enabled = enabled;
+        this.threshold = threshold == null || threshold.isNegative() ? DataSize.ofKilobytes(64) : threshold;
+        this.maximumSize = maximumSize == null || maximumSize.toBytes() <= 0 || maximumSize.toBytes() >= Integer.MAX_VALUE ? DataSize.ofMegabytes(64) : maximumSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public DataSize getThreshold() {
+        return threshold;
+    }
+
+    public DataSize getMaximumSize() {
+        return maximumSize;
+    }
+}
@@ -0,0 +1,88 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DurationUnit;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/*Consumer concurrency and prefetch of the execution request queue (engine.operations.execute)
+ * Execution requests are acknowledged only after they finish executing, so the prefetch of a consumer is also the amount of requests it may hold at the same time*/
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.consumers")
+public class ConsumerConfig {
+    private final ExecuteConsumerProperties execute;
+    private final FeedbackProperties feedback;
+
+    public ConsumerConfig(ExecuteConsumerProperties execute, FeedbackProperties feedback) {
+        this.execute = execute == null ? new ExecuteConsumerProperties(1, 1, 1) : execute;
+        this.feedback = feedback == null ? new FeedbackProperties(false, Duration.ofSeconds(1), 0.9, 0.7) : feedback;
+    }
+
+    public static class ExecuteConsumerProperties {
+        private final int concurrentConsumers; //Each consumer has it's own channel
+        private final int minimumPrefetch; //Prefetch of each consumer while the engine is paused or under heavy load
+        private final int maximumPrefetch; //Prefetch of each consumer while the engine is idle. Also the initial prefetch of each consumer
+
+        public ExecuteConsumerProperties(int concurrentConsumers, int minimumPrefetch, int maximumPrefetch) {
+            this.concurrentConsumers = Math.max(concurrentConsumers, 1);
+            this.minimumPrefetch = Math.max(minimumPrefetch, 1);
+            this.maximumPrefetch = Math.max(maximumPrefetch, this.minimumPrefetch);
+        }
+
+        public int getConcurrentConsumers() {
+            return concurrentConsumers;
+        }
+
+        public int getMinimumPrefetch() {
+            return minimumPrefetch;
+        }
+
+        public int getMaximumPrefetch() {
+            return maximumPrefetch;
+        }
+    }
+
+    /*The feedback loop samples the engine load on every interval, and adjusts the prefetch of the execution request consumers accordingly:
+     * At or above the high watermark, consumers are paused. Between the watermarks, their prefetch shrinks. At or below the low watermark, consumers are resumed and their prefetch grows
+     * The load is the ratio of running and pending operations to the maximum running operations, or the engine pool saturation (the higher of both)*/
+    public static class FeedbackProperties {
+        private final boolean enabled;
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration interval;
+        private final double highWatermark;
+        private final double lowWatermark;
+
+        public FeedbackProperties(boolean enabled, Duration interval, double highWatermark, double lowWatermark) {
+            this.enabled = enabled;
+            this.interval = interval == null || interval.isNegative() || interval.isZero() ? Duration.ofSeconds(1) : interval;
+            this.highWatermark = highWatermark;
+            this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public double getHighWatermark() {
+            return highWatermark;
+        }
+
+        public double getLowWatermark() {
+            return lowWatermark;
+        }
+    }
+
+    public ExecuteConsumerProperties getExecute() {
+        return execute;
+    }
+
+    public FeedbackProperties getFeedback() {
+        return feedback;
+    }
+}
@@ -0,0 +1,51 @@
+package com.sixsense.config;
+
+import com.sixsense.model.logging.LogOverflowPolicy;
+import com.sixsense.model.logging.TrailMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
+
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.logging")
+public class LoggingConfig {
+    private final boolean async; //If true, session, command and terminal logs are written to disk by a background thread
+    private final int bufferSize; //Log lines that may wait in the asynchronous buffer before the overflow policy applies
+    private final int journalMaximumSegments; //The oldest journal segment is deleted whenever a new segment would exceed this limit
+    private final DataSize journalSegmentSize; //Each segment is mapped into memory as a whole, so segments must be smaller than 2GB
+    private final LogOverflowPolicy overflowPolicy;
+    private final TrailMode trailMode;
+
+    public LoggingConfig(boolean async, int bufferSize, int journalMaximumSegments, DataSize journalSegmentSize, LogOverflowPolicy overflowPolicy, TrailMode trailMode) {
+        this.async = async;
+        this.bufferSize = bufferSize > 0 ? bufferSize : 8192;
+        this.journalMaximumSegments = journalMaximumSegments > 0 ? journalMaximumSegments : 16;
+        this.journalSegmentSize = journalSegmentSize == null || journalSegmentSize.toBytes() >= Integer.MAX_VALUE ? DataSize.ofMegabytes(64) : journalSegmentSize;
+        this.overflowPolicy = overflowPolicy == null ? LogOverflowPolicy.Drop : overflowPolicy;
+        this.trailMode = trailMode == null ? TrailMode.Text : trailMode;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getJournalMaximumSegments() {
+        return journalMaximumSegments;
+    }
+
+    public DataSize getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public LogOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public TrailMode getTrailMode() {
+        return trailMode;
+    }
+}
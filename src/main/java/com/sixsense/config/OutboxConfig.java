@@ -0,0 +1,64 @@
+package com.sixsense.config;
+
+import com.sixsense.model.retention.OutboxSyncPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DurationUnit;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+//Results, retentions and termination results are appended to a disk backed outbox, and published to the broker from there by a single publisher thread
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.outbox")
+public class OutboxConfig {
+    private final DataSize segmentSize; //A new segment is started once the active segment reaches this size. Segments are deleted once all of their records are confirmed by the broker
+    private final OutboxSyncPolicy syncPolicy;
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration syncInterval; //Only used by the Interval sync policy
+    private final int maximumUnconfirmed; //Messages published but not yet confirmed by the broker
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration initialBackoff; //Wait before re-publishing after the first failure. Doubles on every consecutive failure
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration maximumBackoff;
+    private final int maximumRejections; //A message nacked by the broker this many times is moved to the dead letter outbox instead of being published again. Publishing failures while the broker is unreachable are not counted
+
+    public OutboxConfig(DataSize segmentSize, OutboxSyncPolicy syncPolicy, Duration syncInterval, int maximumUnconfirmed, Duration initialBackoff, Duration maximumBackoff, int maximumRejections) {
+        this.segmentSize = segmentSize == null || segmentSize.toBytes() >= Integer.MAX_VALUE ? DataSize.ofMegabytes(16) : segmentSize;
+        this.syncPolicy = syncPolicy == null ? OutboxSyncPolicy.Interval : syncPolicy;
+        this.syncInterval = syncInterval == null ? Duration.ofMillis(100) : syncInterval;
+        this.maximumUnconfirmed = maximumUnconfirmed > 0 ? maximumUnconfirmed : 256;
+        this.initialBackoff = initialBackoff == null ? Duration.ofMillis(100) : initialBackoff;
+        this.maximumBackoff = maximumBackoff == null || maximumBackoff.compareTo(this.initialBackoff) < 0 ? this.initialBackoff.multipliedBy(300) : maximumBackoff;
+        this.maximumRejections = maximumRejections > 0 ? maximumRejections : 5;
+    }
+
+    public DataSize getSegmentSize() {
+        return segmentSize;
+    }
+
+    public OutboxSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    public int getMaximumUnconfirmed() {
+        return maximumUnconfirmed;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaximumBackoff() {
+        return maximumBackoff;
+    }
+
+    public int getMaximumRejections() {
+        return maximumRejections;
+    }
+}
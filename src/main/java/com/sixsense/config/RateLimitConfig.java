@@ -0,0 +1,112 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DurationUnit;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+
+/*Token-bucket limits on session creation, so that large fan-outs do not flood sshd and the target devices with handshakes
+ * A non-positive rate disables the matching bucket*/
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.rate-limit")
+public class RateLimitConfig {
+    private final BucketProperties global;
+    private final SubnetBucketProperties subnet;
+    private final List<VpvBucketProperties> vpv;
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration rampUpJitter; //Random delay (between zero and this value) added to sessions which are already delayed by a bucket, to spread out their handshakes. Zero (the default) disables it
+
+    public RateLimitConfig(BucketProperties global, SubnetBucketProperties subnet, List<VpvBucketProperties> vpv, Duration rampUpJitter) {
+        this.global = global == null ? new BucketProperties(0, 0) : global;
+        this.subnet = subnet == null ? new SubnetBucketProperties(0, 0, 24) : subnet;
+        this.vpv = vpv == null ? Collections.emptyList() : vpv;
+        this.rampUpJitter = rampUpJitter == null ? Duration.ZERO : rampUpJitter;
+    }
+
+    public static class BucketProperties {
+        private final int burst; //Sessions that may be created back to back before the rate applies
+        private final double sessionsPerSecond; //A session with several channels counts once per channel, since each channel opens it's own ssh connection
+
+        public BucketProperties(int burst, double sessionsPerSecond) {
+            this.burst = Math.max(burst, 1);
+            this.sessionsPerSecond = sessionsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public double getSessionsPerSecond() {
+            return sessionsPerSecond;
+        }
+
+        public boolean isEnabled() {
+            return sessionsPerSecond > 0;
+        }
+    }
+
+    public static class SubnetBucketProperties extends BucketProperties {
+        private final int prefixLength; //Devices whose IPv4 addresses share this many leading bits share a bucket
+
+        public SubnetBucketProperties(int burst, double sessionsPerSecond, int prefixLength) {
+            super(burst, sessionsPerSecond);
+            this.prefixLength = Math.min(Math.max(prefixLength, 0), 32);
+        }
+
+        public int getPrefixLength() {
+            return prefixLength;
+        }
+    }
+
+    public static class VpvBucketProperties extends BucketProperties {
+        //An empty product or version matches any product or version of the vendor
+        private final String vendor;
+        private final String product;
+        private final String version;
+
+        public VpvBucketProperties(int burst, double sessionsPerSecond, String vendor, String product, String version) {
+            super(burst, sessionsPerSecond);
+            this.vendor = vendor == null ? "" : vendor;
+            this.product = product == null ? "" : product;
+            this.version = version == null ? "" : version;
+        }
+
+        public String getVendor() {
+            return vendor;
+        }
+
+        public String getProduct() {
+            return product;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public boolean matches(String vendor, String product, String version) {
+            return this.vendor.equals(vendor)
+                && (this.product.isEmpty() || this.product.equals(product))
+                && (this.version.isEmpty() || this.version.equals(version));
+        }
+    }
+
+    public BucketProperties getGlobal() {
+        return global;
+    }
+
+    public SubnetBucketProperties getSubnet() {
+        return subnet;
+    }
+
+    public List<VpvBucketProperties> getVpv() {
+        return vpv;
+    }
+
+    public Duration getRampUpJitter() {
+        return rampUpJitter;
+    }
+}
@@ -0,0 +1,50 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DurationUnit;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.retention")
+public class RetentionConfig {
+    private final BatchProperties batch;
+
+    public RetentionConfig(BatchProperties batch) {
+        this.batch = batch == null ? new BatchProperties(false, 1, Duration.ZERO) : batch;
+    }
+
+    /*DatabaseImmediate retentions of all sessions are published together, once the batch reaches it's maximum size or once it's oldest variable has waited for the maximum latency (the earlier of both)
+     * When disabled (the default), each variable is published in it's own message as soon as it is retained.
+     * Batches are published to engine.results.retention.batch rather than the queue of single variables, so consumers must read that queue (and the batch schema) before batching is enabled*/
+    public static class BatchProperties {
+        private final boolean enabled;
+        private final int maximumSize; //Maximum variables in a single batch
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration maximumLatency; //Maximum time a variable waits for it's batch to fill up
+
+        public BatchProperties(boolean enabled, int maximumSize, Duration maximumLatency) {
+            this.enabled = enabled;
+            this.maximumSize = Math.max(maximumSize, 1);
+            this.maximumLatency = maximumLatency == null || maximumLatency.isNegative() ? Duration.ZERO : maximumLatency;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public Duration getMaximumLatency() {
+            return maximumLatency;
+        }
+    }
+
+    public BatchProperties getBatch() {
+        return batch;
+    }
+}
@@ -9,10 +9,12 @@ import java.util.Map;
 @ConfigurationProperties(prefix = "sixsense.session")
 public class SessionConfig {
     private final Map<String, String> prompt;
+    private final TimelineProperties timeline;
     private final String version;
 
-    public SessionConfig(Map<String, String> prompt, String version) {
+    public SessionConfig(Map<String, String> prompt, TimelineProperties timeline, String version) {
         this.prompt = prompt;
+        this.timeline = timeline == null ? new TimelineProperties(false, false, 0) : timeline;
         this.version = version;
     }
 
@@ -20,7 +22,35 @@ public class SessionConfig {
         return prompt;
     }
 
+    public TimelineProperties getTimeline() {
+        return timeline;
+    }
+
     public String getVersion() {
         return version;
     }
+
+    public static class TimelineProperties {
+        private final boolean enabled; //Record an execution timeline for every operation. Off by default, as recording allocates for every event of the operation
+        private final boolean attachToResult; //Return the timeline as part of the operation result
+        private final int retainedTimelines; //Timelines of finished operations kept for the diagnostics api (oldest are evicted first)
+
+        public TimelineProperties(boolean enabled, boolean attachToResult, int retainedTimelines) {
+            this.enabled = enabled;
+            this.attachToResult = attachToResult;
+            this.retainedTimelines = Math.max(retainedTimelines, 0);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isAttachToResult() {
+            return attachToResult;
+        }
+
+        public int getRetainedTimelines() {
+            return retainedTimelines;
+        }
+    }
 }
@@ -0,0 +1,74 @@
+package com.sixsense.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DurationUnit;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/*When enabled, requests consumed from the execute queue are split into one request per device, and routed through a consistent-hash exchange (keyed by the device host) to per-node queues
+ * so consecutive operations on the same device are executed by the same engine node. Requires the rabbitmq_consistent_hash_exchange plugin on the broker*/
+@ConstructorBinding
+@ConfigurationProperties(prefix = "sixsense.sharding")
+public class ShardingConfig {
+    private final boolean enabled;
+    private final String nodeId; //Must remain the same across restarts of a node, so the node picks up it's own queue (and share of devices) again
+    private final int weight; //Share of the hash ring held by this node, relative to the weights of the other nodes
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration distributionTimeout; //Maximum wait for the broker to confirm all per-device requests before the original request is requeued
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration orphanTimeout; //The queue of a node which has not consumed for this long is deleted, together with it's pending requests (zero keeps queues forever)
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration initialBackoff; //Wait before requeueing a request which could not be distributed (i.e. no node is bound to the shard exchange). Doubles on every consecutive failure
+    @DurationUnit(ChronoUnit.MILLIS)
+    private final Duration maximumBackoff; //Kept short, since the wait holds the listener thread (which the listener container waits for when the engine stops)
+
+    public ShardingConfig(boolean enabled, String nodeId, int weight, Duration distributionTimeout, Duration orphanTimeout, Duration initialBackoff, Duration maximumBackoff) {
+        this.enabled = enabled;
+        this.nodeId = nodeId == null || nodeId.isEmpty() ? localHostName() : nodeId;
+        this.weight = weight > 0 ? weight : 10;
+        this.distributionTimeout = distributionTimeout == null ? Duration.ofSeconds(30) : distributionTimeout;
+        this.orphanTimeout = orphanTimeout == null || orphanTimeout.isNegative() ? Duration.ZERO : orphanTimeout;
+        this.initialBackoff = initialBackoff == null || initialBackoff.isNegative() ? Duration.ofMillis(100) : initialBackoff;
+        this.maximumBackoff = maximumBackoff == null || maximumBackoff.compareTo(this.initialBackoff) < 0 ? this.initialBackoff.multipliedBy(50) : maximumBackoff;
+    }
+
+    private static String localHostName(){
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "engine";
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public Duration getDistributionTimeout() {
+        return distributionTimeout;
+    }
+
+    public Duration getOrphanTimeout() {
+        return orphanTimeout;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaximumBackoff() {
+        return maximumBackoff;
+    }
+}
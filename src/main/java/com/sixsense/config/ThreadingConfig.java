@@ -1,5 +1,6 @@
 package com.sixsense.config;
 
+import com.sixsense.model.threading.ExecutorMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
 import org.springframework.boot.convert.DurationUnit;
@@ -10,14 +11,16 @@ import java.time.temporal.ChronoUnit;
 @ConstructorBinding
 @ConfigurationProperties(prefix = "sixsense.threads")
 public class ThreadingConfig {
-    private final ThreadingProperties engine;
+    private final EngineThreadingProperties engine;
     private final ThreadingProperties http;
     private final AMQPThreadingProperties amqp;
+    private final EventThreadingProperties events;
 
-    public ThreadingConfig(ThreadingProperties engine, ThreadingProperties http, AMQPThreadingProperties amqp) {
+    public ThreadingConfig(EngineThreadingProperties engine, ThreadingProperties http, AMQPThreadingProperties amqp, EventThreadingProperties events) {
         this.engine = engine;
         this.http = http;
         this.amqp = amqp;
+        this.events = events == null ? new EventThreadingProperties(2, 8192, "engine-event-dispatcher-") : events;
     }
 
     public static class ThreadingProperties {
@@ -51,9 +54,22 @@ public class ThreadingConfig {
         }
     }
 
+    public static class EngineThreadingProperties extends ThreadingProperties{
+        private final ExecutorMode executorMode; //Virtual threads ignore the minimum/maximum threads and idle time properties, as every task runs on a new virtual thread
+
+        public EngineThreadingProperties(Duration allowedIdleTime, ExecutorMode executorMode, int maximumThreads, int minimumThreads, String threadNamePrefix) {
+            super(allowedIdleTime, maximumThreads, minimumThreads, threadNamePrefix);
+            this.executorMode = executorMode == null ? ExecutorMode.Platform : executorMode;
+        }
+
+        public ExecutorMode getExecutorMode() {
+            return executorMode;
+        }
+    }
+
     public static class AMQPThreadingProperties extends ThreadingProperties{
         private final int maximumConsumeRetries;
-        private final int maximumProduceRetries;
+        private final int maximumProduceRetries; //No longer used - failed publishes are retried by the OutboxPublisher, with exponential backoff
         private final int minimumChannels;
         private final int minimumConnections;
 
@@ -82,7 +98,32 @@ public class ThreadingConfig {
         }
     }
 
-    public ThreadingProperties getEngine() {
+    //Event dispatchers are a fixed set of threads, each consuming it's own ring buffer. Events are handed over to the engine pool whenever a ring buffer is full
+    public static class EventThreadingProperties {
+        private final int dispatcherThreads;
+        private final int ringCapacity; //Rounded up to the nearest power of two
+        private final String threadNamePrefix;
+
+        public EventThreadingProperties(int dispatcherThreads, int ringCapacity, String threadNamePrefix) {
+            this.dispatcherThreads = Math.max(dispatcherThreads, 1);
+            this.ringCapacity = Math.max(ringCapacity, 2);
+            this.threadNamePrefix = threadNamePrefix;
+        }
+
+        public int getDispatcherThreads() {
+            return dispatcherThreads;
+        }
+
+        public int getRingCapacity() {
+            return ringCapacity;
+        }
+
+        public String getThreadNamePrefix() {
+            return threadNamePrefix;
+        }
+    }
+
+    public EngineThreadingProperties getEngine() {
         return engine;
     }
 
@@ -93,4 +134,8 @@ public class ThreadingConfig {
     public AMQPThreadingProperties getAmqp() {
         return amqp;
     }
+
+    public EventThreadingProperties getEvents() {
+        return events;
+    }
 }
@@ -0,0 +1,512 @@
+package com.sixsense.io;
+
+import com.sixsense.model.logging.JournalRecord;
+import com.sixsense.model.logging.Loggers;
+import com.sixsense.model.logging.TrailRange;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/*An append-only journal of session log records, shared by all sessions
+ * The journal is split into fixed-size segment files, each mapped into memory, so appending a record is a memory copy rather than a write system call.
+ * Each session keeps an in-memory index of it's record addresses (one per trail), so the records of a single session can be read without scanning the whole journal.
+ * Alongside the addresses, the index keeps the running total of payload bytes in each trail, so a byte offset in a rendered trail can be located without reading any record.
+ * The journal lock is only held to reserve room for a record - the record itself is copied under the lock of it's session index, so sessions do not wait on each other's copies.
+ * Each segment is reference counted, so a segment deleted (or a journal closed) while records are still being copied into it or read out of it is only closed once they are done.
+ *
+ * Record layout: [int length][byte trail][long timestamp][int ordinal][byte session id length][session id][payload]
+ * where length counts the bytes following the length field, and both the session id and payload are UTF-8 encoded.
+ * A zero length marks the end of the records in a segment*/
+public class EventJournal implements Closeable {
+    private static final Logger logger = LogManager.getLogger(EventJournal.class);
+    private static final String SegmentPrefix = "segment-";
+    private static final String SegmentSuffix = ".journal";
+    private static final int LengthBytes = Integer.BYTES;
+    private static final int HeaderBytes = Byte.BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final Loggers[] trails = Loggers.values();
+
+    private final Path journalDirectory;
+    private final int segmentSize;
+    private final int maximumSegments;
+
+    //Segments are added and removed only while holding the appendLock. The trails of each session index are guarded by the lock of the index itself
+    private final Lock appendLock = new ReentrantLock();
+    private final ConcurrentSkipListMap<Integer, JournalSegment> segments = new ConcurrentSkipListMap<>(); //key: segment number, value: segment
+    private final Map<String, SessionIndex> sessionIndexes = new ConcurrentHashMap<>(); //key: short session id, value: session record addresses
+    private JournalSegment activeSegment;
+    private volatile boolean isClosed = false;
+
+    public EventJournal(Path journalDirectory, int segmentSize, int maximumSegments) throws IOException {
+        this.journalDirectory = journalDirectory;
+        this.segmentSize = segmentSize;
+        this.maximumSegments = Math.max(maximumSegments, 2);
+
+        Files.createDirectories(journalDirectory);
+        recoverSegments();
+        rollSegment();
+    }
+
+    //Appends a record to the journal. Payloads that do not fit in a single segment are truncated
+    public void append(String sessionId, Loggers trail, long timestamp, String payload){
+        byte[] sessionIdBytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        int sessionIdLength = Math.min(sessionIdBytes.length, Byte.MAX_VALUE);
+        int payloadLength = Math.min(payloadBytes.length, this.segmentSize - LengthBytes * 2 - HeaderBytes - sessionIdLength);
+        int recordLength = HeaderBytes + sessionIdLength + payloadLength;
+
+        /*Records of the same trail are copied one at a time, so their ordinals match the order of their addresses in the index.
+         * Lock order is always the session index, then the journal*/
+        SessionIndex sessionIndex = this.sessionIndexes.computeIfAbsent(sessionId, id -> new SessionIndex());
+        sessionIndex.lock.lock();
+        try {
+            JournalSegment segment;
+            int recordOffset;
+            this.appendLock.lock();
+            try {
+                if(this.isClosed){
+                    return;
+                }
+
+                //Always leave room for the terminating zero length
+                if(this.activeSegment.writePosition + LengthBytes + recordLength + LengthBytes > this.segmentSize){
+                    rollSegment();
+                }
+
+                segment = this.activeSegment;
+                segment.acquire(); //cannot fail, as the journal holds it's own reference to every segment in the map
+                recordOffset = segment.writePosition;
+                segment.writePosition += LengthBytes + recordLength;
+                sessionIndex.lastAddress = address(segment.number, recordOffset); //set under the journal lock, so deleteSegment() never drops a session in the middle of an append
+                this.sessionIndexes.putIfAbsent(sessionId, sessionIndex); //in case rolling the segment above dropped the session (it's older records are skipped when read)
+            }catch (IOException e){
+                logger.error("Failed to append record of session " + sessionId + " to the event journal. Caused by: " + e.getMessage());
+                return;
+            }finally {
+                this.appendLock.unlock();
+            }
+
+            try {
+                TrailIndex trailIndex = sessionIndex.getTrailIndex(trail);
+                ByteBuffer writeBuffer = segment.buffer.duplicate();
+                writeBuffer.position(recordOffset + LengthBytes);
+                writeBuffer.put((byte)trail.ordinal());
+                writeBuffer.putLong(timestamp);
+                writeBuffer.putInt(trailIndex.size);
+                writeBuffer.put((byte)sessionIdLength);
+                writeBuffer.put(sessionIdBytes, 0, sessionIdLength);
+                writeBuffer.put(payloadBytes, 0, payloadLength);
+                writeBuffer.putInt(recordOffset, recordLength); //the length is written last, so a partially written record is never read back
+
+                trailIndex.add(address(segment.number, recordOffset), payloadLength);
+            }finally {
+                segment.release();
+            }
+        }finally {
+            sessionIndex.lock.unlock();
+        }
+    }
+
+    //Reads the records of a session trail in the order they were appended. Records in segments that have since been deleted are skipped
+    public void read(String sessionId, Loggers trail, Consumer<JournalRecord> recordConsumer){
+        read(sessionId, trail, 0, Integer.MAX_VALUE, recordConsumer);
+    }
+
+    //Reads the records of a session trail whose ordinals are in the range [fromOrdinal, toOrdinal)
+    public void read(String sessionId, Loggers trail, int fromOrdinal, int toOrdinal, Consumer<JournalRecord> recordConsumer){
+        read(sessionId, trail, fromOrdinal, toOrdinal, recordConsumer, missingPayloadLength -> {});
+    }
+
+    /*Writes the part of a session trail within the trail range to the output stream, with each record rendered as text by the recordRenderer
+     * recordOverhead is the number of bytes the renderer adds to each payload. The index of the session is used to skip straight to the first record in range.
+     * The index still counts records in segments that have since been deleted, so byte offsets keep referring to the same records as before.
+     * Those records are skipped over by their rendered length, rather than shifting every later record to their offsets*/
+    public void streamTrail(String sessionId, Loggers trail, TrailRange trailRange, int recordOverhead, Function<JournalRecord, String> recordRenderer, OutputStream outputStream) throws IOException{
+        //Narrow the ordinal range to the records overlapping the byte range, so records outside the byte range are never read
+        int fromOrdinal = Math.max(trailRange.getFromOrdinal(), findRenderedOrdinal(sessionId, trail, trailRange.getFromByte(), recordOverhead));
+        int toOrdinal = trailRange.getToOrdinal();
+        if(trailRange.getToByte() < Long.MAX_VALUE){
+            toOrdinal = Math.min(toOrdinal, findRenderedOrdinal(sessionId, trail, trailRange.getToByte() - 1, recordOverhead) + 1);
+        }
+
+        long initialPosition = getRenderedOffset(sessionId, trail, fromOrdinal, recordOverhead);
+        RangeOutputStream rangeStream = new RangeOutputStream(outputStream, initialPosition, trailRange.getFromByte(), trailRange.getToByte());
+        try {
+            read(sessionId, trail, fromOrdinal, toOrdinal,
+                record -> {
+                    try {
+                        rangeStream.write(recordRenderer.apply(record).getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                missingPayloadLength -> rangeStream.skip(missingPayloadLength + recordOverhead)
+            );
+        }catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    //Records in segments that have since been deleted are passed to the missingRecordConsumer (as their payload length) in place of the record itself
+    private void read(String sessionId, Loggers trail, int fromOrdinal, int toOrdinal, Consumer<JournalRecord> recordConsumer, IntConsumer missingRecordConsumer){
+        TrailSlice trailSlice = getTrailSlice(sessionId, trail, fromOrdinal, toOrdinal);
+        for(int index = 0; index < trailSlice.addresses.length; index++){
+            JournalRecord record = readRecord(trailSlice.addresses[index]);
+            if(record != null){
+                recordConsumer.accept(record);
+            }else{
+                missingRecordConsumer.accept(trailSlice.payloadLengths[index]);
+            }
+        }
+    }
+
+    public boolean containsSession(String sessionId){
+        return this.sessionIndexes.containsKey(sessionId);
+    }
+
+    public int getRecordCount(String sessionId, Loggers trail){
+        SessionIndex sessionIndex = this.sessionIndexes.get(sessionId);
+        if(sessionIndex == null){
+            return 0;
+        }
+
+        sessionIndex.lock.lock();
+        try {
+            return sessionIndex.getTrailIndex(trail).size;
+        }finally {
+            sessionIndex.lock.unlock();
+        }
+    }
+
+    /*Returns the offset at which a record starts, when the trail is rendered as text.
+     * recordOverhead is the number of bytes the rendering adds to each payload (e.g. a timestamp or line break).
+     * Passing the record count as the ordinal returns the length of the rendered trail*/
+    public long getRenderedOffset(String sessionId, Loggers trail, int ordinal, int recordOverhead){
+        SessionIndex sessionIndex = this.sessionIndexes.get(sessionId);
+        if(sessionIndex == null){
+            return 0;
+        }
+
+        sessionIndex.lock.lock();
+        try {
+            TrailIndex trailIndex = sessionIndex.getTrailIndex(trail);
+            int boundedOrdinal = Math.max(Math.min(ordinal, trailIndex.size), 0);
+            return trailIndex.renderedEnd(boundedOrdinal - 1, recordOverhead);
+        }finally {
+            sessionIndex.lock.unlock();
+        }
+    }
+
+    /*Returns the ordinal of the record which contains the given offset of the rendered trail, found by binary search over the payload totals.
+     * Offsets past the end of the trail return the record count*/
+    public int findRenderedOrdinal(String sessionId, Loggers trail, long renderedOffset, int recordOverhead){
+        SessionIndex sessionIndex = this.sessionIndexes.get(sessionId);
+        if(sessionIndex == null){
+            return 0;
+        }
+
+        sessionIndex.lock.lock();
+        try {
+            TrailIndex trailIndex = sessionIndex.getTrailIndex(trail);
+            int low = 0;
+            int high = trailIndex.size;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(trailIndex.renderedEnd(middle, recordOverhead) <= renderedOffset){
+                    low = middle + 1;
+                }else{
+                    high = middle;
+                }
+            }
+            return low;
+        }finally {
+            sessionIndex.lock.unlock();
+        }
+    }
+
+    private TrailSlice getTrailSlice(String sessionId, Loggers trail, int fromOrdinal, int toOrdinal){
+        SessionIndex sessionIndex = this.sessionIndexes.get(sessionId);
+        if(sessionIndex == null){
+            return TrailSlice.Empty;
+        }
+
+        //Copied under the lock of the session, so the copy only holds addresses of records that have been fully written
+        sessionIndex.lock.lock();
+        try {
+            TrailIndex trailIndex = sessionIndex.getTrailIndex(trail);
+            int from = Math.max(fromOrdinal, 0);
+            int to = Math.min(toOrdinal, trailIndex.size);
+            if(from >= to){
+                return TrailSlice.Empty;
+            }
+
+            int[] payloadLengths = new int[to - from];
+            for(int ordinal = from; ordinal < to; ordinal++){
+                payloadLengths[ordinal - from] = (int)(trailIndex.payloadTotals[ordinal] - (ordinal == 0 ? 0 : trailIndex.payloadTotals[ordinal - 1]));
+            }
+            return new TrailSlice(Arrays.copyOfRange(trailIndex.addresses, from, to), payloadLengths);
+        }finally {
+            sessionIndex.lock.unlock();
+        }
+    }
+
+    private JournalRecord readRecord(long address){
+        JournalSegment segment = this.segments.get(segmentNumber(address));
+        if(segment == null || !segment.acquire()){
+            return null; //the segment has been deleted, or the journal has been closed
+        }
+
+        try {
+            return decodeRecord(segment.buffer.duplicate(), segmentOffset(address));
+        }finally {
+            segment.release();
+        }
+    }
+
+    private static JournalRecord decodeRecord(ByteBuffer readBuffer, int recordOffset){
+        int recordLength = readBuffer.getInt(recordOffset);
+        if(recordLength <= 0){
+            return null;
+        }
+
+        readBuffer.position(recordOffset + LengthBytes);
+        int trailOrdinal = readBuffer.get();
+        long timestamp = readBuffer.getLong();
+        int ordinal = readBuffer.getInt();
+        int sessionIdLength = readBuffer.get();
+
+        byte[] sessionIdBytes = new byte[sessionIdLength];
+        readBuffer.get(sessionIdBytes);
+        byte[] payloadBytes = new byte[recordLength - HeaderBytes - sessionIdLength];
+        readBuffer.get(payloadBytes);
+
+        return new JournalRecord(
+            trails[trailOrdinal],
+            timestamp,
+            ordinal,
+            new String(sessionIdBytes, StandardCharsets.UTF_8),
+            new String(payloadBytes, StandardCharsets.UTF_8)
+        );
+    }
+
+    //This method assumes we are holding the appendLock (or are still inside the constructor)
+    private void rollSegment() throws IOException{
+        int nextNumber = this.segments.isEmpty() ? 1 : this.segments.lastKey() + 1;
+        JournalSegment nextSegment = openSegment(nextNumber, true);
+        this.segments.put(nextNumber, nextSegment);
+        this.activeSegment = nextSegment;
+
+        while(this.segments.size() > this.maximumSegments){
+            deleteSegment(this.segments.firstKey());
+        }
+    }
+
+    /*This method assumes we are holding the appendLock (or are still inside the constructor)
+     * The file itself is deleted once the last reader or writer of the segment releases it*/
+    private void deleteSegment(int segmentNumber){
+        JournalSegment deletedSegment = this.segments.remove(segmentNumber);
+        deletedSegment.isDeleted = true;
+        deletedSegment.release();
+
+        /*Sessions whose last record was in the deleted segment can no longer be read at all.
+         * Other sessions keep the index entries of their records in the deleted segment, so the ordinals and rendered offsets of their remaining records do not change*/
+        int sessionCount = this.sessionIndexes.size();
+        this.sessionIndexes.values().removeIf(sessionIndex ->
+            sessionIndex.lastAddress != 0 && segmentNumber(sessionIndex.lastAddress) <= segmentNumber //segment numbers start at 1, so a zero address means nothing has been reserved yet
+        );
+        logger.warn("Deleted event journal segment " + segmentNumber + " to stay within " + this.maximumSegments + " segments. The trails of " + (sessionCount - this.sessionIndexes.size()) + " sessions are no longer available, and older records of other sessions may be missing");
+    }
+
+    private JournalSegment openSegment(int segmentNumber, boolean isNew) throws IOException{
+        Path segmentPath = this.journalDirectory.resolve(String.format("%s%06d%s", SegmentPrefix, segmentNumber, SegmentSuffix));
+        if(isNew){
+            Files.deleteIfExists(segmentPath);
+        }
+
+        FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        return new JournalSegment(segmentNumber, segmentPath, channel, buffer);
+    }
+
+    /*Rebuilds the session indexes from the segments written before the engine last restarted
+     * Recovered segments are read only - new records are always appended to a new segment*/
+    private void recoverSegments() throws IOException{
+        List<Integer> segmentNumbers = new ArrayList<>();
+        try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(this.journalDirectory, SegmentPrefix + "*" + SegmentSuffix)){
+            for(Path segmentFile : segmentFiles){
+                String fileName = segmentFile.getFileName().toString();
+                try {
+                    segmentNumbers.add(Integer.parseInt(fileName.substring(SegmentPrefix.length(), fileName.length() - SegmentSuffix.length())));
+                }catch (NumberFormatException e){
+                    logger.warn("Ignoring unrecognized file " + fileName + " in the event journal directory");
+                }
+            }
+        }
+
+        Collections.sort(segmentNumbers);
+        for(int segmentNumber : segmentNumbers){
+            if(Files.size(this.journalDirectory.resolve(String.format("%s%06d%s", SegmentPrefix, segmentNumber, SegmentSuffix))) != this.segmentSize){
+                logger.warn("Skipping event journal segment " + segmentNumber + " - it's size does not match the configured segment size");
+                continue;
+            }
+
+            JournalSegment segment = openSegment(segmentNumber, false);
+            this.segments.put(segmentNumber, segment);
+
+            ByteBuffer readBuffer = segment.buffer.duplicate();
+            int recordOffset = 0;
+            JournalRecord record;
+            while(recordOffset + LengthBytes <= this.segmentSize && (record = decodeRecord(readBuffer, recordOffset)) != null){
+                int recordLength = readBuffer.getInt(recordOffset);
+                int payloadLength = recordLength - HeaderBytes - readBuffer.get(recordOffset + LengthBytes + HeaderBytes - Byte.BYTES);
+                SessionIndex sessionIndex = this.sessionIndexes.computeIfAbsent(record.getSessionId(), id -> new SessionIndex());
+                sessionIndex.getTrailIndex(record.getTrail()).add(address(segmentNumber, recordOffset), payloadLength);
+                sessionIndex.lastAddress = address(segmentNumber, recordOffset);
+                recordOffset += LengthBytes + recordLength;
+            }
+            segment.writePosition = recordOffset;
+        }
+
+        if(!segmentNumbers.isEmpty()) {
+            logger.info("Recovered " + this.sessionIndexes.size() + " sessions from " + this.segments.size() + " event journal segments");
+        }
+    }
+
+    private static long address(int segmentNumber, int segmentOffset){
+        return ((long)segmentNumber << 32) | (segmentOffset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentNumber(long address){
+        return (int)(address >>> 32);
+    }
+
+    private static int segmentOffset(long address){
+        return (int)address;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.appendLock.lock();
+        try {
+            this.isClosed = true;
+            for(JournalSegment segment : this.segments.values()){
+                segment.release(); //segments still being read from or written to are closed by their last user
+            }
+        }finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    private static class JournalSegment{
+        private final int number;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger referenceCount = new AtomicInteger(1); //the journal holds the first reference, until the segment is deleted or the journal is closed
+        private int writePosition = 0;
+        private volatile boolean isDeleted = false;
+
+        private JournalSegment(int number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        //Fails once the last reference has been released, as the segment is then closed (or about to be)
+        private boolean acquire(){
+            int references;
+            do {
+                references = this.referenceCount.get();
+                if(references <= 0){
+                    return false;
+                }
+            }while(!this.referenceCount.compareAndSet(references, references + 1));
+            return true;
+        }
+
+        private void release(){
+            if(this.referenceCount.decrementAndGet() == 0){
+                try {
+                    if(this.isDeleted){
+                        this.channel.close();
+                        Files.deleteIfExists(this.path);
+                    }else{
+                        this.buffer.force();
+                        this.channel.close();
+                    }
+                }catch (IOException e){
+                    logger.error("Failed to close event journal segment " + this.number + ". Caused by: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class SessionIndex{
+        private final Lock lock = new ReentrantLock();
+        private final TrailIndex[] trailIndexes = new TrailIndex[trails.length];
+        private long lastAddress; //the address of the last record reserved by the session. Read and written only while holding the appendLock (or inside the constructor)
+
+        private TrailIndex getTrailIndex(Loggers trail){
+            TrailIndex trailIndex = this.trailIndexes[trail.ordinal()];
+            if(trailIndex == null){
+                trailIndex = new TrailIndex();
+                this.trailIndexes[trail.ordinal()] = trailIndex;
+            }
+            return trailIndex;
+        }
+    }
+
+    //A copy of part of a trail index, holding the address and payload length of each record
+    private static class TrailSlice{
+        private static final TrailSlice Empty = new TrailSlice(new long[0], new int[0]);
+        private final long[] addresses;
+        private final int[] payloadLengths;
+
+        private TrailSlice(long[] addresses, int[] payloadLengths) {
+            this.addresses = addresses;
+            this.payloadLengths = payloadLengths;
+        }
+    }
+
+    //Record addresses are stored as (segment number << 32 | segment offset), in growable arrays to avoid boxing a long per record
+    private static class TrailIndex{
+        private long[] addresses = new long[16];
+        private long[] payloadTotals = new long[16]; //payload bytes of all records up to and including the record at the same position
+        private int size = 0;
+
+        private void add(long address, int payloadLength){
+            if(this.size == this.addresses.length){
+                this.addresses = Arrays.copyOf(this.addresses, this.size * 2);
+                this.payloadTotals = Arrays.copyOf(this.payloadTotals, this.size * 2);
+            }
+            this.payloadTotals[this.size] = (this.size == 0 ? 0 : this.payloadTotals[this.size - 1]) + payloadLength;
+            this.addresses[this.size++] = address;
+        }
+
+        //The offset just past the record at the given ordinal, when the trail is rendered as text
+        private long renderedEnd(int ordinal, int recordOverhead){
+            return ordinal < 0 ? 0 : this.payloadTotals[ordinal] + (long)(ordinal + 1) * recordOverhead;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sixsense.io;
+
+import com.sixsense.model.logging.Loggers;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+
+import java.util.Map;
+
+/*Appends session log lines to the event journal, in place of the per-session files created by the routing appenders
+ * Log lines logged outside of a session context (i.e. without a sessionID in the ThreadContext) are passed on to the original routing appender of their logger*/
+public class JournalAppender extends AbstractAppender {
+    private final EventJournal eventJournal;
+    private final Map<String, Appender> fallbackAppenders; //key: logger name, value: the routing appender the logger was using
+
+    public JournalAppender(String name, EventJournal eventJournal, Map<String, Appender> fallbackAppenders) {
+        super(name, null, null, false);
+        this.eventJournal = eventJournal;
+        this.fallbackAppenders = fallbackAppenders;
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        String sessionId = event.getContextData().getValue("sessionID");
+        if(sessionId != null){
+            this.eventJournal.append(sessionId, Loggers.valueOf(event.getLoggerName()), event.getTimeMillis(), event.getMessage().getFormattedMessage());
+        }else{
+            Appender fallbackAppender = this.fallbackAppenders.get(event.getLoggerName());
+            if(fallbackAppender != null){
+                fallbackAppender.append(event);
+            }
+        }
+    }
+}
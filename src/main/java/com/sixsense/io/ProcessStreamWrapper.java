@@ -11,7 +11,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebuggable {
     //Loggers
@@ -22,10 +26,18 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
     private Session session; //parent session
     private InputStream processStream; //JVM input stream (i.e. terminal output stream)
     private final List<String> processOutput; //List representation of the parsed output
+    private final Lock processOutputLock; //Guards the process output, shared with the parent session
+    private final AtomicLong processOutputLength; //Characters held in the process output, shared with the parent session
+    private final Lock closureLock = new ReentrantLock(); //explicit locks (rather than monitors) do not pin virtual threads to their carrier thread
 
     //Diagnostics
     private final List<String> rawChunks;
-    private final Map<String, String> substitutionCriteria;
+
+    /*Substitution criteria are read for every chunk, but written very rarely.
+    * Therefore we replace the entire (immutable) criteria maps whenever a criterion is added, instead of locking them on every read*/
+    private volatile Map<String, String> substitutionCriteria;
+    private volatile Map<Pattern, String> compiledCriteria;
+    private final Lock criteriaLock = new ReentrantLock();
     private boolean isUnderDebug = false;
     private boolean isClosed = false;
 
@@ -33,22 +45,25 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
     * If the process output/error stream fills it's own buffer, the process will get stuck and no new commands may be written to it
     * ProcessStreamWrapper will continuously read from the process stream it receives in the constructor, to avoid the process jamming and failing the session
     * Each session has a map of open channels, through which it performs I/O with the required channel*/
-    ProcessStreamWrapper(InputStream processStream, Session session, List<String> processOutput) {
+    ProcessStreamWrapper(InputStream processStream, Session session, List<String> processOutput, Lock processOutputLock, AtomicLong processOutputLength) {
         this.processStream = processStream;
         this.session = session;
         this.processOutput = processOutput;
+        this.processOutputLock = processOutputLock;
+        this.processOutputLength = processOutputLength;
         this.rawChunks = new ArrayList<>();
-        this.substitutionCriteria = new LinkedHashMap<>();
+        this.substitutionCriteria = Collections.emptyMap();
+        this.compiledCriteria = Collections.emptyMap();
 
         //Initialize the default substitution criteria
-        this.substitutionCriteria.put(" *" + Literals.CarriageReturn + " *", ""); //trim all space characters around carriage returns
-        this.substitutionCriteria.put(" *" + Literals.LineBreak + " *", Literals.LineBreak); //while retaining the line breaks
+        this.addSubstitutionCriteria(" *" + Literals.CarriageReturn + " *", ""); //trim all space characters around carriage returns
+        this.addSubstitutionCriteria(" *" + Literals.LineBreak + " *", Literals.LineBreak); //while retaining the line breaks
     }
 
     @Override
     public Boolean get(){
         ThreadContext.put("sessionID", this.session.getShortSessionId());
-        logger.debug("started reading from stream for session " + this.session.getSessionShellId());
+        logger.debug("started reading from stream for session {}", this.session.getSessionShellId());
         byte[] rawDataBuffer = new byte[1024];
         int bytesRead;
 
@@ -56,15 +71,13 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
             bytesRead = readIntoBuffer(rawDataBuffer);
 
             if(bytesRead != -1) {
-                String currentChunk = parseRawChunk(rawDataBuffer, bytesRead);
-                String chunkAfterSubstitution = executeSubstitutionCriteria(currentChunk);
-                String[] splitChunk = chunkAfterSubstitution.split(Literals.LineBreak, -1);  //splitChunk will always have at least one entry (if no line break was read); passing -1 as the second argument will perform the maximum amount of possible splits, without omitting leading or trailing empty strings
-                addChunksToOutput(splitChunk);
+                this.session.addReceivedBytes(bytesRead);
+                processChunk(rawDataBuffer, bytesRead);
                 signalNewChunk();
             }
         } while (bytesRead != -1 && !this.isClosed()); //as long as eof wasn't reached and the process stream wasn't closed (these conditions are independent)
 
-        logger.debug("finished reading from stream for session " + this.session.getSessionShellId());
+        logger.debug("finished reading from stream for session {}", this.session.getSessionShellId());
         ThreadContext.remove("sessionID");
         return true;
     }
@@ -74,17 +87,28 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
             return this.processStream.read(rawDataBuffer);
         } catch (IOException e) {
             /*processStream.read() will throw an IO exception if closed while waiting for bytes.
-            * if the synchronization is held by another thread (invoking close()) we wait for it to finish before checking for closure reason */
-            synchronized (this) {
+            * if the closure lock is held by another thread (invoking close()) we wait for it to finish before checking for closure reason */
+            this.closureLock.lock();
+            try {
                 //verify the exception didn't happen due to manual termination or due to a natural session.close()
                 if (!this.isClosed() && !this.session.isTerminated()) {
                     logger.error("Failed to process command " + this.session.getTerminalIdentifier() + ". Caused by: " + e.getMessage());
                 }
+            }finally {
+                this.closureLock.unlock();
             }
             return -1; //will skip the condition and exit the loop in the get() method
         }
     }
 
+    //Parses the bytes read from the process stream, and appends them to the process output
+    void processChunk(byte[] rawData, int bytesRead){
+        String currentChunk = parseRawChunk(rawData, bytesRead);
+        String chunkAfterSubstitution = executeSubstitutionCriteria(currentChunk);
+        String[] splitChunk = chunkAfterSubstitution.split(Literals.LineBreak, -1);  //splitChunk will always have at least one entry (if no line break was read); passing -1 as the second argument will perform the maximum amount of possible splits, without omitting leading or trailing empty strings
+        addChunksToOutput(splitChunk);
+    }
+
     /*If any bytes have been read into the byte buffer, construct a string using the bytes in the buffer
      * add the chunk into the raw chunks list
      * then log that it has been parsed*/
@@ -94,7 +118,7 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
             synchronized (this.rawChunks) {
                 rawChunks.add(currentChunk);
             }
-            logger.debug("read chunk " + currentChunk + " directly from stream");
+            logger.debug("read chunk {} directly from stream", currentChunk);
         }
         terminalLogger.info(currentChunk);
         return currentChunk;
@@ -102,12 +126,10 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
 
     /*Execute the substitution criteria against the current chunk*/
     private String executeSubstitutionCriteria(String currentChunk){
-        synchronized (this.substitutionCriteria) {
-            for(Map.Entry<String, String> criterion : this.substitutionCriteria.entrySet()) {
-                String pattern = criterion.getKey();
-                String replacement = criterion.getValue();
-                currentChunk = currentChunk.replaceAll(pattern, replacement);
-            }
+        for(Map.Entry<Pattern, String> criterion : this.compiledCriteria.entrySet()) {
+            Pattern pattern = criterion.getKey();
+            String replacement = criterion.getValue();
+            currentChunk = pattern.matcher(currentChunk).replaceAll(replacement);
         }
 
         return currentChunk;
@@ -115,8 +137,15 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
 
     /*Add the split chunks into the list representation of the output*/
     private void addChunksToOutput(String[] splitChunk){
-        synchronized (this.processOutput) {
+        this.processOutputLock.lock();
+        try {
             if(splitChunk.length > 0) {
+                long addedLength = 0;
+                for(String chunk : splitChunk){
+                    addedLength += chunk.length();
+                }
+                this.processOutputLength.addAndGet(addedLength);
+
                 String firstChunk = splitChunk[0];
                 if (this.processOutput.isEmpty()) {
                     this.processOutput.add(firstChunk);
@@ -130,19 +159,26 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
                     this.processOutput.add(splitChunk[chunkIdx]);
                 }
             }
+        }finally {
+            this.processOutputLock.unlock();
         }
     }
 
     /*Signal the parent session that new chunks has been parsed (i.e. there is new output)*/
     private void signalNewChunk(){
         if(!this.isClosed()) {
+            boolean isDebugEnabled = logger.isDebugEnabled(); //the terminal identifier is built by concatenation, so only build it when it would be logged
             this.session.getCommandLock().lock();
-            logger.debug(this.session.getTerminalIdentifier() + " proccess stream acquired lock");
+            if(isDebugEnabled) {
+                logger.debug("{} proccess stream acquired lock", this.session.getTerminalIdentifier());
+            }
             try {
                 this.session.getNewChunkReceived().signalAll();
             } finally {
                 this.session.getCommandLock().unlock();
-                logger.debug(this.session.getTerminalIdentifier() + " proccess stream released lock");
+                if(isDebugEnabled) {
+                    logger.debug("{} proccess stream released lock", this.session.getTerminalIdentifier());
+                }
             }
         }
     }
@@ -154,15 +190,25 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
     }
 
     public Map<String, String> getSubstitutionCriteria(){
-        synchronized (this.substitutionCriteria) {
-            return Collections.unmodifiableMap(this.substitutionCriteria);
-        }
+        return this.substitutionCriteria;
     }
 
     public ProcessStreamWrapper addSubstitutionCriteria(String regex, String replacement){
-        synchronized (this.substitutionCriteria) {
-            this.substitutionCriteria.put(regex, replacement);
+        this.criteriaLock.lock();
+        try {
+            Map<String, String> updatedCriteria = new LinkedHashMap<>(this.substitutionCriteria);
+            updatedCriteria.put(regex, replacement);
+
+            Map<Pattern, String> updatedCompiledCriteria = new LinkedHashMap<>();
+            for(Map.Entry<String, String> criterion : updatedCriteria.entrySet()){
+                updatedCompiledCriteria.put(Pattern.compile(criterion.getKey()), criterion.getValue());
+            }
+
+            this.substitutionCriteria = Collections.unmodifiableMap(updatedCriteria);
+            this.compiledCriteria = Collections.unmodifiableMap(updatedCompiledCriteria);
             return this;
+        }finally {
+            this.criteriaLock.unlock();
         }
     }
 
@@ -181,13 +227,16 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
     }
 
     @Override
-    public synchronized void close() throws IOException {
+    public void close() throws IOException {
+        this.closureLock.lock();
         try {
             processStream.close();
             this.isClosed = true;
         }catch (IOException e){
             logger.error("Failed to close process stream for session " + this.session.getShortSessionId() + ". Caused by: " + e.getMessage());
             throw e;
+        }finally {
+            this.closureLock.unlock();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.sixsense.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*Passes on only the bytes whose position falls within [fromByte, toByte), discarding the rest
+ * The stream starts counting at the initial position, so a caller that has already seeked part of the way into the source can say where it is*/
+public class RangeOutputStream extends FilterOutputStream {
+    private final long fromByte;
+    private final long toByte;
+    private long position;
+
+    public RangeOutputStream(OutputStream out, long initialPosition, long fromByte, long toByte) {
+        super(out);
+        this.position = initialPosition;
+        this.fromByte = fromByte;
+        this.toByte = toByte;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(this.position >= this.fromByte && this.position < this.toByte){
+            this.out.write(b);
+        }
+        this.position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = Math.max(this.position, this.fromByte);
+        long end = Math.min(this.position + len, this.toByte);
+        if(start < end){
+            this.out.write(b, off + (int)(start - this.position), (int)(end - start));
+        }
+        this.position += len;
+    }
+
+    //Advances the position as if the bytes were written, without writing them
+    public void skip(long len) {
+        this.position += len;
+    }
+
+    //True once every byte of the range has been written, so the caller can stop producing output
+    public boolean isExhausted() {
+        return this.position >= this.toByte;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+}
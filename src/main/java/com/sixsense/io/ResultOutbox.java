@@ -0,0 +1,503 @@
+package com.sixsense.io;
+
+import com.sixsense.model.retention.OutboxRecord;
+import com.sixsense.model.retention.OutboxSyncPolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/*An append-only, disk backed queue of messages waiting to be published to the broker
+ * The outbox is split into segment files. Records are appended to the active segment, and read back in the order they were appended by a single reader (the outbox publisher).
+ * A segment is deleted once it is no longer the active segment, and all of it's records have been both read and confirmed.
+ * Records which were not confirmed before the engine stopped are read again after it restarts, so the same message may be published more than once.
+ *
+ * Segment layout: [int segment magic](record)* where the magic number (which is negative, so it cannot be mistaken for a record length) marks a segment of versioned records.
+ * Record layout: [int length][int crc32][payload] where length counts the payload bytes, and crc32 is the checksum of the payload.
+ * Payload layout: [byte version][correlation id][binding key][log text][content type][content encoding][int header count]([header name][byte header type][header value])*[int body length][body]
+ * where all strings are written with DataOutput.writeUTF(), and header values are written according to their type (string, long, int or boolean).
+ * A record failing it's checksum (i.e. partially written when the host crashed) ends it's segment.
+ * Segments written before records were versioned have no magic number, and their records are read as version 1 - without a version byte or a content encoding.
+ * Records of version 2 (and earlier) have no header types, and all of their header values are read as strings
+ *
+ * Segments are accessed through RandomAccessFile rather than FileChannel, since interrupting a thread closes any FileChannel it is using at the time
+ * (and engine threads are interrupted when the engine shuts down, which would close the outbox under every other thread)
+ *
+ * The outboxLock is only held to reserve space in the active segment, write the record and advance the positions - never while waiting on the disk.
+ * The reader reads record bodies outside of the lock through it's own file handle of each segment, and segments are forced to the disk outside of the lock
+ * as a group commit (see syncThrough()), so an engine thread appending under the Always sync policy only waits for the fsync which covers it's own record*/
+public class ResultOutbox implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ResultOutbox.class);
+    private static final String SegmentPrefix = "segment-";
+    private static final String SegmentSuffix = ".outbox";
+    private static final int FrameBytes = Integer.BYTES + Integer.BYTES;
+    private static final int SegmentMagic = 0xC5E6B0C5;
+    private static final byte LegacyRecordVersion = 1;
+    private static final byte ContentEncodingRecordVersion = 2;
+    private static final byte RecordVersion = 3;
+    private static final byte StringHeader = 0;
+    private static final byte LongHeader = 1;
+    private static final byte IntHeader = 2;
+    private static final byte BooleanHeader = 3;
+
+    private final Path outboxDirectory;
+    private final long segmentSize;
+    private final OutboxSyncPolicy syncPolicy;
+
+    //All of the fields below are guarded by the outboxLock
+    private final Lock outboxLock = new ReentrantLock();
+    private final Condition recordAppended = outboxLock.newCondition();
+    private final TreeMap<Integer, OutboxSegment> segments = new TreeMap<>(); //key: segment number, value: segment
+    private OutboxSegment activeSegment;
+    private int readSegment; //number of the segment the next record is read from
+    private long readPosition; //position of the next record in the read segment
+    private long unreadRecords = 0;
+    private long unconfirmedRecords = 0;
+    private boolean isClosed = false;
+
+    //Guards the fsync calls made outside of the outboxLock, and the synced position of each segment
+    private final Lock syncLock = new ReentrantLock();
+
+    public ResultOutbox(Path outboxDirectory, long segmentSize, OutboxSyncPolicy syncPolicy) throws IOException {
+        this.outboxDirectory = outboxDirectory;
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+
+        Files.createDirectories(outboxDirectory);
+        recoverSegments();
+        rollSegment();
+        this.readSegment = this.segments.firstKey();
+        this.readPosition = this.segments.firstEntry().getValue().firstRecordPosition;
+    }
+
+    //Appends the record, returning it's address. The address of the given record is ignored
+    public long append(OutboxRecord record) throws IOException {
+        byte[] payload = encodeRecord(record);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+
+        ByteBuffer frame = ByteBuffer.allocate(FrameBytes + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt((int)checksum.getValue());
+        frame.put(payload);
+
+        OutboxSegment segment;
+        OutboxSegment sealedSegment = null;
+        long recordPosition;
+        this.outboxLock.lock();
+        try {
+            if(this.isClosed){
+                throw new IOException("The result outbox is closed");
+            }
+
+            if(this.activeSegment.records > 0 && this.activeSegment.writePosition + frame.capacity() > this.segmentSize){
+                sealedSegment = this.activeSegment;
+                rollSegment();
+            }
+
+            segment = this.activeSegment;
+            recordPosition = segment.writePosition;
+            segment.file.seek(recordPosition);
+            segment.file.write(frame.array());
+
+            segment.writePosition += frame.capacity();
+            segment.records++;
+            this.unreadRecords++;
+            this.unconfirmedRecords++;
+            this.recordAppended.signalAll();
+        }finally {
+            this.outboxLock.unlock();
+        }
+
+        if(sealedSegment != null && !this.syncPolicy.equals(OutboxSyncPolicy.Never)){
+            syncThrough(sealedSegment, sealedSegment.writePosition);
+        }
+        if(this.syncPolicy.equals(OutboxSyncPolicy.Always)){
+            syncThrough(segment, recordPosition + frame.capacity());
+        }
+        return address(segment.number, recordPosition);
+    }
+
+    //Returns the next unread record, waiting up to the given timeout for a record to be appended. Returns null if no record was appended in time
+    public OutboxRecord poll(long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        long remainingNanos = unit.toNanos(timeout);
+        OutboxSegment segment;
+        long recordPosition;
+
+        this.outboxLock.lock();
+        try {
+            while(true){
+                if(this.isClosed){
+                    return null;
+                }
+
+                segment = this.segments.get(this.readSegment);
+                if(this.readPosition < segment.writePosition){
+                    if(segment.reader == null){
+                        segment.reader = new RandomAccessFile(segment.path.toFile(), "r");
+                    }
+                    recordPosition = this.readPosition;
+                    break;
+                }else if(segment != this.activeSegment){
+                    //all records of a sealed segment were read. Move on to the next segment
+                    segment.fullyRead = true;
+                    this.readSegment = this.segments.higherKey(segment.number);
+                    this.readPosition = this.segments.get(this.readSegment).firstRecordPosition;
+                    deleteIfDone(segment);
+                }else if(remainingNanos > 0){
+                    remainingNanos = this.recordAppended.awaitNanos(remainingNanos);
+                }else{
+                    return null;
+                }
+            }
+        }finally {
+            this.outboxLock.unlock();
+        }
+
+        /*The record is read outside of the outboxLock. There is a single reader, and a segment is only closed once it was fully read (or the outbox is closed),
+         * so nothing else uses the reader's file handle in the meantime. Only then is the read position advanced past the record*/
+        int length = readLength(segment.reader, recordPosition);
+        byte[] payload = readFully(segment.reader, recordPosition + FrameBytes, length).array();
+        OutboxRecord record = decodeRecord(payload, segment.isVersioned).withAddress(address(segment.number, recordPosition));
+
+        this.outboxLock.lock();
+        try {
+            if(!this.isClosed){
+                this.readPosition = recordPosition + FrameBytes + length;
+                this.unreadRecords--;
+            }
+        }finally {
+            this.outboxLock.unlock();
+        }
+        return record;
+    }
+
+    //Called once the broker has confirmed the record at the given address. Records which were never appended to the outbox have no address (0), and are ignored
+    public void confirm(long address){
+        this.outboxLock.lock();
+        try {
+            OutboxSegment segment = this.segments.get(segmentNumber(address));
+            if(segment != null && !this.isClosed){
+                segment.confirmed++;
+                this.unconfirmedRecords--;
+                deleteIfDone(segment);
+            }
+        }catch (IOException e){
+            logger.error("Failed to delete a confirmed result outbox segment. Caused by: " + e.getMessage());
+        }finally {
+            this.outboxLock.unlock();
+        }
+    }
+
+    //Forces the records appended to the active segment to the disk
+    public void sync() throws IOException {
+        OutboxSegment segment;
+        this.outboxLock.lock();
+        try {
+            if(this.isClosed) {
+                return;
+            }
+            segment = this.activeSegment;
+        }finally {
+            this.outboxLock.unlock();
+        }
+        syncThrough(segment, segment.writePosition);
+    }
+
+    /*Group commit - forces the segment to the disk, at least up to the given position. Called without holding the outboxLock
+     * Each fsync covers every record written to the segment before it started, so a thread waiting for the syncLock usually finds it's record
+     * was already synced by the thread ahead of it, and returns without an fsync of it's own*/
+    private void syncThrough(OutboxSegment segment, long position) throws IOException {
+        this.syncLock.lock();
+        try {
+            if(segment.syncedPosition >= position || segment.isClosed){
+                return;
+            }
+
+            long writtenPosition = segment.writePosition;
+            try {
+                segment.file.getFD().sync();
+            }catch (IOException e){
+                //a segment closed while it was synced was either deleted (all of it's records were confirmed) or closed along with the outbox
+                if(segment.isClosed){
+                    return;
+                }
+                throw e;
+            }
+            segment.syncedPosition = writtenPosition;
+        }finally {
+            this.syncLock.unlock();
+        }
+    }
+
+    public long getUnreadRecords(){
+        this.outboxLock.lock();
+        try {
+            return this.unreadRecords;
+        }finally {
+            this.outboxLock.unlock();
+        }
+    }
+
+    public long getUnconfirmedRecords(){
+        this.outboxLock.lock();
+        try {
+            return this.unconfirmedRecords;
+        }finally {
+            this.outboxLock.unlock();
+        }
+    }
+
+    /*This method assumes we are holding the outboxLock (or are still inside the constructor)
+     * The sealed segment is synced by the appending thread once it releases the outboxLock*/
+    private void rollSegment() throws IOException {
+        OutboxSegment previousSegment = this.activeSegment;
+        int nextNumber = this.segments.isEmpty() ? 1 : this.segments.lastKey() + 1;
+        OutboxSegment nextSegment = openSegment(nextNumber, true);
+        this.segments.put(nextNumber, nextSegment);
+        this.activeSegment = nextSegment;
+
+        if(previousSegment != null){
+            deleteIfDone(previousSegment);
+        }
+    }
+
+    //This method assumes we are holding the outboxLock
+    private void deleteIfDone(OutboxSegment segment) throws IOException {
+        if(segment != this.activeSegment && segment.fullyRead && segment.confirmed >= segment.records){
+            this.segments.remove(segment.number);
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    private OutboxSegment openSegment(int segmentNumber, boolean isNew) throws IOException {
+        Path segmentPath = this.outboxDirectory.resolve(String.format("%s%06d%s", SegmentPrefix, segmentNumber, SegmentSuffix));
+        if(isNew){
+            Files.deleteIfExists(segmentPath);
+        }
+
+        OutboxSegment segment = new OutboxSegment(segmentNumber, segmentPath, new RandomAccessFile(segmentPath.toFile(), "rw"));
+        if(isNew){
+            segment.file.writeInt(SegmentMagic);
+            segment.isVersioned = true;
+        }else{
+            segment.isVersioned = segment.file.length() >= Integer.BYTES && readFully(segment.file, 0, Integer.BYTES).getInt() == SegmentMagic;
+        }
+        segment.firstRecordPosition = segment.isVersioned ? Integer.BYTES : 0;
+        segment.writePosition = segment.firstRecordPosition;
+        return segment;
+    }
+
+    /*Reopens the segments left over from before the engine last restarted. Their records are all unconfirmed, and will be read again
+     * Recovered segments are never appended to - new records are always appended to a new segment*/
+    private void recoverSegments() throws IOException {
+        List<Integer> segmentNumbers = new ArrayList<>();
+        try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(this.outboxDirectory, SegmentPrefix + "*" + SegmentSuffix)){
+            for(Path segmentFile : segmentFiles){
+                String fileName = segmentFile.getFileName().toString();
+                try {
+                    segmentNumbers.add(Integer.parseInt(fileName.substring(SegmentPrefix.length(), fileName.length() - SegmentSuffix.length())));
+                }catch (NumberFormatException e){
+                    logger.warn("Ignoring unrecognized file " + fileName + " in the result outbox directory");
+                }
+            }
+        }
+
+        Collections.sort(segmentNumbers);
+        for(int segmentNumber : segmentNumbers){
+            OutboxSegment segment = openSegment(segmentNumber, false);
+            long fileSize = segment.file.length();
+            long recordPosition = segment.firstRecordPosition;
+            while(recordPosition + FrameBytes <= fileSize && isValidRecord(segment, recordPosition, fileSize)){
+                recordPosition += FrameBytes + readLength(segment.file, recordPosition);
+                segment.records++;
+            }
+
+            if(recordPosition < fileSize){
+                logger.warn("Truncating result outbox segment " + segmentNumber + " after " + segment.records + " records - the rest of the segment was not fully written");
+                segment.file.setLength(recordPosition);
+            }
+
+            if(segment.records == 0){
+                segment.close();
+                Files.deleteIfExists(segment.path);
+                continue;
+            }
+
+            segment.writePosition = recordPosition;
+            segment.syncedPosition = recordPosition;
+            this.segments.put(segmentNumber, segment);
+            this.unreadRecords += segment.records;
+            this.unconfirmedRecords += segment.records;
+        }
+
+        if(this.unreadRecords > 0) {
+            logger.info("Recovered " + this.unreadRecords + " unconfirmed records from " + this.segments.size() + " result outbox segments");
+        }
+    }
+
+    private boolean isValidRecord(OutboxSegment segment, long recordPosition, long fileSize) throws IOException {
+        ByteBuffer frame = readFully(segment.file, recordPosition, FrameBytes);
+        int length = frame.getInt();
+        int expectedChecksum = frame.getInt();
+        if(length <= 0 || recordPosition + FrameBytes + length > fileSize){
+            return false;
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(readFully(segment.file, recordPosition + FrameBytes, length));
+        return (int)checksum.getValue() == expectedChecksum;
+    }
+
+    private static int readLength(RandomAccessFile file, long recordPosition) throws IOException {
+        return readFully(file, recordPosition, Integer.BYTES).getInt();
+    }
+
+    private static byte[] encodeRecord(OutboxRecord record) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(record.getBody().length + 256);
+        try (DataOutputStream output = new DataOutputStream(payload)) {
+            output.writeByte(RecordVersion);
+            output.writeUTF(record.getCorrelationId());
+            output.writeUTF(record.getBindingKey());
+            output.writeUTF(record.getLogText());
+            output.writeUTF(record.getContentType() == null ? "" : record.getContentType());
+            output.writeUTF(record.getContentEncoding() == null ? "" : record.getContentEncoding());
+            output.writeInt(record.getHeaders().size());
+            for (Map.Entry<String, Object> header : record.getHeaders().entrySet()) {
+                output.writeUTF(header.getKey());
+                writeHeaderValue(output, header.getValue());
+            }
+            output.writeInt(record.getBody().length);
+            output.write(record.getBody());
+        }
+        return payload.toByteArray();
+    }
+
+    private static OutboxRecord decodeRecord(byte[] payload, boolean isVersioned) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = isVersioned ? input.readByte() : LegacyRecordVersion;
+            if(version < LegacyRecordVersion || version > RecordVersion){
+                throw new IOException("Unsupported result outbox record version " + version);
+            }
+
+            String correlationId = input.readUTF();
+            String bindingKey = input.readUTF();
+            String logText = input.readUTF();
+            String contentType = input.readUTF();
+            String contentEncoding = version >= ContentEncodingRecordVersion ? input.readUTF() : "";
+
+            int headerCount = input.readInt();
+            Map<String, Object> headers = new LinkedHashMap<>();
+            for (int header = 0; header < headerCount; header++) {
+                headers.put(input.readUTF(), version >= RecordVersion ? readHeaderValue(input) : input.readUTF());
+            }
+
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new OutboxRecord(0, correlationId, bindingKey, logText, contentType.isEmpty() ? null : contentType, contentEncoding.isEmpty() ? null : contentEncoding, headers, body);
+        }
+    }
+
+    //Header values of any other type are stored as their string value
+    private static void writeHeaderValue(DataOutputStream output, Object value) throws IOException {
+        if(value instanceof Long){
+            output.writeByte(LongHeader);
+            output.writeLong((Long)value);
+        }else if(value instanceof Integer){
+            output.writeByte(IntHeader);
+            output.writeInt((Integer)value);
+        }else if(value instanceof Boolean){
+            output.writeByte(BooleanHeader);
+            output.writeBoolean((Boolean)value);
+        }else{
+            output.writeByte(StringHeader);
+            output.writeUTF(String.valueOf(value));
+        }
+    }
+
+    private static Object readHeaderValue(DataInputStream input) throws IOException {
+        byte headerType = input.readByte();
+        switch (headerType){
+            case StringHeader: return input.readUTF();
+            case LongHeader: return input.readLong();
+            case IntHeader: return input.readInt();
+            case BooleanHeader: return input.readBoolean();
+            default: throw new IOException("Unsupported result outbox header type " + headerType);
+        }
+    }
+
+    private static ByteBuffer readFully(RandomAccessFile file, long position, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        file.seek(position);
+        file.readFully(buffer);
+        return ByteBuffer.wrap(buffer);
+    }
+
+    private static long address(int segmentNumber, long segmentOffset){
+        return ((long)segmentNumber << 32) | (segmentOffset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentNumber(long address){
+        return (int)(address >>> 32);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.outboxLock.lock();
+        try {
+            this.isClosed = true;
+            this.recordAppended.signalAll();
+            for(OutboxSegment segment : this.segments.values()){
+                if(!this.syncPolicy.equals(OutboxSyncPolicy.Never)) {
+                    segment.file.getFD().sync();
+                }
+                segment.close();
+            }
+        }finally {
+            this.outboxLock.unlock();
+        }
+    }
+
+    private static class OutboxSegment{
+        private final int number;
+        private final Path path;
+        private final RandomAccessFile file; //written to by appending threads under the outboxLock, and synced under the syncLock
+        private RandomAccessFile reader; //opened by the reader under the outboxLock, and only read from by the reader
+        private boolean isVersioned; //false for segments written before records were versioned
+        private long firstRecordPosition; //past the segment magic of a versioned segment
+        private volatile long writePosition = 0; //updated under the outboxLock, once the record was written
+        private long syncedPosition = 0; //guarded by the syncLock
+        private int records = 0;
+        private int confirmed = 0;
+        private boolean fullyRead = false;
+        private volatile boolean isClosed = false;
+
+        private OutboxSegment(int number, Path path, RandomAccessFile file) {
+            this.number = number;
+            this.path = path;
+            this.file = file;
+        }
+
+        private void close() throws IOException {
+            this.isClosed = true;
+            try {
+                this.file.close();
+            }finally {
+                if(this.reader != null){
+                    this.reader.close();
+                }
+            }
+        }
+    }
+}
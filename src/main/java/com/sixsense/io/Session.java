@@ -1,10 +1,12 @@
 package com.sixsense.io;
 
 
-import com.sixsense.api.amqp.OperationProducer;
+import com.sixsense.api.amqp.RetentionBatcher;
 import com.sixsense.config.HostConfig;
 import com.sixsense.model.commands.ICommand;
 import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.ExecutionState;
+import com.sixsense.model.events.EngineEventType;
 import com.sixsense.model.events.InputSentEvent;
 import com.sixsense.model.events.OutcomeEvaluationEvent;
 import com.sixsense.model.events.OutputReceivedEvent;
@@ -13,11 +15,14 @@ import com.sixsense.model.logging.IDebuggable;
 import com.sixsense.model.logging.Loggers;
 import com.sixsense.model.logic.ExpressionResult;
 import com.sixsense.model.logic.ResultStatus;
+import com.sixsense.model.metrics.EngineTimer;
 import com.sixsense.model.retention.DataType;
 import com.sixsense.model.retention.DatabaseVariable;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.model.timeline.OperationTimeline;
 import com.sixsense.services.DiagnosticManager;
+import com.sixsense.services.MetricsManager;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.LogicalExpressionResolver;
@@ -26,11 +31,14 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -42,7 +50,8 @@ public class Session implements Closeable, IDebuggable {
     private static final Logger sessionLogger = LogManager.getLogger(Loggers.SessionLogger.name());
     @Autowired private ThreadingManager threadingManager;
     @Autowired private DiagnosticManager diagnosticManager;
-    @Autowired private OperationProducer operationProducer;
+    @Autowired private MetricsManager metricsManager;
+    @Autowired private RetentionBatcher retentionBatcher;
 
     //Connection, synchronization and debugging
     private final Map<String, ShellChannel> channels;
@@ -64,6 +73,11 @@ public class Session implements Closeable, IDebuggable {
     private String evaluatedCommand = "";
     private String currentPrompt = "";
 
+    //Execution timeline (null unless timelines are enabled)
+    private OperationTimeline timeline;
+    private final ExecutionState executionState = new ExecutionState(); //progress of this session through the (shared) command tree of it's operation
+    private final LongAdder receivedBytes = new LongAdder(); //incremented by the process stream wrappers of all channels
+
     //Dynamic fields
     private final Map<String, Deque<ResultRetention>> sessionVariables;
     private final Set<DatabaseVariable> databaseVariables;
@@ -117,6 +131,8 @@ public class Session implements Closeable, IDebuggable {
 
         //output
         final List<String> processOutput = channel.getChannelOutput(); //The structured output from the process wrapped by the ProcessStreamWrapper for the current channel
+        final Lock processOutputLock = channel.getChannelOutputLock(); //Guards the process output against concurrent modification by the ProcessStreamWrapper
+        final AtomicLong processOutputLength = channel.getBufferedOutputCounter(); //Characters held in the process output, reduced whenever lines are removed from it
         String parsedOutput = ""; //The string representation of the process output, parsed by this session for the current command
 
         //Halting conditions and elapsed time
@@ -129,6 +145,8 @@ public class Session implements Closeable, IDebuggable {
         /*And now the fun begins...*/
         assignContextVariables(command);
         this.commandLock.lock();
+        long roundTripStart = System.nanoTime();
+        long receivedBytesAtStart = this.receivedBytes.sum();
         writeCommand(channel);
 
         sleepMinimalSecondsToResponse();
@@ -137,22 +155,33 @@ public class Session implements Closeable, IDebuggable {
              *and returns a boolean which is true only if the command has certainly finished writing it's output (if true, then certainly finished. if false, may be either way)
              *CommandUtils.pipeCommandOutput() passes the output through any pipes defined by this command, possibly mutating, replacing or truncating it. */
             List<String> pipedProcessOutput;
-            synchronized (processOutput) {
-                commandEndReached = this.removeOutdatedChunks(processOutput);
+            processOutputLock.lock();
+            try {
+                long promptDetectionStart = System.nanoTime();
+                commandEndReached = removeOutdatedChunks(processOutput, processOutputLength, this.evaluatedCommand, this.currentPrompt);
+                metricsManager.record(EngineTimer.PromptDetection, System.nanoTime() - promptDetectionStart);
                 pipedProcessOutput = new ArrayList<>(CommandUtils.pipeCommandOutput(this, processOutput));
+            }finally {
+                processOutputLock.unlock();
             }
 
             parsedOutput = parsePipedOutput(pipedProcessOutput);
+            long resolutionStart = System.nanoTime();
             resolvedOutcome = attemptToResolve(parsedOutput);
+            metricsManager.record(EngineTimer.OutcomeResolution, System.nanoTime() - resolutionStart);
             hasWaitElapsed = awaitIfNeeded(resolvedOutcome, commandEndReached);
         }
 
+        metricsManager.record(EngineTimer.CommandRoundTrip, System.nanoTime() - roundTripStart);
+        if(this.timeline != null){
+            this.timeline.addBytes(0, this.receivedBytes.sum() - receivedBytesAtStart);
+        }
         emitOutputEvents(parsedOutput);
         this.commandLock.unlock();
 
         retainResult(parsedOutput, resolvedOutcome);
         if(command.isRequiresCleanup() || commandEndReached) {
-            cleanOutput(processOutput);
+            cleanOutput(processOutput, processOutputLength, processOutputLock);
         }
 
         return resolvedOutcome;
@@ -179,8 +208,14 @@ public class Session implements Closeable, IDebuggable {
             try {
                 channel.write(this.evaluatedCommand + Literals.LineBreak);
                 channel.flush();
+                if(this.timeline != null){
+                    this.timeline.addBytes((this.evaluatedCommand + Literals.LineBreak).getBytes(StandardCharsets.UTF_8).length, 0);
+                }
 
-                diagnosticManager.emit(new InputSentEvent(this, this.currentCommand, this.commandOrdinal, this.evaluatedCommand));
+                Command sentCommand = this.currentCommand;
+                int sentOrdinal = this.commandOrdinal;
+                String sentInput = this.evaluatedCommand;
+                diagnosticManager.emit(this, EngineEventType.InputSent, () -> new InputSentEvent(this, sentCommand, sentOrdinal, sentInput));
             } catch (IOException e) {
                 sessionLogger.error("Failed to write command " + this.evaluatedCommand + " to channel " + channel.getName() + ". Caused by: " + e.getMessage());
                 throw e;
@@ -190,15 +225,24 @@ public class Session implements Closeable, IDebuggable {
 
     //This method assumes we are holding the commandLock for this session
     private void sleepMinimalSecondsToResponse(){
+        long sleepStart = System.nanoTime();
         try {
             this.minimalSleepTerminated.await(this.currentCommand.getMinimalSecondsToResponse(), TimeUnit.SECONDS);
         }catch (InterruptedException e){
             //Basically this shouldn't happen, as we use newChunkReceived.signalAll() to interrupt the await() clause
             sessionLogger.warn(Literals.Tab + "Session " + this.getShortSessionId() + " interrupted during the minimal seconds to response for command " + this.commandOrdinal, e.getMessage());
         }
+        recordWaiting(EngineTimer.MinimalSleep, System.nanoTime() - sleepStart);
     }
 
-    /*This method assumes we are holding the synchronized block for the (List<String> output) in question
+    private void recordWaiting(EngineTimer waitTimer, long waitingNanos){
+        metricsManager.record(waitTimer, waitingNanos);
+        if(this.timeline != null){
+            this.timeline.addWaitingNanos(waitingNanos);
+        }
+    }
+
+    /*This method assumes we are holding the output lock for the (List<String> output) in question
 
      * We scan for the current prompt and the last evaluated command in the output
      * and return the latest chunk that satisfies either of the following conditions:
@@ -209,16 +253,16 @@ public class Session implements Closeable, IDebuggable {
      *
      * Then we clear the output of all outdated chunks,
      * and return if the current chunk lies between two occurrences of the current prompt*/
-    private boolean removeOutdatedChunks(List<String> output){
+    static boolean removeOutdatedChunks(List<String> output, AtomicLong outputLength, String evaluatedCommand, String currentPrompt){
         if(output.isEmpty()){
             return false;
         }
 
         String firstLineOfCommand;
-        if(this.evaluatedCommand.contains("\n")){
-            firstLineOfCommand = this.evaluatedCommand.substring(0, this.evaluatedCommand.indexOf('\n')+1); //if the command contains multiple lines, only search for the first line in the output
+        if(evaluatedCommand.contains("\n")){
+            firstLineOfCommand = evaluatedCommand.substring(0, evaluatedCommand.indexOf('\n')+1); //if the command contains multiple lines, only search for the first line in the output
         }else{
-            firstLineOfCommand = this.evaluatedCommand;
+            firstLineOfCommand = evaluatedCommand;
         }
 
         int firstRelevantIdx = 0; //all lines before this index (zero-based) will be cleared
@@ -228,7 +272,7 @@ public class Session implements Closeable, IDebuggable {
         boolean commandAppearsOnce = false;
         for (int lineNum = output.size() - 1; lineNum >= 0 && promptScore + cmdScore < 2; lineNum--) {
             String currentLine = output.get(lineNum);
-            if(currentLine.startsWith(this.currentPrompt)){
+            if(currentLine.startsWith(currentPrompt)){
                 promptScore++;
                 firstRelevantIdx = lineNum;
                 if(currentLine.contains(firstLineOfCommand)){
@@ -241,10 +285,12 @@ public class Session implements Closeable, IDebuggable {
             }
         }
 
+        long removedLength = 0;
         while(firstRelevantIdx > 0){
-            output.remove(0);
+            removedLength += output.remove(0).length();
             firstRelevantIdx--;
         }
+        outputLength.addAndGet(-removedLength);
 
         return commandAppearsOnce && promptAppearsTwice; //We assume that if the prompt appears twice, and the command appears once, than case 1) is met
     }
@@ -254,21 +300,21 @@ public class Session implements Closeable, IDebuggable {
         if(this.currentCommand.isUseRawOutput()) {
             return String.join(Literals.LineBreak, pipedProcessOutput);
         }else {
-            return this.filterRawOutput(pipedProcessOutput);
+            return filterRawOutput(pipedProcessOutput, this.evaluatedCommand, this.currentPrompt);
         }
     }
 
     /*We could theoretically just apply a ClearingPipe and then a WhitespacePipe
     * But then changes to the pipes could affect the session filtering methods*/
-    private String filterRawOutput(List<String> output){
+    static String filterRawOutput(List<String> output, String evaluatedCommand, String currentPrompt){
         StringJoiner stringRepresentation = new StringJoiner(" ");
         for(String line : output){
             String filteredLine = line
                     .replace(Literals.CarriageReturn+ Literals.LineBreak, " ")
                     .replace(Literals.LineBreak, " ")
                     .replace(Literals.CarriageReturn, " ")
-                    .replace(this.evaluatedCommand, "")
-                    .replace(this.currentPrompt, "");
+                    .replace(evaluatedCommand, "")
+                    .replace(currentPrompt, "");
 
             /*we do not add blank lines to the string representation, to prevent redundant whitespace being inserted into the filtered output
             * case 1 :
@@ -287,8 +333,8 @@ public class Session implements Closeable, IDebuggable {
 
         return stringRepresentation.toString()
                 .replaceAll("\\s+", " ")
-                .replace(this.evaluatedCommand, "")
-                .replace(this.currentPrompt, "");
+                .replace(evaluatedCommand, "")
+                .replace(currentPrompt, "");
     }
 
     /*We could theoretically just apply a ClearingPipe and then a WhitespacePipe
@@ -317,12 +363,14 @@ public class Session implements Closeable, IDebuggable {
         if(commandEndReached || resolvedOutcome.isResolved() || this.elapsedSeconds >= this.currentCommand.getSecondsToTimeout() - this.currentCommand.getMinimalSecondsToResponse()){
             return true;
         }else {
+            long awaitStart = System.nanoTime();
             try {
                 this.newChunkReceived.await(this.currentCommand.getSecondsToTimeout() - this.elapsedSeconds, TimeUnit.SECONDS);
             }catch (InterruptedException e){
                 //Basically this shouldn't happen, as we use newChunkReceived.signalAll() to interrupt the await() clause
                 sessionLogger.warn(Literals.Tab + "Session " + this.getShortSessionId() + " interrupted while waiting for command " + this.commandOrdinal + " to return. Caused by:", e.getMessage());
             }
+            recordWaiting(EngineTimer.OutputAwait, System.nanoTime() - awaitStart);
 
             return false;
         }
@@ -330,8 +378,10 @@ public class Session implements Closeable, IDebuggable {
 
     private void emitOutputEvents(String parsedOutput){
         if(!terminatedExternally) {
-            diagnosticManager.emit(new OutputReceivedEvent(this, this.currentCommand, this.commandOrdinal, parsedOutput));
-            diagnosticManager.emit(new OutcomeEvaluationEvent(this, parsedOutput, this.currentCommand.getExpectedOutcome()));
+            Command receivingCommand = this.currentCommand;
+            int receivingOrdinal = this.commandOrdinal;
+            diagnosticManager.emit(this, EngineEventType.OutputReceived, () -> new OutputReceivedEvent(this, receivingCommand, receivingOrdinal, parsedOutput));
+            diagnosticManager.emit(this, EngineEventType.OutcomeEvaluation, () -> new OutcomeEvaluationEvent(this, parsedOutput, receivingCommand.getExpectedOutcome()));
         }
     }
 
@@ -372,7 +422,7 @@ public class Session implements Closeable, IDebuggable {
             }
 
             //And emit a result retention event
-            diagnosticManager.emit(new ResultRetentionEvent(this, clonedRetention));
+            diagnosticManager.emit(this, EngineEventType.ResultRetention, () -> new ResultRetentionEvent(this, clonedRetention));
         }
     }
 
@@ -408,7 +458,7 @@ public class Session implements Closeable, IDebuggable {
     }
 
     private void retainToDatabaseImmediately(ResultRetention clonedRetention){
-        operationProducer.produceRetentionResult(this.operationId, new DatabaseVariable()
+        retentionBatcher.retain(this.operationId, new DatabaseVariable()
             .withDataType(clonedRetention.getDataType())
             .withName(clonedRetention.getName())
             .withValue(clonedRetention.getValue())
@@ -429,13 +479,18 @@ public class Session implements Closeable, IDebuggable {
     /*Perform a cleanup on the process output if a cleanup is required (by default or if commandEndReached is true)
      * If commandEndReached is true, the last line is the current prompt; we can safely remove all preceding lines
      * If a cleanup is required, we have no guarantee the last line is not being edited; but we can still safely remove all preceding lines*/
-    private void cleanOutput(final List<String> processOutput){
-        synchronized (processOutput) {
+    private void cleanOutput(final List<String> processOutput, final AtomicLong processOutputLength, final Lock processOutputLock){
+        processOutputLock.lock();
+        try {
             int cleanupCounter = processOutput.size() - 1; //all lines before this index (zero-based) will be cleared
+            long removedLength = 0;
             while (cleanupCounter > 0) {
-                processOutput.remove(0);
+                removedLength += processOutput.remove(0).length();
                 cleanupCounter--;
             }
+            processOutputLength.addAndGet(-removedLength);
+        }finally {
+            processOutputLock.unlock();
         }
     }
 
@@ -553,6 +608,23 @@ public class Session implements Closeable, IDebuggable {
         return Collections.unmodifiableSet(this.databaseVariables);
     }
 
+    public ExecutionState getExecutionState() {
+        return executionState;
+    }
+
+    public OperationTimeline getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(OperationTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    //Called by the process stream wrappers of this session's channels, from their own threads
+    void addReceivedBytes(int bytesRead){
+        this.receivedBytes.add(bytesRead);
+    }
+
     @Override
     public boolean isUnderDebug() {
         return isUnderDebug;
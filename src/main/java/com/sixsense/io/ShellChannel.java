@@ -18,6 +18,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ShellChannel implements Closeable, IDebuggable {
     private static final Logger sessionLogger = LogManager.getLogger(Loggers.SessionLogger.name());
@@ -25,7 +28,7 @@ public class ShellChannel implements Closeable, IDebuggable {
     //Engine session related parameters
     private final String name; //Identifying name for current channel
     private final com.sixsense.io.Session engineSession; //parent session (engine session)
-    private static final Object clientLock = new Object();
+    private static final Lock clientLock = new ReentrantLock(); //an explicit lock (rather than a monitor) does not pin virtual threads to their carrier thread while connecting
 
     //SSH connection related classes
     private static final DefaultConfig sshConfig = new DefaultConfig(); //Default configuration for ssh client
@@ -36,6 +39,13 @@ public class ShellChannel implements Closeable, IDebuggable {
     private final BufferedWriter channelInput; //Buffered writer through which to write commands to shell input stream
     private final ProcessStreamWrapper channelOutputWrapper; //Runs in a separate thread with one purpose: clear the output stream all the time and keep the responses coming in
     private final List<String> channelOutput; //Line separated response (which we read) from both the shell output and error streams.
+    private final Lock channelOutputLock; //Guards the channel output, shared by the session and the process stream wrapper
+    private final AtomicLong bufferedOutputLength = new AtomicLong(0); //Characters currently held in the channel output, updated (under the channel output lock) whenever lines are added or removed
+
+    //Timings of the channel creation steps, recorded by the session engine once the session is created
+    private long connectNanos = 0;
+    private long authenticationNanos = 0;
+    private long channelOpenNanos = 0;
 
     //State indicators
     private boolean isUnderDebug = false;
@@ -57,9 +67,16 @@ public class ShellChannel implements Closeable, IDebuggable {
             try {
                 this.sshClient = new SSHClient(sshConfig); //1) Create an ssh client
                 sshClient.addHostKeyVerifier(new PromiscuousVerifier());
-                synchronized (clientLock) {
+                clientLock.lock();
+                try {
+                    long connectStart = System.nanoTime();
                     sshClient.connect(localhostConfig.getHost(), localhostConfig.getPort()); //2) connect to the local operating system (self-connection)
+                    long authenticationStart = System.nanoTime();
                     sshClient.authPassword(localhostConfig.getUsername(), localhostConfig.getPassword());  //3) using the credentials from localhostConfig
+                    this.connectNanos = authenticationStart - connectStart;
+                    this.authenticationNanos = System.nanoTime() - authenticationStart;
+                }finally {
+                    clientLock.unlock();
                 }
             } catch (UserAuthException e) {
                 throw new IOException("Failed to authenticate local SSH connection while creating a new SSH client. Cauesed by: ", e);
@@ -70,10 +87,12 @@ public class ShellChannel implements Closeable, IDebuggable {
             }
 
             try {
+                long channelOpenStart = System.nanoTime();
                 Session session = this.sshClient.startSession(); //4) start an ssh channel using the ssh client
                 session.allocateDefaultPTY(); // 5)Allocate a pseudo-terminal to the ssh session (https://linux.die.net/man/7/pty)
                 session.startShell(); // 6)Start the shell by connecting to the allocated pty
                 this.sshChannel = (SessionChannel)session; // 7) and cast the channel to the implementing subclass to expose it's full api
+                this.channelOpenNanos = System.nanoTime() - channelOpenStart;
             } catch (IOException e) {
                 throw new IOException("Failed to start a new SSH session from the generated SSH client. Caused by: ", e);
             }
@@ -85,8 +104,9 @@ public class ShellChannel implements Closeable, IDebuggable {
         }
 
         this.channelOutput = new ArrayList<>();
+        this.channelOutputLock = new ReentrantLock();
         this.channelInput = new BufferedWriter(new OutputStreamWriter(this.sshChannel.getOutputStream()));
-        this.channelOutputWrapper = new ProcessStreamWrapper(this.sshChannel.getInputStream(), engineSession, channelOutput);
+        this.channelOutputWrapper = new ProcessStreamWrapper(this.sshChannel.getInputStream(), engineSession, channelOutput, channelOutputLock, bufferedOutputLength);
     }
 
     //In order for the shell to process your input as a command written by a user, it should end with a line break character.
@@ -111,10 +131,36 @@ public class ShellChannel implements Closeable, IDebuggable {
         return channelOutputWrapper;
     }
 
+    //The amount of output characters read from the shell, which have not yet been cleared by the session. Read without taking the channel output lock
+    public long getBufferedOutputLength() {
+        return bufferedOutputLength.get();
+    }
+
+    //Whoever adds or removes lines from the channel output (while holding the channel output lock) adjusts this counter by the length of those lines
+    public AtomicLong getBufferedOutputCounter() {
+        return bufferedOutputLength;
+    }
+
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    public long getAuthenticationNanos() {
+        return authenticationNanos;
+    }
+
+    public long getChannelOpenNanos() {
+        return channelOpenNanos;
+    }
+
     public List<String> getChannelOutput() {
         return channelOutput;
     }
 
+    public Lock getChannelOutputLock() {
+        return channelOutputLock;
+    }
+
     @Override
     public boolean isUnderDebug() {
         return isUnderDebug;
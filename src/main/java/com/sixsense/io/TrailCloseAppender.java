@@ -0,0 +1,29 @@
+package com.sixsense.io;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+
+import java.util.function.Consumer;
+
+/*Closes the trail files of a session once every line the session has logged is written to them
+ * Added as the last appender of an asynchronous session logger. When a session closes, the logging manager logs a close marker through the logger (with the session id in the ThreadContext).
+ * The background thread of the asynchronous appender hands events to it's appenders in the order they were logged, so by the time the marker arrives here, every earlier line of the session has been written*/
+public class TrailCloseAppender extends AbstractAppender {
+    private final Marker closeMarker;
+    private final Consumer<String> trailCloser; //receives the id of the session whose trail files should be closed
+
+    public TrailCloseAppender(String name, Marker closeMarker, Consumer<String> trailCloser) {
+        super(name, null, null, false);
+        this.closeMarker = closeMarker;
+        this.trailCloser = trailCloser;
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        String sessionId = event.getContextData().getValue("sessionID");
+        if(sessionId != null && event.getMarker() != null && event.getMarker().isInstanceOf(this.closeMarker)){
+            this.trailCloser.accept(sessionId);
+        }
+    }
+}
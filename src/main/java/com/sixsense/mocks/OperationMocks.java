@@ -9,10 +9,7 @@ import com.sixsense.model.devices.Device;
 import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.devices.VendorProductVersion;
 import com.sixsense.model.logic.*;
-import com.sixsense.model.pipes.ClearingPipe;
-import com.sixsense.model.pipes.FirstLinePipe;
-import com.sixsense.model.pipes.LastLinePipe;
-import com.sixsense.model.pipes.WhitespacePipe;
+import com.sixsense.model.pipes.*;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
 import com.sixsense.utillity.InternalCommands;
@@ -412,9 +409,10 @@ public class OperationMocks {
     private static ICommand inventory(){
         ICommand memory = new Command()
             .withChannel(ChannelType.REMOTE)
-            .withCommandText("cat /proc/meminfo | awk 'NR < 2 {print $2,$3}'")
+            .withCommandText("cat /proc/meminfo")
             .withSecondsToTimeout(15)
-            .addOutputPipe(new LastLinePipe())
+            .addOutputPipe(new LineFilterPipe("^MemTotal:"))
+            .addOutputPipe(new FieldSplitPipe(2, 3))
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>().addResolvable(
                     new ExpectedOutcome()
@@ -429,9 +427,12 @@ public class OperationMocks {
 
         ICommand cpu = new Command()
             .withChannel(ChannelType.REMOTE)
-            .withCommandText("cat /proc/cpuinfo | grep 'model name' | awk 'NR < 2' | sed 's/model name/ /g' |sed 's/://' | sed 's/^[[:space:]]*//' | sed 's/  */\\ /g'")
+            .withCommandText("cat /proc/cpuinfo")
             .withSecondsToTimeout(15)
-            .addOutputPipe(new LastLinePipe())
+            .addOutputPipe(new LineFilterPipe("^model name"))
+            .addOutputPipe(new LineRangePipe(1, 1))
+            .addOutputPipe(new KeyValuePipe("model name"))
+            .addOutputPipe(new WhitespacePipe())
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>()
                     .addResolvable(
@@ -452,9 +453,10 @@ public class OperationMocks {
 
         ICommand freeSpaceRoot = new Command()
             .withChannel(ChannelType.REMOTE)
-            .withCommandText("df -lh | grep /$ | awk '{print $4}'")
+            .withCommandText("df -lh")
             .withSecondsToTimeout(15)
-            .addOutputPipe(new LastLinePipe())
+            .addOutputPipe(new LineFilterPipe("\\s/\\s*$"))
+            .addOutputPipe(new FieldSplitPipe(4))
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>()
                     .withLogicalCondition(LogicalCondition.AND)
@@ -498,9 +500,10 @@ public class OperationMocks {
 
         ICommand freeSpaceVar = new Command()
             .withChannel(ChannelType.REMOTE)
-            .withCommandText("df -lh | grep /var$ | awk '{print $4}'")
+            .withCommandText("df -lh")
             .withSecondsToTimeout(15)
-            .addOutputPipe(new LastLinePipe())
+            .addOutputPipe(new LineFilterPipe("\\s/var\\s*$"))
+            .addOutputPipe(new FieldSplitPipe(4))
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>()
                     .withLogicalCondition(LogicalCondition.AND)
@@ -544,9 +547,11 @@ public class OperationMocks {
 
         ICommand uptime = new Command()
             .withChannel(ChannelType.REMOTE)
-            .withCommandText("uptime | awk '{print $3\" \"$4}' | sed 's|,||g'")
+            .withCommandText("uptime")
             .withSecondsToTimeout(15)
-            .addOutputPipe(new LastLinePipe())
+            .addOutputPipe(new LineFilterPipe("load average"))
+            //uptime output starts with a space, so splitting by a custom delimiter yields an empty first field (i.e. " 10:15:32 up 5 days,  3:02,  1 user" => "", "10:15:32", "up", "5", "days"...)
+            .addOutputPipe(new FieldSplitPipe(4, 5).withFieldDelimiter("[\\s,]+"))
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>()
                     .addResolvable(
@@ -18,8 +18,6 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
     private List<ICommand> childBlocks;
 
     private LogicalExpression<ExecutionCondition> repeatCondition;
-    private Iterator<ICommand> commandIterator;
-    private ICommand currentCommand;
 
     /*Try not to pollute with additional constructors
      * The empty constructor is for using the 'with' design pattern
@@ -40,37 +38,55 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
         return CommandUtils.chainCommands(this, additional);
     }
 
+    /*The block itself is never modified while executing - all progress is recorded in the execution state of the session context
+     * This allows the same block to be executed by several sessions at once*/
     public ICommand getNextCommand(Session context){
-        //If no iterator has been created, obtain an iterator from the childBlocks list
-        Iterator<ICommand> commandIterator = this.getCommandIterator();
+        return getNextCommand(context.getExecutionState(), context.getCurrentSessionVariables());
+    }
 
+    //The session variables are only used to resolve the repeat condition of the block
+    public ICommand getNextCommand(ExecutionState executionState, Map<String, String> sessionVariables){
         //If the last available command has been returned, return null
-        if(hasExhaustedCommands(context)){
+        if(hasExhaustedCommands(executionState, sessionVariables)){
             return null;
         }
 
+        //Fetched only after the check above, which replaces the cursor whenever a repeating block starts over
+        ExecutionState.BlockCursor cursor = executionState.getCursor(this);
+
         //If not returned by this step, there is a next command available
         //If the last command was a plain command, or already executed, obtain the next command.
-        if(this.currentCommand == null || this.currentCommand.isAlreadyExecuted()){
-            this.currentCommand = commandIterator.next();
+        ICommand currentCommand = cursor.getCurrentCommand();
+        if(currentCommand == null || executionState.isExecuted(currentCommand)){
+            currentCommand = childBlocks.get(cursor.getNextIndex());
+            //The same command instance may appear more than once in a tree. If so, it must start over as if it was never executed
+            executionState.reset(currentCommand);
+            cursor.advance(currentCommand);
         }
 
         //finally, return the next command which has not been executed
-        return this.currentCommand;
+        return currentCommand;
 
     }
 
     public boolean hasExhaustedCommands(Session context){
-        if(!this.getCommandIterator().hasNext()){
-            if(this.currentCommand == null){
+        return hasExhaustedCommands(context.getExecutionState(), context.getCurrentSessionVariables());
+    }
+
+    public boolean hasExhaustedCommands(ExecutionState executionState, Map<String, String> sessionVariables){
+        ExecutionState.BlockCursor cursor = executionState.getCursor(this);
+
+        if(cursor.getNextIndex() >= childBlocks.size()){
+            ICommand currentCommand = cursor.getCurrentCommand();
+            if(currentCommand == null){
                 return true;
-            }else if(!this.currentCommand.isAlreadyExecuted()){
+            }else if(!executionState.isExecuted(currentCommand)){
                 return false;
             }else if(this.repeatCondition.getResolvableExpressions().isEmpty()){
                 return true;
-            }else if(LogicalExpressionResolver.resolveLogicalExpression(context.getCurrentSessionVariables(), repeatCondition).isResolved()) {//as long as resolved, the halting condition is not met
+            }else if(LogicalExpressionResolver.resolveLogicalExpression(sessionVariables, repeatCondition).isResolved()) {//as long as resolved, the halting condition is not met
                 //If the passed block is a repeating block, which has not yet finished repeating, reset the current loop and return false
-                this.resetNextCommandLoop();
+                executionState.resetChildren(this);
                 return false;
             }
             return true;
@@ -78,20 +94,6 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
         return false;
     }
 
-    private void resetNextCommandLoop(){
-        this.reset();
-        this.commandIterator = childBlocks.iterator();
-        this.currentCommand = null;
-
-        for(ICommand command : this.getChildBlocks()){
-            if(command instanceof Block){
-                ((Block) command).resetNextCommandLoop();
-            }else if(command instanceof Command){
-                command.reset();
-            }
-        }
-    }
-
     public LogicalExpression<ExecutionCondition> getRepeatCondition() {
         return repeatCondition;
     }
@@ -105,13 +107,6 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
         return this;
     }
 
-    private Iterator<ICommand> getCommandIterator(){
-        if(this.commandIterator == null){
-            this.commandIterator = childBlocks.iterator();
-        }
-        return this.commandIterator;
-    }
-
     public List<ICommand> getChildBlocks() {
         return Collections.unmodifiableList(childBlocks);
     }
@@ -0,0 +1,77 @@
+package com.sixsense.model.commands;
+
+import java.util.*;
+
+/*Holds the mutable state of a single execution of a command tree (which commands were executed, and where each block has reached)
+ * The command tree itself is treated as a read-only definition during execution, and may be shared by any number of concurrent executions (i.e. one per device)
+ * Commands are tracked by identity rather than equality, since different commands in the same tree may be equal to each other.
+ * A single instance is owned by a single session, and is not thread safe*/
+public class ExecutionState {
+    private final Set<ICommand> executedCommands;
+    private final Map<Block, BlockCursor> blockCursors;
+
+    public ExecutionState() {
+        this.executedCommands = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.blockCursors = new IdentityHashMap<>();
+    }
+
+    public boolean isExecuted(ICommand command){
+        return this.executedCommands.contains(command);
+    }
+
+    public void markExecuted(ICommand command){
+        this.executedCommands.add(command);
+    }
+
+    BlockCursor getCursor(Block block){
+        return this.blockCursors.computeIfAbsent(block, key -> new BlockCursor());
+    }
+
+    //Reverts the command (and all of it's children, if it is a block) to it's pristine state, as if it was never executed in this execution
+    void reset(ICommand command){
+        this.executedCommands.remove(command);
+        if(command instanceof Block){
+            Block block = (Block)command;
+            if(this.blockCursors.remove(block) != null) {
+                for (ICommand child : block.getChildBlocks()) {
+                    reset(child);
+                }
+            }
+        }
+    }
+
+    //Reverts only the children of the block, leaving the block itself (and the block's own execution flag) intact
+    void resetChildren(Block block){
+        for(ICommand child : block.getChildBlocks()){
+            reset(child);
+        }
+        this.blockCursors.put(block, new BlockCursor());
+    }
+
+    //The execution state of a single block - the index of the next child to fetch, and the child most recently fetched
+    static class BlockCursor {
+        private int nextIndex = 0;
+        private ICommand currentCommand;
+
+        int getNextIndex() {
+            return nextIndex;
+        }
+
+        ICommand getCurrentCommand() {
+            return currentCommand;
+        }
+
+        void advance(ICommand nextCommand) {
+            this.currentCommand = nextCommand;
+            this.nextIndex++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionState{" +
+                "executedCommands=" + executedCommands.size() +
+                ", blockCursors=" + blockCursors.size() +
+                '}';
+    }
+}
@@ -16,6 +16,7 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
     private String operationName;
     private ICommand executionBlock;
     private Set<String> channelNames;
+    private int priority; //operations of a bounded workflow with the OPERATIONS_PRIORITIZED policy start by descending priority
 
     /*Try not to pollute with additional constructors
      * The empty constructor is for using the 'with' design pattern
@@ -25,13 +26,15 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
         this.operationName = "";
         this.executionBlock = new Block();
         this.channelNames = new HashSet<>();
+        this.priority = 0;
     }
 
-    public Operation(LogicalExpression<ExecutionCondition> executionCondition, LogicalExpression<ExpectedOutcome> expectedOutcome, List<ParallelWorkflow> sequentialWorkflowUponSuccess, List<ParallelWorkflow> sequentialWorkflowUponFailure, String operationName, ICommand executionBlock, Set<String> channelNames) {
+    public Operation(LogicalExpression<ExecutionCondition> executionCondition, LogicalExpression<ExpectedOutcome> expectedOutcome, List<ParallelWorkflow> sequentialWorkflowUponSuccess, List<ParallelWorkflow> sequentialWorkflowUponFailure, String operationName, ICommand executionBlock, Set<String> channelNames, int priority) {
         super(executionCondition, expectedOutcome, sequentialWorkflowUponSuccess, sequentialWorkflowUponFailure);
         this.operationName = operationName;
         this.executionBlock = executionBlock;
         this.channelNames = channelNames;
+        this.priority = priority;
     }
 
     public String getOperationName() {
@@ -82,6 +85,19 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
         return this;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public Operation withPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     @Override
     public ICommand chainCommands(ICommand additional) {
         throw new UnsupportedOperationException("Not yet supported, but it should be...");
@@ -93,6 +109,18 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
        return assignDefaults(new Operation());
     }
 
+    /*Returns a new instance of the same operation in its pristine state, which shares (rather than clones) the execution block of this operation
+     * Since execution progress is recorded in the execution state of each session, the execution block is only read while executing
+     * Use this method when fanning out the same operation to many devices, so the cost is independent of the execution block's size*/
+    public Operation instantiate(){
+        return (Operation)new Operation()
+                .withOperationName(this.operationName)
+                .withExecutionBlock(this.executionBlock)
+                .addChannelNames(this.channelNames)
+                .withPriority(this.priority)
+                .withSuperCloneState(this);
+    }
+
     //Reverts the same operation instance to it's pristine state.  That is - as if the same command was never executed
     @Override
     public Operation reset(){
@@ -104,6 +132,7 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
                 .withOperationName(this.operationName)
                 .withExecutionBlock(this.executionBlock.deepClone())
                 .addChannelNames(this.channelNames)
+                .withPriority(this.priority)
                 .withSuperCloneState(this);
     }
 
@@ -127,7 +156,8 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
     public boolean equals(Operation other) {
         return this.operationName.equals(other.operationName) &&
             this.executionBlock.equals(other.executionBlock) &&
-            this.channelNames.equals(other.channelNames);
+            this.channelNames.equals(other.channelNames) &&
+            this.priority == other.priority;
     }
 
     @Override
@@ -137,7 +167,7 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
 
     @Override
     public int hashCode() {
-        Stream<Object> childStream = Arrays.stream(new Object[]{operationName, executionBlock, channelNames});
+        Stream<Object> childStream = Arrays.stream(new Object[]{operationName, executionBlock, channelNames, priority});
         Stream<Object> superStream = Arrays.stream(superMembers());
 
         Object[] mergedMembers = Stream.concat(superStream, childStream).toArray();
@@ -150,6 +180,7 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
                 "operationName='" + operationName + '\'' +
                 ", executionBlock=" + executionBlock +
                 ", channelNames=" + channelNames +
+                ", priority=" + priority +
                 ", " + super.superToString() +
                 '}';
     }
@@ -14,6 +14,7 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
     private List<Operation> parallelOperations;
     private Map<String, OperationResult> operationOutcomes; //will gradually fill with the resolved outcomes of parallel operations. //key: operation id, value: operation result
     private Set<WorkflowPolicy> workflowPolicies;
+    private int maximumConcurrency; //operations running at the same time under the OPERATIONS_BOUNDED policy. Zero (or less) means the workflow is not bounded
 
     /*Try not to pollute with additional constructors
      * The empty constructor is for using the 'with' design pattern
@@ -28,13 +29,15 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
             WorkflowPolicy.PARENT_NOTIFICATION_LAZY,
             WorkflowPolicy.OPERATION_SEQUENCE_AGNOSTIC*/
         );
+        this.maximumConcurrency = 0;
     }
 
-    public ParallelWorkflow(LogicalExpression<ExecutionCondition> executionCondition, LogicalExpression<ExpectedOutcome> expectedOutcome, List<Operation> parallelOperations, List<ParallelWorkflow> sequentialWorkflowUponSuccess, List<ParallelWorkflow> sequentialWorkflowUponFailure, Set<WorkflowPolicy> workflowPolicies) {
+    public ParallelWorkflow(LogicalExpression<ExecutionCondition> executionCondition, LogicalExpression<ExpectedOutcome> expectedOutcome, List<Operation> parallelOperations, List<ParallelWorkflow> sequentialWorkflowUponSuccess, List<ParallelWorkflow> sequentialWorkflowUponFailure, Set<WorkflowPolicy> workflowPolicies, int maximumConcurrency) {
         super(executionCondition, expectedOutcome, sequentialWorkflowUponSuccess, sequentialWorkflowUponFailure);
         this.parallelOperations = parallelOperations;
         this.operationOutcomes = new HashMap<>();
         this.workflowPolicies = workflowPolicies;
+        this.maximumConcurrency = maximumConcurrency;
     }
 
     public synchronized int getTotalOperations() {
@@ -87,6 +90,19 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
         return this;
     }
 
+    public int getMaximumConcurrency() {
+        return maximumConcurrency;
+    }
+
+    public void setMaximumConcurrency(int maximumConcurrency) {
+        this.maximumConcurrency = maximumConcurrency;
+    }
+
+    public ParallelWorkflow withMaximumConcurrency(int maximumConcurrency) {
+        this.maximumConcurrency = maximumConcurrency;
+        return this;
+    }
+
     @Override
     public ICommand chainCommands(ICommand additional) {
         throw new UnsupportedOperationException("Not yet supported, but it should be...");
@@ -113,6 +129,7 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
         return (ParallelWorkflow)workflow
                 .addParallelOperations(clonedOperations)
                 .addWorkflowPolicies(this.workflowPolicies)
+                .withMaximumConcurrency(this.maximumConcurrency)
                 .withSuperCloneState(this);
     }
 
@@ -136,7 +153,8 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
     public boolean equals(ParallelWorkflow other) {
         return this.parallelOperations.equals(other.parallelOperations) &&
             this.operationOutcomes.equals(other.operationOutcomes) &&
-            this.workflowPolicies.equals(other.workflowPolicies);
+            this.workflowPolicies.equals(other.workflowPolicies) &&
+            this.maximumConcurrency == other.maximumConcurrency;
     }
 
     @Override
@@ -146,7 +164,7 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
 
     @Override
     public int hashCode() {
-        Stream<Object> childStream = Arrays.stream(new Object[]{parallelOperations, operationOutcomes, workflowPolicies});
+        Stream<Object> childStream = Arrays.stream(new Object[]{parallelOperations, operationOutcomes, workflowPolicies, maximumConcurrency});
         Stream<Object> superStream = Arrays.stream(superMembers());
 
         Object[] mergedMembers = Stream.concat(superStream, childStream).toArray();
@@ -159,6 +177,7 @@ public class ParallelWorkflow extends AbstractWorkflow implements ICommand, IWor
             "parallelOperations=" + parallelOperations +
             ", operationOutcomes=" + operationOutcomes +
             ", workflowPolicies=" + workflowPolicies +
+            ", maximumConcurrency=" + maximumConcurrency +
             ", " + super.superToString() +
             '}';
     }
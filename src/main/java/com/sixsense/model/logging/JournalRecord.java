@@ -0,0 +1,49 @@
+package com.sixsense.model.logging;
+
+//A single record read back from the event journal
+public class JournalRecord {
+    private final Loggers trail; //the logger the record was logged to
+    private final long timestamp; //epoch milliseconds
+    private final int ordinal; //position of the record among the records of it's session trail, starting at zero
+    private final String sessionId;
+    private final String payload;
+
+    public JournalRecord(Loggers trail, long timestamp, int ordinal, String sessionId, String payload) {
+        this.trail = trail;
+        this.timestamp = timestamp;
+        this.ordinal = ordinal;
+        this.sessionId = sessionId;
+        this.payload = payload;
+    }
+
+    public Loggers getTrail() {
+        return trail;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "trail=" + trail +
+                ", timestamp=" + timestamp +
+                ", ordinal=" + ordinal +
+                ", sessionId='" + sessionId + '\'' +
+                ", payload='" + payload + '\'' +
+                '}';
+    }
+}
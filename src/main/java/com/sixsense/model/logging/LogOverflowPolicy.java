@@ -0,0 +1,7 @@
+package com.sixsense.model.logging;
+
+//Determines what a session thread does when the asynchronous logging buffer is full
+public enum LogOverflowPolicy {
+    Block, //wait for the buffer to free up (no log lines are lost)
+    Drop //discard the log line, so the session thread never waits on disk I/O
+}
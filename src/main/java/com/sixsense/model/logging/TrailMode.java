@@ -0,0 +1,7 @@
+package com.sixsense.model.logging;
+
+//Determines where the session, command and terminal trails of each session are written
+public enum TrailMode {
+    Text, //a separate set of text files per session, created by the log4j routing appenders
+    Journal //records appended to a shared, segmented binary journal. Text trails are rendered from the journal on demand
+}
@@ -0,0 +1,59 @@
+package com.sixsense.model.logging;
+
+/*The part of a session trail requested by a client. Both ranges are half open, and a trail is streamed where they overlap
+ * Byte offsets refer to the trail as rendered in text (i.e. as it would appear in it's log file), while ordinals refer to the records (lines) of the trail*/
+public class TrailRange {
+    private final long fromByte;
+    private final long toByte;
+    private final int fromOrdinal;
+    private final int toOrdinal;
+
+    public TrailRange() {
+        this(0, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
+    }
+
+    public TrailRange(long fromByte, long toByte, int fromOrdinal, int toOrdinal) {
+        this.fromByte = Math.max(fromByte, 0);
+        this.toByte = toByte;
+        this.fromOrdinal = Math.max(fromOrdinal, 0);
+        this.toOrdinal = toOrdinal;
+    }
+
+    public long getFromByte() {
+        return fromByte;
+    }
+
+    public long getToByte() {
+        return toByte;
+    }
+
+    public int getFromOrdinal() {
+        return fromOrdinal;
+    }
+
+    public int getToOrdinal() {
+        return toOrdinal;
+    }
+
+    public boolean isByteBounded() {
+        return fromByte > 0 || toByte < Long.MAX_VALUE;
+    }
+
+    public boolean isOrdinalBounded() {
+        return fromOrdinal > 0 || toOrdinal < Integer.MAX_VALUE;
+    }
+
+    public boolean isEmpty() {
+        return fromByte >= toByte || fromOrdinal >= toOrdinal;
+    }
+
+    @Override
+    public String toString() {
+        return "TrailRange{" +
+                "fromByte=" + fromByte +
+                ", toByte=" + toByte +
+                ", fromOrdinal=" + fromOrdinal +
+                ", toOrdinal=" + toOrdinal +
+                '}';
+    }
+}
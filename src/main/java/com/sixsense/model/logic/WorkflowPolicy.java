@@ -3,6 +3,8 @@ package com.sixsense.model.logic;
 public enum WorkflowPolicy {
     OPERATIONS_INDEPENDENT, //Parallel workflows execute independently of each other
     OPERATIONS_DEPENDENT, //If a parallel workflow fails, terminate the rest of the parallel workflows (fail-fast)
+    OPERATIONS_BOUNDED, //Run at most maximumConcurrency parallel operations at the same time, starting the next operation as an earlier one ends
+    OPERATIONS_PRIORITIZED, //Start the operations of a bounded workflow by descending priority, rather than by their order in the workflow
 
     SELF_SEQUENCE_EAGER, //If an expected outcome has been achieved, run the sequential workflows immediately
     SELF_SEQUENCE_LAZY, //Wait until all parallel workflows have finished before running any sequential workflows
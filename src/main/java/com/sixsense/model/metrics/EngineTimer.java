@@ -0,0 +1,41 @@
+package com.sixsense.model.metrics;
+
+/*Each timer is published under it's metric name, with the given phase tag (if any).
+* Timers sharing a metric name are distinguished by their phase, so they can be summed or compared on the same graph*/
+public enum EngineTimer {
+
+    /*Session creation timers*/
+    SshConnect ("sixsense.ssh.connect", "", "Time to open the SSH connection of a session channel"),
+    SshAuthentication ("sixsense.ssh.authentication", "", "Time to authenticate the SSH connection of a session channel"),
+    ChannelOpen ("sixsense.channel.open", "", "Time to start a session channel and allocate it's pseudo-terminal"),
+    SessionCreation ("sixsense.session.creation", "", "Time to create a session, including all of it's channels"),
+
+    /*Command execution timers*/
+    CommandRoundTrip ("sixsense.command.round.trip", "", "Time from writing a command to the channel until it's outcome is resolved"),
+    MinimalSleep ("sixsense.command.wait", "minimal_sleep", "Time a command spends parked during it's minimal seconds to response"),
+    OutputAwait ("sixsense.command.wait", "awaiting_output", "Time a command spends parked waiting for new output chunks"),
+    PromptDetection ("sixsense.command.prompt.detection", "", "Time to scan the channel output for the current prompt and command"),
+    OutcomeResolution ("sixsense.command.outcome.resolution", "", "Time to resolve the expected outcome of a command against it's output");
+
+    private final String metricName;
+    private final String phase;
+    private final String description;
+
+    EngineTimer(String metricName, String phase, String description){
+        this.metricName = metricName;
+        this.phase = phase;
+        this.description = description;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
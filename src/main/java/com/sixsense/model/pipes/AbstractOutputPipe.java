@@ -1,9 +1,11 @@
 package com.sixsense.model.pipes;
 
 import com.sixsense.io.Session;
+import com.sixsense.utillity.Literals;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -12,8 +14,13 @@ import java.util.Objects;
 @JsonSubTypes({
     @JsonSubTypes.Type(value=ClearingPipe.class, name = "ClearingPipe"),
     @JsonSubTypes.Type(value=DrainingPipe.class, name = "DrainingPipe"),
+    @JsonSubTypes.Type(value=FieldSplitPipe.class, name = "FieldSplitPipe"),
     @JsonSubTypes.Type(value=FirstLinePipe.class, name = "FirstLinePipe"),
+    @JsonSubTypes.Type(value=KeyValuePipe.class, name = "KeyValuePipe"),
     @JsonSubTypes.Type(value=LastLinePipe.class, name = "LastLinePipe"),
+    @JsonSubTypes.Type(value=LineFilterPipe.class, name = "LineFilterPipe"),
+    @JsonSubTypes.Type(value=LineRangePipe.class, name = "LineRangePipe"),
+    @JsonSubTypes.Type(value=RegexCapturePipe.class, name = "RegexCapturePipe"),
     @JsonSubTypes.Type(value=WhitespacePipe.class, name = "WhitespacePipe")
 })
 public abstract class AbstractOutputPipe {
@@ -29,6 +36,16 @@ public abstract class AbstractOutputPipe {
         return pipedOutputWrapper.get(0);
     }
     public abstract List<String> pipe(Session session, List<String> output);
+
+    //Pipes which keep, drop or extract lines treat a (possibly multi-line) value as it's separate lines, and join the lines they keep. A value without remaining lines is piped into an empty string
+    protected String pipeLines(Session session, String output){
+        if(output == null){
+            return null;
+        }
+
+        List<String> pipedLines = pipe(session, Arrays.asList(output.split("\\R")));
+        return pipedLines == null ? "" : String.join(Literals.LineBreak, pipedLines);
+    }
     public abstract boolean equals(Object obj);
 
     @Override
@@ -0,0 +1,125 @@
+package com.sixsense.model.pipes;
+
+import com.sixsense.io.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/*Splits each line in the output list into fields by the field delimiter, and keeps only the selected fields, joined by the output separator. Equivalent to awk '{print $2,$3}'
+* Field numbers are one-based, and negative field numbers are counted from the end of the line (e.g. -1 is equivalent to awk's $NF)
+* As in awk, the default delimiter is any whitespace sequence, in which case leading and trailing whitespace is ignored*/
+public class FieldSplitPipe extends AbstractOutputPipe {
+    private static final String defaultDelimiter = "\\s+";
+
+    private List<Integer> fields;
+    private String fieldDelimiter;
+    private String outputSeparator;
+    private Pattern compiledDelimiter; //compiled once per pipe, instead of once per line
+
+    public FieldSplitPipe(){
+        this.fields = new ArrayList<>();
+        this.fieldDelimiter = defaultDelimiter;
+        this.outputSeparator = " ";
+        this.compiledDelimiter = Pattern.compile(defaultDelimiter);
+    }
+
+    public FieldSplitPipe(int... fields){
+        this();
+        for(int field : fields){
+            this.fields.add(field);
+        }
+    }
+
+    public FieldSplitPipe(List<Integer> fields, String fieldDelimiter, String outputSeparator){
+        this.fields = fields;
+        this.fieldDelimiter = fieldDelimiter;
+        this.outputSeparator = outputSeparator;
+        this.compiledDelimiter = Pattern.compile(fieldDelimiter);
+    }
+
+    @Override
+    public String pipe(Session session, String output) {
+        return pipeLines(session, output);
+    }
+
+    @Override
+    public List<String> pipe(Session session, List<String> output) {
+        if(output == null || output.isEmpty()){
+            return output;
+        }
+
+        boolean splitByWhitespace = defaultDelimiter.equals(fieldDelimiter);
+        List<String> pipedOutput = new ArrayList<>();
+        for(String nextLine : output){
+            String[] lineFields = compiledDelimiter.split(splitByWhitespace ? nextLine.strip() : nextLine);
+            StringJoiner selectedFields = new StringJoiner(outputSeparator);
+
+            for(int field : fields){
+                int fieldIndex = field < 0 ? lineFields.length + field : field - 1;
+                if(fieldIndex >= 0 && fieldIndex < lineFields.length){
+                    selectedFields.add(lineFields[fieldIndex]);
+                }
+            }
+            pipedOutput.add(selectedFields.toString());
+        }
+
+        return pipedOutput;
+    }
+
+    public List<Integer> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<Integer> fields) {
+        this.fields = fields;
+    }
+
+    public FieldSplitPipe withFields(List<Integer> fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    public String getFieldDelimiter() {
+        return fieldDelimiter;
+    }
+
+    public void setFieldDelimiter(String fieldDelimiter) {
+        this.fieldDelimiter = fieldDelimiter;
+        this.compiledDelimiter = Pattern.compile(fieldDelimiter);
+    }
+
+    public FieldSplitPipe withFieldDelimiter(String fieldDelimiter) {
+        this.setFieldDelimiter(fieldDelimiter);
+        return this;
+    }
+
+    public String getOutputSeparator() {
+        return outputSeparator;
+    }
+
+    public void setOutputSeparator(String outputSeparator) {
+        this.outputSeparator = outputSeparator;
+    }
+
+    public FieldSplitPipe withOutputSeparator(String outputSeparator) {
+        this.outputSeparator = outputSeparator;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            FieldSplitPipe otherAsPipe = (FieldSplitPipe) obj;
+            return Objects.equals(this.fields, otherAsPipe.fields) &&
+                Objects.equals(this.fieldDelimiter, otherAsPipe.fieldDelimiter) &&
+                Objects.equals(this.outputSeparator, otherAsPipe.outputSeparator);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.sixsense.model.pipes;
+
+import com.sixsense.io.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/*Parses each line in the output list as a key-value pair (e.g. "model name	: Intel(R) Xeon(R) CPU" in /proc/cpuinfo), and keeps the values of lines whose key equals the requested key
+* Keys and values are both stripped of surrounding whitespace. Lines without the key-value separator are dropped
+* If no key is requested, every key-value pair is kept, normalized to the form "key<separator>value"*/
+public class KeyValuePipe extends AbstractOutputPipe {
+    private String key;
+    private String keyValueSeparator;
+
+    public KeyValuePipe(){
+        this("", ":");
+    }
+
+    public KeyValuePipe(String key){
+        this(key, ":");
+    }
+
+    public KeyValuePipe(String key, String keyValueSeparator){
+        this.key = key;
+        this.keyValueSeparator = keyValueSeparator;
+    }
+
+    @Override
+    public String pipe(Session session, String output) {
+        return pipeLines(session, output);
+    }
+
+    @Override
+    public List<String> pipe(Session session, List<String> output) {
+        if(output == null || output.isEmpty()){
+            return output;
+        }
+
+        boolean keepAllPairs = key == null || key.isEmpty();
+        List<String> pipedOutput = new ArrayList<>();
+        for(String nextLine : output){
+            int separatorIndex = nextLine.indexOf(keyValueSeparator);
+            if(separatorIndex < 0){
+                continue;
+            }
+
+            String lineKey = nextLine.substring(0, separatorIndex).strip();
+            String lineValue = nextLine.substring(separatorIndex + keyValueSeparator.length()).strip();
+            if(keepAllPairs){
+                pipedOutput.add(lineKey + keyValueSeparator + lineValue);
+            }else if(lineKey.equals(key)){
+                pipedOutput.add(lineValue);
+            }
+        }
+
+        return pipedOutput;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public KeyValuePipe withKey(String key) {
+        this.key = key;
+        return this;
+    }
+
+    public String getKeyValueSeparator() {
+        return keyValueSeparator;
+    }
+
+    public void setKeyValueSeparator(String keyValueSeparator) {
+        this.keyValueSeparator = keyValueSeparator;
+    }
+
+    public KeyValuePipe withKeyValueSeparator(String keyValueSeparator) {
+        this.keyValueSeparator = keyValueSeparator;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            KeyValuePipe otherAsPipe = (KeyValuePipe) obj;
+            return Objects.equals(this.key, otherAsPipe.key) &&
+                Objects.equals(this.keyValueSeparator, otherAsPipe.keyValueSeparator);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sixsense.model.pipes;
+
+import com.sixsense.io.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+//Keeps only the lines in the output list which contain a match for the filter expression (or do not contain a match, if the filter is inverted). Equivalent to grep (or grep -v)
+public class LineFilterPipe extends AbstractOutputPipe {
+    private String expression;
+    private boolean invertMatch;
+    private Pattern compiledExpression; //compiled once per pipe, instead of once per line
+
+    public LineFilterPipe(){
+        this("", false);
+    }
+
+    public LineFilterPipe(String expression){
+        this(expression, false);
+    }
+
+    public LineFilterPipe(String expression, boolean invertMatch){
+        this.expression = expression;
+        this.invertMatch = invertMatch;
+        this.compiledExpression = Pattern.compile(expression);
+    }
+
+    @Override
+    public String pipe(Session session, String output) {
+        return pipeLines(session, output);
+    }
+
+    @Override
+    public List<String> pipe(Session session, List<String> output) {
+        if(output == null || output.isEmpty()){
+            return output;
+        }
+
+        List<String> pipedOutput = new ArrayList<>();
+        for(String nextLine : output){
+            if(compiledExpression.matcher(nextLine).find() != invertMatch){
+                pipedOutput.add(nextLine);
+            }
+        }
+
+        return pipedOutput;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+        this.compiledExpression = Pattern.compile(expression);
+    }
+
+    public LineFilterPipe withExpression(String expression) {
+        this.setExpression(expression);
+        return this;
+    }
+
+    public boolean isInvertMatch() {
+        return invertMatch;
+    }
+
+    public void setInvertMatch(boolean invertMatch) {
+        this.invertMatch = invertMatch;
+    }
+
+    public LineFilterPipe withInvertMatch(boolean invertMatch) {
+        this.invertMatch = invertMatch;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            LineFilterPipe otherAsPipe = (LineFilterPipe) obj;
+            return this.invertMatch == otherAsPipe.invertMatch &&
+                Objects.equals(this.expression, otherAsPipe.expression);
+        }
+    }
+}
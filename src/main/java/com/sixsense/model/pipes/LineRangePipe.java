@@ -0,0 +1,86 @@
+package com.sixsense.model.pipes;
+
+import com.sixsense.io.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*Keeps only the lines in the output list between the first and last line numbers (both one-based and inclusive). Equivalent to awk 'NR >= first && NR <= last'
+* Negative line numbers are counted from the end of the output (e.g. -1 is the last line), so head and tail can be expressed as well*/
+public class LineRangePipe extends AbstractOutputPipe {
+    private int firstLine;
+    private int lastLine;
+
+    public LineRangePipe(){
+        this(1, -1);
+    }
+
+    public LineRangePipe(int firstLine, int lastLine){
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+    }
+
+    @Override
+    public String pipe(Session session, String output) {
+        return pipeLines(session, output);
+    }
+
+    @Override
+    public List<String> pipe(Session session, List<String> output) {
+        if(output == null || output.isEmpty()){
+            return output;
+        }
+
+        int fromIndex = Math.max(toIndex(firstLine, output.size()), 0);
+        int toIndex = Math.min(toIndex(lastLine, output.size()), output.size() - 1);
+        if(fromIndex > toIndex){
+            return new ArrayList<>();
+        }
+
+        return new ArrayList<>(output.subList(fromIndex, toIndex + 1));
+    }
+
+    //Converts a one-based (or negative, counted from the end) line number to a zero-based list index
+    private int toIndex(int lineNumber, int outputSize){
+        return lineNumber < 0 ? outputSize + lineNumber : lineNumber - 1;
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    public void setFirstLine(int firstLine) {
+        this.firstLine = firstLine;
+    }
+
+    public LineRangePipe withFirstLine(int firstLine) {
+        this.firstLine = firstLine;
+        return this;
+    }
+
+    public int getLastLine() {
+        return lastLine;
+    }
+
+    public void setLastLine(int lastLine) {
+        this.lastLine = lastLine;
+    }
+
+    public LineRangePipe withLastLine(int lastLine) {
+        this.lastLine = lastLine;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            LineRangePipe otherAsPipe = (LineRangePipe) obj;
+            return this.firstLine == otherAsPipe.firstLine &&
+                this.lastLine == otherAsPipe.lastLine;
+        }
+    }
+}
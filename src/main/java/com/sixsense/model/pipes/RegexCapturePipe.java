@@ -0,0 +1,97 @@
+package com.sixsense.model.pipes;
+
+import com.sixsense.io.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*Replaces each line in the output list with the value captured by the capture expression, dropping lines which do not match it at all
+* If a capture group is specified (e.g. "(?<serial>\\S+)" with capture group "serial"), only the named group is kept. Otherwise, the entire match is kept*/
+public class RegexCapturePipe extends AbstractOutputPipe {
+    private String expression;
+    private String captureGroup;
+    private Pattern compiledExpression; //compiled once per pipe, instead of once per line
+
+    public RegexCapturePipe(){
+        this("", "");
+    }
+
+    public RegexCapturePipe(String expression){
+        this(expression, "");
+    }
+
+    public RegexCapturePipe(String expression, String captureGroup){
+        this.expression = expression;
+        this.captureGroup = captureGroup;
+        this.compiledExpression = Pattern.compile(expression);
+    }
+
+    @Override
+    public String pipe(Session session, String output) {
+        return pipeLines(session, output);
+    }
+
+    @Override
+    public List<String> pipe(Session session, List<String> output) {
+        if(output == null || output.isEmpty()){
+            return output;
+        }
+
+        boolean captureWholeMatch = captureGroup == null || captureGroup.isEmpty();
+        List<String> pipedOutput = new ArrayList<>();
+        for(String nextLine : output){
+            Matcher matcher = compiledExpression.matcher(nextLine);
+            if(matcher.find()){
+                String capturedValue = captureWholeMatch ? matcher.group() : matcher.group(captureGroup);
+                if(capturedValue != null){ //a named group may not participate in the match (e.g. optional groups)
+                    pipedOutput.add(capturedValue);
+                }
+            }
+        }
+
+        return pipedOutput;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+        this.compiledExpression = Pattern.compile(expression);
+    }
+
+    public RegexCapturePipe withExpression(String expression) {
+        this.setExpression(expression);
+        return this;
+    }
+
+    public String getCaptureGroup() {
+        return captureGroup;
+    }
+
+    public void setCaptureGroup(String captureGroup) {
+        this.captureGroup = captureGroup;
+    }
+
+    public RegexCapturePipe withCaptureGroup(String captureGroup) {
+        this.captureGroup = captureGroup;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            RegexCapturePipe otherAsPipe = (RegexCapturePipe) obj;
+            return Objects.equals(this.expression, otherAsPipe.expression) &&
+                Objects.equals(this.captureGroup, otherAsPipe.captureGroup);
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.sixsense.model.retention;
 
 import com.sixsense.model.interfaces.IEquatable;
 import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.timeline.OperationTimeline;
 
 import java.util.*;
 
 public class OperationResult implements IEquatable<OperationResult> {
     private ExpressionResult expressionResult;
     private Set<DatabaseVariable> databaseVariables;
+    private OperationTimeline timeline; //only attached if configured to (see sixsense.session.timeline)
 
     public OperationResult() {
         this.expressionResult = new ExpressionResult();
@@ -32,6 +34,19 @@ public class OperationResult implements IEquatable<OperationResult> {
         return this;
     }
 
+    public OperationTimeline getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(OperationTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    public OperationResult withTimeline(OperationTimeline timeline) {
+        this.timeline = timeline;
+        return this;
+    }
+
     public Set<DatabaseVariable> getDatabaseVariables() {
         return Collections.unmodifiableSet(databaseVariables);
     }
@@ -81,6 +96,7 @@ public class OperationResult implements IEquatable<OperationResult> {
         return "OperationResult{" +
             "expressionResult=" + expressionResult +
             ", databaseVariables=" + databaseVariables +
+            ", timeline=" + timeline +
             '}';
     }
 }
@@ -0,0 +1,91 @@
+package com.sixsense.model.retention;
+
+import java.util.Map;
+
+//A single message waiting in the result outbox to be published to the broker
+public class OutboxRecord {
+    private final long address; //location of the record in the outbox (segment number << 32 | segment offset). Not part of the stored record
+    private final String correlationId;
+    private final String bindingKey;
+    private final String logText;
+    private final String contentType;
+    private final String contentEncoding;
+    private final Map<String, Object> headers; //values are strings, longs, integers or booleans, and keep their type when stored in the outbox
+    private final byte[] body;
+    private final int rejections; //times the broker nacked the record since the engine started. Not part of the stored record
+
+    public OutboxRecord(long address, String correlationId, String bindingKey, String logText, String contentType, String contentEncoding, Map<String, Object> headers, byte[] body) {
+        this(address, correlationId, bindingKey, logText, contentType, contentEncoding, headers, body, 0);
+    }
+
+    private OutboxRecord(long address, String correlationId, String bindingKey, String logText, String contentType, String contentEncoding, Map<String, Object> headers, byte[] body, int rejections) {
+        this.address = address;
+        this.correlationId = correlationId;
+        this.bindingKey = bindingKey;
+        this.logText = logText;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.headers = headers;
+        this.body = body;
+        this.rejections = rejections;
+    }
+
+    public OutboxRecord withAddress(long address){
+        return new OutboxRecord(address, correlationId, bindingKey, logText, contentType, contentEncoding, headers, body, rejections);
+    }
+
+    public OutboxRecord withRejections(int rejections){
+        return new OutboxRecord(address, correlationId, bindingKey, logText, contentType, contentEncoding, headers, body, rejections);
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public String getBindingKey() {
+        return bindingKey;
+    }
+
+    public String getLogText() {
+        return logText;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxRecord{" +
+                "address=" + address +
+                ", correlationId='" + correlationId + '\'' +
+                ", bindingKey='" + bindingKey + '\'' +
+                ", logText='" + logText + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", contentEncoding='" + contentEncoding + '\'' +
+                ", headers=" + headers +
+                ", body=" + body.length + " bytes" +
+                ", rejections=" + rejections +
+                '}';
+    }
+}
@@ -0,0 +1,8 @@
+package com.sixsense.model.retention;
+
+//Determines when records appended to the result outbox are forced from the page cache to the disk
+public enum OutboxSyncPolicy {
+    Always, //before append() returns (no confirmed append is lost, even when the host crashes)
+    Interval, //periodically, by the outbox publisher thread (appends since the last sync may be lost if the host crashes)
+    Never //left to the operating system (appends survive an engine restart, but not a host crash)
+}
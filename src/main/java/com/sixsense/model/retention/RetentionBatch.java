@@ -0,0 +1,96 @@
+package com.sixsense.model.retention;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.*;
+
+//DatabaseImmediate retentions of one or more operations, published together in a single message
+public class RetentionBatch {
+    private String batchId;
+    private Map<String, List<DatabaseVariable>> variables; //key: operation id, value: the variables retained by the operation, in the order they were retained
+    private int size;
+    private Instant createdAt;
+
+    /*Try not to pollute with additional constructors
+     * The empty constructor is for using the 'with' design pattern
+     * The parameterized constructor is for complete constructors - where all arguments are known */
+    public RetentionBatch() {
+        this.batchId = "";
+        this.variables = new LinkedHashMap<>();
+        this.size = 0;
+        this.createdAt = Instant.now();
+    }
+
+    public RetentionBatch(String batchId) {
+        this.batchId = batchId;
+        this.variables = new LinkedHashMap<>();
+        this.size = 0;
+        this.createdAt = Instant.now();
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public RetentionBatch withBatchId(String batchId) {
+        this.batchId = batchId;
+        return this;
+    }
+
+    public Map<String, List<DatabaseVariable>> getVariables() {
+        return Collections.unmodifiableMap(variables);
+    }
+
+    public RetentionBatch addVariable(String operationId, DatabaseVariable variable) {
+        this.variables.computeIfAbsent(operationId, key -> new ArrayList<>()).add(variable);
+        this.size++;
+        return this;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public RetentionBatch withCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other; // Batches never equal each other; They hold different variables collected in different points in time
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(batchId, createdAt);
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionBatch{" +
+            "batchId='" + batchId + '\'' +
+            ", variables=" + variables +
+            ", size=" + size +
+            ", createdAt=" + createdAt +
+            '}';
+    }
+}
@@ -0,0 +1,56 @@
+package com.sixsense.model.threading;
+
+//A point-in-time snapshot of the admission manager's state and queue-time metrics
+public class AdmissionStatistics {
+    private final int runningOperations;
+    private final int pendingOperations;
+    private final long admittedOperations;
+    private final long rejectedOperations;
+    private final double averageQueueMillis; //average time admitted operations have spent in the pending queue
+    private final double maximumQueueMillis; //longest time an admitted operation has spent in the pending queue
+
+    public AdmissionStatistics(int runningOperations, int pendingOperations, long admittedOperations, long rejectedOperations, double averageQueueMillis, double maximumQueueMillis) {
+        this.runningOperations = runningOperations;
+        this.pendingOperations = pendingOperations;
+        this.admittedOperations = admittedOperations;
+        this.rejectedOperations = rejectedOperations;
+        this.averageQueueMillis = averageQueueMillis;
+        this.maximumQueueMillis = maximumQueueMillis;
+    }
+
+    public int getRunningOperations() {
+        return runningOperations;
+    }
+
+    public int getPendingOperations() {
+        return pendingOperations;
+    }
+
+    public long getAdmittedOperations() {
+        return admittedOperations;
+    }
+
+    public long getRejectedOperations() {
+        return rejectedOperations;
+    }
+
+    public double getAverageQueueMillis() {
+        return averageQueueMillis;
+    }
+
+    public double getMaximumQueueMillis() {
+        return maximumQueueMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionStatistics{" +
+                "runningOperations=" + runningOperations +
+                ", pendingOperations=" + pendingOperations +
+                ", admittedOperations=" + admittedOperations +
+                ", rejectedOperations=" + rejectedOperations +
+                ", averageQueueMillis=" + averageQueueMillis +
+                ", maximumQueueMillis=" + maximumQueueMillis +
+                '}';
+    }
+}
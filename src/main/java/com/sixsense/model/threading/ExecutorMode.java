@@ -0,0 +1,5 @@
+package com.sixsense.model.threading;
+
+public enum ExecutorMode {
+    Platform, Virtual
+}
@@ -0,0 +1,8 @@
+package com.sixsense.model.threading;
+
+//Common view of anything executing engine code whose lifecycle state we monitor (either a pooled platform thread, or a task running on a virtual thread)
+public interface IMonitoredThread {
+    long getId();
+    String getName();
+    MonitoredThreadState getCurrentThreadState();
+}
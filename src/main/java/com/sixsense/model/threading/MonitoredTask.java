@@ -0,0 +1,57 @@
+package com.sixsense.model.threading;
+
+import com.sixsense.threading.IThreadMonitoingFactory;
+
+/*Virtual threads cannot be subclassed, so unlike MonitoredThread we cannot wrap the executing thread itself.
+* Instead, we wrap the task submitted to the virtual thread, and expose it's state to the task through a thread local reference*/
+public class MonitoredTask implements Runnable, IMonitoredThread {
+    private static final ThreadLocal<MonitoredTask> currentTask = new ThreadLocal<>();
+
+    private final IThreadMonitoingFactory monitoringFactory;
+    private final Runnable task;
+    private final MonitoredThreadState currentThreadState;
+    private long threadId = -1;
+    private String threadName = "";
+
+    public MonitoredTask(IThreadMonitoingFactory monitoringFactory, Runnable task) {
+        this.monitoringFactory = monitoringFactory;
+        this.task = task;
+        this.currentThreadState = new MonitoredThreadState();
+    }
+
+    //Returns the monitored task running on the current thread, or null if the current thread is not running a monitored task
+    public static MonitoredTask current(){
+        return currentTask.get();
+    }
+
+    @Override
+    public long getId() {
+        return threadId;
+    }
+
+    @Override
+    public String getName() {
+        return threadName;
+    }
+
+    @Override
+    public MonitoredThreadState getCurrentThreadState() {
+        return currentThreadState;
+    }
+
+    @Override
+    public void run() {
+        Thread executingThread = Thread.currentThread();
+        this.threadId = executingThread.getId();
+        this.threadName = "Monitor(" + executingThread.getName() + ")";
+
+        currentTask.set(this);
+        this.monitoringFactory.watch(this);
+        try {
+            this.task.run();
+        }finally {
+            this.monitoringFactory.unwatch(this);
+            currentTask.remove();
+        }
+    }
+}
@@ -3,7 +3,7 @@ package com.sixsense.model.threading;
 import com.sixsense.threading.IThreadMonitoingFactory;
 
 //This class must extend the java.util.Thread class to allow returning MonitoredThread instances in library thread factories (tomcat, rabbitmq etc...)
-public class MonitoredThread extends Thread {
+public class MonitoredThread extends Thread implements IMonitoredThread {
     private final IThreadMonitoingFactory monitoringFactory;
     private final Thread thread;
     private final MonitoredThreadState currentThreadState;
@@ -16,6 +16,7 @@ public class MonitoredThread extends Thread {
         setName("Monitor(" + this.thread.getName() + ")");
     }
 
+    @Override
     public MonitoredThreadState getCurrentThreadState() {
         return currentThreadState;
     }
@@ -0,0 +1,140 @@
+package com.sixsense.model.timeline;
+
+import com.sixsense.model.logic.ResultStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*The execution of a single operation, block or command
+ * Start and end times are nanoseconds since the start of the operation timeline.
+ * Waiting time and bytes include those of the span's children, so a parent span always accounts for everything executed beneath it*/
+public class ExecutionSpan {
+    private SpanKind kind;
+    private String name;
+    private long startNanos;
+    private long endNanos;
+    private long waitingNanos; //time spent parked in minimal sleep or awaiting output
+    private long bytesIn; //bytes written to the channel
+    private long bytesOut; //bytes read from the channel
+    private ResultStatus outcome;
+    private List<ExecutionSpan> children;
+
+    public ExecutionSpan() {
+        this.kind = SpanKind.Command;
+        this.name = "";
+        this.children = new ArrayList<>();
+    }
+
+    public ExecutionSpan(SpanKind kind, String name, long startNanos) {
+        this.kind = kind;
+        this.name = name;
+        this.startNanos = startNanos;
+        this.children = new ArrayList<>();
+    }
+
+    public SpanKind getKind() {
+        return kind;
+    }
+
+    public void setKind(SpanKind kind) {
+        this.kind = kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public void setStartNanos(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public void setEndNanos(long endNanos) {
+        this.endNanos = endNanos;
+    }
+
+    public long getWaitingNanos() {
+        return waitingNanos;
+    }
+
+    public void setWaitingNanos(long waitingNanos) {
+        this.waitingNanos = waitingNanos;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    public ResultStatus getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(ResultStatus outcome) {
+        this.outcome = outcome;
+    }
+
+    public List<ExecutionSpan> getChildren() {
+        return children;
+    }
+
+    public void setChildren(List<ExecutionSpan> children) {
+        this.children = children;
+    }
+
+    public ExecutionSpan addChild(ExecutionSpan child) {
+        this.children.add(child);
+        return this;
+    }
+
+    //Copies the span and all of it's descendants, so the copy can be read while the original is still being recorded
+    public ExecutionSpan deepClone() {
+        ExecutionSpan clone = new ExecutionSpan(this.kind, this.name, this.startNanos);
+        clone.endNanos = this.endNanos;
+        clone.waitingNanos = this.waitingNanos;
+        clone.bytesIn = this.bytesIn;
+        clone.bytesOut = this.bytesOut;
+        clone.outcome = this.outcome;
+        for(ExecutionSpan child : this.children){
+            clone.children.add(child.deepClone());
+        }
+        return clone;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionSpan{" +
+            "kind=" + kind +
+            ", name='" + name + '\'' +
+            ", startNanos=" + startNanos +
+            ", endNanos=" + endNanos +
+            ", waitingNanos=" + waitingNanos +
+            ", bytesIn=" + bytesIn +
+            ", bytesOut=" + bytesOut +
+            ", outcome=" + outcome +
+            ", children=" + children +
+            '}';
+    }
+}
@@ -0,0 +1,150 @@
+package com.sixsense.model.timeline;
+
+import com.sixsense.model.logic.ResultStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*A tree of the spans executed by a single operation, recorded by it's session as the operation progresses
+ * Spans are opened and closed in the same nesting as the operation's blocks and commands, so the currently open spans form a stack.
+ * Waiting time and bytes are added to the innermost open span, and rolled up to it's parent when it closes*/
+public class OperationTimeline {
+    private String operationId;
+    private long startEpochMillis; //wall clock time at which the timeline started. Span times are nanoseconds relative to this time
+    private ExecutionSpan operationSpan;
+
+    //Recording state (not serialized, as it has no getters)
+    private final Deque<ExecutionSpan> openSpans = new ArrayDeque<>();
+    private final Lock recordingLock = new ReentrantLock(); //the session records the timeline, while diagnostics may copy it at any time
+    private long originNanos;
+
+    public OperationTimeline() {
+        this.operationId = "";
+        this.startEpochMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    public OperationTimeline(String operationId) {
+        this.operationId = operationId;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    public void openSpan(SpanKind kind, String name){
+        this.recordingLock.lock();
+        try {
+            ExecutionSpan span = new ExecutionSpan(kind, name, System.nanoTime() - this.originNanos);
+            ExecutionSpan parent = this.openSpans.peek();
+            if (parent == null) {
+                this.operationSpan = span;
+            } else {
+                parent.addChild(span);
+            }
+            this.openSpans.push(span);
+        }finally {
+            this.recordingLock.unlock();
+        }
+    }
+
+    /*Closes the innermost open span of the given kind.
+     * Spans nested inside it are closed as well, since an exception may have skipped their own closure*/
+    public void closeSpan(SpanKind kind, ResultStatus outcome){
+        this.recordingLock.lock();
+        try {
+            long endNanos = System.nanoTime() - this.originNanos;
+            ExecutionSpan span;
+            do {
+                span = this.openSpans.poll();
+                if (span == null) {
+                    return;
+                }
+
+                span.setEndNanos(endNanos);
+                span.setOutcome(outcome);
+
+                ExecutionSpan parent = this.openSpans.peek();
+                if (parent != null) {
+                    parent.setWaitingNanos(parent.getWaitingNanos() + span.getWaitingNanos());
+                    parent.setBytesIn(parent.getBytesIn() + span.getBytesIn());
+                    parent.setBytesOut(parent.getBytesOut() + span.getBytesOut());
+                }
+            } while (!span.getKind().equals(kind));
+        }finally {
+            this.recordingLock.unlock();
+        }
+    }
+
+    public void addWaitingNanos(long waitingNanos){
+        this.recordingLock.lock();
+        try {
+            ExecutionSpan span = this.openSpans.peek();
+            if (span != null) {
+                span.setWaitingNanos(span.getWaitingNanos() + waitingNanos);
+            }
+        }finally {
+            this.recordingLock.unlock();
+        }
+    }
+
+    public void addBytes(long bytesIn, long bytesOut){
+        this.recordingLock.lock();
+        try {
+            ExecutionSpan span = this.openSpans.peek();
+            if (span != null) {
+                span.setBytesIn(span.getBytesIn() + bytesIn);
+                span.setBytesOut(span.getBytesOut() + bytesOut);
+            }
+        }finally {
+            this.recordingLock.unlock();
+        }
+    }
+
+    //Copies the timeline as recorded so far. Spans which are still open have an end time of zero
+    public OperationTimeline snapshot(){
+        this.recordingLock.lock();
+        try {
+            OperationTimeline snapshot = new OperationTimeline(this.operationId);
+            snapshot.startEpochMillis = this.startEpochMillis;
+            snapshot.originNanos = this.originNanos;
+            snapshot.operationSpan = this.operationSpan == null ? null : this.operationSpan.deepClone();
+            return snapshot;
+        }finally {
+            this.recordingLock.unlock();
+        }
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public void setOperationId(String operationId) {
+        this.operationId = operationId;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public void setStartEpochMillis(long startEpochMillis) {
+        this.startEpochMillis = startEpochMillis;
+    }
+
+    public ExecutionSpan getOperationSpan() {
+        return operationSpan;
+    }
+
+    public void setOperationSpan(ExecutionSpan operationSpan) {
+        this.operationSpan = operationSpan;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationTimeline{" +
+            "operationId='" + operationId + '\'' +
+            ", startEpochMillis=" + startEpochMillis +
+            ", operationSpan=" + operationSpan +
+            '}';
+    }
+}
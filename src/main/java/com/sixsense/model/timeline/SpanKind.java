@@ -0,0 +1,6 @@
+package com.sixsense.model.timeline;
+
+//Nested according to command hierarchy
+public enum SpanKind {
+    Operation, Block, Command
+}
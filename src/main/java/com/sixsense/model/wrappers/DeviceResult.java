@@ -0,0 +1,113 @@
+package com.sixsense.model.wrappers;
+
+import com.sixsense.model.retention.OperationResult;
+
+import java.util.Objects;
+
+/*The result of a single device, published as soon as the device's operation ends when results are streamed (see ResultMode.Streaming)
+* Results are correlated to their execution request by the request id, and numbered in the order they were published
+* so the receiving side can verify it received all of them once the execution summary arrives*/
+public class DeviceResult {
+    private String requestId;
+    private int sequenceNumber;
+    private String deviceId;
+    private OperationResult result;
+
+    /*Try not to pollute with additional constructors
+     * The empty constructor is for using the 'with' design pattern
+     * The parameterized constructor is for complete constructors - where all arguments are known */
+    public DeviceResult() {
+        this.requestId = "";
+        this.sequenceNumber = 0;
+        this.deviceId = "";
+        this.result = new OperationResult();
+    }
+
+    public DeviceResult(String requestId, int sequenceNumber, String deviceId, OperationResult result) {
+        this.requestId = requestId;
+        this.sequenceNumber = sequenceNumber;
+        this.deviceId = deviceId;
+        this.result = result;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public DeviceResult withRequestId(String requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(int sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public DeviceResult withSequenceNumber(int sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+        return this;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public DeviceResult withDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+        return this;
+    }
+
+    public OperationResult getResult() {
+        return result;
+    }
+
+    public void setResult(OperationResult result) {
+        this.result = result;
+    }
+
+    public DeviceResult withResult(OperationResult result) {
+        this.result = result;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (other == null || getClass() != other.getClass()) {
+            return false;
+        } else {
+            DeviceResult that = (DeviceResult) other;
+            return sequenceNumber == that.sequenceNumber &&
+                requestId.equals(that.requestId) &&
+                deviceId.equals(that.deviceId);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(requestId, sequenceNumber, deviceId);
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceResult{" +
+            "requestId='" + requestId + '\'' +
+            ", sequenceNumber=" + sequenceNumber +
+            ", deviceId='" + deviceId + '\'' +
+            ", result=" + result +
+            '}';
+    }
+}
@@ -0,0 +1,131 @@
+package com.sixsense.model.wrappers;
+
+import com.sixsense.model.logic.ResultStatus;
+
+import java.time.Instant;
+import java.util.*;
+
+/*Published once all device results of a streamed execution request were published (see ResultMode.Streaming)
+* Holds only counters, so it's size does not depend on the number of devices in the request*/
+public class ExecutionSummary {
+    private String requestId;
+    private int totalDevices;
+    private int publishedResults; //equals the sequence number of the last device result
+    private Map<ResultStatus, Integer> outcomes;
+
+    private Instant startTime;
+    private Instant endTime;
+
+    /*Try not to pollute with additional constructors
+     * The empty constructor is for using the 'with' design pattern
+     * The parameterized constructor is for complete constructors - where all arguments are known */
+    public ExecutionSummary() {
+        this.requestId = "";
+        this.totalDevices = 0;
+        this.publishedResults = 0;
+        this.outcomes = new EnumMap<>(ResultStatus.class);
+        this.startTime = Instant.now();
+        this.endTime = Instant.now().plusMillis(1); //to prevent end time matching start time
+    }
+
+    public ExecutionSummary(String requestId, int totalDevices, Instant startTime) {
+        this.requestId = requestId;
+        this.totalDevices = totalDevices;
+        this.publishedResults = 0;
+        this.outcomes = new EnumMap<>(ResultStatus.class);
+        this.startTime = startTime;
+        this.endTime = startTime.plusMillis(1); //to prevent end time matching start time
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public ExecutionSummary withRequestId(String requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    public int getTotalDevices() {
+        return totalDevices;
+    }
+
+    public void setTotalDevices(int totalDevices) {
+        this.totalDevices = totalDevices;
+    }
+
+    public ExecutionSummary withTotalDevices(int totalDevices) {
+        this.totalDevices = totalDevices;
+        return this;
+    }
+
+    public int getPublishedResults() {
+        return publishedResults;
+    }
+
+    public void setPublishedResults(int publishedResults) {
+        this.publishedResults = publishedResults;
+    }
+
+    public Map<ResultStatus, Integer> getOutcomes() {
+        return Collections.unmodifiableMap(outcomes);
+    }
+
+    //Device results are published from the threads of their operations, so counting them must be synchronized. Returns the sequence number of the counted result
+    public synchronized int countResult(ResultStatus outcome) {
+        this.outcomes.merge(outcome, 1, Integer::sum);
+        return ++this.publishedResults;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Instant startTime) {
+        this.startTime = startTime;
+    }
+
+    public ExecutionSummary withStartTime(Instant startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public Instant getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Instant endTime) {
+        this.endTime = endTime;
+    }
+
+    public ExecutionSummary withEndTime(Instant endTime) {
+        this.endTime = endTime;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other; // Summaries never equal each other; They summarize different requests in different points in time
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(requestId, startTime, endTime);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ExecutionSummary{" +
+            "requestId='" + requestId + '\'' +
+            ", totalDevices=" + totalDevices +
+            ", publishedResults=" + publishedResults +
+            ", outcomes=" + outcomes +
+            ", startTime=" + startTime +
+            ", endTime=" + endTime +
+            '}';
+    }
+}
@@ -0,0 +1,407 @@
+package com.sixsense.services;
+
+import com.sixsense.config.AdmissionConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.threading.AdmissionStatistics;
+import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.FieldGlossary;
+import com.sixsense.utillity.Literals;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Admits operations into the session engine, so that neither the engine nor any single device are overloaded
+ * Operations are admitted in FIFO order, as long as the total amount of running operations, and the amount of operations running against their device, are below their configured limits.
+ * Any other operation waits in the pending queue until a running operation completes. Operations are rejected only when the pending queue is full.
+ * Operations held back by the session rate limiter are paced before they enter the queue, so they occupy neither an admission slot nor a thread while they wait*/
+@Service
+@EnableConfigurationProperties(AdmissionConfig.class)
+public class AdmissionManager implements Closeable {
+    private static final Logger logger = LogManager.getLogger(AdmissionManager.class);
+    private final IOperationExecutor sessionEngine;
+    private final SessionRateLimiter sessionRateLimiter;
+    private final ThreadingManager threadingManager;
+    private final AdmissionConfig admissionConfig;
+
+    /* Pending operations are split into two queues, so that admitting, releasing or terminating an operation takes constant time (O(1) time complexity):
+     * readyOperations holds pending operations whose device has already reserved capacity for them. These only wait for the global limit.
+     * blockedOperations holds pending operations whose device is saturated. The head of a device queue moves to readyOperations when an operation for that device completes.
+     * The queues are insertion ordered sets rather than deques, so that a terminated operation is removed from the middle of it's queue without scanning it.
+     * All of the fields below are guarded by the admissionLock*/
+    private final Lock admissionLock = new ReentrantLock();
+    private final Set<PendingOperation> readyOperations = new LinkedHashSet<>();
+    private final Map<String, Set<PendingOperation>> blockedOperations = new HashMap<>(); //key: device key, value: operations waiting for that device
+    private final Map<String, Integer> reservedPerDevice = new HashMap<>(); //key: device key, value: running + ready operations for that device
+    private final Map<String, PendingOperation> pendingOperations = new HashMap<>(); //key: operation id, value: pending (or paced) operation
+    private int runningOperations = 0;
+
+    //Queue-time metrics
+    private final LongAdder admittedOperations = new LongAdder();
+    private final LongAdder rejectedOperations = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final AtomicLong maximumQueueNanos = new AtomicLong();
+
+    private final ScheduledExecutorService pacer; //moves paced operations into the pending queue once the session rate limit allows them
+
+    /*Operations which completed, and whose admission slot was not yet released (see completeOperation())
+     * An operation may complete on the thread starting it (i.e. if the engine pool rejects it), so releasing it's slot and starting the next operations from within that completion
+     * could nest as deep as the pending queue. Instead, the completion is queued, and the thread already releasing slots is asked to loop once more*/
+    private final Queue<PendingOperation> completedOperations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger releaseRequests = new AtomicInteger(0);
+
+    @Autowired
+    public AdmissionManager(IOperationExecutor sessionEngine, SessionRateLimiter sessionRateLimiter, ThreadingManager threadingManager, MetricsManager metricsManager, AdmissionConfig admissionConfig) {
+        this.sessionEngine = sessionEngine;
+        this.sessionRateLimiter = sessionRateLimiter;
+        this.threadingManager = threadingManager;
+        this.admissionConfig = admissionConfig;
+        this.pacer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread pacerThread = new Thread(runnable, "engine-admission-pacer");
+            pacerThread.setDaemon(true);
+            return pacerThread;
+        });
+
+        metricsManager.registerGauge("sixsense.admission.pending", "Operations waiting in the admission queue", this, manager -> manager.getAdmissionStatistics().getPendingOperations());
+        //saturation is only meaningful relative to a bound, so it is not reported when running operations are unlimited
+        if(admissionConfig.getMaximumRunningOperations() > 0){
+            metricsManager.registerGauge("sixsense.admission.saturation", "Ratio of running operations to the maximum running operations", this, manager -> manager.getAdmissionStatistics().getRunningOperations() / (double)admissionConfig.getMaximumRunningOperations());
+        }
+    }
+
+    //Returns a future that resolves when the operation has finished executing (or immediately, if the operation was rejected)
+    public CompletableFuture<OperationResult> submit(Operation operation){
+        PendingOperation pendingOperation = new PendingOperation(operation, getDeviceKey(operation));
+        long pacingNanos = this.sessionRateLimiter.reserve(operation);
+        if(pacingNanos > 0){
+            pace(pendingOperation, pacingNanos);
+            return pendingOperation.futureResult;
+        }
+
+        List<PendingOperation> admitted;
+        boolean rejected = false;
+
+        this.admissionLock.lock();
+        try {
+            enqueue(pendingOperation);
+            admitted = pollAdmissible();
+
+            //The new operation is always the last one enqueued. If it was not admitted and the queue has overflowed, it is the one to reject
+            if(!admitted.contains(pendingOperation) && isLimitExceeded(this.pendingOperations.size(), this.admissionConfig.getMaximumPendingOperations())){
+                dequeue(pendingOperation);
+                rejected = true;
+            }
+        }finally {
+            this.admissionLock.unlock();
+        }
+
+        if(rejected){
+            reject(pendingOperation);
+        }
+
+        startOperations(admitted);
+        return pendingOperation.futureResult;
+    }
+
+    /*Holds the operation back until the session rate limit allows it's session to be created, and only then enqueues it
+     * A paced operation is already counted as pending (and may be terminated like any other pending operation), but is not yet in line for admission*/
+    private void pace(PendingOperation pendingOperation, long pacingNanos){
+        boolean rejected;
+        this.admissionLock.lock();
+        try {
+            rejected = isLimitExceeded(this.pendingOperations.size() + 1, this.admissionConfig.getMaximumPendingOperations());
+            if(!rejected){
+                this.pendingOperations.put(pendingOperation.operation.getUUID(), pendingOperation);
+                pendingOperation.pacingTask = this.pacer.schedule(() -> admitPaced(pendingOperation), pacingNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            //the pacer has been shut down, since the engine is closing
+            this.pendingOperations.remove(pendingOperation.operation.getUUID());
+            rejected = true;
+        } finally {
+            this.admissionLock.unlock();
+        }
+
+        if(rejected){
+            reject(pendingOperation);
+        }
+    }
+
+    //Session tokens are reserved before the operation is enqueued, so a rejected operation gives them back rather than delaying the sessions of the operations after it
+    private void reject(PendingOperation pendingOperation){
+        this.sessionRateLimiter.release(pendingOperation.operation);
+        this.rejectedOperations.increment();
+        logger.warn("Operation " + pendingOperation.operation.getUUID() + " was rejected by the admission manager. Caused by: " + Literals.AdmissionQueueFull);
+        pendingOperation.futureResult.complete(
+            new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.AdmissionQueueFull))
+        );
+    }
+
+    private void admitPaced(PendingOperation pendingOperation){
+        List<PendingOperation> admitted;
+        this.admissionLock.lock();
+        try {
+            if(this.pendingOperations.get(pendingOperation.operation.getUUID()) != pendingOperation){
+                return; //terminated while it was paced
+            }
+            pendingOperation.pacingTask = null;
+            enqueue(pendingOperation);
+            admitted = pollAdmissible();
+        }finally {
+            this.admissionLock.unlock();
+        }
+
+        startOperations(admitted);
+    }
+
+    /*If the operation is still pending, remove it from the queue and resolve it as terminated.
+     * Otherwise, the operation is either running or already finished, so the session engine terminates it.
+     * Admitted operations are registered with the session engine while still holding the admissionLock (see pollAdmissible()),
+     * so an operation which has just left the queue is already known to the session engine, even before it's session is created*/
+    public OperationResult terminateOperation(String operationId){
+        PendingOperation pendingOperation;
+        List<PendingOperation> admitted = Collections.emptyList();
+
+        this.admissionLock.lock();
+        try {
+            pendingOperation = this.pendingOperations.get(operationId);
+            if(pendingOperation != null){
+                dequeue(pendingOperation);
+                admitted = pollAdmissible(); //a terminated ready operation may release device capacity to a blocked operation
+            }
+        }finally {
+            this.admissionLock.unlock();
+        }
+
+        startOperations(admitted);
+        if(pendingOperation == null){
+            return this.sessionEngine.terminateOperation(operationId);
+        }
+
+        logger.info("Operation " + operationId + " was terminated while pending admission");
+        pendingOperation.futureResult.complete(
+            new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated))
+        );
+        return new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated));
+    }
+
+    //This method assumes we are holding the admissionLock
+    private void enqueue(PendingOperation pendingOperation){
+        this.pendingOperations.put(pendingOperation.operation.getUUID(), pendingOperation);
+
+        String deviceKey = pendingOperation.deviceKey;
+        if(deviceKey == null){
+            this.readyOperations.add(pendingOperation);
+        }else if(isLimitExceeded(this.reservedPerDevice.getOrDefault(deviceKey, 0) + 1, this.admissionConfig.getMaximumOperationsPerDevice())){
+            this.blockedOperations.computeIfAbsent(deviceKey, key -> new LinkedHashSet<>()).add(pendingOperation);
+        }else{
+            this.reservedPerDevice.merge(deviceKey, 1, Integer::sum);
+            this.readyOperations.add(pendingOperation);
+        }
+    }
+
+    //This method assumes we are holding the admissionLock
+    private void dequeue(PendingOperation pendingOperation){
+        this.pendingOperations.remove(pendingOperation.operation.getUUID());
+        if(pendingOperation.pacingTask != null){
+            //a paced operation is in neither of the queues yet
+            pendingOperation.pacingTask.cancel(false);
+            pendingOperation.pacingTask = null;
+            return;
+        }
+
+        if(this.readyOperations.remove(pendingOperation)){
+            releaseDevice(pendingOperation.deviceKey);
+        }else{
+            Set<PendingOperation> deviceQueue = this.blockedOperations.get(pendingOperation.deviceKey);
+            if(deviceQueue != null){
+                deviceQueue.remove(pendingOperation);
+                if(deviceQueue.isEmpty()){
+                    this.blockedOperations.remove(pendingOperation.deviceKey);
+                }
+            }
+        }
+    }
+
+    //This method assumes we are holding the admissionLock. Returns the operations that should start running, in FIFO order
+    private List<PendingOperation> pollAdmissible(){
+        List<PendingOperation> admitted = new ArrayList<>();
+        while(!this.readyOperations.isEmpty() && !isLimitExceeded(this.runningOperations + 1, this.admissionConfig.getMaximumRunningOperations())){
+            PendingOperation nextOperation = pollFirst(this.readyOperations);
+            this.pendingOperations.remove(nextOperation.operation.getUUID());
+            this.sessionEngine.registerOperation(nextOperation.operation);
+            this.runningOperations++;
+            admitted.add(nextOperation);
+        }
+
+        return admitted;
+    }
+
+    /*This method assumes we are holding the admissionLock
+     * Releases a single reservation of the device, and moves the next operation blocked on the device (if any) to the ready queue*/
+    private void releaseDevice(String deviceKey){
+        if(deviceKey == null){
+            return;
+        }
+
+        Set<PendingOperation> deviceQueue = this.blockedOperations.get(deviceKey);
+        if(deviceQueue != null && !deviceQueue.isEmpty()){
+            this.readyOperations.add(pollFirst(deviceQueue)); //the released reservation passes on to the blocked operation
+            if(deviceQueue.isEmpty()){
+                this.blockedOperations.remove(deviceKey);
+            }
+        }else{
+            //remove the device entirely once it has no reservations, to avoid accumulating every device ever seen
+            this.reservedPerDevice.computeIfPresent(deviceKey, (key, reserved) -> reserved > 1 ? reserved - 1 : null);
+        }
+    }
+
+    //Removes and returns the operation which was queued first
+    private static PendingOperation pollFirst(Set<PendingOperation> queue){
+        Iterator<PendingOperation> queueIterator = queue.iterator();
+        PendingOperation firstOperation = queueIterator.next();
+        queueIterator.remove();
+        return firstOperation;
+    }
+
+    private void startOperations(List<PendingOperation> admitted){
+        for(PendingOperation pendingOperation : admitted){
+            long queueNanos = System.nanoTime() - pendingOperation.enqueuedAt;
+            this.admittedOperations.increment();
+            this.totalQueueNanos.add(queueNanos);
+            this.maximumQueueNanos.accumulateAndGet(queueNanos, Math::max);
+
+            Operation operation = pendingOperation.operation;
+            CompletableFuture<OperationResult> runningOperation;
+            try {
+                runningOperation = threadingManager.submit(() -> sessionEngine.executeRegisteredOperation(operation));
+            }catch (Exception e){
+                logger.error("Failed to submit operation " + operation.getUUID() + " to worker queue. Caused by: " + e.getMessage());
+                runningOperation = CompletableFuture.failedFuture(e);
+            }
+
+            runningOperation.whenComplete((operationResult, throwable) -> {
+                if(throwable != null){
+                    /*executeRegisteredOperation() resolves every failure of the operation itself, so a failed future means it never ran (i.e. the engine pool rejected it, or has been closed)
+                     * The operation was registered with the session engine when it was admitted (see pollAdmissible()), and nothing else will remove it*/
+                    sessionEngine.unregisterOperation(operation.getUUID());
+                }
+                completeOperation(pendingOperation);
+                if(throwable != null){
+                    pendingOperation.futureResult.completeExceptionally(throwable);
+                }else{
+                    pendingOperation.futureResult.complete(operationResult);
+                }
+            });
+        }
+    }
+
+    //Releases the admission slot of the operation, and starts the operations admitted in it's place (see completedOperations for why this may loop on behalf of other threads)
+    private void completeOperation(PendingOperation pendingOperation){
+        this.completedOperations.add(pendingOperation);
+        if(this.releaseRequests.getAndIncrement() != 0){
+            return;
+        }
+
+        do {
+            for(PendingOperation completed = this.completedOperations.poll(); completed != null; completed = this.completedOperations.poll()){
+                List<PendingOperation> admitted;
+                this.admissionLock.lock();
+                try {
+                    this.runningOperations--;
+                    releaseDevice(completed.deviceKey);
+                    admitted = pollAdmissible();
+                }finally {
+                    this.admissionLock.unlock();
+                }
+
+                startOperations(admitted);
+            }
+        } while(this.releaseRequests.decrementAndGet() != 0);
+    }
+
+    /*Operations against the same device share a device key. The host is preferred over the internal id,
+     * since the same device may appear under different internal ids in separate execution requests.
+     * Operations with neither (e.g. operations running only local commands) are not limited per device*/
+    private static String getDeviceKey(Operation operation){
+        Map<String, String> dynamicFields = operation.getDynamicFields();
+        String deviceHost = dynamicFields.get(FieldGlossary.device_host);
+        if(deviceHost != null && !deviceHost.isEmpty()){
+            return deviceHost;
+        }
+        return dynamicFields.get(FieldGlossary.device_internal_id);
+    }
+
+    //Non-positive limits are treated as unlimited
+    private static boolean isLimitExceeded(int value, int limit){
+        return limit > 0 && value > limit;
+    }
+
+    public AdmissionStatistics getAdmissionStatistics(){
+        int running;
+        int pending;
+        this.admissionLock.lock();
+        try {
+            running = this.runningOperations;
+            pending = this.pendingOperations.size();
+        }finally {
+            this.admissionLock.unlock();
+        }
+
+        long admitted = this.admittedOperations.sum();
+        double averageQueueMillis = admitted == 0 ? 0 : this.totalQueueNanos.sum() / (double)admitted / 1_000_000;
+        double maximumQueueMillis = this.maximumQueueNanos.get() / 1_000_000.0;
+        return new AdmissionStatistics(running, pending, admitted, this.rejectedOperations.sum(), averageQueueMillis, maximumQueueMillis);
+    }
+
+    //Paced operations that have not yet entered the queue are resolved as terminated
+    @Override
+    public void close() {
+        List<PendingOperation> pacedOperations = new ArrayList<>();
+        this.admissionLock.lock();
+        try {
+            for(PendingOperation pendingOperation : new ArrayList<>(this.pendingOperations.values())){
+                if(pendingOperation.pacingTask != null){
+                    dequeue(pendingOperation);
+                    pacedOperations.add(pendingOperation);
+                }
+            }
+        }finally {
+            this.admissionLock.unlock();
+        }
+
+        this.pacer.shutdownNow();
+        for(PendingOperation pacedOperation : pacedOperations){
+            pacedOperation.futureResult.complete(
+                new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated))
+            );
+        }
+    }
+
+    private static class PendingOperation{
+        private final Operation operation;
+        private final String deviceKey;
+        private final long enqueuedAt;
+        private final CompletableFuture<OperationResult> futureResult;
+        private ScheduledFuture<?> pacingTask; //not null while the operation is paced. Guarded by the admissionLock
+
+        private PendingOperation(Operation operation, String deviceKey) {
+            this.operation = operation;
+            this.deviceKey = deviceKey;
+            this.enqueuedAt = System.nanoTime();
+            this.futureResult = new CompletableFuture<>();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.sixsense.services;
 import com.sixsense.model.events.AbstractEngineEvent;
 import com.sixsense.model.events.EngineEventType;
 import com.sixsense.model.events.IEngineEventHandler;
+import com.sixsense.io.Session;
+import com.sixsense.threading.EventDispatcher;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.EventQueue;
 import com.sixsense.utillity.ThreadingUtils;
@@ -13,7 +15,12 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 @Service
 /* Could have been called "EventManager" or something of that type,
@@ -23,15 +30,25 @@ public class DiagnosticManager{
     private final LoggingManager loggingManager;
     private final ThreadingManager threadingManager;
 
-    /* EnumMap<EngineEventType, HashSet<IEngineEventHandler>> allows for constant time lookup, register, unregister (O(1) time complexity)
-     * while maintaining linear time emit (O(n) time complexity) where n denotes # of event listeners 
-     * 
-     * engineEventHandlers registers listeners for all session engine events. Designed to fire events asynchronously in separate threads.
+    /* EnumMap<EngineEventType, CopyOnWriteArraySet<IEngineEventHandler>> allows for constant time lookup (O(1) time complexity)
+     * while maintaining linear time emit (O(n) time complexity) where n denotes # of event listeners
+     *
+     * engineEventHandlers registers listeners for all session engine events. Events are handed to the eventDispatcher, which fires them on it's own threads.
      * futureEvents registers listeners that wait for lifecycle events for a single session. Threads block execution while waiting for these events.
-     * eventQueue logs events emitted for sessions registered via the await() functions*/
-    private final EnumMap<EngineEventType, HashSet<IEngineEventHandler>> engineEventHandlers = new EnumMap<>(EngineEventType.class);
-    private final Map<String, EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>>> futureEvents = new HashMap<>();
+     * eventQueue logs events emitted for sessions registered via the await() functions
+     *
+     * emit() runs several times per command, so none of these structures take a lock on the emitting thread:
+     * Handlers are read on every emit but rarely registered, so each event type keeps a copy-on-write set of handlers.
+     * Future events and the event queue are kept in concurrent maps, holding a separate concurrent structure per session*/
+    private final EnumMap<EngineEventType, CopyOnWriteArraySet<IEngineEventHandler>> engineEventHandlers = new EnumMap<>(EngineEventType.class);
+    private final Map<String, Map<EngineEventType, CompletableFuture<AbstractEngineEvent>>> futureEvents = new ConcurrentHashMap<>();
     private final EventQueue eventQueue = new EventQueue();
+    private final EventDispatcher<AbstractEngineEvent> eventDispatcher;
+
+    /*Bit i is set if any handler is registered for the event type with ordinal i
+    * Together with the log levels and the set of awaited sessions, it lets callers skip building events that nobody would observe*/
+    private volatile long handlerInterest = 0;
+    private final Lock handlerInterestLock = new ReentrantLock();
 
     @Autowired
     private DiagnosticManager(LoggingManager loggingManager, ThreadingManager threadingManager){
@@ -39,28 +56,61 @@ public class DiagnosticManager{
         this.threadingManager = threadingManager;
 
         for(EngineEventType eventType : EnumSet.allOf(EngineEventType.class)){
-            engineEventHandlers.put(eventType, new HashSet<>());
+            engineEventHandlers.put(eventType, new CopyOnWriteArraySet<>());
         }
+
+        this.eventDispatcher = threadingManager.generateEventDispatcher(this::dispatchToHandlers);
     }
 
-    //Register an event handler to receive events from the diagnostic manager
+    //Register an event handler to receive events from the diagnostic manager. Handlers are invoked on the dispatcher threads, and should hand off any heavy (or blocking) work to the engine pool
     public void registerHandler(IEngineEventHandler eventHandler, EnumSet<EngineEventType> eventTypes){
-        synchronized (this.engineEventHandlers) {
-            for (EngineEventType eventType : eventTypes) {
-                this.engineEventHandlers.get(eventType).add(eventHandler);
-            }
+        for (EngineEventType eventType : eventTypes) {
+            this.engineEventHandlers.get(eventType).add(eventHandler);
         }
+        updateHandlerInterest();
     }
 
     //Unregister an event handler so that no future events will be received from the diagnostic manager
     public void unregisterHandler(IEngineEventHandler eventHandler){
-        synchronized (this.engineEventHandlers) {
-            for(Collection<IEngineEventHandler> set : this.engineEventHandlers.values()){
-                set.remove(eventHandler);
+        for(Collection<IEngineEventHandler> set : this.engineEventHandlers.values()){
+            set.remove(eventHandler);
+        }
+        updateHandlerInterest();
+    }
+
+    //Registration is rare, so the bitmask is simply rebuilt from the handler sets (under a lock, so concurrent registrations cannot overwrite each other's bits)
+    private void updateHandlerInterest(){
+        this.handlerInterestLock.lock();
+        try {
+            long updatedInterest = 0;
+            for(Map.Entry<EngineEventType, CopyOnWriteArraySet<IEngineEventHandler>> handlers : this.engineEventHandlers.entrySet()){
+                if(!handlers.getValue().isEmpty()){
+                    updatedInterest |= eventTypeBit(handlers.getKey());
+                }
             }
+            this.handlerInterest = updatedInterest;
+        }finally {
+            this.handlerInterestLock.unlock();
         }
     }
 
+    private static long eventTypeBit(EngineEventType eventType){
+        return 1L << eventType.ordinal();
+    }
+
+    /*Checks if an event would be observed by anyone: a registered handler, a logger at the relevant level, or a caller awaiting events of the session
+    * None of these checks allocate, so callers may check before building an event*/
+    public boolean isObserved(Session session, EngineEventType eventType){
+        if((this.handlerInterest & eventTypeBit(eventType)) != 0 || this.loggingManager.isLoggable(eventType)){
+            return true;
+        }else if(session == null){
+            return false;
+        }
+
+        String sessionId = session.getSessionShellId();
+        return this.eventQueue.isRegistered(sessionId) || this.futureEvents.containsKey(sessionId);
+    }
+
     public void registerSession(String sessionId){
         this.eventQueue.registerSession(sessionId);
     }
@@ -68,49 +118,63 @@ public class DiagnosticManager{
     /*If an event of the required type has already occurred, return it immediately.
      * This method will register the relevant session with the event queue*/
     public Future<AbstractEngineEvent> await(String sessionId, EngineEventType eventType){
-        synchronized (this.eventQueue) {
-            Collection<AbstractEngineEvent> pastEvents = this.eventQueue.getEventsForSession(sessionId);
-            for (AbstractEngineEvent pastEvent : pastEvents) {
-                if (pastEvent.getEventType().equals(eventType)) {
-                    return CompletableFuture.completedFuture(pastEvent);
-                }
+        /*Register the future before searching past events. emit() pushes to the event queue before completing futures,
+        * so an event emitted concurrently is either found in the event queue or completes the future*/
+        CompletableFuture<AbstractEngineEvent> futureEvent = awaitFutureEvent(sessionId, eventType);
+        Collection<AbstractEngineEvent> pastEvents = this.eventQueue.getEventsForSession(sessionId);
+        for (AbstractEngineEvent pastEvent : pastEvents) {
+            if (pastEvent.getEventType().equals(eventType)) {
+                return resolveFutureEvent(sessionId, futureEvent, pastEvent);
             }
         }
 
-        /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
+        /*If no event of the required type has occurred yet, return a future that will resolve when such an event occurs.
         * If such a future was already registered, return it instead*/
-        return awaitFutureEvent(sessionId, eventType);
+        return futureEvent;
     }
 
     /* Consume events sequentially from the event queue.
      * If an event of type {eventType} has occurred, return with it immediately.
      * If an event of any other type has occurred, discard that event and continue consuming.*/
     public Future<AbstractEngineEvent> awaitAndConsume(String sessionId, EngineEventType eventType){
-        synchronized (this.eventQueue) {
-            AbstractEngineEvent nextEvent;
-            do{
-                nextEvent = eventQueue.consumeNextEvent(sessionId);
-                if(nextEvent != null && nextEvent.getEventType().equals(eventType)){
-                    return CompletableFuture.completedFuture(nextEvent);
-                }
-            } while(nextEvent != null);
-        }
+        CompletableFuture<AbstractEngineEvent> futureEvent = awaitFutureEvent(sessionId, eventType);
+        AbstractEngineEvent nextEvent;
+        do{
+            nextEvent = eventQueue.consumeNextEvent(sessionId);
+            if(nextEvent != null && nextEvent.getEventType().equals(eventType)){
+                return resolveFutureEvent(sessionId, futureEvent, nextEvent);
+            }
+        } while(nextEvent != null);
 
-        /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
+        /*If no event of the required type has occurred yet, return a future that will resolve when such an event occurs.
          * If such a future was already registered, return it instead*/
-        return awaitFutureEvent(sessionId, eventType);
+        return futureEvent;
+    }
+
+    private CompletableFuture<AbstractEngineEvent> awaitFutureEvent(String sessionId, EngineEventType eventType){
+        return this.futureEvents
+            .computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+            .computeIfAbsent(eventType, type -> new CompletableFuture<>());
     }
 
-    private Future<AbstractEngineEvent> awaitFutureEvent(String sessionId, EngineEventType eventType){
-        EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap;
-        synchronized (this.futureEvents){
-            this.futureEvents.putIfAbsent(sessionId, new EnumMap<>(EngineEventType.class));
-            eventMap = this.futureEvents.get(sessionId);
+    //The event was found in the event queue, so the registered future is no longer awaited by emit()
+    private Future<AbstractEngineEvent> resolveFutureEvent(String sessionId, CompletableFuture<AbstractEngineEvent> futureEvent, AbstractEngineEvent event){
+        Map<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap = this.futureEvents.get(sessionId);
+        if(eventMap != null){
+            eventMap.remove(event.getEventType(), futureEvent);
         }
 
-        synchronized (eventMap) {
-            eventMap.putIfAbsent(eventType, new CompletableFuture<>());
-            return eventMap.get(eventType);
+        futureEvent.complete(event); //no-op if emit() has already completed the future
+        return futureEvent;
+    }
+
+    /*Builds the event only if it would be observed. Otherwise, only the lifecycle phase of the current thread is updated
+    * Prefer this method on hot paths, so that runs without diagnostics produce (almost) no event garbage*/
+    public void emit(Session session, EngineEventType eventType, Supplier<? extends AbstractEngineEvent> eventSupplier){
+        if(isObserved(session, eventType)){
+            emit(eventSupplier.get());
+        }else{
+            ThreadingUtils.updateLifecyclePhase(eventType);
         }
     }
 
@@ -118,40 +182,38 @@ public class DiagnosticManager{
         this.loggingManager.logEngineEvent(event);
         ThreadingUtils.updateLifecyclePhase(event.getEventType());
 
+        String sessionId = null;
         if(event.getSession() != null) {
-            String sessionId = event.getSession().getSessionShellId();
-            synchronized (this.eventQueue) {
-                /*To avoid any chance for leaking memory, it is not possible to await events at any point after the SessionClosed event*/
-                if(event.getEventType().equals(EngineEventType.SessionClosed)){
-                    synchronized (this.eventQueue){
-                        this.eventQueue.unregisterSession(sessionId);
-                    }
-                }else {
-                    this.eventQueue.pushIfRegistered(sessionId, event);
-                }
+            sessionId = event.getSession().getSessionShellId();
+
+            /*To avoid any chance for leaking memory, it is not possible to await events at any point after the SessionClosed event*/
+            if(event.getEventType().equals(EngineEventType.SessionClosed)){
+                this.eventQueue.unregisterSession(sessionId);
+            }else {
+                this.eventQueue.pushIfRegistered(sessionId, event);
             }
 
-            EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap;
-            synchronized (this.futureEvents) {
-                /*But it is still possible to obtain their encapsulating futures, provided they were requested before the SessionClosed event*/
+            /*But it is still possible to obtain their encapsulating futures, provided they were requested before the SessionClosed event*/
+            Map<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap;
+            if(event.getEventType().equals(EngineEventType.SessionClosed)){
+                eventMap = this.futureEvents.remove(sessionId);
+            }else{
                 eventMap = this.futureEvents.get(sessionId);
-                if(event.getEventType().equals(EngineEventType.SessionClosed)){
-                    this.futureEvents.remove(sessionId);
-                }
             }
 
             if(eventMap != null){
-                synchronized (eventMap) {
-                    CompletableFuture<AbstractEngineEvent> futureEvent = eventMap.remove(event.getEventType());
-                    if(futureEvent != null){
-                        futureEvent.complete(event);
-                    }
+                CompletableFuture<AbstractEngineEvent> futureEvent = eventMap.remove(event.getEventType());
+                if(futureEvent != null){
+                    futureEvent.complete(event);
                 }
             }
         }
 
-        synchronized (this.engineEventHandlers){
-            for (IEngineEventHandler iEngineEventHandler : this.engineEventHandlers.get(event.getEventType())) {
+        /*Events of the same session are dispatched to the same dispatcher thread, so handlers receive them in the order they were emitted (even if the dispatcher ring buffer is full)
+        * Only once the dispatcher is closed (i.e. the engine is shutting down), each handler receives the event on the engine pool instead*/
+        Set<IEngineEventHandler> eventHandlers = this.engineEventHandlers.get(event.getEventType());
+        if(!eventHandlers.isEmpty() && !this.eventDispatcher.dispatch(Objects.hashCode(sessionId), event)){
+            for (IEngineEventHandler iEngineEventHandler : eventHandlers) {
                 try {
                     threadingManager.submit(() -> iEngineEventHandler.handleEngineEvent(event));
                 } catch (Exception e) {
@@ -161,12 +223,18 @@ public class DiagnosticManager{
         }
     }
 
-    public void clearDiagnosedSessions(){
-        synchronized (this.futureEvents) {
-            this.futureEvents.clear();
-        }
-        synchronized (this.eventQueue){
-            this.eventQueue.clear();
+    private void dispatchToHandlers(AbstractEngineEvent event){
+        for (IEngineEventHandler iEngineEventHandler : this.engineEventHandlers.get(event.getEventType())) {
+            try {
+                iEngineEventHandler.handleEngineEvent(event);
+            } catch (Exception e) {
+                logger.error("Event handler failed to handle " + event.getEventType() + " engine event. Caused by: " + e.getMessage());
+            }
         }
     }
+
+    public void clearDiagnosedSessions(){
+        this.futureEvents.clear();
+        this.eventQueue.clear();
+    }
 }
\ No newline at end of file
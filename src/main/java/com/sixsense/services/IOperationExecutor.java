@@ -0,0 +1,16 @@
+package com.sixsense.services;
+
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.retention.OperationResult;
+
+/*Executes the operations admitted by the admission manager (see SessionEngine)
+ * Operations are registered when they are admitted, and executed later on an engine thread. Until then they may be terminated, or unregistered if they will never be executed*/
+public interface IOperationExecutor {
+    void registerOperation(Operation operation);
+
+    void unregisterOperation(String operationId);
+
+    OperationResult executeRegisteredOperation(Operation operation);
+
+    OperationResult terminateOperation(String operationId);
+}
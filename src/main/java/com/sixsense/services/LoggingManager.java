@@ -1,36 +1,94 @@
 package com.sixsense.services;
 
+import com.sixsense.config.LoggingConfig;
 import com.sixsense.model.events.*;
+import com.sixsense.model.logging.JournalRecord;
+import com.sixsense.model.logging.LogOverflowPolicy;
 import com.sixsense.model.logging.Loggers;
+import com.sixsense.model.logging.TrailMode;
+import com.sixsense.model.logging.TrailRange;
 import com.sixsense.model.logic.ExpressionResult;
 import com.sixsense.model.retention.DatabaseVariable;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.io.EventJournal;
+import com.sixsense.io.JournalAppender;
+import com.sixsense.io.RangeOutputStream;
 import com.sixsense.io.Session;
+import com.sixsense.io.TrailCloseAppender;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.ExpressionUtils;
 import com.sixsense.utillity.Literals;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
 import org.apache.logging.log4j.core.appender.FileAppender;
 import org.apache.logging.log4j.core.appender.FileManager;
 import org.apache.logging.log4j.core.appender.routing.RoutingAppender;
+import org.apache.logging.log4j.core.config.AppenderControl;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.CompositeFilter;
+import org.apache.logging.log4j.core.filter.MarkerFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@EnableConfigurationProperties(LoggingConfig.class)
 /*Manages all logging operations that are done from a session's context*/
-public class LoggingManager  {
+public class LoggingManager implements Closeable {
+    private static final Logger logger = LogManager.getLogger(LoggingManager.class);
     private static final EnumMap<Loggers, Logger> loggers = new EnumMap<>(Loggers.class); //Maps logger names to the actual loggers
     private static final Map<String, RoutingAppender> routingAppenders = new HashMap<>(); //Routing appenders (holding references to files belonging to sessions)
+    private static final EnumSet<Loggers> sessionLoggers = EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger, Loggers.TerminalLogger);
+    private static final EnumMap<Loggers, String> trailFileNames = new EnumMap<>(Map.of(Loggers.SessionLogger, "session.log", Loggers.CommandLogger, "command.log", Loggers.TerminalLogger, "terminal.log"));
+    private static final DateTimeFormatter trailTimeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String[] indentations = new String[16]; //Indentations are reused rather than built for every log line
+    private static final long DrainTimeoutMillis = TimeUnit.SECONDS.toMillis(5);
+    private static final Marker TrailCloseMarker = MarkerManager.getMarker("SIXSENSE_TRAIL_CLOSE");
+    private static final int StreamChunkBytes = 8192;
 
-    private LoggingManager(){
+    private final List<AsyncAppender> asyncAppenders = new ArrayList<>();
+    private final Map<Loggers, RoutingAppender> asyncRoutingAppenders = new EnumMap<>(Loggers.class); //key: asynchronous session logger, value: the routing appender writing it's trail files
+    private final Map<String, Set<Loggers>> pendingTrailClosures = new ConcurrentHashMap<>(); //key: session id, value: asynchronous loggers which have not yet closed the trail files of the session
+    private ScheduledExecutorService trailCloseRetrier; //null unless trail files are written asynchronously
+    private EventJournal eventJournal; //null unless session trails are written in journal mode
+
+    static {
+        for(int rank = 0; rank < indentations.length; rank++){
+            indentations[rank] = Literals.Tab.repeat(rank);
+        }
+    }
+
+    @Autowired
+    private LoggingManager(LoggingConfig loggingConfig){
         for(Loggers logger : EnumSet.allOf(Loggers.class)){
             loggers.put(logger, LogManager.getLogger(logger.name()));
         }
@@ -39,9 +97,121 @@ public class LoggingManager  {
         routingAppenders.put("session_log", (RoutingAppender)appenderMap.get("session_log"));
         routingAppenders.put("command_log", (RoutingAppender)appenderMap.get("command_log"));
         routingAppenders.put("terminal_log", (RoutingAppender)appenderMap.get("terminal_log"));
+
+        configureSessionLoggers(loggingConfig);
+    }
+
+    /*Reconfigures the appenders of the session, command and terminal loggers:
+     * In journal mode, the routing appenders (which create a set of files per session) are replaced by a single appender writing to the event journal.
+     * In asynchronous mode, a bounded buffer is placed between each logger and it's appenders, which are then written to by a background thread.
+     * Log events capture the ThreadContext when they are created, so each line still reaches the file (or journal index) of it's session*/
+    private void configureSessionLoggers(LoggingConfig loggingConfig){
+        if(loggingConfig.getTrailMode().equals(TrailMode.Journal)){
+            this.eventJournal = openEventJournal(loggingConfig);
+        }
+        if(!loggingConfig.isAsync() && this.eventJournal == null){
+            return;
+        }
+
+        LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
+        Configuration configuration = loggerContext.getConfiguration();
+
+        Map<String, Appender> fallbackAppenders = new HashMap<>();
+        JournalAppender journalAppender = null;
+        if(this.eventJournal != null){
+            journalAppender = new JournalAppender("session_journal", this.eventJournal, fallbackAppenders);
+            journalAppender.start();
+            configuration.addAppender(journalAppender);
+        }
+
+        for(Loggers loggerName : sessionLoggers){
+            LoggerConfig loggerConfig = configuration.getLoggerConfig(loggerName.name());
+            List<AppenderRef> appenderRefs = new ArrayList<>();
+            for(AppenderRef appenderRef : new ArrayList<>(loggerConfig.getAppenderRefs())){
+                loggerConfig.removeAppender(appenderRef.getRef());
+                if(journalAppender != null && routingAppenders.containsKey(appenderRef.getRef())){
+                    //each reference keeps it's level, so the appender levels in log4j2.xml still apply
+                    fallbackAppenders.put(loggerName.name(), routingAppenders.get(appenderRef.getRef()));
+                    appenderRefs.add(AppenderRef.createAppenderRef(journalAppender.getName(), appenderRef.getLevel(), appenderRef.getFilter()));
+                }else{
+                    appenderRefs.add(appenderRef);
+                }
+            }
+
+            if(loggingConfig.isAsync()) {
+                if(journalAppender == null){
+                    appenderRefs = addTrailCloser(configuration, loggerName, appenderRefs);
+                }
+
+                AsyncAppender asyncAppender = AsyncAppender.newBuilder()
+                    .setName("async_" + loggerName.name())
+                    .setAppenderRefs(appenderRefs.toArray(new AppenderRef[0]))
+                    .setBufferSize(loggingConfig.getBufferSize())
+                    .setBlocking(loggingConfig.getOverflowPolicy().equals(LogOverflowPolicy.Block))
+                    .setShutdownTimeout(DrainTimeoutMillis)
+                    .setConfiguration(configuration)
+                    .build();
+                asyncAppender.start();
+                configuration.addAppender(asyncAppender);
+                loggerConfig.addAppender(asyncAppender, null, null);
+                this.asyncAppenders.add(asyncAppender);
+            }else{
+                for(AppenderRef appenderRef : appenderRefs){
+                    loggerConfig.addAppender(configuration.getAppender(appenderRef.getRef()), appenderRef.getLevel(), appenderRef.getFilter());
+                }
+            }
+        }
+
+        loggerContext.updateLoggers();
+        if(!this.asyncRoutingAppenders.isEmpty()){
+            this.trailCloseRetrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread retrierThread = new Thread(runnable, "engine-trail-closer");
+                retrierThread.setDaemon(true);
+                return retrierThread;
+            });
+            this.trailCloseRetrier.scheduleWithFixedDelay(this::retryTrailClosures, DrainTimeoutMillis, DrainTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Session trails are written to " + (this.eventJournal == null ? "text files" : "the event journal") + (loggingConfig.isAsync() ? " asynchronously (buffer size: " + loggingConfig.getBufferSize() + ", overflow policy: " + loggingConfig.getOverflowPolicy() + ")" : ""));
+    }
+
+    /*Places a trail close appender after the other appenders of an asynchronous logger (see TrailCloseAppender)
+     * The other appenders ignore the close marker, so it never shows up in the trails themselves*/
+    private List<AppenderRef> addTrailCloser(Configuration configuration, Loggers loggerName, List<AppenderRef> appenderRefs){
+        List<AppenderRef> closerRefs = new ArrayList<>();
+        for(AppenderRef appenderRef : appenderRefs){
+            if(routingAppenders.containsKey(appenderRef.getRef())){
+                this.asyncRoutingAppenders.put(loggerName, routingAppenders.get(appenderRef.getRef()));
+            }
+
+            Filter ignoreMarker = MarkerFilter.createFilter(TrailCloseMarker.getName(), Filter.Result.DENY, Filter.Result.NEUTRAL);
+            Filter refFilter = appenderRef.getFilter() == null ? ignoreMarker : CompositeFilter.createFilters(new Filter[]{ignoreMarker, appenderRef.getFilter()});
+            closerRefs.add(AppenderRef.createAppenderRef(appenderRef.getRef(), appenderRef.getLevel(), refFilter));
+        }
+
+        if(this.asyncRoutingAppenders.containsKey(loggerName)) {
+            TrailCloseAppender trailCloser = new TrailCloseAppender("trail_closer_" + loggerName.name(), TrailCloseMarker, sessionId -> closeTrail(sessionId, loggerName));
+            trailCloser.start();
+            configuration.addAppender(trailCloser);
+            closerRefs.add(AppenderRef.createAppenderRef(trailCloser.getName(), null, MarkerFilter.createFilter(TrailCloseMarker.getName(), Filter.Result.ACCEPT, Filter.Result.DENY)));
+        }
+        return closerRefs;
+    }
+
+    //If the journal cannot be opened, the session trails are written to text files instead
+    private EventJournal openEventJournal(LoggingConfig loggingConfig){
+        try {
+            return new EventJournal(Paths.get(Literals.JournalDirectory), (int)loggingConfig.getJournalSegmentSize().toBytes(), loggingConfig.getJournalMaximumSegments());
+        } catch (IOException e) {
+            logger.error("Failed to open the event journal, session trails will be written to text files. Caused by: " + e.getMessage());
+            return null;
+        }
     }
 
     public void logEngineEvent(AbstractEngineEvent event) {
+        if(!isLoggable(event.getEventType())){
+            return; //skip building the log messages (and printing expression trees) altogether
+        }
+
         try{
             switch (event.getEventType()){
                 case SessionCreated: logSessionCreated((SessionCreatedEvent)event); break;
@@ -65,12 +235,223 @@ public class LoggingManager  {
         }
     }
 
+    /*Checks if any of the loggers used for the event type would write it at their current level
+     * Level checks are cheap, so the diagnostic manager calls this method before deciding to build an event at all*/
+    public boolean isLoggable(EngineEventType eventType){
+        switch (eventType){
+            case SessionCreated:
+            case InputSent:
+            case OutputReceived:
+            case SessionClosed: return loggers.get(Loggers.SessionLogger).isInfoEnabled() || loggers.get(Loggers.CommandLogger).isInfoEnabled();
+            case OperationStart:
+            case BlockStart:
+            case CommandStart:
+            case CommandEnd:
+            case BlockEnd:
+            case OperationEnd:
+            case ConditionEvaluation:
+            case OutcomeEvaluation:
+            case ResultRetention: return loggers.get(Loggers.SessionLogger).isInfoEnabled();
+            case ExecutionAnomaly: return loggers.get(Loggers.SessionLogger).isErrorEnabled();
+            default: return false;
+        }
+    }
+
+    /*In asynchronous mode, the session log files may still have lines waiting in the buffers
+     * so a close marker is queued behind them instead, and each file is closed once it's marker has passed through the buffer (see TrailCloseAppender)*/
     void closeLoggers(String sessionId){
-        routingAppenders.values().forEach(appender -> {
-            FileAppender fileAppender = (FileAppender) appender.getAppenders().get(sessionId).getAppender();
+        if(this.eventJournal != null){
+            return; //the journal has no per-session resources to release
+        }
+
+        if(!this.asyncRoutingAppenders.isEmpty()){
+            this.pendingTrailClosures.put(sessionId, EnumSet.copyOf(this.asyncRoutingAppenders.keySet()));
+            logTrailCloseMarkers(sessionId);
+        }
+        routingAppenders.values().stream()
+            .filter(appender -> !this.asyncRoutingAppenders.containsValue(appender))
+            .forEach(appender -> closeSessionFile(appender, sessionId));
+    }
+
+    //Called by the trail close appender of the logger, on the background thread of it's asynchronous appender
+    private void closeTrail(String sessionId, Loggers loggerName){
+        this.pendingTrailClosures.computeIfPresent(sessionId, (id, pendingLoggers) -> {
+            if(pendingLoggers.remove(loggerName)){
+                closeSessionFile(this.asyncRoutingAppenders.get(loggerName), sessionId);
+            }
+            return pendingLoggers.isEmpty() ? null : pendingLoggers;
+        });
+    }
+
+    /*The marker is logged at the highest level, so it passes the level of any logger that writes trail lines at all. A logger which would not log it has nothing queued, so it's file is closed right away.
+     * Under the Drop overflow policy the marker itself may be dropped from a full buffer, in which case retryTrailClosures() logs it again*/
+    private void logTrailCloseMarkers(String sessionId){
+        String callerSessionId = ThreadContext.get("sessionID");
+        ThreadContext.put("sessionID", sessionId);
+        try {
+            for(Loggers loggerName : this.asyncRoutingAppenders.keySet()){
+                Logger sessionLogger = loggers.get(loggerName);
+                if(sessionLogger.isEnabled(Level.FATAL, TrailCloseMarker)){
+                    sessionLogger.log(Level.FATAL, TrailCloseMarker, "Closing the trail files of session {}", sessionId);
+                }else{
+                    closeTrail(sessionId, loggerName);
+                }
+            }
+        }finally {
+            if(callerSessionId == null){
+                ThreadContext.remove("sessionID");
+            }else{
+                ThreadContext.put("sessionID", callerSessionId);
+            }
+        }
+    }
+
+    //A marker which did arrive is ignored when it arrives again, since the session is no longer pending for it's logger
+    private void retryTrailClosures(){
+        for(String sessionId : this.pendingTrailClosures.keySet()){
+            try {
+                logTrailCloseMarkers(sessionId);
+            }catch (Exception e){
+                logger.error("Failed to close the log files of session " + sessionId + ". Caused by: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeSessionFile(RoutingAppender appender, String sessionId){
+        AppenderControl appenderControl = appender.getAppenders().get(sessionId);
+        if(appenderControl != null) { //the session may not have logged anything to this trail
+            FileAppender fileAppender = (FileAppender) appenderControl.getAppender();
             FileManager fileManager = fileAppender.getManager();
             fileManager.close();
-        });
+        }
+    }
+
+    //Checks whether a session has written anything to the given trail, so a missing trail can be told apart from an empty range
+    public boolean hasTrail(String shortSessionId, Loggers trail){
+        if(!trailFileNames.containsKey(trail)){
+            return false;
+        }
+
+        if(this.eventJournal != null){
+            return this.eventJournal.getRecordCount(shortSessionId, trail) > 0;
+        }else{
+            Path trailFile = getTrailFile(shortSessionId, trail);
+            return trailFile != null && Files.isRegularFile(trailFile);
+        }
+    }
+
+    /*Writes a range of the text trail of a session (as it would appear in it's session.log, command.log or terminal.log file) to the output stream
+     * In journal mode, the index of the session is used to skip straight to the first record in range. Otherwise, the trail file is read from disk in chunks.
+     * Either way, the trail is never loaded into memory as a whole*/
+    public void streamTrail(String shortSessionId, Loggers trail, TrailRange trailRange, OutputStream outputStream) throws IOException{
+        if(!trailFileNames.containsKey(trail)){
+            throw new IllegalArgumentException("Logger " + trail.name() + " does not write a session trail");
+        }else if(trailRange.isEmpty()){
+            return;
+        }
+
+        if(this.eventJournal != null){
+            this.eventJournal.streamTrail(shortSessionId, trail, trailRange, getRecordOverhead(trail), this::renderRecord, outputStream);
+        }else{
+            Path trailFile = getTrailFile(shortSessionId, trail);
+            if(trailFile == null){
+                throw new IllegalArgumentException("Session id " + shortSessionId + " does not denote a session directory");
+            }else if(trailRange.isOrdinalBounded()){
+                streamTrailLines(trailFile, trailRange, outputStream);
+            }else{
+                streamTrailBytes(trailFile, trailRange, outputStream);
+            }
+        }
+        outputStream.flush();
+    }
+
+    //Without an ordinal range, the byte range maps directly onto the file, so it can be transferred without passing through the heap
+    private void streamTrailBytes(Path trailFile, TrailRange trailRange, OutputStream outputStream) throws IOException{
+        try (FileChannel fileChannel = FileChannel.open(trailFile, StandardOpenOption.READ)) {
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            long position = Math.min(trailRange.getFromByte(), fileChannel.size());
+            long end = Math.min(trailRange.getToByte(), fileChannel.size());
+            while(position < end){
+                long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+                if(transferred <= 0){
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    //Ordinals of a trail file are line numbers, which are counted while reading the file a chunk at a time
+    private void streamTrailLines(Path trailFile, TrailRange trailRange, OutputStream outputStream) throws IOException{
+        RangeOutputStream rangeStream = new RangeOutputStream(outputStream, 0, trailRange.getFromByte(), trailRange.getToByte());
+        byte[] chunk = new byte[StreamChunkBytes];
+        int lineNumber = 0;
+
+        try (InputStream inputStream = Files.newInputStream(trailFile)) {
+            int chunkLength;
+            while(lineNumber < trailRange.getToOrdinal() && !rangeStream.isExhausted() && (chunkLength = inputStream.read(chunk)) > 0){
+                int lineStart = 0;
+                for(int index = 0; index < chunkLength; index++){
+                    if(chunk[index] == '\n'){
+                        writeLine(rangeStream, chunk, lineStart, index + 1, lineNumber, trailRange);
+                        lineStart = index + 1;
+                        lineNumber++;
+                    }
+                }
+                writeLine(rangeStream, chunk, lineStart, chunkLength, lineNumber, trailRange); //the remainder of a line which continues in the next chunk
+            }
+        }
+    }
+
+    //Lines outside of the ordinal range still advance the position of the range stream, so byte offsets keep referring to the whole file
+    private void writeLine(RangeOutputStream rangeStream, byte[] chunk, int from, int to, int lineNumber, TrailRange trailRange) throws IOException{
+        if(lineNumber >= trailRange.getFromOrdinal() && lineNumber < trailRange.getToOrdinal()){
+            rangeStream.write(chunk, from, to - from);
+        }else{
+            rangeStream.skip(to - from);
+        }
+    }
+
+    //Resolves the trail file of a session, refusing session ids that would escape the session execution directory
+    private Path getTrailFile(String shortSessionId, Loggers trail){
+        Path sessionsDirectory = Paths.get(Literals.SessionExecutionDir).normalize();
+        Path sessionDirectory = sessionsDirectory.resolve(shortSessionId).normalize();
+        if(!sessionDirectory.getParent().equals(sessionsDirectory)){
+            return null;
+        }
+        return sessionDirectory.resolve(trailFileNames.get(trail));
+    }
+
+    //The number of bytes renderRecord() adds to the payload of each record in the trail
+    private int getRecordOverhead(Loggers trail){
+        switch (trail){
+            case CommandLogger: return "[HH:mm:ss] ".length() + Literals.LineBreak.getBytes(StandardCharsets.UTF_8).length;
+            case TerminalLogger: return 0;
+            default: return Literals.LineBreak.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    //Mirrors the layout patterns of the session_log, command_log and terminal_log appenders in log4j2.xml
+    private String renderRecord(JournalRecord record){
+        switch (record.getTrail()){
+            case CommandLogger: return "[" + trailTimeFormatter.format(Instant.ofEpochMilli(record.getTimestamp())) + "] " + record.getPayload() + Literals.LineBreak;
+            case TerminalLogger: return record.getPayload();
+            default: return record.getPayload() + Literals.LineBreak;
+        }
+    }
+
+    public boolean isJournalEnabled(){
+        return this.eventJournal != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.trailCloseRetrier != null){
+            this.trailCloseRetrier.shutdownNow();
+        }
+        if(this.eventJournal != null){
+            this.eventJournal.close();
+        }
     }
 
     private void logSessionCreated(SessionCreatedEvent event){
@@ -80,63 +461,65 @@ public class LoggingManager  {
         jointLog(
             EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger),
             Level.INFO,
-            "Session " +  event.getSession().getSessionShellId() + " has been created at " + creationDate
+            "Session {} has been created at {}",
+            event.getSession().getSessionShellId(),
+            creationDate
         );
         logDynamicFields(indentation, SessionEngine.getSessionProperties(), Literals.PlusSign);
     }
 
     private void logOperationStart(OperationStartEvent event){
         String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation " + event.getOperation().getShortUUID() + " Start");
+        loggers.get(Loggers.SessionLogger).info("{}Operation {} Start", indentation, event.getOperation().getShortUUID());
         logDynamicFields(indentation, event.getOperation().getDynamicFields(), Literals.PlusSign);
     }
 
     private void logBlockStart(BlockStartEvent event){
         String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block " + event.getBlock().getShortUUID() + " Start");
+        loggers.get(Loggers.SessionLogger).info("{}Block {} Start", indentation, event.getBlock().getShortUUID());
         logDynamicFields(indentation, event.getBlock().getDynamicFields(), Literals.PlusSign);
     }
 
     private void logCommandStart(CommandStartEvent event){
         String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command " + event.getCommand().getShortUUID() + " Start");
+        loggers.get(Loggers.SessionLogger).info("{}Command {} Start", indentation, event.getCommand().getShortUUID());
         logDynamicFields(indentation, event.getCommand().getDynamicFields(), Literals.PlusSign);
     }
 
     private void logInputSent(InputSentEvent event){
         String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session acquired lock");
-        loggers.get(Loggers.SessionLogger).info(indentation + "Wrote: \"" + event.getInputSent() + "\" to channel " + event.getCommand().getChannelName());
-        loggers.get(Loggers.CommandLogger).info(event.getOrdinal() + "W): <" + event.getCommand().getChannelName() + "> " + event.getInputSent());
+        loggers.get(Loggers.SessionLogger).debug("{}{} session acquired lock", indentation, event.getSession().getTerminalIdentifier());
+        loggers.get(Loggers.SessionLogger).info("{}Wrote: \"{}\" to channel {}", indentation, event.getInputSent(), event.getCommand().getChannelName());
+        loggers.get(Loggers.CommandLogger).info("{}W): <{}> {}", event.getOrdinal(), event.getCommand().getChannelName(), event.getInputSent());
     }
 
     private void logOutputReceived(OutputReceivedEvent event){
         String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session finished command wait");
-        loggers.get(Loggers.SessionLogger).info(indentation + "Read: \"" + event.getOutputReceived() + "\"");
-        loggers.get(Loggers.CommandLogger).info(event.getOrdinal() + "R): <" + event.getCommand().getChannelName() + "> " + event.getOutputReceived());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session released lock");
+        loggers.get(Loggers.SessionLogger).debug("{}{} session finished command wait", indentation, event.getSession().getTerminalIdentifier());
+        loggers.get(Loggers.SessionLogger).info("{}Read: \"{}\"", indentation, event.getOutputReceived());
+        loggers.get(Loggers.CommandLogger).info("{}R): <{}> {}", event.getOrdinal(), event.getCommand().getChannelName(), event.getOutputReceived());
+        loggers.get(Loggers.SessionLogger).debug("{}{} session released lock", indentation, event.getSession().getTerminalIdentifier());
     }
 
     private void logCommandEnd(CommandEndEvent event){
         String indentation = getIndentation(event.getSession());
         logDynamicFields(indentation, event.getCommand().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command " + event.getCommand().getShortUUID() + " End");
+        loggers.get(Loggers.SessionLogger).info("{}Command result is {}", indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Command {} End", indentation, event.getCommand().getShortUUID());
     }
 
     private void logBlockEnd(BlockEndEvent event){
         String indentation = getIndentation(event.getSession());
         logDynamicFields(indentation, event.getBlock().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block " + event.getBlock().getShortUUID() + " End");
+        loggers.get(Loggers.SessionLogger).info("{}Block result is {}", indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Block {} End", indentation, event.getBlock().getShortUUID());
     }
 
     private void logOperationEnd(OperationEndEvent event){
         String indentation = getIndentation(event.getSession());
         logDynamicFields(indentation, event.getOperation().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation " + event.getOperation().getShortUUID() + " End");
+        loggers.get(Loggers.SessionLogger).info("{}Operation result is {}", indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Operation {} End", indentation, event.getOperation().getShortUUID());
     }
 
     private void logSessionClosed(SessionClosedEvent event){
@@ -145,7 +528,8 @@ public class LoggingManager  {
         jointLog(
             EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger),
             Level.INFO,
-            "Session " +  event.getSession().getSessionShellId() + " has been closed"
+            "Session {} has been closed",
+            event.getSession().getSessionShellId()
         );
     }
 
@@ -153,16 +537,16 @@ public class LoggingManager  {
         String indentation = getIndentation(event.getSession());
         String asTree = ExpressionUtils.toPrintableString(event.getCondition()).replaceAll("\n", "\n" + indentation);
         String resolvedCondition = CommandUtils.evaluateAgainstDynamicFields(asTree, event.getSession().getCurrentSessionVariables());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Execution condition:");
-        loggers.get(Loggers.SessionLogger).info(indentation + resolvedCondition);
+        loggers.get(Loggers.SessionLogger).info("{}Execution condition:", indentation);
+        loggers.get(Loggers.SessionLogger).info("{}{}", indentation, resolvedCondition);
     }
 
     private void logOutcomeEvaluation(OutcomeEvaluationEvent event){
         String indentation = getIndentation(event.getSession());
         String asTree = ExpressionUtils.toPrintableString(event.getExpectedOutcome()).replaceAll("\n", "\n" + indentation);
         String resolvedOutcome = CommandUtils.evaluateAgainstDynamicFields(asTree, event.getSession().getCurrentSessionVariables());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Expected outcome:");
-        loggers.get(Loggers.SessionLogger).info(indentation + resolvedOutcome);
+        loggers.get(Loggers.SessionLogger).info("{}Expected outcome:", indentation);
+        loggers.get(Loggers.SessionLogger).info("{}{}", indentation, resolvedOutcome);
     }
 
     private void logVariableRetention(ResultRetentionEvent event){
@@ -171,7 +555,7 @@ public class LoggingManager  {
         ResultRetention retention = event.getResultRetention();
         RetentionMode retentionMode = retention.getRetentionMode();
 
-        loggers.get(Loggers.SessionLogger).info(indentation + "Result retention of type [" + retentionMode.name() + "]");
+        loggers.get(Loggers.SessionLogger).info("{}Result retention of type [{}]", indentation, retentionMode.name());
         switch (retentionMode){
             case Variable:{
                 Map<String, String> oldSessionVarState = session.getCurrentSessionVariables();
@@ -182,7 +566,7 @@ public class LoggingManager  {
                 logDynamicFields(indentation, retention.getName(), retention.getValue(), Literals.PlusSign);
             }break;
             case File:{
-                loggers.get(Loggers.SessionLogger).info(indentation + "Added results to file " + retention.getName());
+                loggers.get(Loggers.SessionLogger).info("{}Added results to file {}", indentation, retention.getName());
             }break;
             case DatabaseEventual:{
                 Set<DatabaseVariable> oldDatabaseVarState = session.getDatabaseVariables();
@@ -199,18 +583,19 @@ public class LoggingManager  {
                 logDynamicFields(indentation, retention.getName(), retention.getValue(), Literals.PlusSign);
             }break;
             default:{
-                loggers.get(Loggers.SessionLogger).info(indentation + "No result retention was performed");
+                loggers.get(Loggers.SessionLogger).info("{}No result retention was performed", indentation);
             }break;
         }
     }
 
     private void logExecutionAnomaly(ExecutionAnomalyEvent event){
         ExpressionResult anomaly = event.getResult();
-        loggers.get(Loggers.SessionLogger).error("Excecution anomaly encountered: " + anomaly.toString());
+        loggers.get(Loggers.SessionLogger).error("Excecution anomaly encountered: {}", anomaly);
     }
 
     private String getIndentation(Session session){
-        return Literals.Tab.repeat(session.getDrilldownRank());
+        int drilldownRank = session.getDrilldownRank();
+        return drilldownRank < indentations.length ? indentations[drilldownRank] : Literals.Tab.repeat(drilldownRank);
     }
 
     //The dynamic fields should be from the ICommand in question, and not all fields in session context. because we log loading and removal of the relevant fields by the ICommand
@@ -223,12 +608,18 @@ public class LoggingManager  {
     }
 
     private void logDynamicFields(String indentation, String key, String value, String sign){
-        loggers.get(Loggers.SessionLogger).info(indentation + sign + " " + key + " = \"" + value + "\"");
+        loggers.get(Loggers.SessionLogger).info("{}{} {} = \"{}\"", indentation, sign, key, value);
+    }
+
+    private void jointLog(EnumSet<Loggers> loggerNames, Level logLevel, String message, Object parameter){
+        for(Loggers loggerName : loggerNames){
+            loggers.get(loggerName).log(logLevel, message, parameter);
+        }
     }
 
-    private void jointLog(EnumSet<Loggers> loggerNames, Level logLevel, String message){
+    private void jointLog(EnumSet<Loggers> loggerNames, Level logLevel, String message, Object firstParameter, Object secondParameter){
         for(Loggers loggerName : loggerNames){
-            loggers.get(loggerName).log(logLevel, message);
+            loggers.get(loggerName).log(logLevel, message, firstParameter, secondParameter);
         }
     }
 }
@@ -0,0 +1,72 @@
+package com.sixsense.services;
+
+import com.sixsense.model.metrics.EngineTimer;
+import com.sixsense.model.threading.ThreadPool;
+import com.sixsense.threading.ThreadingManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/*Records the timings of the engine's hot paths, and registers gauges of it's running state
+* All meters are exported by the actuator's prometheus endpoint. Timers publish percentile histograms, so percentiles can be aggregated across engines*/
+@Service
+public class MetricsManager {
+    private static final Logger logger = LogManager.getLogger(MetricsManager.class);
+    private static final Duration MinimumExpectedDuration = Duration.ofNanos(100_000); //prompt detection and outcome resolution usually take well under a millisecond
+    private static final Duration MaximumExpectedDuration = Duration.ofMinutes(10);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<EngineTimer, Timer> timers = new EnumMap<>(EngineTimer.class);
+
+    @Autowired
+    private MetricsManager(MeterRegistry meterRegistry, ThreadingManager threadingManager) {
+        this.meterRegistry = meterRegistry;
+
+        for(EngineTimer engineTimer : EngineTimer.values()){
+            Timer.Builder timerBuilder = Timer.builder(engineTimer.getMetricName())
+                .description(engineTimer.getDescription())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MinimumExpectedDuration)
+                .maximumExpectedValue(MaximumExpectedDuration);
+
+            if(!engineTimer.getPhase().isEmpty()){
+                timerBuilder.tag("phase", engineTimer.getPhase());
+            }
+            this.timers.put(engineTimer, timerBuilder.register(meterRegistry));
+        }
+
+        for(ThreadPool threadPool : new ThreadPool[]{ThreadPool.Engine, ThreadPool.AMQP}){
+            String poolName = threadPool.name().toLowerCase();
+            registerGauge("sixsense.threads.active", "Threads currently executing tasks in the pool", threadingManager, manager -> manager.getActiveThreads(threadPool), "pool", poolName);
+            registerGauge("sixsense.threads.saturation", "Ratio of active threads to the maximum pool size (NaN for unbounded pools)", threadingManager, manager -> manager.getPoolSaturation(threadPool), "pool", poolName);
+        }
+
+        registerGauge("sixsense.events.backlog", "Engine events dispatched to event handlers and not yet handled", threadingManager, ThreadingManager::getEventBacklog);
+        registerGauge("sixsense.events.overflowed", "Engine events which did not fit their dispatcher ring buffer, and were queued in it's overflow queue", threadingManager, ThreadingManager::getOverflowedEvents);
+
+        logger.info("Metrics manager initialized");
+    }
+
+    public void record(EngineTimer engineTimer, long elapsedNanos){
+        this.timers.get(engineTimer).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*Gauges are sampled when the metrics are scraped, so the value function should be cheap and must not block for long.
+    * Micrometer only holds a weak reference to the state object, so it should be a long lived object (such as a service)*/
+    public <T> void registerGauge(String name, String description, T stateObject, ToDoubleFunction<T> valueFunction, String... tags){
+        Gauge.builder(name, stateObject, valueFunction)
+            .description(description)
+            .tags(tags)
+            .register(this.meterRegistry);
+    }
+}
@@ -8,7 +8,10 @@ import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.Block;
 import com.sixsense.model.commands.Command;
 import com.sixsense.model.commands.ICommand;
+import com.sixsense.model.metrics.EngineTimer;
 import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.timeline.OperationTimeline;
+import com.sixsense.model.timeline.SpanKind;
 import com.sixsense.io.ProcessStreamWrapper;
 import com.sixsense.io.Session;
 import com.sixsense.io.ShellChannel;
@@ -31,17 +34,20 @@ import org.springframework.stereotype.Service;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /*Creates sessions and executes operations*/
 @Service
 @EnableConfigurationProperties({SessionConfig.class, HostConfig.class})
-public class SessionEngine implements ApplicationContextAware {
+public class SessionEngine implements ApplicationContextAware, IOperationExecutor {
     private static final Logger logger = LogManager.getLogger(SessionEngine.class);
     private ApplicationContext appContext;
     private final ThreadingManager threadingManager;
     private final DiagnosticManager diagnosticManager;
     private final LoggingManager loggingManager;
+    private final MetricsManager metricsManager;
 
     private final SessionConfig sessionConfig;
     private final HostConfig.Host localhostConfig;
@@ -51,15 +57,27 @@ public class SessionEngine implements ApplicationContextAware {
     private final Map<String, Operation> runningOperations = new ConcurrentHashMap<>(); //key: operation id, value: operation
     private final Map<String, Session> runningSessions = new ConcurrentHashMap<>(); //key: session id, value: session
     private final Map<String, String> operationsToSessions = new ConcurrentHashMap<>(); //key: operation id, value: session id
+    private final Map<String, OperationTimeline> finishedTimelines; //key: operation id, value: timeline (in order of completion)
+    private final Lock timelineLock = new ReentrantLock();
+    private final Lock startupLock = new ReentrantLock(); //guards pairing operations with their sessions against concurrent termination
 
     @Autowired
-    private SessionEngine(ThreadingManager threadingManager, DiagnosticManager diagnosticManager, LoggingManager loggingManager, SessionConfig sessionConfig, HostConfig hostConfig) {
+    private SessionEngine(ThreadingManager threadingManager, DiagnosticManager diagnosticManager, LoggingManager loggingManager, MetricsManager metricsManager, SessionConfig sessionConfig, HostConfig hostConfig) {
         this.threadingManager = threadingManager;
         this.diagnosticManager = diagnosticManager;
         this.loggingManager = loggingManager;
+        this.metricsManager = metricsManager;
         this.sessionConfig = sessionConfig;
         this.localhostConfig = hostConfig.getLocal();
 
+        int retainedTimelines = this.sessionConfig.getTimeline().getRetainedTimelines();
+        this.finishedTimelines = new LinkedHashMap<>(){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OperationTimeline> eldest) {
+                return size() > retainedTimelines;
+            }
+        };
+
         sessionProperties.put("sixsense.session.version", this.sessionConfig.getVersion());
         for(Map.Entry<String, String> prompt : this.sessionConfig.getPrompt().entrySet()){
             String promptName = prompt.getKey();
@@ -67,25 +85,65 @@ public class SessionEngine implements ApplicationContextAware {
             sessionProperties.put("sixsense.session.prompt." + promptName, promptText);
         }
 
+        metricsManager.registerGauge("sixsense.sessions.running", "Sessions currently open in the engine", this, engine -> engine.runningSessions.size());
+        metricsManager.registerGauge("sixsense.operations.running", "Operations currently executing in the engine", this, engine -> engine.runningOperations.size());
+        metricsManager.registerGauge("sixsense.output.buffered", "Characters read from session channels and not yet cleared by their sessions", this, SessionEngine::getBufferedOutputLength);
+
         logger.info("Session engine initialized");
     }
 
+    /*Registers the operation as running before it's session is created, so that it can be terminated while it's session is being created
+     * Operations admitted by the admission manager are registered upon admission. Any other operation is registered when executed*/
+    @Override
+    public void registerOperation(Operation operation){
+        this.runningOperations.put(operation.getUUID(), operation);
+    }
+
+    //Removes an operation which was registered, but will never be executed (i.e. it's task could not be submitted to the engine pool)
+    @Override
+    public void unregisterOperation(String operationId){
+        this.runningOperations.remove(operationId);
+    }
+
     public OperationResult executeOperation(Operation operation){
+        registerOperation(operation);
+        return executeRegisteredOperation(operation);
+    }
+
+    /*Executes an operation which was registered beforehand (see registerOperation())
+     * If the operation was terminated since it was registered, no session is created (or the session created in the meantime is closed) and the operation resolves as terminated*/
+    @Override
+    public OperationResult executeRegisteredOperation(Operation operation){
         Session session = null;
         OperationResult operationResult;
 
         try {
-            session = initializeSession(operation); //Initiate a new session (will finalize if failed to initialize)
-            operationResult = executeOperation(session, operation); //use the new session to execute the operation
-            finalizeSession(session, operation.getUUID()); //finalize the session and release any resources generated by the session
+            if(this.runningOperations.containsKey(operation.getUUID())) {
+                session = instantiateSession(operation); //Initiate a new session (will finalize if failed to initialize)
+            }
+
+            if(session == null || !bindSession(session, operation)) {
+                logger.info("Operation " + operation.getUUID() + " was terminated before it's session was created");
+                if(session != null) {
+                    finalizeSession(session);
+                }
+                operationResult = new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated));
+            }else {
+                operationResult = executeOperation(session, operation); //use the new session to execute the operation
+                finalizeSession(session, operation.getUUID()); //finalize the session and release any resources generated by the session
+            }
         } catch (Exception e){
             String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + e.getMessage();
             logger.error(errorMessage);
             operationResult = new OperationResult().withExpressionResult(
                 this.handleExecutionAnomaly(session, errorMessage)
             );
+            if(session == null){
+                this.runningOperations.remove(operation.getUUID());
+            }
         }
 
+        retainTimeline(session, operationResult);
         return operationResult;
     }
 
@@ -106,7 +164,8 @@ public class SessionEngine implements ApplicationContextAware {
             );
         }else{
             session.incrementDrilldownRank();
-            diagnosticManager.emit(new OperationStartEvent(session, operation));
+            openSpan(session, SpanKind.Operation, operation.getOperationName());
+            diagnosticManager.emit(session, EngineEventType.OperationStart, () -> new OperationStartEvent(session, operation));
 
             try {
                 preExecute(session, operation);
@@ -126,7 +185,7 @@ public class SessionEngine implements ApplicationContextAware {
                 }
 
                 postExecute(session, operation);
-                diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", operation.getExpectedOutcome()));
+                diagnosticManager.emit(session, EngineEventType.OutcomeEvaluation, () -> new OutcomeEvaluationEvent(session, "", operation.getExpectedOutcome()));
             } catch (Exception e) {
                 String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + e.getMessage();
                 logger.error(errorMessage);
@@ -136,7 +195,8 @@ public class SessionEngine implements ApplicationContextAware {
             }
 
             operationResult.addDatabaseVariables(session.getDatabaseVariables());
-            diagnosticManager.emit(new OperationEndEvent(session, operation, operationResult));
+            closeSpan(session, SpanKind.Operation, operationResult.getExpressionResult());
+            diagnosticManager.emit(session, EngineEventType.OperationEnd, () -> new OperationEndEvent(session, operation, operationResult));
             session.decrementDrilldownRank();
         }
 
@@ -157,7 +217,8 @@ public class SessionEngine implements ApplicationContextAware {
             Block parentBlock = (Block)executionBlock;
             ExpressionResult progressiveResult = ExpressionResult.defaultOutcome();
 
-            diagnosticManager.emit(new BlockStartEvent(session, parentBlock));
+            openSpan(session, SpanKind.Block, parentBlock.getShortUUID());
+            diagnosticManager.emit(session, EngineEventType.BlockStart, () -> new BlockStartEvent(session, parentBlock));
             preExecute(session, parentBlock);
 
             if(executionConditionsMet(session, parentBlock)) {
@@ -182,8 +243,10 @@ public class SessionEngine implements ApplicationContextAware {
                 blockResult = expectedResult(progressiveResult, parentBlock.getExpectedOutcome().getExpressionResult());
             }
 
-            diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", parentBlock.getExpectedOutcome()));
-            diagnosticManager.emit(new BlockEndEvent(session, parentBlock, blockResult));
+            diagnosticManager.emit(session, EngineEventType.OutcomeEvaluation, () -> new OutcomeEvaluationEvent(session, "", parentBlock.getExpectedOutcome()));
+            ExpressionResult blockEndResult = blockResult;
+            closeSpan(session, SpanKind.Block, blockEndResult);
+            diagnosticManager.emit(session, EngineEventType.BlockEnd, () -> new BlockEndEvent(session, parentBlock, blockEndResult));
         }else{
             blockResult = handleExecutionAnomaly(session, Literals.InvalidExecutionBlock);
         }
@@ -196,7 +259,8 @@ public class SessionEngine implements ApplicationContextAware {
         if(session.isClosed()){
             commandResult = handleExecutionAnomaly(session, Literals.SessionAlreadyClosed);
         }else{
-            diagnosticManager.emit(new CommandStartEvent(session, currentCommand));
+            openSpan(session, SpanKind.Command, currentCommand.getCommandText());
+            diagnosticManager.emit(session, EngineEventType.CommandStart, () -> new CommandStartEvent(session, currentCommand));
             preExecute(session, currentCommand);
 
             if (executionConditionsMet(session, currentCommand)) {
@@ -206,12 +270,64 @@ public class SessionEngine implements ApplicationContextAware {
             }
 
             postExecute(session, currentCommand);
-            diagnosticManager.emit(new CommandEndEvent(session, currentCommand, commandResult));
+            ExpressionResult commandEndResult = commandResult;
+            closeSpan(session, SpanKind.Command, commandEndResult);
+            diagnosticManager.emit(session, EngineEventType.CommandEnd, () -> new CommandEndEvent(session, currentCommand, commandEndResult));
         }
 
         return commandResult;
     }
 
+    private void openSpan(Session session, SpanKind kind, String name){
+        OperationTimeline timeline = session.getTimeline();
+        if(timeline != null){
+            timeline.openSpan(kind, name);
+        }
+    }
+
+    private void closeSpan(Session session, SpanKind kind, ExpressionResult result){
+        OperationTimeline timeline = session.getTimeline();
+        if(timeline != null){
+            timeline.closeSpan(kind, result.getOutcome());
+        }
+    }
+
+    //Keeps the timeline of a finished operation for the diagnostics api, and attaches it to the operation result if configured to
+    private void retainTimeline(Session session, OperationResult operationResult){
+        OperationTimeline timeline = session == null ? null : session.getTimeline();
+        if(timeline == null){
+            return;
+        }
+
+        this.timelineLock.lock();
+        try {
+            this.finishedTimelines.put(timeline.getOperationId(), timeline);
+        }finally {
+            this.timelineLock.unlock();
+        }
+
+        if(this.sessionConfig.getTimeline().isAttachToResult()){
+            operationResult.setTimeline(timeline);
+        }
+    }
+
+    //Returns a copy of the operation's timeline, whether it is still running or has finished (and was not yet evicted)
+    public OperationTimeline getTimeline(String operationId){
+        String sessionId = this.operationsToSessions.get(operationId);
+        Session runningSession = sessionId == null ? null : this.runningSessions.get(sessionId);
+        if(runningSession != null && runningSession.getTimeline() != null){
+            return runningSession.getTimeline().snapshot();
+        }
+
+        this.timelineLock.lock();
+        try {
+            OperationTimeline finishedTimeline = this.finishedTimelines.get(operationId);
+            return finishedTimeline == null ? null : finishedTimeline.snapshot();
+        }finally {
+            this.timelineLock.unlock();
+        }
+    }
+
     private boolean executionConditionsMet(Session session, ICommand command){
         return LogicalExpressionResolver.resolveLogicalExpression(
                 session.getCurrentSessionVariables(),
@@ -233,28 +349,53 @@ public class SessionEngine implements ApplicationContextAware {
 
     private ExpressionResult handleExecutionAnomaly(Session session, String message){
         ExpressionResult executionError = ExpressionResult.executionError(message);
-        diagnosticManager.emit(new ExecutionAnomalyEvent(session, executionError));
+        diagnosticManager.emit(session, EngineEventType.ExecutionAnomaly, () -> new ExecutionAnomalyEvent(session, executionError));
         return executionError;
     }
 
     //Attempts to create a new session
     public Session initializeSession(Operation operation) throws InstantiationException{
+        Session session = instantiateSession(operation);
+        registerOperation(operation);
+        bindSession(session, operation);
+        return session;
+    }
+
+    private Session instantiateSession(Operation operation) throws InstantiationException{
         Session session;
+        long creationStart = System.nanoTime();
         try{
             session = (Session) this.appContext.getBean("sixSenseSession", operation);
+            metricsManager.record(EngineTimer.SessionCreation, System.nanoTime() - creationStart);
         } catch (BeansException e){
             logger.error("SessionEngine - Failed to initialize a new session for operation " + operation.getOperationName() + ". Caused by: " + e.getMessage());
             throw new InstantiationException(e.getMessage());
         }
 
-        this.runningSessions.put(session.getSessionShellId(), session);
-        this.runningOperations.put(operation.getUUID(), operation);
-        this.operationsToSessions.put(operation.getUUID(), session.getSessionShellId());
-        diagnosticManager.emit(new SessionCreatedEvent(session));
-
+        if(this.sessionConfig.getTimeline().isEnabled()){
+            session.setTimeline(new OperationTimeline(operation.getUUID()));
+        }
         return session;
     }
 
+    /*Pairs the session with it's operation, as long as the operation is still registered (that is, was not terminated while the session was created)
+     * Pairing and terminating are both done under the startupLock, so a termination request is either seen here, or finds the paired session*/
+    private boolean bindSession(Session session, Operation operation){
+        this.startupLock.lock();
+        try {
+            if(!this.runningOperations.containsKey(operation.getUUID())){
+                return false;
+            }
+            this.runningSessions.put(session.getSessionShellId(), session);
+            this.operationsToSessions.put(operation.getUUID(), session.getSessionShellId());
+        }finally {
+            this.startupLock.unlock();
+        }
+
+        diagnosticManager.emit(session, EngineEventType.SessionCreated, () -> new SessionCreatedEvent(session));
+        return true;
+    }
+
     //Create a prototype session bean, generate the required I/O channels and load session variables. If fails, will finalize the session to prevent it from executing commands
     @Bean(value="sixSenseSession")
     @Scope("prototype")
@@ -264,6 +405,11 @@ public class SessionEngine implements ApplicationContextAware {
         }
 
         Session session = new Session(this.localhostConfig, operation.getChannelNames(), operation.getUUID());
+        for(ShellChannel channel : session.getShellChannels().values()){
+            metricsManager.record(EngineTimer.SshConnect, channel.getConnectNanos());
+            metricsManager.record(EngineTimer.SshAuthentication, channel.getAuthenticationNanos());
+            metricsManager.record(EngineTimer.ChannelOpen, channel.getChannelOpenNanos());
+        }
         session.loadSessionVariables(sessionProperties);
         ThreadContext.put("sessionID", session.getShortSessionId());
         ThreadingUtils.updateSessionAndOperationIds(session.getShortSessionId(), operation.getShortUUID());
@@ -297,7 +443,7 @@ public class SessionEngine implements ApplicationContextAware {
     private void finalizeSession(Session session) throws IOException{
         try {
             session.close();
-            diagnosticManager.emit(new SessionClosedEvent(session));
+            diagnosticManager.emit(session, EngineEventType.SessionClosed, () -> new SessionClosedEvent(session));
         } catch (IOException e) {
             logger.error("SessionEngine - Failed to finalize session with id " + session.getSessionShellId() + ". Caused by: " + e.getMessage());
             throw e;
@@ -308,11 +454,27 @@ public class SessionEngine implements ApplicationContextAware {
         }
     }
 
+    @Override
     public OperationResult terminateOperation(String operationID){
         ExpressionResult terminationResult;
-        String sessionID = this.operationsToSessions.get(operationID);
+        String sessionID;
+        boolean terminatedBeforeSession = false;
 
-        if(sessionID == null) {
+        this.startupLock.lock();
+        try {
+            sessionID = this.operationsToSessions.get(operationID);
+            if(sessionID == null){
+                //the operation may be registered, and still waiting for it's session to be created
+                terminatedBeforeSession = this.runningOperations.remove(operationID) != null;
+            }
+        }finally {
+            this.startupLock.unlock();
+        }
+
+        if(terminatedBeforeSession){
+            logger.info("Operation " + operationID + " was terminated before it's session was created");
+            terminationResult = ExpressionResult.executionError(Literals.OperationTerminated);
+        }else if(sessionID == null) {
             terminationResult = ExpressionResult.executionError("Operation " + operationID + " is not currently running, and therefore cannot be terminated");
             logger.warn(terminationResult.getMessage());
         }else{
@@ -339,13 +501,17 @@ public class SessionEngine implements ApplicationContextAware {
     private void preExecute(Session session, ICommand currentCommand){
         session.incrementDrilldownRank();
         session.loadSessionDynamicFields(currentCommand);
-        diagnosticManager.emit(new ConditionEvaluationEvent(session, currentCommand.getExecutionCondition()));
+        diagnosticManager.emit(session, EngineEventType.ConditionEvaluation, () -> new ConditionEvaluationEvent(session, currentCommand.getExecutionCondition()));
     }
 
     private void postExecute(Session session, ICommand currentCommand){
         session.removeSessionDynamicFields(currentCommand);
         session.decrementDrilldownRank();
-        currentCommand.setAlreadyExecuted(true);
+        session.getExecutionState().markExecuted(currentCommand);
+        if(currentCommand instanceof Operation){
+            //Operations are instantiated per device, so (unlike the commands they share) they may carry their own execution flag
+            currentCommand.setAlreadyExecuted(true);
+        }
     }
 
     @Override
@@ -371,6 +537,17 @@ public class SessionEngine implements ApplicationContextAware {
         return Collections.unmodifiableMap(runningSessions);
     }
 
+    //Sampled by the buffered output gauge. Each channel keeps a running count of it's buffered output, so no channel is locked (and no line is read) while sampling
+    private double getBufferedOutputLength(){
+        long bufferedLength = 0;
+        for(Session session : this.runningSessions.values()){
+            for(ShellChannel channel : session.getShellChannels().values()){
+                bufferedLength += channel.getBufferedOutputLength();
+            }
+        }
+        return bufferedLength;
+    }
+
     public Map<String, String> getOperationsToSessions(){
         return Collections.unmodifiableMap(operationsToSessions);
     }
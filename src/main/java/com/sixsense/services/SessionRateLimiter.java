@@ -0,0 +1,177 @@
+package com.sixsense.services;
+
+import com.sixsense.config.RateLimitConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.threading.TokenBucket;
+import com.sixsense.utillity.FieldGlossary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*Paces session creation, so that large fan-outs ramp up gradually instead of opening every ssh connection at once
+ * Each session takes one token per channel (every channel opens it's own ssh connection) from the global bucket, from the bucket of the device subnet,
+ * and from the bucket of the first matching device vpv (if any). The session may be created once the latest of those tokens is available.
+ * The rate limiter never blocks - the admission manager holds the operation back (without occupying an admission slot or a thread) until then*/
+@Service
+@EnableConfigurationProperties(RateLimitConfig.class)
+public class SessionRateLimiter {
+    private static final Logger logger = LogManager.getLogger(SessionRateLimiter.class);
+    private static final long SweepIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+    private static final Pattern ipv4Address = Pattern.compile("^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})$");
+    private final RateLimitConfig rateLimitConfig;
+
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> subnetBuckets = new ConcurrentHashMap<>(); //key: subnet in CIDR notation, value: subnet bucket (while it is not full)
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final List<TokenBucket> vpvBuckets = new ArrayList<>(); //same order as the vpv properties in the rate limit config
+
+    @Autowired
+    public SessionRateLimiter(RateLimitConfig rateLimitConfig) {
+        this.rateLimitConfig = rateLimitConfig;
+
+        RateLimitConfig.BucketProperties globalProperties = rateLimitConfig.getGlobal();
+        this.globalBucket = globalProperties.isEnabled() ? new TokenBucket(globalProperties.getSessionsPerSecond(), globalProperties.getBurst()) : null;
+        for(RateLimitConfig.VpvBucketProperties vpvProperties : rateLimitConfig.getVpv()){
+            this.vpvBuckets.add(vpvProperties.isEnabled() ? new TokenBucket(vpvProperties.getSessionsPerSecond(), vpvProperties.getBurst()) : null);
+        }
+    }
+
+    //Reserves the tokens for the operation's session, and returns the amount of nanoseconds until the session may be created (zero if it may be created immediately)
+    public long reserve(Operation operation){
+        return reserve(operation, System.nanoTime());
+    }
+
+    public long reserve(Operation operation, long nowNanos){
+        Map<String, String> dynamicFields = operation.getDynamicFields();
+        int connections = getConnections(operation);
+        long waitNanos = 0;
+
+        if(this.globalBucket != null){
+            waitNanos = this.globalBucket.reserve(nowNanos, connections);
+        }
+
+        //subnet buckets are reserved (and evicted) while holding their map entry, so a reservation never goes to a bucket which is being evicted
+        String subnetKey = getSubnetKey(dynamicFields.get(FieldGlossary.device_host));
+        if(subnetKey != null){
+            RateLimitConfig.SubnetBucketProperties subnetProperties = this.rateLimitConfig.getSubnet();
+            long[] subnetWaitNanos = new long[1];
+            this.subnetBuckets.compute(subnetKey, (key, subnetBucket) -> {
+                TokenBucket reservedBucket = subnetBucket != null ? subnetBucket : new TokenBucket(subnetProperties.getSessionsPerSecond(), subnetProperties.getBurst(), nowNanos);
+                subnetWaitNanos[0] = reservedBucket.reserve(nowNanos, connections);
+                return reservedBucket;
+            });
+            waitNanos = Math.max(waitNanos, subnetWaitNanos[0]);
+        }
+
+        TokenBucket vpvBucket = getVpvBucket(dynamicFields.get(FieldGlossary.device_vendor), dynamicFields.get(FieldGlossary.device_product), dynamicFields.get(FieldGlossary.device_version));
+        if(vpvBucket != null){
+            waitNanos = Math.max(waitNanos, vpvBucket.reserve(nowNanos, connections));
+        }
+
+        //jitter only spreads out sessions which are already held back by a bucket, so sessions within the rate are never delayed
+        long jitterNanos = this.rateLimitConfig.getRampUpJitter().toNanos();
+        if(waitNanos > 0 && jitterNanos > 0){
+            waitNanos += ThreadLocalRandom.current().nextLong(jitterNanos + 1);
+        }
+
+        evictFullBuckets(nowNanos);
+        if(waitNanos > 0) {
+            logger.debug("Delaying session creation for operation " + operation.getUUID() + " by " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms");
+        }
+        return waitNanos;
+    }
+
+    //Gives back the tokens reserved for the operation's session, once the operation is rejected and it's session will never be created
+    public void release(Operation operation){
+        int connections = getConnections(operation);
+        if(this.globalBucket != null){
+            this.globalBucket.refund(connections);
+        }
+
+        String subnetKey = getSubnetKey(operation.getDynamicFields().get(FieldGlossary.device_host));
+        if(subnetKey != null){
+            this.subnetBuckets.computeIfPresent(subnetKey, (key, subnetBucket) -> {
+                subnetBucket.refund(connections);
+                return subnetBucket;
+            });
+        }
+
+        Map<String, String> dynamicFields = operation.getDynamicFields();
+        TokenBucket vpvBucket = getVpvBucket(dynamicFields.get(FieldGlossary.device_vendor), dynamicFields.get(FieldGlossary.device_product), dynamicFields.get(FieldGlossary.device_version));
+        if(vpvBucket != null){
+            vpvBucket.refund(connections);
+        }
+    }
+
+    //Subnets currently holding a bucket. Buckets are evicted once they refill, so this follows the subnets recently connected to, rather than every subnet ever seen
+    public int getSubnetBucketCount(){
+        return this.subnetBuckets.size();
+    }
+
+    /*A full bucket is no different from the bucket created for the subnet's next session, so it is evicted rather than kept for every subnet ever seen
+     * Buckets are swept at most once per sweep interval, by whichever reservation comes first*/
+    private void evictFullBuckets(long nowNanos){
+        long lastSweep = this.lastSweepNanos.get();
+        if(nowNanos - lastSweep < SweepIntervalNanos || !this.lastSweepNanos.compareAndSet(lastSweep, nowNanos)){
+            return;
+        }
+
+        for(String subnetKey : this.subnetBuckets.keySet()){
+            this.subnetBuckets.computeIfPresent(subnetKey, (key, subnetBucket) -> subnetBucket.isFull(nowNanos) ? null : subnetBucket);
+        }
+    }
+
+    private static int getConnections(Operation operation){
+        return Math.max(operation.getChannelNames().size(), 1);
+    }
+
+    //Only IPv4 hosts are grouped by subnet. Host names are not resolved, to avoid blocking on dns before the rate limit applies
+    private String getSubnetKey(String deviceHost){
+        RateLimitConfig.SubnetBucketProperties subnetProperties = this.rateLimitConfig.getSubnet();
+        if(!subnetProperties.isEnabled() || deviceHost == null){
+            return null;
+        }
+
+        Matcher addressMatcher = ipv4Address.matcher(deviceHost.trim());
+        if(!addressMatcher.matches()){
+            return null;
+        }
+
+        int address = 0;
+        for(int octet = 1; octet <= 4; octet++){
+            address = (address << 8) | (Integer.parseInt(addressMatcher.group(octet)) & 0xFF);
+        }
+
+        int prefixLength = subnetProperties.getPrefixLength();
+        int subnetMask = prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+        int subnet = address & subnetMask;
+        return (subnet >>> 24) + "." + ((subnet >>> 16) & 0xFF) + "." + ((subnet >>> 8) & 0xFF) + "." + (subnet & 0xFF) + "/" + prefixLength;
+    }
+
+    private TokenBucket getVpvBucket(String vendor, String product, String version){
+        if(vendor == null || vendor.isEmpty()){
+            return null;
+        }
+
+        List<RateLimitConfig.VpvBucketProperties> vpvProperties = this.rateLimitConfig.getVpv();
+        for(int index = 0; index < vpvProperties.size(); index++){
+            if(vpvProperties.get(index).matches(vendor, product, version)){
+                return this.vpvBuckets.get(index);
+            }
+        }
+
+        return null;
+    }
+}
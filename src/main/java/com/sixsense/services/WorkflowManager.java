@@ -1,38 +1,58 @@
 package com.sixsense.services;
 
+import com.sixsense.config.AdmissionConfig;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.ParallelWorkflow;
+import com.sixsense.model.devices.Device;
 import com.sixsense.model.events.AbstractEngineEvent;
 import com.sixsense.model.events.EngineEventType;
 import com.sixsense.model.events.IEngineEventHandler;
 import com.sixsense.model.events.OperationEndEvent;
 import com.sixsense.model.logic.*;
 import com.sixsense.model.retention.OperationResult;
+import com.sixsense.threading.OperationWindow;
 import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.BulkSubmissionReader;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.Literals;
 import com.sixsense.utillity.LogicalExpressionResolver;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 @Service
 public class WorkflowManager implements IEngineEventHandler {
     private static final Logger logger = LogManager.getLogger(WorkflowManager.class);
-    private final SessionEngine sessionEngine;
+    private final AdmissionManager admissionManager;
     private final DiagnosticManager diagnosticManager;
     private final ThreadingManager threadingManager;
+    private final AdmissionConfig admissionConfig;
 
-    private final Map<String, ParallelWorkflow> parentWorkflows = new ConcurrentHashMap<>(); //key: operation id, value: parent workflow
+    private final Map<String, ParallelWorkflow> parentWorkflows = new ConcurrentHashMap<>(); //key: operation id, value: parent workflow, until the workflow is notified of the operation's outcome
+    private final Map<String, OperationWindow> operationWindows = new ConcurrentHashMap<>(); //key: operation id, value: concurrency window of the operation's bounded workflow
+    private final Map<String, OperationWindow> workflowWindows = new ConcurrentHashMap<>(); //key: workflow id, value: concurrency window of the workflow, while it has pending operations
+    private final ExecutorService bulkReaders; //reads bulk submissions, one thread per submission being read
 
     @Autowired
-    private WorkflowManager(SessionEngine sessionEngine, DiagnosticManager diagnosticManager, ThreadingManager threadingManager) {
-        this.sessionEngine = sessionEngine;
+    public WorkflowManager(AdmissionManager admissionManager, DiagnosticManager diagnosticManager, ThreadingManager threadingManager, AdmissionConfig admissionConfig) {
+        this.admissionManager = admissionManager;
         this.diagnosticManager = diagnosticManager;
         this.threadingManager = threadingManager;
+        this.admissionConfig = admissionConfig;
+        AtomicInteger readerNumber = new AtomicInteger(1);
+        this.bulkReaders = Executors.newCachedThreadPool(runnable -> {
+            Thread readerThread = new Thread(runnable, "engine-bulk-reader-" + readerNumber.getAndIncrement());
+            readerThread.setDaemon(true);
+            return readerThread;
+        });
 
         this.diagnosticManager.registerHandler(this, EnumSet.of(EngineEventType.OperationEnd));
     }
@@ -47,10 +67,7 @@ public class WorkflowManager implements IEngineEventHandler {
 
         if(executionConditionsMet) {
             //If conditions are met, submit the operations for execution
-            Map<String, CompletableFuture<OperationResult>> runningOperations = new HashMap<>();
-            for(Operation operation : workflow.getParallelOperations()){
-                runningOperations.put(operation.getUUID(), this.executeParallelOperation(operation));
-            }
+            Map<String, CompletableFuture<OperationResult>> runningOperations = this.submitParallelOperations(workflow);
 
             return CompletableFuture.allOf(
                 //Then wait for all operations to finish asynchronously
@@ -76,11 +93,194 @@ public class WorkflowManager implements IEngineEventHandler {
         }
     }
 
+    /*Streaming variant of executeWorkflow() - hands each operation result to the consumer as soon as the operation completes, instead of collecting all results into a single map
+     * The returned future completes once every operation has completed (and was handed to the consumer). Operations which failed to execute are handed over as execution errors.
+     * If the consumer throws for any of the results, the future still waits for the rest of the operations, and then completes exceptionally - callers must settle the request in handle() or whenComplete()*/
+    public CompletableFuture<Void> executeWorkflow(ParallelWorkflow workflow, BiConsumer<Operation, OperationResult> resultConsumer){
+        boolean executionConditionsMet = LogicalExpressionResolver.resolveLogicalExpression(
+            workflow.getDynamicFields(),
+            workflow.getExecutionCondition()
+        ).isResolved();
+
+        if(executionConditionsMet) {
+            Map<String, CompletableFuture<OperationResult>> submittedOperations = this.submitParallelOperations(workflow);
+            List<CompletableFuture<Void>> runningOperations = new ArrayList<>();
+            for(Operation operation : workflow.getParallelOperations()){
+                runningOperations.add(submittedOperations.get(operation.getUUID()).handle((result, throwable) -> {
+                    if(throwable != null){
+                        result = new OperationResult().withExpressionResult(ExpressionResult.executionError(throwable.getMessage()));
+                    }
+                    resultConsumer.accept(operation, result);
+                    return null;
+                }));
+            }
+
+            return CompletableFuture.allOf(runningOperations.toArray(CompletableFuture[]::new));
+        }else{
+            for(Operation operation : workflow.getParallelOperations()){
+                resultConsumer.accept(operation, new OperationResult().withExpressionResult(ExpressionResult.skip()));
+            }
+
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /*Bulk variant of executeWorkflow() - reads the devices one at a time, and submits the operation for each device as soon as it is read
+     * At most maximumBulkInFlight operations of the submission are admitted at the same time, and the next device is read only once one of them completes.
+     * This keeps memory usage bound by the operations in flight rather than by the number of devices. Waiting for a free slot (and for the next device to arrive)
+     * blocks, so the submission is read on a dedicated bulk reader thread rather than on the calling thread - engine, servlet and listener threads are never held by it,
+     * and operations in flight can always complete (and free their slot) on the engine pool. The submission is closed once it was read to it's end.
+     * The returned future resolves to the number of devices read once every operation has completed (and was handed to the consumer),
+     * or completes exceptionally if the devices could not be read to their end (after the operations of the devices read so far have completed)*/
+    public CompletableFuture<Integer> executeBulk(BulkSubmissionReader submission, BiConsumer<Operation, OperationResult> resultConsumer){
+        CompletableFuture<Integer> bulkCompletion = new CompletableFuture<>();
+        try {
+            bulkReaders.execute(() -> readBulkSubmission(submission, resultConsumer, bulkCompletion));
+        }catch (RejectedExecutionException e){
+            closeBulkSubmission(submission);
+            bulkCompletion.completeExceptionally(e);
+        }
+        return bulkCompletion;
+    }
+
+    private void readBulkSubmission(BulkSubmissionReader submission, BiConsumer<Operation, OperationResult> resultConsumer, CompletableFuture<Integer> bulkCompletion){
+        Semaphore operationsInFlight = new Semaphore(admissionConfig.getMaximumBulkInFlight());
+        AtomicInteger unsettledTasks = new AtomicInteger(1); //the operations in flight, plus the reading of the devices itself
+        AtomicReference<Throwable> readFailure = new AtomicReference<>();
+        AtomicInteger devicesRead = new AtomicInteger(0);
+
+        Runnable settleTask = () -> {
+            if(unsettledTasks.decrementAndGet() == 0){
+                if(readFailure.get() != null){
+                    bulkCompletion.completeExceptionally(readFailure.get());
+                }else{
+                    bulkCompletion.complete(devicesRead.get());
+                }
+            }
+        };
+
+        try {
+            while (submission.hasNext()) {
+                Device device = submission.next();
+                operationsInFlight.acquire();
+                devicesRead.incrementAndGet();
+                unsettledTasks.incrementAndGet();
+
+                Operation deviceOperation = CommandUtils.composeOperation(submission.getOperation(), device);
+                this.executeParallelOperation(deviceOperation).handle((result, throwable) -> {
+                    if(throwable != null){
+                        result = new OperationResult().withExpressionResult(ExpressionResult.executionError(throwable.getMessage()));
+                    }
+
+                    try {
+                        resultConsumer.accept(deviceOperation, result);
+                    }finally {
+                        operationsInFlight.release();
+                        settleTask.run();
+                    }
+                    return null;
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            readFailure.set(e);
+        } catch (RuntimeException e) {
+            //thrown by the device iterator when the rest of the devices cannot be read (i.e. malformed json)
+            logger.error("Failed to read device #" + (devicesRead.get() + 1) + " of bulk submission. Caused by: " + e.getMessage());
+            readFailure.set(e);
+        } finally {
+            closeBulkSubmission(submission);
+            settleTask.run();
+        }
+    }
+
+    private void closeBulkSubmission(BulkSubmissionReader submission){
+        try {
+            submission.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close bulk submission. Caused by: " + e.getMessage());
+        }
+    }
+
+    /*Submits the parallel operations of the workflow for execution, and returns the future result of each of them (key: operation id, value: future result)
+     * Operations of a bounded workflow (see WorkflowPolicy.OPERATIONS_BOUNDED) are queued in a concurrency window instead of being submitted at once.
+     * The window submits the first maximumConcurrency operations, and submits the next operation whenever an earlier one ends (see releaseWindowSlot()).
+     * The workflow is notified of each operation's outcome when the operation ends, or when it's future result completes (see notifyParentWorkflow())*/
+    private Map<String, CompletableFuture<OperationResult>> submitParallelOperations(ParallelWorkflow workflow){
+        Map<String, CompletableFuture<OperationResult>> runningOperations = new HashMap<>();
+        Set<WorkflowPolicy> workflowPolicies = workflow.getWorkflowPolicies();
+        for(Operation operation : workflow.getParallelOperations()){
+            this.parentWorkflows.put(operation.getUUID(), workflow);
+        }
+
+        if(!workflowPolicies.contains(WorkflowPolicy.OPERATIONS_BOUNDED) || workflow.getMaximumConcurrency() <= 0){
+            for(Operation operation : workflow.getParallelOperations()){
+                runningOperations.put(operation.getUUID(), this.executeParallelOperation(operation));
+                notifyParentWorkflowUponCompletion(operation, runningOperations.get(operation.getUUID()));
+            }
+            return runningOperations;
+        }
+
+        //The workflow is notified before the window is drained any further, so a dependent workflow clears it's window before the next operation is submitted
+        OperationWindow window = new OperationWindow(workflow.getUUID(), workflow.getMaximumConcurrency(), workflowPolicies.contains(WorkflowPolicy.OPERATIONS_PRIORITIZED));
+        for(Operation operation : workflow.getParallelOperations()){
+            runningOperations.put(operation.getUUID(), window.enqueue(operation));
+            notifyParentWorkflowUponCompletion(operation, runningOperations.get(operation.getUUID()));
+        }
+        this.workflowWindows.put(workflow.getUUID(), window);
+        drainWindow(window);
+        return runningOperations;
+    }
+
+    private void notifyParentWorkflowUponCompletion(Operation operation, CompletableFuture<OperationResult> futureResult){
+        futureResult.whenComplete((result, throwable) -> notifyParentWorkflow(
+            operation,
+            throwable != null ? new OperationResult().withExpressionResult(ExpressionResult.executionError(throwable.getMessage())) : result
+        ));
+    }
+
+    /*Submits pending operations of the window as long as it has free slots (see OperationWindow.requestDrain() for why the loop may run more than once)
+     * The window is forgotten by it's workflow once it has no pending operations left - running operations keep it through the operationWindows until they end*/
+    private void drainWindow(OperationWindow window){
+        if(!window.requestDrain()){
+            return;
+        }
+
+        do {
+            for(OperationWindow.WindowedOperation next = window.poll(); next != null; next = window.poll()){
+                Operation operation = next.getOperation();
+                CompletableFuture<OperationResult> futureResult = next.getFutureResult();
+                this.operationWindows.put(operation.getUUID(), window);
+                this.executeParallelOperation(operation).whenComplete((result, throwable) -> {
+                    //completing the future result notifies the workflow, and only then is the slot released (in case the operation ended without raising an OperationEnd event)
+                    if(throwable != null){
+                        futureResult.completeExceptionally(throwable);
+                    }else{
+                        futureResult.complete(result);
+                    }
+                    releaseWindowSlot(operation.getUUID());
+                });
+            }
+            if(!window.hasPendingOperations()){
+                this.workflowWindows.remove(window.getWorkflowId(), window);
+            }
+        } while(window.completeDrain());
+    }
+
+    //Called both when the operation end event is handled, and when the operation's future result completes. Only the first of them releases the slot
+    private void releaseWindowSlot(String operationId){
+        OperationWindow window = this.operationWindows.remove(operationId);
+        if(window != null){
+            window.release();
+            drainWindow(window);
+        }
+    }
+
     private CompletableFuture<OperationResult> executeParallelOperation(Operation operation){
         try {
-            return threadingManager.submit(() -> sessionEngine.executeOperation(operation));
+            return admissionManager.submit(operation);
         }catch (Exception e){
-            logger.error("Failed to submit operation " + operation.getUUID() + " to worker queue. Caused by: " + e.getMessage());
+            logger.error("Failed to submit operation " + operation.getUUID() + " to admission manager. Caused by: " + e.getMessage());
             return CompletableFuture.failedFuture(e);
         }
     }
@@ -91,13 +291,20 @@ public class WorkflowManager implements IEngineEventHandler {
          * Since workflows are lengthy operations, this is a major time and resource saver*/
         try {
             OperationEndEvent operationEndEvent = (OperationEndEvent)event;
-            notifyWorkflow(operationEndEvent.getOperation(), operationEndEvent.getResult());
-        }catch (ClassCastException e){
+            //Handlers run on the event dispatcher threads, so admitting and chaining the next operations is handed off to the engine pool
+            threadingManager.submit(() -> notifyWorkflow(operationEndEvent.getOperation(), operationEndEvent.getResult()));
+        }catch (ClassCastException | IllegalStateException e){
             logger.error("Failed to notify workflow manager that an operation has completed. Caused by: " + e.getMessage());
         }
     }
 
     private void notifyWorkflow(Operation resolvedOperation, OperationResult operationOutcome){
+        //Operations always use PARENT_NOTIFICATION_EAGER. Therefore, if the operation is part of a parallel workflow, notify it's parent
+        notifyParentWorkflow(resolvedOperation, operationOutcome);
+
+        //If the operation is part of a bounded workflow, start the next pending operation of that workflow (unless the parent has just terminated them)
+        releaseWindowSlot(resolvedOperation.getUUID());
+
         //Operations always use SELF_SEQUENCE_EAGER. Therefore, execute their sequential workflows
         resolvedOperation.setSequenceExecutionStarted(true);
         if(operationOutcome.getExpressionResult().getOutcome().equals(ResultStatus.SUCCESS)) {
@@ -109,19 +316,27 @@ public class WorkflowManager implements IEngineEventHandler {
                 executeWorkflow(sequence);
             }
         }
+    }
 
-        //Operations always use PARENT_NOTIFICATION_EAGER. Therefore, if the operation is part of a parallel workflow, notify it's parent
-        //Note that the container workflow will not be null only if the resolved operation was executed as part of a parallel workflow
-        ParallelWorkflow container = this.parentWorkflows.get(resolvedOperation.getUUID());
-        if (container != null) {
-            notifyWorkflow(container, resolvedOperation, operationOutcome);
+    /*Called both when the operation end event is handled, and when the operation's future result completes. Only the first of them notifies the parent workflow
+     * Operations which never ran (i.e. rejected by the admission manager, or terminated while pending) raise no end event, so their parent is notified by their future result.
+     * Note that the parent workflow is found only if the operation was submitted as part of a parallel workflow*/
+    private void notifyParentWorkflow(Operation resolvedOperation, OperationResult operationOutcome){
+        ParallelWorkflow parentWorkflow = this.parentWorkflows.remove(resolvedOperation.getUUID());
+        if (parentWorkflow != null) {
+            notifyWorkflow(parentWorkflow, resolvedOperation, operationOutcome);
         }
     }
 
     private void notifyWorkflow(ParallelWorkflow parentWorkflow, Operation resolvedOperation, OperationResult operationOutcome){
         Set<WorkflowPolicy> workflowPolicies = parentWorkflow.getWorkflowPolicies();
-        parentWorkflow.addOperationOutcome(resolvedOperation.getUUID(), operationOutcome);
         boolean operationSuccessful = operationOutcome.getExpressionResult().getOutcome().equals(ResultStatus.SUCCESS);
+        boolean isFirstFailure;
+        synchronized (parentWorkflow) { //the outcomes of the workflow are guarded by the workflow itself
+            isFirstFailure = !operationSuccessful && parentWorkflow.getOperationOutcomes().values().stream()
+                .allMatch(outcome -> outcome.getExpressionResult().getOutcome().equals(ResultStatus.SUCCESS));
+            parentWorkflow.addOperationOutcome(resolvedOperation.getUUID(), operationOutcome);
+        }
         boolean allChildrenCompleted = parentWorkflow.getCompletedOperations() == parentWorkflow.getTotalOperations();
 
         if(!parentWorkflow.isSequenceExecutionStarted()) { //to avoid executing the same sequence more than once per workflow
@@ -134,7 +349,8 @@ public class WorkflowManager implements IEngineEventHandler {
                     executeSequence(parentWorkflow, parentWorkflow.getSequenceUponFailure());
                 }
 
-                if (workflowPolicies.contains(WorkflowPolicy.OPERATIONS_DEPENDENT)) {
+                //only the first failure terminates the other operations - the operations it terminates fail in turn, and notify the workflow as well
+                if (workflowPolicies.contains(WorkflowPolicy.OPERATIONS_DEPENDENT) && isFirstFailure) {
                     terminateParallelOperations(parentWorkflow);
                 }
             }
@@ -148,11 +364,23 @@ public class WorkflowManager implements IEngineEventHandler {
         }
     }
 
+    /*Operations still pending in the concurrency window of a bounded workflow were never submitted, so the admission manager does not know them.
+     * They are removed from the window first (so that terminated operations releasing their slots do not submit them), and end as terminated without ever running*/
     private void terminateParallelOperations(ParallelWorkflow parentWorkflow){
+        Set<String> clearedOperations = new HashSet<>();
+        OperationWindow window = this.workflowWindows.remove(parentWorkflow.getUUID());
+        if(window != null){
+            for(OperationWindow.WindowedOperation pending : window.clearPending()){
+                clearedOperations.add(pending.getOperation().getUUID());
+                logger.info("Operation " + pending.getOperation().getUUID() + " was terminated while pending in it's workflow window");
+                pending.getFutureResult().complete(new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated)));
+            }
+        }
+
         try {
             for (Operation dependentOperation : parentWorkflow.getParallelOperations()) {
-                if (!dependentOperation.isAlreadyExecuted()) {
-                    threadingManager.submit(() -> sessionEngine.terminateOperation(dependentOperation.getUUID()));
+                if (!dependentOperation.isAlreadyExecuted() && !clearedOperations.contains(dependentOperation.getUUID())) {
+                    threadingManager.submit(() -> admissionManager.terminateOperation(dependentOperation.getUUID()));
                 }
             }
         } catch (Exception e) {
@@ -1,6 +1,7 @@
 package com.sixsense.threading;
 
 import com.sixsense.config.ThreadingConfig;
+import com.sixsense.model.threading.IMonitoredThread;
 import com.sixsense.model.threading.MonitoredThread;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,7 +17,7 @@ public class EngineThreadFactory implements ThreadFactory, IThreadMonitoingFacto
     private final AtomicInteger threadNumber = new AtomicInteger(1);
     private final ThreadGroup threadGroup;
     private final ThreadingConfig.ThreadingProperties threadingProperties;
-    private final Set<MonitoredThread> monitoredThreads;
+    private final Set<IMonitoredThread> monitoredThreads;
 
     EngineThreadFactory(ThreadingConfig.ThreadingProperties threadingProperties) {
         SecurityManager securityManager = System.getSecurityManager();
@@ -43,18 +44,18 @@ public class EngineThreadFactory implements ThreadFactory, IThreadMonitoingFacto
     }
 
     @Override
-    public Set<MonitoredThread> getMonitoredThreads(){
+    public Set<IMonitoredThread> getMonitoredThreads(){
         return Collections.unmodifiableSet(this.monitoredThreads);
     }
 
     @Override
-    public boolean watch(MonitoredThread monitoredThread) {
+    public boolean watch(IMonitoredThread monitoredThread) {
         logger.debug("Watching thread " + monitoredThread.getName());
         return this.monitoredThreads.add(monitoredThread);
     }
 
     @Override
-    public boolean unwatch(MonitoredThread monitoredThread) {
+    public boolean unwatch(IMonitoredThread monitoredThread) {
         logger.debug("Unwatching thread " + monitoredThread.getName());
         monitoredThread.getCurrentThreadState().resetState();
         return this.monitoredThreads.remove(monitoredThread);
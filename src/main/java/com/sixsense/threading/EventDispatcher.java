@@ -0,0 +1,134 @@
+package com.sixsense.threading;
+
+import com.sixsense.config.ThreadingConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*Hands items over to a small, fixed set of dispatcher threads without taking any locks on the producing thread
+ * Each dispatcher thread is the single consumer of it's own ring buffer. Items are striped across the ring buffers by key,
+ * so items sharing a stripe key are consumed in the order they were dispatched.
+ * When a ring buffer is full, items spill over into an unbounded overflow queue of the same stripe. Once a stripe has overflowed,
+ * further items go to the overflow queue until the dispatcher thread has drained it, so the order of items is kept even while spilling over*/
+public class EventDispatcher<T> implements Closeable {
+    private static final Logger logger = LogManager.getLogger(EventDispatcher.class);
+    private static final long IdleParkNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private final DispatcherStripe[] stripes;
+    private final Consumer<T> consumer;
+    private final LongAdder overflowedItems = new LongAdder();
+    private volatile boolean isClosed = false;
+
+    @SuppressWarnings("unchecked")
+    public EventDispatcher(ThreadingConfig.EventThreadingProperties eventProperties, Consumer<T> consumer) {
+        this.consumer = consumer;
+        this.stripes = new EventDispatcher.DispatcherStripe[eventProperties.getDispatcherThreads()];
+        for(int index = 0; index < this.stripes.length; index++){
+            this.stripes[index] = new DispatcherStripe(eventProperties.getRingCapacity(), eventProperties.getThreadNamePrefix() + (index + 1));
+        }
+    }
+
+    //Returns false if the dispatcher is closed, in which case the item is not consumed
+    public boolean dispatch(int stripeKey, T item){
+        if(this.isClosed){
+            return false;
+        }
+
+        DispatcherStripe stripe = this.stripes[Math.floorMod(stripeKey, this.stripes.length)];
+        if(stripe.overflowSize.get() > 0 || !stripe.ringBuffer.offer(item)){
+            stripe.overflowSize.incrementAndGet();
+            stripe.overflowQueue.add(item);
+            this.overflowedItems.increment();
+        }
+
+        if(stripe.isParked){
+            LockSupport.unpark(stripe.dispatcherThread);
+        }
+        return true;
+    }
+
+    //Items dispatched and not yet consumed, across all stripes
+    public int getBacklog(){
+        int backlog = 0;
+        for(DispatcherStripe stripe : this.stripes){
+            backlog += stripe.ringBuffer.size() + stripe.overflowSize.get();
+        }
+        return backlog;
+    }
+
+    //Items which spilled over into an overflow queue since the dispatcher was created
+    public long getOverflowedItems(){
+        return this.overflowedItems.sum();
+    }
+
+    //Stops accepting new items, and waits for the dispatcher threads to drain their ring buffers
+    @Override
+    public void close() {
+        this.isClosed = true;
+        for(DispatcherStripe stripe : this.stripes){
+            LockSupport.unpark(stripe.dispatcherThread);
+        }
+
+        for(DispatcherStripe stripe : this.stripes){
+            try {
+                stripe.dispatcherThread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private class DispatcherStripe implements Runnable{
+        private final MpscRingBuffer<T> ringBuffer;
+        private final Queue<T> overflowQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger overflowSize = new AtomicInteger(0); //incremented before an item is added to the overflow queue, and decremented after it is polled
+        private final Thread dispatcherThread;
+        private volatile boolean isParked = false;
+
+        private DispatcherStripe(int ringCapacity, String threadName) {
+            this.ringBuffer = new MpscRingBuffer<>(ringCapacity);
+            this.dispatcherThread = new Thread(this, threadName);
+            this.dispatcherThread.setDaemon(true);
+            this.dispatcherThread.start();
+        }
+
+        @Override
+        public void run() {
+            while(!isClosed || !this.ringBuffer.isEmpty() || this.overflowSize.get() > 0){
+                T item = this.ringBuffer.poll();
+                if(item == null && this.ringBuffer.isEmpty() && this.overflowSize.get() > 0){
+                    //items in the ring buffer were dispatched before the items in the overflow queue, so the overflow queue is drained only once the ring buffer is empty
+                    item = this.overflowQueue.poll();
+                    if(item != null){
+                        this.overflowSize.decrementAndGet();
+                    }
+                }
+
+                if(item != null){
+                    try {
+                        consumer.accept(item);
+                    }catch (Exception e){
+                        logger.error("Event dispatcher " + this.dispatcherThread.getName() + " failed to consume item. Caused by: " + e.getMessage());
+                    }
+                }else{
+                    //Announce we are about to park, then check again, so a producer that missed the announcement is still seen before parking
+                    this.isParked = true;
+                    if(this.ringBuffer.isEmpty() && this.overflowSize.get() == 0 && !isClosed){
+                        LockSupport.parkNanos(this, IdleParkNanos);
+                    }else{
+                        Thread.onSpinWait(); //an item was claimed by a producer (or counted as overflowed), but is not yet published
+                    }
+                    this.isParked = false;
+                }
+            }
+        }
+    }
+}
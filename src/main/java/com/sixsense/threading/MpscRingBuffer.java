@@ -0,0 +1,70 @@
+package com.sixsense.threading;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*A bounded, lock-free ring buffer for many producers and a single consumer
+ * Producers claim a slot by advancing the producer index (compare-and-set), then publish their item into that slot.
+ * The consumer treats an empty slot as "not yet published", so it never reads an item before it's producer has finished writing it.
+ * Only a single thread may call poll()*/
+public class MpscRingBuffer<T> {
+    private final AtomicReferenceArray<T> buffer;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private volatile long consumerIndex = 0;
+
+    public MpscRingBuffer(int capacity) {
+        int powerOfTwoCapacity = 1;
+        while(powerOfTwoCapacity < capacity && powerOfTwoCapacity < (1 << 30)){
+            powerOfTwoCapacity <<= 1;
+        }
+
+        this.buffer = new AtomicReferenceArray<>(powerOfTwoCapacity);
+        this.mask = powerOfTwoCapacity - 1;
+    }
+
+    //Returns false (without blocking) if the buffer is full
+    public boolean offer(T item){
+        if(item == null){
+            throw new NullPointerException("Ring buffer does not accept null items");
+        }
+
+        long claimedIndex;
+        do {
+            claimedIndex = this.producerIndex.get();
+            if(claimedIndex - this.consumerIndex >= this.buffer.length()){
+                return false;
+            }
+        } while(!this.producerIndex.compareAndSet(claimedIndex, claimedIndex + 1));
+
+        this.buffer.set((int)(claimedIndex & this.mask), item);
+        return true;
+    }
+
+    //Returns null if the buffer is empty, or if the next item was claimed but not yet published
+    public T poll(){
+        long nextIndex = this.consumerIndex;
+        int slot = (int)(nextIndex & this.mask);
+        T item = this.buffer.get(slot);
+        if(item == null){
+            return null;
+        }
+
+        this.buffer.lazySet(slot, null);
+        this.consumerIndex = nextIndex + 1; //frees the slot for producers only after it has been cleared
+        return item;
+    }
+
+    public boolean isEmpty(){
+        return this.consumerIndex == this.producerIndex.get();
+    }
+
+    //Items claimed and not yet consumed. Only an estimate while producers or the consumer are active
+    public int size(){
+        return (int)Math.max(this.producerIndex.get() - this.consumerIndex, 0);
+    }
+
+    public int capacity(){
+        return this.buffer.length();
+    }
+}
@@ -0,0 +1,131 @@
+package com.sixsense.threading;
+
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.retention.OperationResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Concurrency window of a bounded workflow - holds the operations of the workflow which were not yet submitted, and the amount of free slots for submitting them
+ * Pending operations are polled in workflow order, or by descending priority (and then in workflow order) if the workflow uses the OPERATIONS_PRIORITIZED policy.
+ * The window never submits anything itself - the workflow manager polls it for the next operation, and releases the slot once that operation ends*/
+public class OperationWindow {
+    private final String workflowId;
+
+    //Guarded by the windowLock
+    private final Lock windowLock = new ReentrantLock();
+    private final PriorityQueue<WindowedOperation> pendingOperations;
+    private int freeSlots;
+    private long enqueuedOperations = 0;
+
+    private final AtomicInteger drainRequests = new AtomicInteger(0);
+
+    public OperationWindow(String workflowId, int maximumConcurrency, boolean prioritized) {
+        this.workflowId = workflowId;
+        Comparator<WindowedOperation> workflowOrder = Comparator.comparingLong(pending -> pending.sequence);
+        if(prioritized){
+            Comparator<WindowedOperation> priorityOrder = Comparator.comparingInt(pending -> -pending.operation.getPriority());
+            this.pendingOperations = new PriorityQueue<>(priorityOrder.thenComparing(workflowOrder));
+        }else{
+            this.pendingOperations = new PriorityQueue<>(workflowOrder);
+        }
+        this.freeSlots = maximumConcurrency;
+    }
+
+    public String getWorkflowId() {
+        return workflowId;
+    }
+
+    public CompletableFuture<OperationResult> enqueue(Operation operation){
+        this.windowLock.lock();
+        try {
+            WindowedOperation pending = new WindowedOperation(operation, this.enqueuedOperations++);
+            this.pendingOperations.add(pending);
+            return pending.futureResult;
+        }finally {
+            this.windowLock.unlock();
+        }
+    }
+
+    //Takes a free slot for the next pending operation. Returns null if there are no free slots, or no pending operations
+    public WindowedOperation poll(){
+        this.windowLock.lock();
+        try {
+            if(this.freeSlots > 0 && !this.pendingOperations.isEmpty()){
+                this.freeSlots--;
+                return this.pendingOperations.poll();
+            }
+            return null;
+        }finally {
+            this.windowLock.unlock();
+        }
+    }
+
+    public void release(){
+        this.windowLock.lock();
+        try {
+            this.freeSlots++;
+        }finally {
+            this.windowLock.unlock();
+        }
+    }
+
+    //Removes (and returns) every operation which was not yet polled, so that none of them is submitted when running operations release their slots
+    public List<WindowedOperation> clearPending(){
+        this.windowLock.lock();
+        try {
+            List<WindowedOperation> cleared = new ArrayList<>(this.pendingOperations);
+            this.pendingOperations.clear();
+            return cleared;
+        }finally {
+            this.windowLock.unlock();
+        }
+    }
+
+    public boolean hasPendingOperations(){
+        this.windowLock.lock();
+        try {
+            return !this.pendingOperations.isEmpty();
+        }finally {
+            this.windowLock.unlock();
+        }
+    }
+
+    /*Operations may complete (and release their slot) while being submitted, i.e. if they are rejected by the admission manager.
+     * Rather than draining the window again from within that completion (which could nest as deep as the number of operations), the draining thread is asked to loop once more.
+     * Returns true if the caller should drain the window, or false if another thread is already draining it (and will loop once more on the caller's behalf)*/
+    public boolean requestDrain(){
+        return this.drainRequests.getAndIncrement() == 0;
+    }
+
+    //Called by the draining thread once it has drained the window. Returns true if it was asked to drain it again in the meantime
+    public boolean completeDrain(){
+        return this.drainRequests.decrementAndGet() != 0;
+    }
+
+    public static class WindowedOperation{
+        private final Operation operation;
+        private final long sequence;
+        private final CompletableFuture<OperationResult> futureResult;
+
+        private WindowedOperation(Operation operation, long sequence) {
+            this.operation = operation;
+            this.sequence = sequence;
+            this.futureResult = new CompletableFuture<>();
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public CompletableFuture<OperationResult> getFutureResult() {
+            return futureResult;
+        }
+    }
+}
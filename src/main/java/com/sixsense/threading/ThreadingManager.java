@@ -3,7 +3,8 @@ package com.sixsense.threading;
 import com.sixsense.api.http.overrides.HTTPThreadExecutor;
 import com.sixsense.config.ThreadingConfig;
 import com.sixsense.model.events.EngineEventType;
-import com.sixsense.model.threading.MonitoredThread;
+import com.sixsense.model.threading.ExecutorMode;
+import com.sixsense.model.threading.IMonitoredThread;
 import com.sixsense.model.threading.MonitoredThreadState;
 import com.sixsense.model.threading.ThreadPool;
 import com.sixsense.utillity.ThreadingUtils;
@@ -18,9 +19,11 @@ import org.springframework.stereotype.Component;
 
 import java.io.Closeable;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -30,13 +33,16 @@ import java.util.function.Supplier;
 public class ThreadingManager implements Closeable {
     private static final Logger logger = LogManager.getLogger(ThreadingManager.class);
     private static final int ShutdownGraceSeconds = 5;
-    private final ThreadPoolExecutor enginePool; //Executes all tasks originating from the engine itself (com.SixSense.*)
+    private final ExecutorService enginePool; //Executes all tasks originating from the engine itself (com.SixSense.*)
+    private final IThreadMonitoingFactory engineThreadFactory;
     private final HTTPThreadExecutor httpConnectionPool; //Executes all threads intercepting web requests (org.apache.catalina.*) [NOT all tomcat threads]
     private final ThreadPoolExecutor amqpConnectionPool;
+    private final List<EventDispatcher<?>> eventDispatchers = new CopyOnWriteArrayList<>();
 
-    private final ThreadingConfig.ThreadingProperties engineProperties;
+    private final ThreadingConfig.EngineThreadingProperties engineProperties;
     private final ThreadingConfig.ThreadingProperties httpProperties;
     private final ThreadingConfig.AMQPThreadingProperties amqpProperties;
+    private final ThreadingConfig.EventThreadingProperties eventProperties;
 
     private boolean isClosed = false;
 
@@ -45,23 +51,53 @@ public class ThreadingManager implements Closeable {
         this.engineProperties = threadingConfig.getEngine();
         this.httpProperties = threadingConfig.getHttp();
         this.amqpProperties = threadingConfig.getAmqp();
+        this.eventProperties = threadingConfig.getEvents();
 
-        this.enginePool = generateThreadPool(this.engineProperties);
+        this.engineThreadFactory = generateEngineThreadFactory(this.engineProperties);
+        this.enginePool = generateEnginePool(this.engineProperties, this.engineThreadFactory);
         this.httpConnectionPool = new HTTPThreadExecutor(this.httpProperties);
         this.amqpConnectionPool = generateThreadPool(this.amqpProperties);
 
-        this.enginePool.prestartAllCoreThreads();
         this.amqpConnectionPool.prestartAllCoreThreads();
     }
 
+    /*In virtual mode, every engine task (session, channel reader, event handler) runs on it's own virtual thread.
+    * Sessions spend most of their time parked on their command lock, so virtual threads allow far more concurrent sessions than a platform thread pool*/
+    private IThreadMonitoingFactory generateEngineThreadFactory(ThreadingConfig.EngineThreadingProperties threadingProperties){
+        if(threadingProperties.getExecutorMode().equals(ExecutorMode.Virtual)){
+            VirtualThreadFactory virtualThreadFactory = new VirtualThreadFactory(threadingProperties);
+            if(virtualThreadFactory.isSupported()){
+                logger.info("Engine pool is running in virtual thread mode");
+                return virtualThreadFactory;
+            }
+            logger.warn("Engine pool is falling back to platform thread mode");
+        }
+
+        return new EngineThreadFactory(threadingProperties);
+    }
+
+    private ExecutorService generateEnginePool(ThreadingConfig.ThreadingProperties threadingProperties, IThreadMonitoingFactory threadFactory){
+        if(threadFactory instanceof VirtualThreadFactory){
+            return ((VirtualThreadFactory)threadFactory).newThreadPerTaskExecutor();
+        }
+
+        ThreadPoolExecutor platformPool = generateThreadPool(threadingProperties, (EngineThreadFactory)threadFactory);
+        platformPool.prestartAllCoreThreads();
+        return platformPool;
+    }
+
     private ThreadPoolExecutor generateThreadPool(ThreadingConfig.ThreadingProperties threadingProperties){
+        return generateThreadPool(threadingProperties, new EngineThreadFactory(threadingProperties));
+    }
+
+    private ThreadPoolExecutor generateThreadPool(ThreadingConfig.ThreadingProperties threadingProperties, EngineThreadFactory threadFactory){
         return new ThreadPoolExecutor(
                 threadingProperties.getMinimumThreads(),
                 threadingProperties.getMaximumThreads(),
                 threadingProperties.getAllowedIdleTime().toMillis(),
                 TimeUnit.MILLISECONDS,
                 new SynchronousQueue<>(), //To allow for dynamic size increase, we must provide a synchronousQueue (https://stackoverflow.com/a/8591681/1658288, https://stackoverflow.com/a/47691139/1658288)
-                new EngineThreadFactory(threadingProperties)
+                threadFactory
         );
     }
 
@@ -80,6 +116,31 @@ public class ThreadingManager implements Closeable {
         enginePool.submit(worker);
     }
 
+    /*Creates a set of dispatcher threads that feed items to the consumer. The consumer runs on the dispatcher threads themselves, so it must never block
+    * (consumers with any heavier work should hand it off to the engine pool). The dispatcher is closed together with the engine pool*/
+    public <T> EventDispatcher<T> generateEventDispatcher(Consumer<T> consumer){
+        EventDispatcher<T> eventDispatcher = new EventDispatcher<>(this.eventProperties, consumer);
+        this.eventDispatchers.add(eventDispatcher);
+        return eventDispatcher;
+    }
+
+    //Items dispatched to event dispatchers and not yet consumed by their consumers
+    public int getEventBacklog(){
+        int backlog = 0;
+        for(EventDispatcher<?> eventDispatcher : this.eventDispatchers){
+            backlog += eventDispatcher.getBacklog();
+        }
+        return backlog;
+    }
+
+    public long getOverflowedEvents(){
+        long overflowed = 0;
+        for(EventDispatcher<?> eventDispatcher : this.eventDispatchers){
+            overflowed += eventDispatcher.getOverflowedItems();
+        }
+        return overflowed;
+    }
+
     //Invokes thenApplyAsync using the enginePool, without exposing it (and breaking encapsulation)
     public <T, U> CompletableFuture<U> applyFutureCallback(CompletableFuture<T> future, Function<? super T,? extends U> callback){
         return future.thenApplyAsync(callback, enginePool);
@@ -104,7 +165,7 @@ public class ThreadingManager implements Closeable {
 
     private IThreadMonitoingFactory getMonitoringThreadFactory(ThreadPool threadPool){
         switch (threadPool){
-            case Engine: return (EngineThreadFactory)this.enginePool.getThreadFactory();
+            case Engine: return this.engineThreadFactory;
             case HTTP: return this.httpConnectionPool.getThreadFactory();
             case AMQP: return (EngineThreadFactory)this.amqpConnectionPool.getThreadFactory();
             default: throw new IllegalArgumentException("No managed thread pool named " + threadPool.name() + " exists");
@@ -113,16 +174,52 @@ public class ThreadingManager implements Closeable {
 
     public Map<Long, MonitoredThreadState> getEngineThreadStatus(){
         IThreadMonitoingFactory monitoringThreadFactory = getMonitoringThreadFactory(ThreadPool.Engine);
-        Set<MonitoredThread> currentThreads = monitoringThreadFactory.getMonitoredThreads();
+        Set<IMonitoredThread> currentThreads = monitoringThreadFactory.getMonitoredThreads();
 
         Map<Long, MonitoredThreadState> threadStatus = new HashMap<>();
-        for(MonitoredThread thread : currentThreads){
+        for(IMonitoredThread thread : currentThreads){
             threadStatus.put(thread.getId(), thread.getCurrentThreadState()); //A thread's id is a positive long, that remains unchaned during the thread's lifetime
         }
 
         return threadStatus;
     }
 
+    //In virtual mode, every live engine thread is executing a task, as virtual threads are never pooled
+    public int getActiveThreads(ThreadPool threadPool){
+        if(threadPool.equals(ThreadPool.HTTP)){
+            return this.httpConnectionPool.getActiveCount();
+        }
+
+        ExecutorService executor = getExecutorService(threadPool);
+        if(executor instanceof ThreadPoolExecutor){
+            return ((ThreadPoolExecutor)executor).getActiveCount();
+        }else{
+            return getMonitoringThreadFactory(threadPool).getMonitoredThreads().size();
+        }
+    }
+
+    //Returns the ratio of active threads to the maximum pool size, or NaN if the pool is unbounded
+    public double getPoolSaturation(ThreadPool threadPool){
+        if(threadPool.equals(ThreadPool.HTTP)){
+            return (double)this.httpConnectionPool.getActiveCount() / this.httpConnectionPool.getMaxThreads();
+        }
+
+        ExecutorService executor = getExecutorService(threadPool);
+        if(executor instanceof ThreadPoolExecutor){
+            ThreadPoolExecutor poolExecutor = (ThreadPoolExecutor)executor;
+            return (double)poolExecutor.getActiveCount() / poolExecutor.getMaximumPoolSize();
+        }else{
+            return Double.NaN;
+        }
+    }
+
+    private ExecutorService getExecutorService(ThreadPool threadPool){
+        switch (threadPool){
+            case Engine: return this.enginePool;
+            case AMQP: return this.amqpConnectionPool;
+            default: throw new IllegalArgumentException("Thread pool " + threadPool.name() + " is not managed as an executor service");
+        }
+    }
 
     public boolean isShutdown(){
         return enginePool.isShutdown();
@@ -130,6 +227,11 @@ public class ThreadingManager implements Closeable {
 
     @Override
     public void close() {
+        //Dispatchers are closed first, so that items already in their ring buffers are consumed while the engine pool is still running
+        for(EventDispatcher<?> eventDispatcher : this.eventDispatchers){
+            eventDispatcher.close();
+        }
+
         boolean finishedShutdown = false;
         this.enginePool.shutdown();
         try {
@@ -0,0 +1,83 @@
+package com.sixsense.threading;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*A token bucket that hands out reservations instead of blocking
+ * Each reservation takes one token, and returns how long the caller must wait until that token becomes available.
+ * The bucket refills at a constant rate, up to the burst size. Tokens may go into debt, so concurrent callers are queued fairly behind each other*/
+public class TokenBucket {
+    private final double nanosPerToken;
+    private final double burst;
+
+    //Guarded by the bucketLock
+    private final Lock bucketLock = new ReentrantLock();
+    private double availableTokens;
+    private long lastRefill;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        this(tokensPerSecond, burst, System.nanoTime());
+    }
+
+    public TokenBucket(double tokensPerSecond, int burst, long nowNanos) {
+        if(tokensPerSecond <= 0){
+            throw new IllegalArgumentException("Token bucket rate must be positive");
+        }
+
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.burst = Math.max(burst, 1);
+        this.availableTokens = this.burst;
+        this.lastRefill = nowNanos;
+    }
+
+    //Reserves a single token, and returns the amount of nanoseconds until the reservation is valid (zero if a token is available immediately)
+    public long reserve(){
+        return reserve(System.nanoTime());
+    }
+
+    public long reserve(long nowNanos){
+        return reserve(nowNanos, 1);
+    }
+
+    //Reserves several tokens at once (i.e. one per connection), and returns the amount of nanoseconds until the last of them is valid
+    public long reserve(long nowNanos, int tokens){
+        this.bucketLock.lock();
+        try {
+            refill(nowNanos);
+            this.availableTokens -= tokens;
+            return this.availableTokens >= 0 ? 0 : (long)Math.ceil(-this.availableTokens * this.nanosPerToken);
+        }finally {
+            this.bucketLock.unlock();
+        }
+    }
+
+    //Gives back tokens which were reserved for a session that will not be created after all (i.e. it's operation was rejected). Reservations made since then keep their wait
+    public void refund(int tokens){
+        this.bucketLock.lock();
+        try {
+            this.availableTokens = Math.min(this.burst, this.availableTokens + tokens);
+        }finally {
+            this.bucketLock.unlock();
+        }
+    }
+
+    //A full bucket behaves exactly like a new bucket, so callers holding many buckets may discard it
+    public boolean isFull(long nowNanos){
+        this.bucketLock.lock();
+        try {
+            refill(nowNanos);
+            return this.availableTokens >= this.burst;
+        }finally {
+            this.bucketLock.unlock();
+        }
+    }
+
+    //This method assumes we are holding the bucketLock
+    private void refill(long nowNanos){
+        if(nowNanos > this.lastRefill) {
+            this.availableTokens = Math.min(this.burst, this.availableTokens + (nowNanos - this.lastRefill) / this.nanosPerToken);
+            this.lastRefill = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.sixsense.threading;
+
+import com.sixsense.config.ThreadingConfig;
+import com.sixsense.model.threading.IMonitoredThread;
+import com.sixsense.model.threading.MonitoredTask;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*Creates a new virtual thread for every submitted task, wrapping the task (instead of the thread) to keep monitoring the engine's thread states
+* The engine is compiled against java 11, so the virtual thread api (java 21+) is resolved reflectively once, when the factory is created.
+* If the running jvm does not support virtual threads, isSupported() returns false and the threading manager falls back to platform threads*/
+public class VirtualThreadFactory implements ThreadFactory, IThreadMonitoingFactory {
+    private static final Logger logger = LogManager.getLogger(VirtualThreadFactory.class);
+    private final ThreadFactory virtualThreadFactory;
+    private final Set<IMonitoredThread> monitoredThreads;
+
+    VirtualThreadFactory(ThreadingConfig.ThreadingProperties threadingProperties) {
+        this.virtualThreadFactory = createVirtualThreadFactory(threadingProperties.getThreadNamePrefix());
+        this.monitoredThreads = ConcurrentHashMap.newKeySet(); //tens of thousands of virtual threads may watch and unwatch concurrently
+    }
+
+    //Equivalent to Thread.ofVirtual().name(threadNamePrefix, 1).factory()
+    private static ThreadFactory createVirtualThreadFactory(String threadNamePrefix){
+        try {
+            Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtualBuilder = virtualBuilderClass.getMethod("name", String.class, long.class).invoke(virtualBuilder, threadNamePrefix, 1L);
+            return (ThreadFactory)virtualBuilderClass.getMethod("factory").invoke(virtualBuilder);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by the running jvm (java " + Runtime.version().feature() + "). Caused by: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean isSupported(){
+        return this.virtualThreadFactory != null;
+    }
+
+    //Equivalent to Executors.newThreadPerTaskExecutor(this)
+    ExecutorService newThreadPerTaskExecutor() throws IllegalStateException{
+        try {
+            Method executorFactory = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService)executorFactory.invoke(null, this);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create a virtual thread executor. Caused by: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread newThread = this.virtualThreadFactory.newThread(new MonitoredTask(this, runnable));
+        logger.debug("Created new virtual thread " + newThread.getName());
+        return newThread;
+    }
+
+    @Override
+    public Set<IMonitoredThread> getMonitoredThreads(){
+        return Collections.unmodifiableSet(this.monitoredThreads);
+    }
+
+    @Override
+    public boolean watch(IMonitoredThread monitoredThread) {
+        logger.debug("Watching thread " + monitoredThread.getName());
+        return this.monitoredThreads.add(monitoredThread);
+    }
+
+    @Override
+    public boolean unwatch(IMonitoredThread monitoredThread) {
+        logger.debug("Unwatching thread " + monitoredThread.getName());
+        monitoredThread.getCurrentThreadState().resetState();
+        return this.monitoredThreads.remove(monitoredThread);
+    }
+}
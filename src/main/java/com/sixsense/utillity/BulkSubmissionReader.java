@@ -0,0 +1,51 @@
+package com.sixsense.utillity;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/*Reads a bulk submission - a single operation followed by any number of devices, each of them a separate root value (i.e. one json document per line)
+* Only the operation is read up front. Devices are parsed one at a time as they are iterated, so the submission is never held in memory as a whole.
+* Iterating throws an (unchecked) RuntimeJsonMappingException if the next device cannot be read*/
+public class BulkSubmissionReader implements Iterator<Device>, Closeable {
+    public static final String NdJsonContentType = "application/x-ndjson";
+    private final JsonParser parser;
+    private final Operation operation;
+    private final MappingIterator<Device> devices;
+
+    public BulkSubmissionReader(InputStream input, WireFormat wireFormat) throws IOException {
+        this.parser = PolymorphicJsonMapper.createParser(input, wireFormat);
+        this.operation = PolymorphicJsonMapper.deserializeNext(this.parser, Operation.class, wireFormat);
+        if(this.operation == null){
+            this.parser.close();
+            throw new IOException("Bulk submission does not start with an operation");
+        }
+        this.devices = PolymorphicJsonMapper.deserializeEach(this.parser, Device.class, wireFormat);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.devices.hasNext();
+    }
+
+    @Override
+    public Device next() {
+        return this.devices.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.devices.close();
+        this.parser.close();
+    }
+}
@@ -2,6 +2,7 @@ package com.sixsense.utillity;
 
 import com.sixsense.model.commands.*;
 import com.sixsense.model.devices.Device;
+import com.sixsense.model.devices.VendorProductVersion;
 import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.pipes.AbstractOutputPipe;
 import com.sixsense.io.Session;
@@ -65,20 +66,27 @@ public class CommandUtils {
     public static ParallelWorkflow composeWorkflow(RawExecutionConfig rawConfig){
         ParallelWorkflow parallelNode = new ParallelWorkflow();
         for(Device device : rawConfig.getDevices()){
-            parallelNode.addParallelOperation(
-                (Operation)rawConfig.getOperation().deepClone()
-                    .addDynamicFields(device.getDynamicFields())
-                    .addDynamicField(FieldGlossary.device_internal_id, device.getShortUUID())
-                    .addDynamicField(FieldGlossary.device_host, device.getCredentials().getHost())
-                    .addDynamicField(FieldGlossary.device_username, device.getCredentials().getUsername())
-                    .addDynamicField(FieldGlossary.device_password, device.getCredentials().getPassword())
-                    .addDynamicField(FieldGlossary.device_port, String.valueOf(device.getCredentials().getPort()))
-            );
+            parallelNode.addParallelOperation(composeOperation(rawConfig.getOperation(), device));
         }
 
         return parallelNode;
     }
 
+    //Instantiates the operation for a single device (sharing the operation definition, see Operation.instantiate())
+    public static Operation composeOperation(Operation operation, Device device){
+        VendorProductVersion vpv = device.getVpv() == null ? new VendorProductVersion() : device.getVpv();
+        return (Operation)operation.instantiate()
+            .addDynamicFields(device.getDynamicFields())
+            .addDynamicField(FieldGlossary.device_internal_id, device.getShortUUID())
+            .addDynamicField(FieldGlossary.device_host, device.getCredentials().getHost())
+            .addDynamicField(FieldGlossary.device_username, device.getCredentials().getUsername())
+            .addDynamicField(FieldGlossary.device_password, device.getCredentials().getPassword())
+            .addDynamicField(FieldGlossary.device_port, String.valueOf(device.getCredentials().getPort()))
+            .addDynamicField(FieldGlossary.device_vendor, vpv.getVendor())
+            .addDynamicField(FieldGlossary.device_product, vpv.getProduct())
+            .addDynamicField(FieldGlossary.device_version, vpv.getVersion());
+    }
+
     public static AbstractWorkflow mergeWorkflows(AbstractWorkflow original, AbstractWorkflow additional){
         if(original instanceof ParallelWorkflow){
             ParallelWorkflow originalAsWorkflow = (ParallelWorkflow)original;
@@ -4,7 +4,9 @@ import com.sixsense.model.events.AbstractEngineEvent;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
+//Each session has it's own concurrent deque, so sessions emitting events at the same time never contend with each other
 public class EventQueue {
     private final Map<String, Deque<AbstractEngineEvent>> sessionEventQueue;
 
@@ -40,8 +42,11 @@ public class EventQueue {
     }
 
     public Collection<AbstractEngineEvent> registerSession(String sessionId){
-        this.sessionEventQueue.putIfAbsent(sessionId, new ArrayDeque<>());
-        return Collections.unmodifiableCollection(this.sessionEventQueue.get(sessionId));
+        return Collections.unmodifiableCollection(this.sessionEventQueue.computeIfAbsent(sessionId, id -> new ConcurrentLinkedDeque<>()));
+    }
+
+    public boolean isRegistered(String sessionId){
+        return this.sessionEventQueue.containsKey(sessionId);
     }
 
     public void unregisterSession(String sessionId){
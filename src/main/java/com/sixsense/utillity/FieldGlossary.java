@@ -12,7 +12,10 @@ public class FieldGlossary {
     public static final String device_internal_id = "device.internal.id";
     public static final String device_password = "device.password";
     public static final String device_port = "device.port";
+    public static final String device_product = "device.product";
     public static final String device_username = "device.username";
+    public static final String device_vendor = "device.vendor";
+    public static final String device_version = "device.version";
     public static final String var_block_counter = "var.block.counter";
     public static final String var_block_id = "var.block.id";
     public static final String var_block_repeatCount = "var.block.repeatCount";
@@ -41,7 +41,11 @@ public class Literals {
     public static final String ConfigFilesPath = projectDirectory + "/config";
     public static final String LoggingDirectory = projectDirectory + "/logs";
     public static final String SessionExecutionDir = LoggingDirectory + "/sessions";
+    public static final String JournalDirectory = LoggingDirectory + "/journal";
+    public static final String OutboxDirectory = projectDirectory + "/outbox";
+    public static final String DeadLetterDirectory = OutboxDirectory + "/dead-letter";
 
+    public static final String AdmissionQueueFull = "Operation was rejected - the pending operations queue is full";
     public static final String CommandDidNotMatchConditions = "Command did not match it's execution conditions";
     public static final String CommandDidNotReachOutcome = "Command did not reach it's expected outcome";
     public static final String EngineShutdown = "Session services has been shut down";
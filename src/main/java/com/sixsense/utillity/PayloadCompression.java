@@ -0,0 +1,87 @@
+package com.sixsense.utillity;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*Compresses message bodies into the standard lz4 frame format (https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md), signalled by the AMQP content_encoding of the message
+* so any lz4 implementation can read them. Messages without a content encoding (or with the identity encoding) are passed through as they are.
+* A small compressed body can expand into a huge one, so decompression fails once the declared (or actual) uncompressed length passes the given maximum*/
+public class PayloadCompression {
+    public static final String Lz4Encoding = "lz4";
+    private static final String IdentityEncoding = "identity";
+    private static final int FrameMagic = 0x184D2204;
+    private static final int ContentSizeFlag = 0x08; //bit of the FLG byte (following the magic number) set when the frame header declares the uncompressed length
+    private static final int DescriptorBytes = Integer.BYTES + 2; //magic number, FLG and BD bytes
+    private static final int ChunkBytes = 64 * 1024;
+
+    private PayloadCompression(){
+        /*Empty private constructor - no instances of this class should be created */
+    }
+
+    public static byte[] compress(byte[] body){
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2 + 64);
+        try (LZ4FrameOutputStream output = new LZ4FrameOutputStream(compressed, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB, body.length,
+                LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE, LZ4FrameOutputStream.FLG.Bits.CONTENT_SIZE)) {
+            output.write(body);
+        } catch (IOException e) {
+            //the frame is written to memory, so this is never expected to happen
+            throw new UncheckedIOException("Failed to compress payload. Caused by: " + e.getMessage(), e);
+        }
+        return compressed.toByteArray();
+    }
+
+    public static byte[] decompress(byte[] body, String contentEncoding, long maximumLength) throws IOException {
+        if(contentEncoding == null || contentEncoding.isEmpty() || contentEncoding.equalsIgnoreCase(IdentityEncoding)){
+            return body;
+        }else if(!contentEncoding.equalsIgnoreCase(Lz4Encoding)){
+            throw new IOException("Unsupported content encoding " + contentEncoding);
+        }
+
+        long declaredLength = declaredLength(body);
+        if(declaredLength > maximumLength){
+            throw new IOException("Compressed payload declares an uncompressed length of " + declaredLength + " bytes, more than the maximum of " + maximumLength + " bytes");
+        }
+
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream(declaredLength >= 0 ? (int)declaredLength : (int)Math.min(body.length * 4L, maximumLength));
+        try (LZ4FrameInputStream input = new LZ4FrameInputStream(new ByteArrayInputStream(body))) {
+            byte[] chunk = new byte[ChunkBytes];
+            int chunkLength;
+            while((chunkLength = input.read(chunk)) != -1){
+                if(uncompressed.size() + (long)chunkLength > maximumLength){
+                    throw new IOException("Compressed payload decompresses to more than the maximum of " + maximumLength + " bytes");
+                }
+                uncompressed.write(chunk, 0, chunkLength);
+            }
+        }catch (LZ4Exception e){
+            throw new IOException("Compressed payload is corrupt. Caused by: " + e.getMessage(), e);
+        }
+
+        if(declaredLength >= 0 && uncompressed.size() != declaredLength){
+            throw new IOException("Compressed payload decompressed to " + uncompressed.size() + " bytes instead of " + declaredLength);
+        }
+        return uncompressed.toByteArray();
+    }
+
+    //Returns the uncompressed length declared by the frame header, or -1 if the frame does not declare one
+    private static long declaredLength(byte[] body) throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        if(body.length < DescriptorBytes || frame.getInt(0) != FrameMagic){
+            throw new IOException("Compressed payload is not an lz4 frame");
+        }else if((body[Integer.BYTES] & ContentSizeFlag) == 0){
+            return -1;
+        }else if(body.length < DescriptorBytes + Long.BYTES){
+            throw new IOException("Compressed payload is too short to hold it's uncompressed length");
+        }
+
+        long declaredLength = frame.getLong(DescriptorBytes);
+        return declaredLength < 0 ? Long.MAX_VALUE : declaredLength;
+    }
+}
@@ -1,5 +1,12 @@
 package com.sixsense.utillity;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.sixsense.model.commands.ICommand;
 import com.sixsense.model.logic.IResolvable;
@@ -12,8 +19,19 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Readers and writers are immutable and thread safe, so they are built once and reused for every message
+* (as opposed to calling mapper.writerWithDefaultPrettyPrinter() or mapper.readValue() which resolve their configuration on each call)*/
 public class PolymorphicJsonMapper {
-    private static final ObjectMapper mapper;
+    private static final Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+    private static final Map<WireFormat, ObjectWriter> writers = new EnumMap<>(WireFormat.class);
+    private static final Map<WireFormat, Map<Class<?>, ObjectReader>> readers = new EnumMap<>(WireFormat.class);
+    private static final ObjectWriter prettyWriter;
 
     private PolymorphicJsonMapper(){
         /*Empty private constructor - no instances of this class should be created */
@@ -26,23 +44,68 @@ public class PolymorphicJsonMapper {
             .allowIfBaseType(AbstractOutputPipe.class)
             .build();
 
-        mapper = JsonMapper.builder()
+        mappers.put(WireFormat.Json, configure(JsonMapper.builder()).build());
+        mappers.put(WireFormat.Smile, configure(SmileMapper.builder()).build());
+        mappers.put(WireFormat.Cbor, configure(CBORMapper.builder()).build());
+
+        for(Map.Entry<WireFormat, ObjectMapper> mapper : mappers.entrySet()){
+            writers.put(mapper.getKey(), mapper.getValue().writer());
+            readers.put(mapper.getKey(), new ConcurrentHashMap<>());
+        }
+        prettyWriter = mappers.get(WireFormat.Json).writerWithDefaultPrettyPrinter();
+    }
+
+    //All formats share the same configuration, so any pojo converts identically regardless of the encoding
+    private static <M extends ObjectMapper, B extends MapperBuilder<M, B>> B configure(B builder){
+        return builder
             .addModule(new JavaTimeModule())
             .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
             .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
             .configure(SerializationFeature.WRITE_DATE_KEYS_AS_TIMESTAMPS, true)
             .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true)
             .configure(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS, false)
-            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
             //.activateDefaultTyping(baseTypeValidator, ObjectMapper.DefaultTyping.OBJECT_AND_NON_CONCRETE) //keep this commented out in the meantime to avoid exposing/requiring full type data for pojo <=> json conversions
-            .build();
     }
 
+    private static ObjectReader readerFor(WireFormat format, Class<?> clazz){
+        return readers.get(format).computeIfAbsent(clazz, key -> mappers.get(format).readerFor(key));
+    }
+
+    //Returns compact json. Use serializePretty() for json meant to be read by humans
     public static String serialize(Object pojo) throws JsonProcessingException {
-        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(pojo);
+        return writers.get(WireFormat.Json).writeValueAsString(pojo);
+    }
+
+    public static String serializePretty(Object pojo) throws JsonProcessingException {
+        return prettyWriter.writeValueAsString(pojo);
+    }
+
+    public static byte[] serialize(Object pojo, WireFormat format) throws JsonProcessingException {
+        return writers.get(format).writeValueAsBytes(pojo);
     }
 
     public static <T> T deserialize(String json, Class<T> clazz) throws JsonProcessingException {
-        return mapper.readValue(json, clazz);
+        return readerFor(WireFormat.Json, clazz).readValue(json);
+    }
+
+    //Parses the raw bytes directly, without first decoding them to a string
+    public static <T> T deserialize(byte[] content, Class<T> clazz, WireFormat format) throws IOException {
+        return readerFor(format, clazz).readValue(content);
+    }
+
+    /*Reads consecutive root values from the same input (i.e. newline delimited json) one at a time, so the input is never held in memory as a whole
+    * Values are read from the parser with deserializeNext() and deserializeEach()*/
+    public static JsonParser createParser(InputStream input, WireFormat format) throws IOException {
+        return mappers.get(format).getFactory().createParser(input);
+    }
+
+    public static <T> T deserializeNext(JsonParser parser, Class<T> clazz, WireFormat format) throws IOException {
+        return readerFor(format, clazz).readValue(parser);
+    }
+
+    //Returns an iterator reading the remaining root values of the parser lazily, a single value at a time
+    public static <T> MappingIterator<T> deserializeEach(JsonParser parser, Class<T> clazz, WireFormat format) throws IOException {
+        return readerFor(format, clazz).readValues(parser);
     }
 }
@@ -1,7 +1,9 @@
 package com.sixsense.utillity;
 
 import com.sixsense.model.events.EngineEventType;
+import com.sixsense.model.threading.MonitoredTask;
 import com.sixsense.model.threading.MonitoredThread;
+import com.sixsense.model.threading.MonitoredThreadState;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -13,39 +15,51 @@ public class ThreadingUtils {
     }
 
     public static void updateLifecyclePhase(EngineEventType currentLifecyclePhase){
-        if(Thread.currentThread() instanceof MonitoredThread){
-            MonitoredThread asMonitoredThread = (MonitoredThread)Thread.currentThread();
-            asMonitoredThread.getCurrentThreadState().setCurrentLifecyclePhase(currentLifecyclePhase);
+        MonitoredThreadState currentThreadState = getCurrentThreadState();
+        if(currentThreadState != null){
+            currentThreadState.setCurrentLifecyclePhase(currentLifecyclePhase);
         }else{
             logger.warn(Literals.ThreadNotMonitored);
         }
     }
 
     public static void updateSessionId(String sessionId){
-        if(Thread.currentThread() instanceof MonitoredThread){
-            MonitoredThread asMonitoredThread = (MonitoredThread)Thread.currentThread();
-            asMonitoredThread.getCurrentThreadState().setSessionId(sessionId);
+        MonitoredThreadState currentThreadState = getCurrentThreadState();
+        if(currentThreadState != null){
+            currentThreadState.setSessionId(sessionId);
         }else{
             logger.warn(Literals.ThreadNotMonitored);
         }
     }
 
     public static void updateOperationId(String operationId){
-        if(Thread.currentThread() instanceof MonitoredThread){
-            MonitoredThread asMonitoredThread = (MonitoredThread)Thread.currentThread();
-            asMonitoredThread.getCurrentThreadState().setOperationId(operationId);
+        MonitoredThreadState currentThreadState = getCurrentThreadState();
+        if(currentThreadState != null){
+            currentThreadState.setOperationId(operationId);
         }else{
             logger.warn(Literals.ThreadNotMonitored);
         }
     }
 
     public static void updateSessionAndOperationIds(String sessionId, String operationId){
-        if(Thread.currentThread() instanceof MonitoredThread){
-            MonitoredThread asMonitoredThread = (MonitoredThread)Thread.currentThread();
-            asMonitoredThread.getCurrentThreadState().setSessionId(sessionId);
-            asMonitoredThread.getCurrentThreadState().setOperationId(operationId);
+        MonitoredThreadState currentThreadState = getCurrentThreadState();
+        if(currentThreadState != null){
+            currentThreadState.setSessionId(sessionId);
+            currentThreadState.setOperationId(operationId);
         }else{
             logger.warn(Literals.ThreadNotMonitored);
         }
     }
+
+    /*Platform threads are monitored by wrapping the thread itself, while virtual threads are monitored by wrapping the task they run
+    * Returns null if the current thread is neither*/
+    private static MonitoredThreadState getCurrentThreadState(){
+        Thread currentThread = Thread.currentThread();
+        if(currentThread instanceof MonitoredThread){
+            return ((MonitoredThread)currentThread).getCurrentThreadState();
+        }
+
+        MonitoredTask currentTask = MonitoredTask.current();
+        return currentTask != null ? currentTask.getCurrentThreadState() : null;
+    }
 }
@@ -0,0 +1,32 @@
+package com.sixsense.utillity;
+
+/*The encodings the engine can read from and write to the message broker, keyed by the AMQP content_type of a message
+* Messages without a content type (or with an unknown one) are treated as json, which was the only format before binary encodings were supported*/
+public enum WireFormat {
+    Json ("application/json"),
+    Smile ("application/x-jackson-smile"),
+    Cbor ("application/cbor");
+
+    private final String contentType;
+
+    WireFormat(String contentType){
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public static WireFormat fromContentType(String contentType){
+        if(contentType != null) {
+            //ignore any parameters of the content type (i.e. application/json; charset=utf-8)
+            String mediaType = contentType.split(";")[0].trim();
+            for (WireFormat format : WireFormat.values()) {
+                if (format.contentType.equalsIgnoreCase(mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return WireFormat.Json;
+    }
+}
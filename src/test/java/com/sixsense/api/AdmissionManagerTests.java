@@ -0,0 +1,264 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.SixSenseBaseUtils;
+import com.sixsense.config.AdmissionConfig;
+import com.sixsense.config.RateLimitConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.retention.OperationResult;
+import com.sixsense.services.AdmissionManager;
+import com.sixsense.services.IOperationExecutor;
+import com.sixsense.services.MetricsManager;
+import com.sixsense.services.SessionRateLimiter;
+import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.FieldGlossary;
+import com.sixsense.utillity.Literals;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+@Test(groups = {"api"})
+public class AdmissionManagerTests extends SixSenseBaseTest {
+
+    public void testDeviceLimitAndFifoOrder() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        AdmissionManager admissionManager = createAdmissionManager(executor, new AdmissionConfig(3, 1, 100, 0), unlimitedRate());
+        try {
+            Operation firstOnA = deviceOperation("first on a", "10.0.0.1");
+            Operation secondOnA = deviceOperation("second on a", "10.0.0.1");
+            Operation onB = deviceOperation("on b", "10.0.0.2");
+            Operation onC = deviceOperation("on c", "10.0.0.3");
+            Operation onD = deviceOperation("on d", "10.0.0.4");
+            for(Operation operation : Arrays.asList(firstOnA, secondOnA, onB, onC, onD)){
+                admissionManager.submit(operation);
+            }
+
+            //the second operation on device a waits for it's device, while the operations on other devices fill the global limit
+            Assert.assertEquals(executor.registeredNames(), Arrays.asList("first on a", "on b", "on c"));
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getPendingOperations(), 2);
+
+            //once the device is released, the operation waiting for it is queued behind the operation which was already waiting only for the global limit
+            executor.finish(firstOnA);
+            await(() -> executor.registered.size() == 4, "The next operation was not admitted once a running operation completed");
+            Assert.assertEquals(executor.registeredNames().get(3), "on d");
+
+            executor.finish(onB);
+            await(() -> executor.registered.size() == 5, "The operation waiting for it's device was not admitted");
+            Assert.assertEquals(executor.registeredNames().get(4), "second on a");
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    public void testQueueOverflow() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        AdmissionManager admissionManager = createAdmissionManager(executor, new AdmissionConfig(1, 0, 2, 0), unlimitedRate());
+        try {
+            Operation running = operation("running");
+            admissionManager.submit(running);
+            CompletableFuture<OperationResult> firstPending = admissionManager.submit(operation("first pending"));
+            admissionManager.submit(operation("second pending"));
+
+            //the pending queue is full, so the next operation is rejected right away, without ever being registered
+            CompletableFuture<OperationResult> overflowing = admissionManager.submit(operation("overflowing"));
+            Assert.assertTrue(overflowing.isDone());
+            assertError(overflowing.get(), Literals.AdmissionQueueFull);
+            Assert.assertEquals(executor.registeredNames(), Collections.singletonList("running"));
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getRejectedOperations(), 1);
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getPendingOperations(), 2);
+
+            //while the operations already pending are admitted as before
+            executor.finish(running);
+            await(() -> executor.registered.size() == 2, "The pending operation was not admitted once the running operation completed");
+            Assert.assertEquals(executor.registeredNames().get(1), "first pending");
+            Assert.assertFalse(firstPending.isDone());
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    public void testPendingTermination() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        AdmissionManager admissionManager = createAdmissionManager(executor, new AdmissionConfig(1, 0, 100, 0), unlimitedRate());
+        try {
+            Operation running = operation("running");
+            Operation pending = operation("pending");
+            admissionManager.submit(running);
+            CompletableFuture<OperationResult> pendingResult = admissionManager.submit(pending);
+
+            //a pending operation is terminated by the admission manager itself, and never reaches the session engine
+            assertError(admissionManager.terminateOperation(pending.getUUID()), Literals.OperationTerminated);
+            assertError(pendingResult.get(1, TimeUnit.SECONDS), Literals.OperationTerminated);
+            Assert.assertTrue(executor.terminated.isEmpty());
+
+            executor.finish(running);
+            await(() -> admissionManager.getAdmissionStatistics().getRunningOperations() == 0, "The running operation did not release it's admission slot");
+            Assert.assertEquals(executor.registeredNames(), Collections.singletonList("running"));
+
+            //while an operation which is no longer pending is terminated by the session engine
+            admissionManager.terminateOperation(running.getUUID());
+            Assert.assertEquals(executor.terminated, Collections.singletonList(running.getUUID()));
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    public void testPacedTermination() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        //a single session may be created right away, and every further session waits 200ms for it's token
+        RateLimitConfig rateLimitConfig = new RateLimitConfig(new RateLimitConfig.BucketProperties(1, 5), null, null, Duration.ZERO);
+        AdmissionManager admissionManager = createAdmissionManager(executor, new AdmissionConfig(0, 0, 100, 0), new SessionRateLimiter(rateLimitConfig));
+        try {
+            admissionManager.submit(operation("immediate"));
+            Operation terminatedWhilePaced = operation("terminated while paced");
+            CompletableFuture<OperationResult> pacedResult = admissionManager.submit(terminatedWhilePaced);
+            admissionManager.submit(operation("paced"));
+
+            //paced operations count as pending, even though they have not entered the queue yet
+            Assert.assertEquals(executor.registeredNames(), Collections.singletonList("immediate"));
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getPendingOperations(), 2);
+
+            assertError(admissionManager.terminateOperation(terminatedWhilePaced.getUUID()), Literals.OperationTerminated);
+            assertError(pacedResult.get(1, TimeUnit.SECONDS), Literals.OperationTerminated);
+
+            //the other paced operation enters the queue once it's token is available, while the terminated one never does
+            await(() -> executor.registered.size() == 2, "The paced operation was not admitted once it's token was available");
+            Thread.sleep(300);
+            Assert.assertEquals(executor.registeredNames(), Arrays.asList("immediate", "paced"));
+            Assert.assertTrue(executor.terminated.isEmpty());
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    public void testReleaseOnCompletion() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        AdmissionManager admissionManager = createAdmissionManager(executor, new AdmissionConfig(1, 1, 100, 0), unlimitedRate());
+        try {
+            Operation first = deviceOperation("first", "10.0.0.1");
+            Operation second = deviceOperation("second", "10.0.0.1");
+            CompletableFuture<OperationResult> firstResult = admissionManager.submit(first);
+            CompletableFuture<OperationResult> secondResult = admissionManager.submit(second);
+
+            //the future of an admitted operation resolves to the result of it's execution, and it's slot (and device) pass on to the next operation
+            OperationResult executionResult = new OperationResult().withExpressionResult(ExpressionResult.defaultOutcome());
+            executor.finish(first, executionResult);
+            Assert.assertSame(firstResult.get(5, TimeUnit.SECONDS), executionResult);
+            await(() -> executor.registered.size() == 2, "The next operation was not admitted once the running operation completed");
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getRunningOperations(), 1);
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getPendingOperations(), 0);
+
+            executor.finish(second);
+            secondResult.get(5, TimeUnit.SECONDS);
+            await(() -> admissionManager.getAdmissionStatistics().getRunningOperations() == 0, "The last operation did not release it's admission slot");
+            Assert.assertEquals(admissionManager.getAdmissionStatistics().getAdmittedOperations(), 2);
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    private AdmissionManager createAdmissionManager(IOperationExecutor executor, AdmissionConfig admissionConfig, SessionRateLimiter sessionRateLimiter){
+        ThreadingManager threadingManager = SixSenseBaseUtils.getAppContext().getBean(ThreadingManager.class);
+        MetricsManager metricsManager = SixSenseBaseUtils.getAppContext().getBean(MetricsManager.class);
+        return new AdmissionManager(executor, sessionRateLimiter, threadingManager, metricsManager, admissionConfig);
+    }
+
+    private SessionRateLimiter unlimitedRate(){
+        return new SessionRateLimiter(new RateLimitConfig(null, null, null, null));
+    }
+
+    private Operation operation(String operationName){
+        return new Operation().withOperationName(operationName);
+    }
+
+    private Operation deviceOperation(String operationName, String deviceHost){
+        Operation operation = operation(operationName);
+        operation.addDynamicField(FieldGlossary.device_host, deviceHost);
+        return operation;
+    }
+
+    private void assertError(OperationResult result, String message){
+        Assert.assertEquals(result.getExpressionResult().getMessage(), message);
+    }
+
+    private void await(BooleanSupplier condition, String failureMessage) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(condition.getAsBoolean(), failureMessage);
+    }
+
+    //Records which operations were admitted, and keeps each of them running until the test finishes it (or finishes all of them, including operations admitted later on)
+    private static class RecordingExecutor implements IOperationExecutor {
+        private final List<Operation> registered = new CopyOnWriteArrayList<>();
+        private final List<String> terminated = new CopyOnWriteArrayList<>();
+        private final Map<String, CompletableFuture<OperationResult>> executions = new ConcurrentHashMap<>();
+        private volatile boolean isFinished = false;
+
+        @Override
+        public void registerOperation(Operation operation) {
+            this.registered.add(operation);
+        }
+
+        @Override
+        public void unregisterOperation(String operationId) {
+            this.registered.removeIf(operation -> operation.getUUID().equals(operationId));
+        }
+
+        @Override
+        public OperationResult executeRegisteredOperation(Operation operation) {
+            CompletableFuture<OperationResult> execution = execution(operation.getUUID());
+            if(this.isFinished){
+                finish(operation);
+            }
+            return execution.join();
+        }
+
+        @Override
+        public OperationResult terminateOperation(String operationId) {
+            this.terminated.add(operationId);
+            return new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated));
+        }
+
+        private CompletableFuture<OperationResult> execution(String operationId){
+            return this.executions.computeIfAbsent(operationId, key -> new CompletableFuture<>());
+        }
+
+        private void finish(Operation operation){
+            finish(operation, new OperationResult().withExpressionResult(ExpressionResult.defaultOutcome()));
+        }
+
+        private void finish(Operation operation, OperationResult result){
+            execution(operation.getUUID()).complete(result);
+        }
+
+        private void finishAll(){
+            this.isFinished = true;
+            for(CompletableFuture<OperationResult> execution : this.executions.values()){
+                execution.complete(new OperationResult().withExpressionResult(ExpressionResult.defaultOutcome()));
+            }
+        }
+
+        private List<String> registeredNames(){
+            List<String> registeredNames = new ArrayList<>();
+            for(Operation operation : this.registered){
+                registeredNames.add(operation.getOperationName());
+            }
+            return registeredNames;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.EventJournal;
+import com.sixsense.io.RangeOutputStream;
+import com.sixsense.model.logging.JournalRecord;
+import com.sixsense.model.logging.Loggers;
+import com.sixsense.model.logging.TrailRange;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Test(groups = {"api"})
+public class EventJournalTests extends SixSenseBaseTest {
+
+    public void testAppendOrder() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        try(EventJournal eventJournal = new EventJournal(journalDirectory, 4096, 4)) {
+            //records of different trails and sessions are interleaved in the journal, but each trail is read back on it's own
+            eventJournal.append("session-a", Loggers.SessionLogger, 1, "first");
+            eventJournal.append("session-a", Loggers.CommandLogger, 2, "command");
+            eventJournal.append("session-b", Loggers.SessionLogger, 3, "other session");
+            eventJournal.append("session-a", Loggers.SessionLogger, 4, "second");
+            eventJournal.append("session-a", Loggers.SessionLogger, 5, "third");
+
+            List<JournalRecord> records = readAll(eventJournal, "session-a", Loggers.SessionLogger);
+            Assert.assertEquals(payloads(records), Arrays.asList("first", "second", "third"));
+            Assert.assertEquals(records.stream().map(JournalRecord::getOrdinal).collect(Collectors.toList()), Arrays.asList(0, 1, 2));
+            Assert.assertEquals(records.get(1).getTimestamp(), 4L);
+            Assert.assertEquals(records.get(1).getSessionId(), "session-a");
+            Assert.assertEquals(payloads(readAll(eventJournal, "session-a", Loggers.CommandLogger)), Collections.singletonList("command"));
+            Assert.assertEquals(payloads(readAll(eventJournal, "session-b", Loggers.SessionLogger)), Collections.singletonList("other session"));
+            Assert.assertEquals(eventJournal.getRecordCount("session-a", Loggers.SessionLogger), 3);
+
+            //an ordinal range reads only the records within it
+            List<String> ranged = new ArrayList<>();
+            eventJournal.read("session-a", Loggers.SessionLogger, 1, 2, record -> ranged.add(record.getPayload()));
+            Assert.assertEquals(ranged, Collections.singletonList("second"));
+
+            //unknown sessions have no records, rather than failing
+            Assert.assertFalse(eventJournal.containsSession("session-c"));
+            Assert.assertTrue(readAll(eventJournal, "session-c", Loggers.SessionLogger).isEmpty());
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testRecovery() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        try {
+            int segmentEnd = 0;
+            try(EventJournal eventJournal = new EventJournal(journalDirectory, 4096, 4)) {
+                for(String payload : Arrays.asList("first", "second", "third")){
+                    eventJournal.append("session-a", Loggers.SessionLogger, 1, payload);
+                    segmentEnd += recordBytes("session-a", payload);
+                }
+            }
+
+            //the next record was being copied when the engine stopped. It's length is written last, so it is still zero
+            try(RandomAccessFile segmentFile = new RandomAccessFile(journalDirectory.resolve("segment-000001.journal").toFile(), "rw")){
+                segmentFile.seek(segmentEnd + Integer.BYTES);
+                segmentFile.write(new byte[]{(byte)Loggers.SessionLogger.ordinal(), 1, 2, 3, 4, 5, 6, 7, 8});
+            }
+
+            try(EventJournal recoveredJournal = new EventJournal(journalDirectory, 4096, 4)) {
+                Assert.assertTrue(recoveredJournal.containsSession("session-a"));
+                Assert.assertEquals(payloads(readAll(recoveredJournal, "session-a", Loggers.SessionLogger)), Arrays.asList("first", "second", "third"));
+
+                //records appended after the restart continue the trail, in a new segment
+                recoveredJournal.append("session-a", Loggers.SessionLogger, 2, "fourth");
+                List<JournalRecord> records = readAll(recoveredJournal, "session-a", Loggers.SessionLogger);
+                Assert.assertEquals(payloads(records), Arrays.asList("first", "second", "third", "fourth"));
+                Assert.assertEquals(records.get(3).getOrdinal(), 3);
+                Assert.assertEquals(segmentNumbers(journalDirectory), Arrays.asList(1, 2));
+            }
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testSegmentDeletion() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        //each segment holds three records of 30 bytes, and only the last two segments are kept
+        try(EventJournal eventJournal = new EventJournal(journalDirectory, 100, 2)) {
+            eventJournal.append("s1", Loggers.SessionLogger, 1, "0123456789");
+            for(int record = 0; record < 6; record++){
+                eventJournal.append("s2", Loggers.SessionLogger, 1, "record-" + record + "..");
+            }
+
+            //the first session had no records outside of the deleted segment, so it is dropped altogether
+            Assert.assertEquals(segmentNumbers(journalDirectory), Arrays.asList(2, 3));
+            Assert.assertFalse(eventJournal.containsSession("s1"));
+            Assert.assertEquals(eventJournal.getRecordCount("s1", Loggers.SessionLogger), 0);
+
+            //while the second session loses only the records of the deleted segment, and it's other records keep their ordinals
+            Assert.assertTrue(eventJournal.containsSession("s2"));
+            Assert.assertEquals(eventJournal.getRecordCount("s2", Loggers.SessionLogger), 6);
+            List<JournalRecord> records = readAll(eventJournal, "s2", Loggers.SessionLogger);
+            Assert.assertEquals(payloads(records), Arrays.asList("record-2..", "record-3..", "record-4..", "record-5.."));
+            Assert.assertEquals(records.get(0).getOrdinal(), 2);
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testRenderedOffsets() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        try(EventJournal eventJournal = new EventJournal(journalDirectory, 4096, 4)) {
+            for(String payload : Arrays.asList("a", "bb", "ccc")){
+                eventJournal.append("session-a", Loggers.SessionLogger, 1, payload);
+            }
+
+            //rendered with a single byte of overhead per record (a line break), the trail reads "a\nbb\nccc\n"
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 0, 1), 0L);
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 1, 1), 2L);
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 2, 1), 5L);
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 3, 1), 9L);
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 10, 1), 9L);
+
+            //every offset maps to the record containing it, including the record's own overhead
+            long[] offsets = {0, 1, 2, 4, 5, 8, 9, 100};
+            int[] ordinals = {0, 0, 1, 1, 2, 2, 3, 3};
+            for(int index = 0; index < offsets.length; index++){
+                Assert.assertEquals(eventJournal.findRenderedOrdinal("session-a", Loggers.SessionLogger, offsets[index], 1), ordinals[index], "Wrong ordinal for offset " + offsets[index]);
+            }
+
+            //without overhead, the offsets are those of the payloads alone
+            Assert.assertEquals(eventJournal.getRenderedOffset("session-a", Loggers.SessionLogger, 2, 0), 3L);
+            Assert.assertEquals(eventJournal.findRenderedOrdinal("session-a", Loggers.SessionLogger, 3, 0), 2);
+            Assert.assertEquals(eventJournal.findRenderedOrdinal("session-b", Loggers.SessionLogger, 3, 0), 0);
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testStreamTrail() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        try(EventJournal eventJournal = new EventJournal(journalDirectory, 4096, 4)) {
+            for(String payload : Arrays.asList("a", "bb", "ccc", "dddd")){
+                eventJournal.append("session-a", Loggers.SessionLogger, 1, payload);
+            }
+
+            //rendered as lines, the trail reads "a\nbb\nccc\ndddd\n"
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange()), "a\nbb\nccc\ndddd\n");
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange(3, 7, 0, Integer.MAX_VALUE)), "b\ncc");
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange(6, 7, 0, Integer.MAX_VALUE)), "c");
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange(0, Long.MAX_VALUE, 1, 3)), "bb\nccc\n");
+
+            //byte offsets keep referring to the whole trail when combined with an ordinal range, and only their overlap is streamed
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange(3, 100, 0, 2)), "b\n");
+            Assert.assertEquals(streamTrail(eventJournal, "session-a", new TrailRange(0, 100, 4, 10)), "");
+            Assert.assertEquals(streamTrail(eventJournal, "session-b", new TrailRange()), "");
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testStreamTrailAfterSegmentDeletion() throws Exception{
+        Path journalDirectory = Files.createTempDirectory("journal");
+        try(EventJournal eventJournal = new EventJournal(journalDirectory, 100, 2)) {
+            for(int record = 0; record < 8; record++){
+                eventJournal.append("s2", Loggers.SessionLogger, 1, "record-" + record + "..");
+            }
+
+            //the first three records (11 rendered bytes each) were in the deleted segment, so their bytes are missing without shifting the records after them
+            Assert.assertEquals(streamTrail(eventJournal, "s2", new TrailRange()), "record-3..\nrecord-4..\nrecord-5..\nrecord-6..\nrecord-7..\n");
+            Assert.assertEquals(streamTrail(eventJournal, "s2", new TrailRange(0, 55, 0, Integer.MAX_VALUE)), "record-3..\nrecord-4..\n");
+            Assert.assertEquals(streamTrail(eventJournal, "s2", new TrailRange(22, 44, 0, Integer.MAX_VALUE)), "record-3..\n");
+            Assert.assertEquals(streamTrail(eventJournal, "s2", new TrailRange(0, Long.MAX_VALUE, 1, 5)), "record-3..\nrecord-4..\n");
+        }finally {
+            deleteDirectory(journalDirectory);
+        }
+    }
+
+    public void testRangeOutputStream() throws Exception{
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RangeOutputStream rangeStream = new RangeOutputStream(outputStream, 2, 4, 10);
+
+        //bytes before the range are discarded, and a write crossing into the range is cut at it's start
+        rangeStream.write("abcd".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(outputStream.toString(StandardCharsets.UTF_8), "cd");
+
+        //skipped bytes advance the position without being written
+        rangeStream.skip(2);
+        rangeStream.write('g');
+        Assert.assertEquals(outputStream.toString(StandardCharsets.UTF_8), "cdg");
+        Assert.assertEquals(rangeStream.getPosition(), 9L);
+        Assert.assertFalse(rangeStream.isExhausted());
+
+        //a write crossing the end of the range is cut at it's end
+        rangeStream.write("hij".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(outputStream.toString(StandardCharsets.UTF_8), "cdgh");
+        Assert.assertTrue(rangeStream.isExhausted());
+        rangeStream.write('k');
+        Assert.assertEquals(outputStream.toString(StandardCharsets.UTF_8), "cdgh");
+    }
+
+    public void testTrailRange(){
+        TrailRange unbounded = new TrailRange();
+        Assert.assertFalse(unbounded.isByteBounded());
+        Assert.assertFalse(unbounded.isOrdinalBounded());
+        Assert.assertFalse(unbounded.isEmpty());
+
+        //negative starts are clamped to the start of the trail
+        TrailRange clamped = new TrailRange(-5, 10, -1, 3);
+        Assert.assertEquals(clamped.getFromByte(), 0L);
+        Assert.assertEquals(clamped.getFromOrdinal(), 0);
+        Assert.assertTrue(clamped.isByteBounded());
+        Assert.assertTrue(clamped.isOrdinalBounded());
+
+        //either range being empty leaves nothing to stream
+        Assert.assertTrue(new TrailRange(10, 10, 0, Integer.MAX_VALUE).isEmpty());
+        Assert.assertTrue(new TrailRange(0, Long.MAX_VALUE, 5, 2).isEmpty());
+    }
+
+    private String streamTrail(EventJournal eventJournal, String sessionId, TrailRange trailRange) throws IOException{
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        eventJournal.streamTrail(sessionId, Loggers.SessionLogger, trailRange, 1, record -> record.getPayload() + "\n", outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    //The length field, the fixed header (trail, timestamp, ordinal and session id length), the session id and the payload
+    private int recordBytes(String sessionId, String payload){
+        return Integer.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES + sessionId.length() + payload.length();
+    }
+
+    private List<JournalRecord> readAll(EventJournal eventJournal, String sessionId, Loggers trail){
+        List<JournalRecord> records = new ArrayList<>();
+        eventJournal.read(sessionId, trail, records::add);
+        return records;
+    }
+
+    private List<String> payloads(List<JournalRecord> records){
+        return records.stream().map(JournalRecord::getPayload).collect(Collectors.toList());
+    }
+
+    private List<Integer> segmentNumbers(Path journalDirectory) throws IOException{
+        try(Stream<Path> segmentFiles = Files.list(journalDirectory)){
+            return segmentFiles
+                .map(segmentFile -> segmentFile.getFileName().toString().replaceAll("\\D", ""))
+                .map(Integer::parseInt)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private void deleteDirectory(Path directory) throws IOException{
+        try(Stream<Path> files = Files.walk(directory)){
+            for(Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())){
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
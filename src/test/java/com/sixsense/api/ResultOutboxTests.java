@@ -0,0 +1,254 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.ResultOutbox;
+import com.sixsense.model.retention.OutboxRecord;
+import com.sixsense.model.retention.OutboxSyncPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Test(groups = {"api"})
+public class ResultOutboxTests extends SixSenseBaseTest {
+
+    public void testCrashRecovery() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try {
+            //the first outbox is never closed, as if the engine crashed. Only the first record was published and confirmed
+            ResultOutbox crashedOutbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Always);
+            for(int record = 1; record <= 3; record++){
+                crashedOutbox.append(outboxRecord(record));
+            }
+            crashedOutbox.confirm(crashedOutbox.poll(0, TimeUnit.MILLISECONDS).getAddress());
+
+            //confirmations are not stored, so every record of a segment which was not deleted is read (and published) again
+            try(ResultOutbox recoveredOutbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Always)){
+                Assert.assertEquals(recoveredOutbox.getUnreadRecords(), 3);
+                Assert.assertEquals(recoveredOutbox.getUnconfirmedRecords(), 3);
+                Assert.assertEquals(correlationIds(recoveredOutbox), Arrays.asList("correlation-1", "correlation-2", "correlation-3"));
+
+                //records appended after the restart go to a new segment, and are read after the recovered ones
+                recoveredOutbox.append(outboxRecord(4));
+                OutboxRecord appended = recoveredOutbox.poll(0, TimeUnit.MILLISECONDS);
+                Assert.assertEquals(appended.getCorrelationId(), "correlation-4");
+                Assert.assertEquals(appended.getContentType(), "application/json");
+                Assert.assertEquals(appended.getHeaders(), Collections.singletonMap("x-request-id", "request-4"));
+                Assert.assertEquals(appended.getBody(), body(4));
+                Assert.assertEquals(segmentNumbers(outboxDirectory), Arrays.asList(1, 2));
+            }finally {
+                crashedOutbox.close();
+            }
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    public void testTornTailRecords() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try {
+            //the last record was only partially written when the host crashed
+            Path segmentFile = appendRecords(outboxDirectory, 3);
+            long recordLength = (Files.size(segmentFile) - Integer.BYTES) / 3;
+            try(RandomAccessFile segment = new RandomAccessFile(segmentFile.toFile(), "rw")){
+                segment.setLength(segment.length() - 10);
+            }
+            try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+                Assert.assertEquals(correlationIds(outbox), Arrays.asList("correlation-1", "correlation-2"));
+            }
+            Assert.assertEquals(Files.size(segmentFile), Integer.BYTES + 2 * recordLength);
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    public void testCorruptedRecord() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try {
+            //a record failing it's checksum ends the segment, even though it is followed by a valid record
+            Path segmentFile = appendRecords(outboxDirectory, 3);
+            long recordLength = (Files.size(segmentFile) - Integer.BYTES) / 3;
+            try(RandomAccessFile segment = new RandomAccessFile(segmentFile.toFile(), "rw")){
+                long corruptedPosition = Integer.BYTES + recordLength + Integer.BYTES + Integer.BYTES + 5;
+                segment.seek(corruptedPosition);
+                int corruptedByte = segment.read();
+                segment.seek(corruptedPosition);
+                segment.write(corruptedByte ^ 0xFF);
+            }
+            try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+                Assert.assertEquals(correlationIds(outbox), Collections.singletonList("correlation-1"));
+            }
+            Assert.assertEquals(Files.size(segmentFile), Integer.BYTES + recordLength);
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    public void testUnversionedSegment() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try {
+            //segments written before records were versioned have no segment magic, and their records have neither a version byte nor a content encoding
+            try(RandomAccessFile segment = new RandomAccessFile(segmentFile(outboxDirectory, 1).toFile(), "rw")){
+                for(int record = 1; record <= 2; record++){
+                    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                    try(DataOutputStream output = new DataOutputStream(payload)){
+                        output.writeUTF("correlation-" + record);
+                        output.writeUTF("operation");
+                        output.writeUTF("Operation " + record);
+                        output.writeUTF("application/json");
+                        output.writeInt(1);
+                        output.writeUTF("x-request-id");
+                        output.writeUTF("request-" + record);
+                        output.writeInt(body(record).length);
+                        output.write(body(record));
+                    }
+                    CRC32 checksum = new CRC32();
+                    checksum.update(payload.toByteArray());
+                    segment.writeInt(payload.size());
+                    segment.writeInt((int)checksum.getValue());
+                    segment.write(payload.toByteArray());
+                }
+            }
+
+            try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+                outbox.append(new OutboxRecord(0, "correlation-3", "operation", "Operation 3", "application/json", "lz4", Collections.emptyMap(), body(3)));
+                for(int record = 1; record <= 2; record++){
+                    OutboxRecord recovered = outbox.poll(0, TimeUnit.MILLISECONDS);
+                    Assert.assertEquals(recovered.getCorrelationId(), "correlation-" + record);
+                    Assert.assertEquals(recovered.getContentType(), "application/json");
+                    Assert.assertNull(recovered.getContentEncoding());
+                    Assert.assertEquals(recovered.getHeaders(), Collections.singletonMap("x-request-id", "request-" + record));
+                    Assert.assertEquals(recovered.getBody(), body(record));
+                }
+
+                //while records appended after the restart are versioned, and keep their content encoding
+                OutboxRecord appended = outbox.poll(0, TimeUnit.MILLISECONDS);
+                Assert.assertEquals(appended.getCorrelationId(), "correlation-3");
+                Assert.assertEquals(appended.getContentEncoding(), "lz4");
+                Assert.assertEquals(appended.getBody(), body(3));
+            }
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    public void testConfirmedSegmentDeletion() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 256, OutboxSyncPolicy.Interval)){
+            //each record fills a segment on it's own
+            for(int record = 1; record <= 4; record++){
+                outbox.append(outboxRecord(record));
+            }
+            Assert.assertEquals(segmentNumbers(outboxDirectory), Arrays.asList(1, 2, 3, 4));
+
+            List<OutboxRecord> records = new ArrayList<>();
+            for(int record = 1; record <= 4; record++){
+                records.add(outbox.poll(0, TimeUnit.MILLISECONDS));
+            }
+            Assert.assertNull(outbox.poll(0, TimeUnit.MILLISECONDS));
+
+            //a segment is deleted once all of it's records are both read and confirmed, in whichever order the confirms arrive
+            outbox.confirm(records.get(2).getAddress());
+            outbox.confirm(records.get(0).getAddress());
+            Assert.assertEquals(segmentNumbers(outboxDirectory), Arrays.asList(2, 4));
+            outbox.confirm(records.get(1).getAddress());
+            Assert.assertEquals(segmentNumbers(outboxDirectory), Collections.singletonList(4));
+
+            //the active segment is kept even once all of it's records are confirmed, since records are still appended to it
+            outbox.confirm(records.get(3).getAddress());
+            Assert.assertEquals(segmentNumbers(outboxDirectory), Collections.singletonList(4));
+            Assert.assertEquals(outbox.getUnconfirmedRecords(), 0);
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    public void testHeaderTypes() throws Exception{
+        Path outboxDirectory = Files.createTempDirectory("outbox");
+        try {
+            Map<String, Object> headers = new LinkedHashMap<>();
+            headers.put("x-request-id", "request-1");
+            headers.put("x-sequence-number", 7L);
+            headers.put("x-shard-index", 2);
+            headers.put("x-shard-count", 3);
+            headers.put("x-final", true);
+            try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+                outbox.append(new OutboxRecord(0, "correlation-1", "operation", "Operation 1", "application/json", null, headers, body(1)));
+            }
+
+            //header values are read back (even after a restart) with the type they were appended with, rather than as strings
+            try(ResultOutbox recoveredOutbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+                Map<String, Object> recoveredHeaders = recoveredOutbox.poll(0, TimeUnit.MILLISECONDS).getHeaders();
+                Assert.assertEquals(recoveredHeaders, headers);
+                Assert.assertEquals(new ArrayList<>(recoveredHeaders.keySet()), new ArrayList<>(headers.keySet()));
+                Assert.assertEquals(recoveredHeaders.get("x-sequence-number").getClass(), Long.class);
+                Assert.assertEquals(recoveredHeaders.get("x-shard-index").getClass(), Integer.class);
+                Assert.assertEquals(recoveredHeaders.get("x-final").getClass(), Boolean.class);
+                Assert.assertEquals(recoveredHeaders.get("x-request-id").getClass(), String.class);
+            }
+        }finally {
+            deleteDirectory(outboxDirectory);
+        }
+    }
+
+    //Appends the records to a new outbox in the given directory, returning the segment they were appended to
+    private Path appendRecords(Path outboxDirectory, int recordCount) throws IOException{
+        try(ResultOutbox outbox = new ResultOutbox(outboxDirectory, 1024 * 1024, OutboxSyncPolicy.Never)){
+            for(int record = 1; record <= recordCount; record++){
+                outbox.append(outboxRecord(record));
+            }
+        }
+        return segmentFile(outboxDirectory, 1);
+    }
+
+    private OutboxRecord outboxRecord(int ordinal){
+        return new OutboxRecord(0, "correlation-" + ordinal, "operation", "Operation " + ordinal, "application/json", null, Collections.singletonMap("x-request-id", "request-" + ordinal), body(ordinal));
+    }
+
+    private byte[] body(int ordinal){
+        byte[] body = new byte[100];
+        Arrays.fill(body, (byte)ordinal);
+        return body;
+    }
+
+    private List<String> correlationIds(ResultOutbox outbox) throws Exception{
+        List<String> correlationIds = new ArrayList<>();
+        OutboxRecord record;
+        while((record = outbox.poll(0, TimeUnit.MILLISECONDS)) != null){
+            correlationIds.add(record.getCorrelationId());
+        }
+        return correlationIds;
+    }
+
+    private Path segmentFile(Path outboxDirectory, int segmentNumber){
+        return outboxDirectory.resolve(String.format("segment-%06d.outbox", segmentNumber));
+    }
+
+    private List<Integer> segmentNumbers(Path outboxDirectory) throws IOException{
+        try(Stream<Path> segmentFiles = Files.list(outboxDirectory)){
+            return segmentFiles
+                .map(segmentFile -> segmentFile.getFileName().toString().replaceAll("\\D", ""))
+                .map(Integer::parseInt)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private void deleteDirectory(Path directory) throws IOException{
+        try(Stream<Path> files = Files.walk(directory)){
+            for(Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())){
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
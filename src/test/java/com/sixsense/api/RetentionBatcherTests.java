@@ -0,0 +1,120 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.SixSenseBaseUtils;
+import com.sixsense.api.amqp.OperationProducer;
+import com.sixsense.api.amqp.RetentionBatcher;
+import com.sixsense.config.RetentionConfig;
+import com.sixsense.model.retention.DataType;
+import com.sixsense.model.retention.DatabaseVariable;
+import com.sixsense.model.retention.RetentionBatch;
+import com.sixsense.services.MetricsManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Test(groups = {"api"})
+public class RetentionBatcherTests extends SixSenseBaseTest {
+
+    public void testSizeTriggeredFlush(){
+        RecordingProducer producer = new RecordingProducer();
+        RetentionBatcher batcher = createBatcher(producer, new RetentionConfig.BatchProperties(true, 3, Duration.ofHours(1)));
+        for(int variable = 1; variable <= 7; variable++){
+            batcher.retain("operation-" + (variable % 2), retainedVariable(variable));
+        }
+
+        //full batches are published by the session adding their last variable, long before the latency window ends
+        Assert.assertEquals(batchSizes(producer), Arrays.asList(3, 3));
+        Assert.assertEquals(producer.batches.get(0).getVariables().get("operation-1").size(), 2);
+        Assert.assertNotEquals(producer.batches.get(0).getBatchId(), producer.batches.get(1).getBatchId());
+
+        //the remaining variable is published when the batcher closes, rather than lost
+        batcher.close();
+        Assert.assertEquals(batchSizes(producer), Arrays.asList(3, 3, 1));
+        Assert.assertTrue(producer.variables.isEmpty());
+    }
+
+    public void testTimeTriggeredFlush() throws InterruptedException{
+        RecordingProducer producer = new RecordingProducer();
+        RetentionBatcher batcher = createBatcher(producer, new RetentionConfig.BatchProperties(true, 100, Duration.ofMillis(50)));
+        try {
+            batcher.retain("operation", retainedVariable(1));
+            batcher.retain("operation", retainedVariable(2));
+            Assert.assertTrue(producer.batches.isEmpty(), "A batch below it's maximum size should wait for the latency window");
+
+            //once the oldest variable has waited for the maximum latency, the batch is flushed by the flushing thread
+            awaitBatches(producer, 1);
+            Assert.assertEquals(batchSizes(producer), Collections.singletonList(2));
+
+            //and the next variable opens a new latency window
+            batcher.retain("operation", retainedVariable(3));
+            awaitBatches(producer, 2);
+            Assert.assertEquals(batchSizes(producer), Arrays.asList(2, 1));
+        }finally {
+            batcher.close();
+        }
+        Assert.assertEquals(batchSizes(producer), Arrays.asList(2, 1));
+    }
+
+    public void testDisabledBatching(){
+        RecordingProducer producer = new RecordingProducer();
+        RetentionBatcher batcher = createBatcher(producer, new RetentionConfig.BatchProperties(false, 3, Duration.ofMillis(50)));
+        for(int variable = 1; variable <= 4; variable++){
+            batcher.retain("operation", retainedVariable(variable));
+        }
+        batcher.close();
+
+        //without batching, each variable is published on it's own as soon as it is retained
+        Assert.assertEquals(producer.variables.size(), 4);
+        Assert.assertTrue(producer.batches.isEmpty());
+    }
+
+    private RetentionBatcher createBatcher(OperationProducer producer, RetentionConfig.BatchProperties batchProperties){
+        MetricsManager metricsManager = SixSenseBaseUtils.getAppContext().getBean(MetricsManager.class);
+        return new RetentionBatcher(producer, metricsManager, new RetentionConfig(batchProperties));
+    }
+
+    private DatabaseVariable retainedVariable(int ordinal){
+        return new DatabaseVariable(DataType.String, "var.test.retention" + ordinal, String.valueOf(ordinal), Instant.now());
+    }
+
+    private List<Integer> batchSizes(RecordingProducer producer){
+        List<Integer> batchSizes = new ArrayList<>();
+        for(RetentionBatch batch : producer.batches){
+            batchSizes.add(batch.getSize());
+        }
+        return batchSizes;
+    }
+
+    private void awaitBatches(RecordingProducer producer, int batchCount) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(producer.batches.size() < batchCount && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(producer.batches.size(), batchCount, "The batch was not flushed within 5 seconds");
+    }
+
+    //Records what would have been published, instead of publishing it to the broker
+    private static class RecordingProducer extends OperationProducer {
+        private final List<RetentionBatch> batches = new CopyOnWriteArrayList<>();
+        private final List<DatabaseVariable> variables = new CopyOnWriteArrayList<>();
+
+        private RecordingProducer() {
+            super(null, null);
+        }
+
+        @Override
+        public void produceRetentionResult(String operationId, DatabaseVariable result) {
+            this.variables.add(result);
+        }
+
+        @Override
+        public void produceRetentionBatch(RetentionBatch batch) {
+            this.batches.add(batch);
+        }
+    }
+}
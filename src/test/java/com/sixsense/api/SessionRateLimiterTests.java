@@ -0,0 +1,117 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.config.RateLimitConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.services.SessionRateLimiter;
+import com.sixsense.utillity.FieldGlossary;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@Test(groups = {"api"})
+public class SessionRateLimiterTests extends SixSenseBaseTest {
+    private static final long Second = TimeUnit.SECONDS.toNanos(1);
+
+    public void testSubnetKeying(){
+        //a single session per /24 subnet may be created right away, and every further session waits 100ms
+        SessionRateLimiter rateLimiter = new SessionRateLimiter(subnetRate(24, Duration.ZERO));
+        long now = System.nanoTime();
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.0.1"), now), 0L);
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.0.2"), now), Second / 10);
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.1.1"), now), 0L);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 2);
+
+        //host names are never resolved, so they are not limited by subnet at all
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("router.example.com"), now), 0L);
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("router.example.com"), now), 0L);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 2);
+
+        //a shorter prefix groups both subnets together
+        SessionRateLimiter wideRateLimiter = new SessionRateLimiter(subnetRate(16, Duration.ZERO));
+        Assert.assertEquals(wideRateLimiter.reserve(deviceOperation("10.0.0.1"), now), 0L);
+        Assert.assertEquals(wideRateLimiter.reserve(deviceOperation("10.0.1.1"), now), Second / 10);
+        Assert.assertEquals(wideRateLimiter.getSubnetBucketCount(), 1);
+    }
+
+    public void testChannelTokens(){
+        SessionRateLimiter rateLimiter = new SessionRateLimiter(subnetRate(24, Duration.ZERO));
+        Operation multiChannel = deviceOperation("10.0.0.1")
+            .addChannelName("first")
+            .addChannelName("second")
+            .addChannelName("third");
+
+        //every channel opens it's own connection, so it takes a token of it's own
+        long now = System.nanoTime();
+        Assert.assertEquals(rateLimiter.reserve(multiChannel, now), 2 * Second / 10);
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.0.2"), now), 3 * Second / 10);
+    }
+
+    public void testFullBucketEviction(){
+        //a single session per subnet per second
+        SessionRateLimiter rateLimiter = new SessionRateLimiter(new RateLimitConfig(null, new RateLimitConfig.SubnetBucketProperties(1, 1, 24), null, Duration.ZERO));
+        long now = System.nanoTime();
+        rateLimiter.reserve(deviceOperation("10.0.0.1"), now);
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.0.2"), now), Second);
+        rateLimiter.reserve(deviceOperation("10.0.1.1"), now);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 2);
+
+        //once the next sweep is due, buckets which have refilled are evicted, while buckets still paying off their debt are kept
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.2.1"), now + 3 * Second / 2), 0L);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 2);
+
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.3.1"), now + 3 * Second), 0L);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 1);
+
+        //an evicted subnet starts over with a full bucket
+        Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0.0.3"), now + 3 * Second), 0L);
+        Assert.assertEquals(rateLimiter.getSubnetBucketCount(), 2);
+    }
+
+    public void testJitterOnlyWhenDelayed(){
+        SessionRateLimiter rateLimiter = new SessionRateLimiter(subnetRate(24, Duration.ofSeconds(1)));
+        long now = System.nanoTime();
+
+        //sessions within the rate are never delayed by the jitter
+        for(int subnet = 0; subnet < 20; subnet++){
+            Assert.assertEquals(rateLimiter.reserve(deviceOperation("10.0." + subnet + ".1"), now), 0L);
+        }
+
+        //while sessions which are already delayed are spread out by up to the jitter
+        long waitNanos = rateLimiter.reserve(deviceOperation("10.0.0.2"), now);
+        Assert.assertTrue(waitNanos >= Second / 10 && waitNanos <= Second / 10 + Second, "Unexpected delay " + waitNanos);
+    }
+
+    public void testRelease(){
+        RateLimitConfig rateLimitConfig = new RateLimitConfig(
+            new RateLimitConfig.BucketProperties(1, 10),
+            new RateLimitConfig.SubnetBucketProperties(1, 10, 24),
+            Collections.singletonList(new RateLimitConfig.VpvBucketProperties(1, 10, "F5", "", "")),
+            Duration.ZERO
+        );
+        SessionRateLimiter rateLimiter = new SessionRateLimiter(rateLimitConfig);
+        long now = System.nanoTime();
+        Operation rejected = deviceOperation("10.0.0.1");
+        rejected.addDynamicField(FieldGlossary.device_vendor, "F5");
+        Assert.assertEquals(rateLimiter.reserve(rejected, now), 0L);
+        Assert.assertEquals(rateLimiter.reserve(rejected, now), Second / 10);
+
+        //once a reservation is released, the global, subnet and vpv buckets all give it's token back
+        rateLimiter.release(rejected);
+        rateLimiter.release(rejected);
+        Assert.assertEquals(rateLimiter.reserve(rejected, now), 0L);
+    }
+
+    private RateLimitConfig subnetRate(int prefixLength, Duration rampUpJitter){
+        return new RateLimitConfig(null, new RateLimitConfig.SubnetBucketProperties(1, 10, prefixLength), null, rampUpJitter);
+    }
+
+    private Operation deviceOperation(String deviceHost){
+        Operation operation = new Operation();
+        operation.addDynamicField(FieldGlossary.device_host, deviceHost);
+        return operation;
+    }
+}
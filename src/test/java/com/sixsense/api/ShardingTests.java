@@ -0,0 +1,320 @@
+package com.sixsense.api;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.api.amqp.ShardRouter;
+import com.sixsense.api.amqp.config.AMQPConfig;
+import com.sixsense.config.ShardingConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import com.sixsense.model.wrappers.RawExecutionConfig;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+@Test(groups = {"api"})
+public class ShardingTests extends SixSenseBaseTest {
+    private static final Logger logger = LogManager.getLogger(ShardingTests.class);
+
+    public void testRequestSplit(){
+        Device firstDevice = new Device().withCredentials(new Credentials().withHost("10.0.0.1"));
+        Device sameHostDevice = new Device().withCredentials(new Credentials().withHost("10.0.0.1"));
+        Device secondDevice = new Device().withCredentials(new Credentials().withHost("10.0.0.2"));
+        Device hostlessDevice = new Device();
+        Operation operation = new Operation();
+
+        RawExecutionConfig rawExecutionConfig = new RawExecutionConfig(new ArrayList<>(Arrays.asList(firstDevice, sameHostDevice, secondDevice, hostlessDevice)), operation);
+        Map<String, RawExecutionConfig> deviceRequests = ShardRouter.split(rawExecutionConfig);
+
+        //devices sharing a host share a request, and devices without a host are routed by their uuid
+        Assert.assertEquals(new ArrayList<>(deviceRequests.keySet()), Arrays.asList("10.0.0.1", "10.0.0.2", hostlessDevice.getUUID()));
+        Assert.assertEquals(deviceRequests.get("10.0.0.1").getDevices(), Arrays.asList(firstDevice, sameHostDevice));
+        Assert.assertEquals(deviceRequests.get("10.0.0.2").getDevices(), Collections.singletonList(secondDevice));
+        for(RawExecutionConfig deviceRequest : deviceRequests.values()){
+            Assert.assertSame(deviceRequest.getOperation(), operation);
+        }
+    }
+
+    public void testDeviceAffinity(){
+        ConsistentHashExchange shardExchange = new ConsistentHashExchange();
+        shardExchange.bind("engine.operations.shard.node-1", 10);
+        shardExchange.bind("engine.operations.shard.node-2", 10);
+        shardExchange.bind("engine.operations.shard.node-3", 10);
+
+        Map<String, String> firstRouting = routeHosts(shardExchange);
+        Assert.assertEquals(routeHosts(shardExchange), firstRouting);
+        Assert.assertEquals(new HashSet<>(firstRouting.values()).size(), 3, "Every node should receive a share of the devices");
+    }
+
+    public void testMembershipRebalance(){
+        ConsistentHashExchange shardExchange = new ConsistentHashExchange();
+        shardExchange.bind("engine.operations.shard.node-1", 10);
+        shardExchange.bind("engine.operations.shard.node-2", 10);
+        shardExchange.bind("engine.operations.shard.node-3", 10);
+        Map<String, String> beforeLeave = routeHosts(shardExchange);
+
+        //only the devices of a leaving node move, and only to the remaining nodes
+        shardExchange.unbind("engine.operations.shard.node-3");
+        Map<String, String> afterLeave = routeHosts(shardExchange);
+        for(String host : beforeLeave.keySet()){
+            if(beforeLeave.get(host).endsWith("node-3")){
+                Assert.assertFalse(afterLeave.get(host).endsWith("node-3"));
+            }else{
+                Assert.assertEquals(afterLeave.get(host), beforeLeave.get(host));
+            }
+        }
+
+        //only devices moving to a joining node change their node
+        shardExchange.bind("engine.operations.shard.node-4", 10);
+        Map<String, String> afterJoin = routeHosts(shardExchange);
+        int movedDevices = 0;
+        for(String host : afterLeave.keySet()){
+            if(!afterJoin.get(host).equals(afterLeave.get(host))){
+                Assert.assertTrue(afterJoin.get(host).endsWith("node-4"));
+                movedDevices++;
+            }
+        }
+        Assert.assertTrue(movedDevices > 0 && movedDevices < afterLeave.size(), "A joining node should take over some, but not all, of the devices");
+    }
+
+    public void testDistribution() throws Exception{
+        RecordingTemplate rabbitTemplate = new RecordingTemplate(sent -> true);
+        ShardRouter shardRouter = new ShardRouter(rabbitTemplate, new RecordingAdmin().proxy(), shardingConfig());
+        RawExecutionConfig rawExecutionConfig = new RawExecutionConfig(new ArrayList<>(Arrays.asList(
+            new Device().withCredentials(new Credentials().withHost("10.0.0.1")),
+            new Device().withCredentials(new Credentials().withHost("10.0.0.2")),
+            new Device().withCredentials(new Credentials().withHost("10.0.0.3"))
+        )), new Operation());
+        Message request = MessageBuilder.withBody(PolymorphicJsonMapper.serialize(rawExecutionConfig, WireFormat.Json))
+            .setHeader(AMQPConfig.RequestIdHeader, "request-1")
+            .setHeader(AMQPConfig.ResultModeHeader, "streaming")
+            .build();
+
+        Assert.assertTrue(shardRouter.distribute(request, rawExecutionConfig, WireFormat.Json));
+        Assert.assertEquals(rabbitTemplate.sent.size(), 3);
+
+        //each per-device request has an id of it's own, and carries the id of the original request along with it's shard index and count
+        for(int shardIndex = 1; shardIndex <= 3; shardIndex++){
+            SentMessage sent = rabbitTemplate.sent.get(shardIndex - 1);
+            Assert.assertEquals(sent.exchange, ShardRouter.ShardExchangeName);
+            Assert.assertEquals(sent.routingKey, "10.0.0." + shardIndex);
+
+            Map<String, Object> shardHeaders = ShardRouter.shardHeaders(sent.message.getMessageProperties());
+            Assert.assertEquals(shardHeaders.get(AMQPConfig.RequestIdHeader), "request-1-shard-" + shardIndex);
+            Assert.assertEquals(shardHeaders.get(AMQPConfig.ParentRequestIdHeader), "request-1");
+            Assert.assertEquals(shardHeaders.get(AMQPConfig.ShardIndexHeader), shardIndex);
+            Assert.assertEquals(shardHeaders.get(AMQPConfig.ShardCountHeader), 3);
+            Assert.assertEquals(sent.message.getMessageProperties().getHeaders().get(AMQPConfig.ResultModeHeader), "streaming");
+
+            RawExecutionConfig deviceRequest = PolymorphicJsonMapper.deserialize(sent.message.getBody(), RawExecutionConfig.class, WireFormat.Json);
+            Assert.assertEquals(deviceRequest.getDevices().size(), 1);
+            Assert.assertEquals(deviceRequest.getDevices().get(0).getCredentials().getHost(), "10.0.0." + shardIndex);
+        }
+
+        //a per-device request handed off by a leaving node is distributed again as it is, rather than split again under a new id
+        Message handedOff = rabbitTemplate.sent.get(1).message;
+        RawExecutionConfig handedOffRequest = PolymorphicJsonMapper.deserialize(handedOff.getBody(), RawExecutionConfig.class, WireFormat.Json);
+        Assert.assertTrue(shardRouter.distribute(handedOff, handedOffRequest, WireFormat.Json));
+        Assert.assertEquals(ShardRouter.shardHeaders(rabbitTemplate.sent.get(3).message.getMessageProperties()), ShardRouter.shardHeaders(handedOff.getMessageProperties()));
+
+        //requests which were not sharded have no reply headers
+        Assert.assertTrue(ShardRouter.shardHeaders(request.getMessageProperties()).isEmpty());
+    }
+
+    public void testUnroutedDistributionBackoff() throws Exception{
+        //the broker returns every request, as if no node was bound to the shard exchange
+        RecordingTemplate rabbitTemplate = new RecordingTemplate(sent -> false);
+        ShardRouter shardRouter = new ShardRouter(rabbitTemplate, new RecordingAdmin().proxy(), shardingConfig());
+        RawExecutionConfig rawExecutionConfig = new RawExecutionConfig(new ArrayList<>(Collections.singletonList(new Device().withCredentials(new Credentials().withHost("10.0.0.1")))), new Operation());
+        Message request = MessageBuilder.withBody(PolymorphicJsonMapper.serialize(rawExecutionConfig, WireFormat.Json)).build();
+
+        //the request is requeued after a backoff which doubles on every consecutive failure, rather than in a tight loop
+        List<Long> failureMillis = new ArrayList<>();
+        for(int attempt = 0; attempt < 3; attempt++){
+            long start = System.nanoTime();
+            Assert.assertFalse(shardRouter.distribute(request, rawExecutionConfig, WireFormat.Json));
+            failureMillis.add((System.nanoTime() - start) / 1_000_000);
+        }
+        Assert.assertTrue(failureMillis.get(0) >= 50, "First backoff took " + failureMillis.get(0) + "ms");
+        Assert.assertTrue(failureMillis.get(1) >= 100, "Second backoff took " + failureMillis.get(1) + "ms");
+        Assert.assertTrue(failureMillis.get(2) >= 150 && failureMillis.get(2) < 1000, "Third backoff took " + failureMillis.get(2) + "ms, and should be capped at 150ms");
+
+        //once the node is closed, a waiting listener is released right away
+        shardRouter.close();
+        long start = System.nanoTime();
+        Assert.assertFalse(shardRouter.distribute(request, rawExecutionConfig, WireFormat.Json));
+        Assert.assertTrue((System.nanoTime() - start) / 1_000_000 < 100);
+    }
+
+    public void testPendingRequestHandoff(){
+        //the broker cannot route the second hand off, so it is not confirmed
+        RecordingTemplate rabbitTemplate = new RecordingTemplate(sent -> !new String(sent.message.getBody(), StandardCharsets.UTF_8).equals("request-2"));
+        RecordingAdmin amqpAdmin = new RecordingAdmin();
+        ShardRouter shardRouter = new ShardRouter(rabbitTemplate, amqpAdmin.proxy(), shardingConfig());
+        for(int request = 1; request <= 3; request++){
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Collections.singletonMap(AMQPConfig.RequestIdHeader, "request-" + request))
+                .build();
+            rabbitTemplate.pendingRequests.add(new GetResponse(new Envelope(request, false, ShardRouter.ShardExchangeName, "10.0.0." + request), properties, ("request-" + request).getBytes(StandardCharsets.UTF_8), 3 - request));
+        }
+
+        shardRouter.close();
+        Assert.assertEquals(amqpAdmin.removedBindings.size(), 1);
+        Assert.assertEquals(amqpAdmin.removedBindings.get(0).getDestination(), shardRouter.getNodeQueueName());
+
+        //each request is removed from the node queue only once it's copy in the execute queue is confirmed. The first unconfirmed one (and every request after it) stays
+        Assert.assertEquals(rabbitTemplate.sent.size(), 1);
+        Assert.assertEquals(rabbitTemplate.sent.get(0).exchange, AMQPConfig.OperationExchangeName);
+        Assert.assertEquals(rabbitTemplate.sent.get(0).routingKey, AMQPConfig.ExecuteBindingKey);
+        Assert.assertEquals(rabbitTemplate.sent.get(0).message.getMessageProperties().getHeaders().get(AMQPConfig.RequestIdHeader), "request-1");
+        Assert.assertEquals(rabbitTemplate.acknowledged, Collections.singletonList(1L));
+        Assert.assertEquals(rabbitTemplate.requeued, Collections.singletonList(2L));
+        Assert.assertEquals(rabbitTemplate.pendingRequests.size(), 1);
+    }
+
+    private ShardingConfig shardingConfig(){
+        return new ShardingConfig(true, "node-1", 10, Duration.ofSeconds(1), Duration.ZERO, Duration.ofMillis(50), Duration.ofMillis(150));
+    }
+
+    private Map<String, String> routeHosts(ConsistentHashExchange shardExchange){
+        Map<String, String> routing = new HashMap<>();
+        for(int device = 0; device < 1000; device++){
+            String host = "10.0." + (device / 250) + "." + (device % 250);
+            routing.put(host, shardExchange.route(host));
+        }
+        return routing;
+    }
+
+    /*Stand-in for the broker's consistent-hash exchange (rabbitmq_consistent_hash_exchange)
+     * Every bound queue is placed on the hash ring as many times as it's weight, and each routing key is routed to the first queue at or after it's hash on the ring*/
+    private static class ConsistentHashExchange {
+        private final TreeMap<Long, String> hashRing = new TreeMap<>();
+
+        private void bind(String queueName, int weight){
+            for(int point = 0; point < weight; point++){
+                this.hashRing.put(hash(queueName + "#" + point), queueName);
+            }
+        }
+
+        private void unbind(String queueName){
+            this.hashRing.values().removeIf(queueName::equals);
+        }
+
+        private String route(String routingKey){
+            Map.Entry<Long, String> bucket = this.hashRing.ceilingEntry(hash(routingKey));
+            return bucket == null ? this.hashRing.firstEntry().getValue() : bucket.getValue();
+        }
+
+        private static long hash(String value){
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+                return ByteBuffer.wrap(digest).getLong();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available. Caused by: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class SentMessage {
+        private final String exchange;
+        private final String routingKey;
+        private final Message message;
+
+        private SentMessage(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+    }
+
+    /*Records what would have been sent to the broker, and confirms it right away - as routed if isRouted accepts it, and as returned otherwise
+     * Channel operations are made on a stand-in channel, which serves the pending requests of the node queue and records their acknowledgements*/
+    private static class RecordingTemplate extends RabbitTemplate {
+        private final Predicate<SentMessage> isRouted;
+        private final List<SentMessage> sent = new ArrayList<>();
+        private final Queue<GetResponse> pendingRequests = new ConcurrentLinkedQueue<>();
+        private final List<Long> acknowledged = new ArrayList<>();
+        private final List<Long> requeued = new ArrayList<>();
+
+        private RecordingTemplate(Predicate<SentMessage> isRouted) {
+            this.isRouted = isRouted;
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            SentMessage sentMessage = new SentMessage(exchange, routingKey, message);
+            if(this.isRouted.test(sentMessage)){
+                this.sent.add(sentMessage);
+                correlationData.getFuture().set(new CorrelationData.Confirm(true, null));
+            }else{
+                correlationData.setReturnedMessage(message);
+                correlationData.getFuture().set(new CorrelationData.Confirm(true, null));
+            }
+        }
+
+        @Override
+        public <T> T execute(ChannelCallback<T> action) {
+            Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "basicGet":
+                        Assert.assertEquals(args[1], false, "Pending requests must be received with manual acknowledgement");
+                        return this.pendingRequests.poll();
+                    case "basicAck":
+                        this.acknowledged.add((Long) args[0]);
+                        return null;
+                    case "basicNack":
+                        Assert.assertEquals(args[2], true, "Unconfirmed requests must be returned to the node queue");
+                        this.requeued.add((Long) args[0]);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+            try {
+                return action.doInRabbit(channel);
+            } catch (Exception e) {
+                throw new AmqpException(e);
+            }
+        }
+    }
+
+    private static class RecordingAdmin {
+        private final List<Binding> removedBindings = new ArrayList<>();
+
+        private AmqpAdmin proxy(){
+            return (AmqpAdmin) Proxy.newProxyInstance(AmqpAdmin.class.getClassLoader(), new Class<?>[]{AmqpAdmin.class}, (proxy, method, args) -> {
+                if(method.getName().equals("removeBinding")){
+                    this.removedBindings.add((Binding) args[0]);
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.sixsense.api;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.SixSenseBaseUtils;
+import com.sixsense.config.AdmissionConfig;
+import com.sixsense.config.RateLimitConfig;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.commands.ParallelWorkflow;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.logic.WorkflowPolicy;
+import com.sixsense.model.retention.OperationResult;
+import com.sixsense.services.*;
+import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.Literals;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+@Test(groups = {"api"})
+public class WorkflowManagerTests extends SixSenseBaseTest {
+
+    public void testDependentWindowTermination() throws Exception{
+        RecordingExecutor executor = new RecordingExecutor();
+        AdmissionConfig admissionConfig = new AdmissionConfig(10, 0, 100, 10);
+        ThreadingManager threadingManager = SixSenseBaseUtils.getAppContext().getBean(ThreadingManager.class);
+        AdmissionManager admissionManager = new AdmissionManager(
+            executor,
+            new SessionRateLimiter(new RateLimitConfig(null, null, null, null)),
+            threadingManager,
+            SixSenseBaseUtils.getAppContext().getBean(MetricsManager.class),
+            admissionConfig
+        );
+        WorkflowManager workflowManager = new WorkflowManager(admissionManager, SixSenseBaseUtils.getAppContext().getBean(DiagnosticManager.class), threadingManager, admissionConfig);
+
+        try {
+            //a dependent workflow running one operation at a time, whose failure sequence runs once all of it's operations have completed
+            Operation failing = operation("failing");
+            ParallelWorkflow workflow = new ParallelWorkflow()
+                .addParallelOperations(Arrays.asList(failing, operation("pending 1"), operation("pending 2")))
+                .addWorkflowPolicies(EnumSet.of(WorkflowPolicy.OPERATIONS_DEPENDENT, WorkflowPolicy.OPERATIONS_BOUNDED))
+                .withMaximumConcurrency(1);
+            workflow.addSequenceUponFailure(new ParallelWorkflow().addParallelOperation(operation("failure sequence")));
+
+            CompletableFuture<Map<String, OperationResult>> workflowResult = workflowManager.executeWorkflow(workflow);
+            Assert.assertEquals(executor.registeredNames(), Collections.singletonList("failing"));
+
+            //once the running operation fails, the operations still pending in the window end as terminated, without ever being submitted
+            executor.finish(failing, new OperationResult().withExpressionResult(ExpressionResult.executionError("Device unreachable")));
+            Map<String, OperationResult> results = workflowResult.get(5, TimeUnit.SECONDS);
+            for(Operation operation : workflow.getParallelOperations()){
+                if(operation != failing){
+                    Assert.assertEquals(results.get(operation.getUUID()).getExpressionResult().getMessage(), Literals.OperationTerminated);
+                }
+            }
+
+            //every operation (including the terminated ones) notified the workflow, so it's failure sequence runs
+            await(() -> executor.registered.size() == 2, "The failure sequence of the workflow did not run");
+            Assert.assertEquals(executor.registeredNames(), Arrays.asList("failing", "failure sequence"));
+            Assert.assertEquals(workflow.getCompletedOperations(), 3);
+        }finally {
+            executor.finishAll();
+            admissionManager.close();
+        }
+    }
+
+    private Operation operation(String operationName){
+        return new Operation().withOperationName(operationName);
+    }
+
+    private void await(BooleanSupplier condition, String failureMessage) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(condition.getAsBoolean(), failureMessage);
+    }
+
+    //Records which operations were admitted, and keeps each of them running until the test finishes it (or finishes all of them, including operations admitted later on)
+    private static class RecordingExecutor implements IOperationExecutor {
+        private final List<Operation> registered = new CopyOnWriteArrayList<>();
+        private final Map<String, CompletableFuture<OperationResult>> executions = new ConcurrentHashMap<>();
+        private volatile boolean isFinished = false;
+
+        @Override
+        public void registerOperation(Operation operation) {
+            this.registered.add(operation);
+        }
+
+        @Override
+        public void unregisterOperation(String operationId) {
+            this.registered.removeIf(operation -> operation.getUUID().equals(operationId));
+        }
+
+        @Override
+        public OperationResult executeRegisteredOperation(Operation operation) {
+            CompletableFuture<OperationResult> execution = execution(operation.getUUID());
+            if(this.isFinished){
+                execution.complete(new OperationResult().withExpressionResult(ExpressionResult.defaultOutcome()));
+            }
+            return execution.join();
+        }
+
+        @Override
+        public OperationResult terminateOperation(String operationId) {
+            return new OperationResult().withExpressionResult(ExpressionResult.executionError(Literals.OperationTerminated));
+        }
+
+        private CompletableFuture<OperationResult> execution(String operationId){
+            return this.executions.computeIfAbsent(operationId, key -> new CompletableFuture<>());
+        }
+
+        private void finish(Operation operation, OperationResult result){
+            execution(operation.getUUID()).complete(result);
+        }
+
+        private void finishAll(){
+            this.isFinished = true;
+            for(CompletableFuture<OperationResult> execution : this.executions.values()){
+                execution.complete(new OperationResult().withExpressionResult(ExpressionResult.defaultOutcome()));
+            }
+        }
+
+        private List<String> registeredNames(){
+            List<String> registeredNames = new ArrayList<>();
+            for(Operation operation : this.registered){
+                registeredNames.add(operation.getOperationName());
+            }
+            return registeredNames;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.sixsense.model;
 
 import com.sixsense.SixSenseBaseTest;
 import com.sixsense.model.commands.*;
+import com.sixsense.model.logic.WorkflowPolicy;
 import com.sixsense.utillity.CommandUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -119,4 +120,38 @@ public class BlockTests extends SixSenseBaseTest {
 
         Assert.assertTrue(p1Throwed && p2Throwed);
     }
+
+    public void testOperationInstantiation(){
+        Block executionBlock = new Block();
+        executionBlock.addChildBlock(new Command()).addChildBlock(new Block());
+
+        Operation template = new Operation().withExecutionBlock(executionBlock);
+        Operation first = template.instantiate();
+        Operation second = template.instantiate();
+
+        //instantiated operations share the execution block of their template, rather than cloning it
+        Assert.assertSame(first.getExecutionBlock(), executionBlock);
+        Assert.assertSame(second.getExecutionBlock(), executionBlock);
+
+        //but are otherwise separate operations, each with it's own dynamic fields
+        Assert.assertNotEquals(first.getUUID(), second.getUUID());
+        first.addDynamicField("device", "first");
+        Assert.assertFalse(second.getDynamicFields().containsKey("device"));
+        Assert.assertFalse(template.getDynamicFields().containsKey("device"));
+    }
+
+    public void testBoundedWorkflowCloning(){
+        Operation template = new Operation().withExecutionBlock(new Block().addChildBlock(new Command())).withPriority(5);
+        ParallelWorkflow workflow = new ParallelWorkflow()
+            .addParallelOperation(template.instantiate())
+            .addWorkflowPolicy(WorkflowPolicy.OPERATIONS_BOUNDED)
+            .withMaximumConcurrency(10);
+
+        //the concurrency window and the operation priorities survive cloning the workflow
+        ParallelWorkflow clonedWorkflow = workflow.deepClone();
+        Assert.assertEquals(clonedWorkflow.getMaximumConcurrency(), 10);
+        Assert.assertTrue(clonedWorkflow.getWorkflowPolicies().contains(WorkflowPolicy.OPERATIONS_BOUNDED));
+        Assert.assertEquals(clonedWorkflow.getParallelOperations().get(0).getPriority(), 5);
+        Assert.assertEquals(template.deepClone().getPriority(), 5);
+    }
 }
@@ -0,0 +1,64 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import com.sixsense.utillity.BulkSubmissionReader;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.FieldGlossary;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+@Test(groups = {"model"})
+public class BulkSubmissionReaderTests extends SixSenseBaseTest {
+
+    public void testBulkSubmission() throws Exception{
+        Operation template = new Operation().withExecutionBlock(new Block().addChildBlock(new Command()));
+        StringBuilder submission = new StringBuilder(PolymorphicJsonMapper.serialize(template)).append("\n");
+        for(int device = 1; device <= 3; device++){
+            submission.append(PolymorphicJsonMapper.serialize(new Device().withCredentials(new Credentials().withHost("10.0.0." + device)))).append("\n");
+        }
+
+        //devices are read one at a time after the operation, and each of them instantiates the same operation definition
+        try(BulkSubmissionReader reader = submissionReader(submission.toString())){
+            int devicesRead = 0;
+            while(reader.hasNext()){
+                Operation deviceOperation = CommandUtils.composeOperation(reader.getOperation(), reader.next());
+                Assert.assertSame(deviceOperation.getExecutionBlock(), reader.getOperation().getExecutionBlock());
+                Assert.assertEquals(deviceOperation.getDynamicFields().get(FieldGlossary.device_host), "10.0.0." + (++devicesRead));
+            }
+            Assert.assertEquals(devicesRead, 3);
+        }
+    }
+
+    public void testMalformedSubmission() throws Exception{
+        Operation template = new Operation().withExecutionBlock(new Block().addChildBlock(new Command()));
+        String firstDevice = PolymorphicJsonMapper.serialize(new Device().withCredentials(new Credentials().withHost("10.0.0.1")));
+
+        //a submission without an operation is rejected up front
+        Assert.assertThrows(IOException.class, () -> submissionReader(""));
+
+        //while a malformed device is only found once it is reached, after the devices before it were already read
+        try(BulkSubmissionReader reader = submissionReader(PolymorphicJsonMapper.serialize(template) + "\n" + firstDevice + "\n{\"credentials\": [\n")){
+            Assert.assertEquals(reader.next().getCredentials().getHost(), "10.0.0.1");
+            Assert.assertThrows(RuntimeException.class, () -> {
+                while(reader.hasNext()){
+                    reader.next();
+                }
+            });
+        }
+    }
+
+    private BulkSubmissionReader submissionReader(String submission) throws IOException{
+        return new BulkSubmissionReader(new ByteArrayInputStream(submission.getBytes(StandardCharsets.UTF_8)), WireFormat.Json);
+    }
+}
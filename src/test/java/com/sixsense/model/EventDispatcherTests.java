@@ -0,0 +1,191 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.config.ThreadingConfig;
+import com.sixsense.threading.EventDispatcher;
+import com.sixsense.threading.MpscRingBuffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+@Test(groups = {"model"})
+public class EventDispatcherTests extends SixSenseBaseTest {
+    private static final int Producers = 4;
+    private static final int ItemsPerProducer = 20000;
+
+    public void testRingBufferCapacity(){
+        //capacity is rounded up to a power of two, and a full buffer rejects items rather than overwriting them
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(3);
+        Assert.assertEquals(ringBuffer.capacity(), 4);
+        for(int item = 0; item < 4; item++){
+            Assert.assertTrue(ringBuffer.offer(item));
+        }
+        Assert.assertFalse(ringBuffer.offer(4));
+        Assert.assertEquals(ringBuffer.size(), 4);
+
+        Assert.assertEquals(ringBuffer.poll(), Integer.valueOf(0));
+        Assert.assertTrue(ringBuffer.offer(4));
+        for(int item = 1; item <= 4; item++){
+            Assert.assertEquals(ringBuffer.poll(), Integer.valueOf(item));
+        }
+        Assert.assertNull(ringBuffer.poll());
+        Assert.assertTrue(ringBuffer.isEmpty());
+    }
+
+    public void testRingBufferProducers() throws Exception{
+        //a small buffer, so producers keep running into a full buffer while the consumer is polling
+        MpscRingBuffer<ProducedItem> ringBuffer = new MpscRingBuffer<>(64);
+        Map<Integer, List<Integer>> consumed = new HashMap<>();
+        ExecutorService producers = Executors.newFixedThreadPool(Producers);
+        try {
+            List<Future<?>> produced = new ArrayList<>();
+            for(int producer = 0; producer < Producers; producer++){
+                int producerId = producer;
+                produced.add(producers.submit(() -> {
+                    for(int sequence = 0; sequence < ItemsPerProducer; sequence++){
+                        ProducedItem item = new ProducedItem(producerId, sequence);
+                        while(!ringBuffer.offer(item)){
+                            Thread.yield();
+                        }
+                    }
+                }));
+            }
+
+            //this thread is the single consumer
+            long deadline = System.currentTimeMillis() + 30000;
+            for(int remaining = Producers * ItemsPerProducer; remaining > 0 && System.currentTimeMillis() < deadline;){
+                ProducedItem item = ringBuffer.poll();
+                if(item != null){
+                    consumed.computeIfAbsent(item.producerId, key -> new ArrayList<>()).add(item.sequence);
+                    remaining--;
+                }
+            }
+            for(Future<?> producer : produced){
+                producer.get(5, TimeUnit.SECONDS);
+            }
+        }finally {
+            producers.shutdownNow();
+        }
+
+        assertProducedInOrder(consumed);
+        Assert.assertNull(ringBuffer.poll());
+    }
+
+    public void testStripeOrder() throws Exception{
+        Map<Integer, List<Integer>> consumed = new ConcurrentHashMap<>();
+        EventDispatcher<ProducedItem> dispatcher = new EventDispatcher<>(
+            new ThreadingConfig.EventThreadingProperties(2, 64, "engine-test-dispatcher-"),
+            recordingConsumer(consumed)
+        );
+        try {
+            dispatchConcurrently(dispatcher);
+            awaitBacklog(dispatcher);
+        }finally {
+            dispatcher.close();
+        }
+
+        assertProducedInOrder(consumed);
+    }
+
+    public void testOverflowSpill() throws Exception{
+        //the dispatcher threads are held back until every item was dispatched, so each stripe spills over into it's overflow queue
+        CountDownLatch consumersReleased = new CountDownLatch(1);
+        Map<Integer, List<Integer>> consumed = new ConcurrentHashMap<>();
+        Consumer<ProducedItem> recordingConsumer = recordingConsumer(consumed);
+        EventDispatcher<ProducedItem> dispatcher = new EventDispatcher<>(
+            new ThreadingConfig.EventThreadingProperties(2, 16, "engine-test-dispatcher-"),
+            item -> {
+                try {
+                    consumersReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                recordingConsumer.accept(item);
+            }
+        );
+        try {
+            dispatchConcurrently(dispatcher);
+            Assert.assertTrue(dispatcher.getOverflowedItems() > 0, "No item spilled over into the overflow queue");
+            Assert.assertTrue(dispatcher.getBacklog() > 0);
+
+            //items dispatched while a stripe is draining it's overflow queue keep their place behind the overflowed items
+            consumersReleased.countDown();
+            for(int producer = 0; producer < Producers; producer++){
+                dispatcher.dispatch(producer, new ProducedItem(producer, ItemsPerProducer));
+            }
+            awaitBacklog(dispatcher);
+        }finally {
+            consumersReleased.countDown();
+            dispatcher.close();
+        }
+
+        for(List<Integer> sequences : consumed.values()){
+            Assert.assertEquals(sequences.remove(sequences.size() - 1), Integer.valueOf(ItemsPerProducer), "An item dispatched after the overflow was consumed out of order");
+        }
+        assertProducedInOrder(consumed);
+    }
+
+    //Each producer dispatches it's items under it's own stripe key, so the items of a producer must be consumed in the order it dispatched them
+    private void dispatchConcurrently(EventDispatcher<ProducedItem> dispatcher) throws Exception{
+        ExecutorService producers = Executors.newFixedThreadPool(Producers);
+        try {
+            CountDownLatch startLine = new CountDownLatch(1);
+            List<Future<?>> produced = new ArrayList<>();
+            for(int producer = 0; producer < Producers; producer++){
+                int producerId = producer;
+                produced.add(producers.submit(() -> {
+                    startLine.await();
+                    for(int sequence = 0; sequence < ItemsPerProducer; sequence++){
+                        Assert.assertTrue(dispatcher.dispatch(producerId, new ProducedItem(producerId, sequence)));
+                    }
+                    return null;
+                }));
+            }
+
+            startLine.countDown();
+            for(Future<?> producer : produced){
+                producer.get(30, TimeUnit.SECONDS);
+            }
+        }finally {
+            producers.shutdownNow();
+        }
+    }
+
+    //close() waits only a limited time for the dispatcher threads, so the stripes are drained beforehand
+    private void awaitBacklog(EventDispatcher<ProducedItem> dispatcher) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 30000;
+        while(dispatcher.getBacklog() > 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(dispatcher.getBacklog(), 0, "The dispatcher threads did not drain their stripes");
+    }
+
+    private Consumer<ProducedItem> recordingConsumer(Map<Integer, List<Integer>> consumed){
+        return item -> consumed.computeIfAbsent(item.producerId, key -> Collections.synchronizedList(new ArrayList<>())).add(item.sequence);
+    }
+
+    //Every item is consumed exactly once (none lost, none duplicated), and in the order it's producer produced it
+    private void assertProducedInOrder(Map<Integer, List<Integer>> consumed){
+        Assert.assertEquals(consumed.size(), Producers);
+        for(Map.Entry<Integer, List<Integer>> producerItems : consumed.entrySet()){
+            List<Integer> sequences = producerItems.getValue();
+            Assert.assertEquals(sequences.size(), ItemsPerProducer, "Items of producer " + producerItems.getKey() + " were lost or duplicated");
+            for(int sequence = 0; sequence < ItemsPerProducer; sequence++){
+                Assert.assertEquals(sequences.get(sequence), Integer.valueOf(sequence), "Items of producer " + producerItems.getKey() + " were consumed out of order");
+            }
+        }
+    }
+
+    private static class ProducedItem{
+        private final int producerId;
+        private final int sequence;
+
+        private ProducedItem(int producerId, int sequence) {
+            this.producerId = producerId;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.ExecutionState;
+import com.sixsense.model.commands.ICommand;
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.ExecutionCondition;
+import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.utillity.FieldGlossary;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Test(groups = {"model"})
+public class ExecutionStateTests extends SixSenseBaseTest {
+
+    public void testRepeatingBlock(){
+        Command echo = new Command().withCommandText("echo");
+        Command nested = new Command().withCommandText("nested");
+        Command increment = new Command().withCommandText("increment");
+        Block repeatingBlock = new Block()
+            .addChildBlock(echo)
+            .addChildBlock(new Block().addChildBlock(nested))
+            .addChildBlock(increment)
+            .withRepeatCondition(
+                new LogicalExpression<ExecutionCondition>().addResolvable(
+                    new ExecutionCondition()
+                        .withVariable("$" + FieldGlossary.var_block_counter)
+                        .withBinaryRelation(BinaryRelation.LESSER_OR_EQUAL_TO)
+                        .withExpectedValue("3")
+                )
+            );
+
+        Map<String, String> sessionVariables = new HashMap<>(Map.of(FieldGlossary.var_block_counter, "1"));
+        ExecutionState executionState = new ExecutionState();
+        List<String> executed = new ArrayList<>();
+
+        Command nextCommand;
+        while((nextCommand = nextCommand(repeatingBlock, executionState, sessionVariables)) != null){
+            executed.add(nextCommand.getCommandText());
+            if(nextCommand == increment){
+                sessionVariables.compute(FieldGlossary.var_block_counter, (key, counter) -> String.valueOf(Integer.parseInt(counter) + 1));
+            }
+        }
+
+        //each repetition starts the child blocks over, including the nested block, until the repeat condition no longer resolves
+        Assert.assertEquals(executed, List.of("echo", "nested", "increment", "echo", "nested", "increment", "echo", "nested", "increment"));
+        Assert.assertEquals(sessionVariables.get(FieldGlossary.var_block_counter), "4");
+    }
+
+    public void testTreeSharedBySessions(){
+        Block executionBlock = new Block()
+            .addChildBlock(new Command().withCommandText("first"))
+            .addChildBlock(new Block().addChildBlock(new Command().withCommandText("second")).addChildBlock(new Command().withCommandText("third")))
+            .addChildBlock(new Command().withCommandText("fourth"));
+
+        ExecutionState firstSession = new ExecutionState();
+        ExecutionState secondSession = new ExecutionState();
+        Map<String, String> sessionVariables = new HashMap<>();
+        List<String> firstExecuted = new ArrayList<>();
+        List<String> secondExecuted = new ArrayList<>();
+
+        //the second session starts after the first has already made progress, and the two then alternate
+        firstExecuted.add(nextCommand(executionBlock, firstSession, sessionVariables).getCommandText());
+        firstExecuted.add(nextCommand(executionBlock, firstSession, sessionVariables).getCommandText());
+        Command firstNext;
+        Command secondNext;
+        do{
+            firstNext = nextCommand(executionBlock, firstSession, sessionVariables);
+            secondNext = nextCommand(executionBlock, secondSession, sessionVariables);
+            if(firstNext != null){
+                firstExecuted.add(firstNext.getCommandText());
+            }
+            if(secondNext != null){
+                secondExecuted.add(secondNext.getCommandText());
+            }
+        }while(firstNext != null || secondNext != null);
+
+        //neither session sees the progress of the other, and the shared tree itself is never marked as executed
+        Assert.assertEquals(firstExecuted, List.of("first", "second", "third", "fourth"));
+        Assert.assertEquals(secondExecuted, List.of("first", "second", "third", "fourth"));
+        Assert.assertFalse(executionBlock.isAlreadyExecuted());
+        for(ICommand child : executionBlock.getChildBlocks()){
+            Assert.assertFalse(child.isAlreadyExecuted());
+        }
+    }
+
+    public void testReusedCommandInstance(){
+        Command reused = new Command().withCommandText("reused");
+        Block reusedBlock = new Block().addChildBlock(new Command().withCommandText("inner"));
+        Block executionBlock = new Block()
+            .addChildBlock(reused)
+            .addChildBlock(new Command().withCommandText("between"))
+            .addChildBlock(reused)
+            .addChildBlock(reusedBlock)
+            .addChildBlock(reusedBlock);
+
+        ExecutionState executionState = new ExecutionState();
+        Map<String, String> sessionVariables = new HashMap<>();
+        List<String> executed = new ArrayList<>();
+
+        Command nextCommand;
+        while((nextCommand = nextCommand(executionBlock, executionState, sessionVariables)) != null){
+            executed.add(nextCommand.getCommandText());
+        }
+
+        //a command (or block) which appears twice in the tree is executed each time it is reached, even though it was already marked as executed
+        Assert.assertEquals(executed, List.of("reused", "between", "reused", "inner", "inner"));
+    }
+
+    /*Returns the next plain command the session engine would execute in the tree, or null once the tree is exhausted
+     * Like the session engine, commands (and blocks) are marked as executed by the execution state once they are done - here, as soon as they are returned*/
+    private Command nextCommand(Block block, ExecutionState executionState, Map<String, String> sessionVariables){
+        while(!block.hasExhaustedCommands(executionState, sessionVariables)){
+            ICommand nextCommand = block.getNextCommand(executionState, sessionVariables);
+            if(nextCommand instanceof Block){
+                Command nestedCommand = nextCommand((Block)nextCommand, executionState, sessionVariables);
+                if(nestedCommand != null){
+                    return nestedCommand;
+                }
+                executionState.markExecuted(nextCommand);
+            }else if(nextCommand != null){
+                executionState.markExecuted(nextCommand);
+                return (Command)nextCommand;
+            }
+        }
+        return null;
+    }
+}
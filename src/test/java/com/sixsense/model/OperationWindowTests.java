@@ -0,0 +1,95 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.threading.OperationWindow;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+@Test(groups = {"model"})
+public class OperationWindowTests extends SixSenseBaseTest {
+
+    public void testConcurrencyBound(){
+        OperationWindow window = new OperationWindow("workflow", 2, false);
+        List<Operation> operations = new ArrayList<>();
+        for(int operation = 1; operation <= 4; operation++){
+            operations.add(operation(operation, 0));
+            window.enqueue(operations.get(operation - 1));
+        }
+
+        //only maximumConcurrency operations are handed out, until one of them releases it's slot
+        Assert.assertSame(window.poll().getOperation(), operations.get(0));
+        Assert.assertSame(window.poll().getOperation(), operations.get(1));
+        Assert.assertNull(window.poll());
+        Assert.assertTrue(window.hasPendingOperations());
+
+        window.release();
+        Assert.assertSame(window.poll().getOperation(), operations.get(2));
+        Assert.assertNull(window.poll());
+
+        //releasing more than one slot lets the window catch up, but never beyond the operations it holds
+        window.release();
+        window.release();
+        Assert.assertSame(window.poll().getOperation(), operations.get(3));
+        Assert.assertNull(window.poll());
+        Assert.assertFalse(window.hasPendingOperations());
+    }
+
+    public void testPriorityOrdering(){
+        int[] priorities = {1, 5, 3, 5};
+        OperationWindow prioritizedWindow = new OperationWindow("prioritized", 1, true);
+        OperationWindow orderedWindow = new OperationWindow("ordered", 1, false);
+        for(int operation = 1; operation <= priorities.length; operation++){
+            prioritizedWindow.enqueue(operation(operation, priorities[operation - 1]));
+            orderedWindow.enqueue(operation(operation, priorities[operation - 1]));
+        }
+
+        //prioritized windows hand out the highest priority first, and operations of the same priority in workflow order
+        Assert.assertEquals(pollAll(prioritizedWindow), Arrays.asList("Operation 2", "Operation 4", "Operation 3", "Operation 1"));
+        //while other windows ignore priorities altogether
+        Assert.assertEquals(pollAll(orderedWindow), Arrays.asList("Operation 1", "Operation 2", "Operation 3", "Operation 4"));
+    }
+
+    public void testClearPending(){
+        OperationWindow window = new OperationWindow("workflow", 1, false);
+        CompletableFuture<?> runningResult = window.enqueue(operation(1, 0));
+        window.enqueue(operation(2, 0));
+        window.enqueue(operation(3, 0));
+        Assert.assertNotNull(window.poll());
+
+        //operations which were already handed out are not cleared, and cleared operations are never handed out once slots are released
+        Set<String> cleared = window.clearPending().stream()
+            .map(pending -> pending.getOperation().getOperationName())
+            .collect(Collectors.toSet());
+        Assert.assertEquals(cleared, new HashSet<>(Arrays.asList("Operation 2", "Operation 3")));
+        Assert.assertFalse(window.hasPendingOperations());
+
+        window.release();
+        Assert.assertNull(window.poll());
+        Assert.assertFalse(runningResult.isDone());
+    }
+
+    private Operation operation(int ordinal, int priority){
+        return new Operation()
+            .withOperationName("Operation " + ordinal)
+            .withExecutionBlock(new Block().addChildBlock(new Command()))
+            .withPriority(priority);
+    }
+
+    //Polls every operation of the window one at a time, releasing each slot before polling the next operation
+    private List<String> pollAll(OperationWindow window){
+        List<String> operationNames = new ArrayList<>();
+        for(OperationWindow.WindowedOperation next = window.poll(); next != null; next = window.poll()){
+            operationNames.add(next.getOperation().getOperationName());
+            Assert.assertNull(window.poll(), "A window with a single slot should not hand out a second operation");
+            window.release();
+        }
+        return operationNames;
+    }
+}
@@ -0,0 +1,86 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.pipes.*;
+import com.sixsense.utillity.PayloadCompression;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+@Test(groups = {"model"})
+public class PayloadCompressionTests extends SixSenseBaseTest {
+    private static final long MaximumLength = 1024 * 1024;
+
+    public void testPipeRoundTrip() throws Exception{
+        List<AbstractOutputPipe> pipes = Arrays.asList(
+            new LineFilterPipe("^model name", true),
+            new RegexCapturePipe("(?<serial>\\S+)$", "serial"),
+            new FieldSplitPipe(3, 4).withFieldDelimiter("[\\s,]+"),
+            new LineRangePipe(2, -2),
+            new KeyValuePipe("model name", "=")
+        );
+
+        //every wire format is read back the same after compression, and uncompressed messages are passed through as they are
+        for(AbstractOutputPipe pipe : pipes){
+            for(WireFormat wireFormat : WireFormat.values()){
+                byte[] encoded = PolymorphicJsonMapper.serialize(pipe, wireFormat);
+                byte[] decompressed = PayloadCompression.decompress(PayloadCompression.compress(encoded), PayloadCompression.Lz4Encoding, MaximumLength);
+                Assert.assertEquals(PolymorphicJsonMapper.deserialize(decompressed, AbstractOutputPipe.class, wireFormat), pipe);
+                Assert.assertSame(PayloadCompression.decompress(encoded, null, MaximumLength), encoded);
+                Assert.assertSame(PayloadCompression.decompress(encoded, "identity", MaximumLength), encoded);
+            }
+        }
+    }
+
+    public void testStandardFrame() throws Exception{
+        byte[] body = repeatedBody(200 * 1024);
+        byte[] compressed = PayloadCompression.compress(body);
+
+        //the body is written as a standard lz4 frame (magic number 0x184D2204, little endian) which declares it's uncompressed length
+        Assert.assertEquals(Arrays.copyOf(compressed, 4), new byte[]{0x04, 0x22, 0x4D, 0x18});
+        Assert.assertTrue(compressed.length < body.length / 10);
+        Assert.assertEquals(PayloadCompression.decompress(compressed, "LZ4", MaximumLength), body);
+
+        //frames written by other lz4 implementations are read as well, even when they do not declare their uncompressed length
+        Assert.assertEquals(PayloadCompression.decompress(frameWithoutLength(body), PayloadCompression.Lz4Encoding, MaximumLength), body);
+    }
+
+    public void testDecompressionBomb() throws Exception{
+        byte[] body = new byte[4 * 1024 * 1024];
+        Assert.assertThrows(IOException.class, () -> PayloadCompression.decompress(PayloadCompression.compress(body), PayloadCompression.Lz4Encoding, MaximumLength));
+
+        //a frame which does not declare it's length is stopped once it decompresses past the maximum
+        Assert.assertThrows(IOException.class, () -> PayloadCompression.decompress(frameWithoutLength(body), PayloadCompression.Lz4Encoding, MaximumLength));
+    }
+
+    public void testMalformedPayloads() throws Exception{
+        byte[] compressed = PayloadCompression.compress(repeatedBody(64 * 1024));
+        Assert.assertThrows(IOException.class, () -> PayloadCompression.decompress(Arrays.copyOf(compressed, compressed.length / 2), PayloadCompression.Lz4Encoding, MaximumLength));
+        Assert.assertThrows(IOException.class, () -> PayloadCompression.decompress("not compressed".getBytes(), PayloadCompression.Lz4Encoding, MaximumLength));
+        Assert.assertThrows(IOException.class, () -> PayloadCompression.decompress(compressed, "gzip", MaximumLength));
+    }
+
+    private byte[] repeatedBody(int length){
+        byte[] body = new byte[length];
+        byte[] line = "interface GigabitEthernet0/1 is up, line protocol is up\n".getBytes();
+        for(int index = 0; index < length; index++){
+            body[index] = line[index % line.length];
+        }
+        return body;
+    }
+
+    private byte[] frameWithoutLength(byte[] body) throws IOException{
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try(LZ4FrameOutputStream output = new LZ4FrameOutputStream(compressed)){
+            output.write(body);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.pipes.*;
+import com.sixsense.utillity.Literals;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@Test(groups = {"model"})
+public class PipeTests extends SixSenseBaseTest {
+    private static final Logger logger = LogManager.getLogger(PipeTests.class);
+
+    //None of the extraction pipes rely on session state, so we pass a null session throughout these tests
+    public void testLineFilterPipe(){
+        List<String> output = Arrays.asList("model name : Intel(R) Xeon(R)", "cpu MHz : 2400.000", "model name : AMD EPYC");
+
+        Assert.assertEquals(new LineFilterPipe("^model name").pipe(null, output), Arrays.asList(output.get(0), output.get(2)));
+        Assert.assertEquals(new LineFilterPipe("^model name", true).pipe(null, output), Collections.singletonList(output.get(1)));
+    }
+
+    public void testRegexCapturePipe(){
+        List<String> output = Arrays.asList("Chassis Serial    f5-abcd-efgh", "Platform ID    Z100");
+
+        Assert.assertEquals(new RegexCapturePipe("Chassis Serial\\s+(?<serial>\\S+)", "serial").pipe(null, output), Collections.singletonList("f5-abcd-efgh"));
+        Assert.assertEquals(new RegexCapturePipe("Z\\d+").pipe(null, output), Collections.singletonList("Z100"));
+    }
+
+    public void testFieldSplitPipe(){
+        List<String> output = Arrays.asList("  /dev/mapper/vg-root   7.9G  5.1G  2.5G  68% /", "tmpfs 3.9G 0 3.9G 0% /dev/shm");
+
+        //awk '{print $4}'
+        Assert.assertEquals(new FieldSplitPipe(4).pipe(null, output), Arrays.asList("2.5G", "3.9G"));
+        //awk '{print $NF, $1}'
+        Assert.assertEquals(new FieldSplitPipe(-1, 1).pipe(null, output), Arrays.asList("/ /dev/mapper/vg-root", "/dev/shm tmpfs"));
+        //awk -F',' '{print $2}'
+        Assert.assertEquals(new FieldSplitPipe(2).withFieldDelimiter(",").pipe(null, Collections.singletonList("a,,c")), Collections.singletonList(""));
+    }
+
+    public void testUptimeFieldSplit(){
+        //real uptime output, which always starts with a space
+        List<String> output = Collections.singletonList(" 10:15:32 up 5 days,  3:02,  1 user,  load average: 0.08, 0.03, 0.01");
+        FieldSplitPipe uptimePipe = new FieldSplitPipe(4, 5).withFieldDelimiter("[\\s,]+");
+
+        //a custom delimiter does not strip the line, so the leading space yields an empty first field (as in awk -F'[ ,]+')
+        Assert.assertEquals(uptimePipe.pipe(null, new LineFilterPipe("load average").pipe(null, output)), Collections.singletonList("5 days"));
+        Assert.assertEquals(new FieldSplitPipe(1).withFieldDelimiter("[\\s,]+").pipe(null, output), Collections.singletonList(""));
+    }
+
+    public void testLineRangePipe(){
+        List<String> output = Arrays.asList("1", "2", "3", "4", "5");
+
+        Assert.assertEquals(new LineRangePipe(1, 1).pipe(null, output), Collections.singletonList("1"));
+        Assert.assertEquals(new LineRangePipe(2, 4).pipe(null, output), Arrays.asList("2", "3", "4"));
+        Assert.assertEquals(new LineRangePipe(-2, -1).pipe(null, output), Arrays.asList("4", "5"));
+        Assert.assertTrue(new LineRangePipe(4, 2).pipe(null, output).isEmpty());
+    }
+
+    public void testKeyValuePipe(){
+        List<String> output = Arrays.asList("MemTotal:        8010456 kB", "MemFree:  1024 kB", "no separator here");
+
+        Assert.assertEquals(new KeyValuePipe("MemTotal").pipe(null, output), Collections.singletonList("8010456 kB"));
+        Assert.assertEquals(new KeyValuePipe().pipe(null, output), Arrays.asList("MemTotal:8010456 kB", "MemFree:1024 kB"));
+    }
+
+    public void testRetentionPipes(){
+        //retention values are piped as a single string, which may hold several lines of output
+        String retentionValue = "model name : Intel(R) Xeon(R)\ncpu MHz : 2400.000\r\nmodel name : AMD EPYC";
+
+        Assert.assertEquals(new LineFilterPipe("^model name").pipe(null, retentionValue), "model name : Intel(R) Xeon(R)" + Literals.LineBreak + "model name : AMD EPYC");
+        Assert.assertEquals(new LineRangePipe(-1, -1).pipe(null, retentionValue), "model name : AMD EPYC");
+        Assert.assertEquals(new FieldSplitPipe(1).withFieldDelimiter(" : ").pipe(null, retentionValue), "model name" + Literals.LineBreak + "cpu MHz" + Literals.LineBreak + "model name");
+        Assert.assertEquals(new KeyValuePipe("cpu MHz", ":").pipe(null, retentionValue), "2400.000");
+        Assert.assertEquals(new RegexCapturePipe("cpu MHz : (?<mhz>\\d+)", "mhz").pipe(null, retentionValue), "2400");
+    }
+
+    public void testUnmatchedRetentionPipes(){
+        //a pipe which keeps none of the lines retains an empty value, rather than failing the command
+        String retentionValue = "cpu MHz : 2400.000";
+
+        Assert.assertEquals(new LineFilterPipe("^model name").pipe(null, retentionValue), "");
+        Assert.assertEquals(new RegexCapturePipe("serial (?<serial>\\S+)", "serial").pipe(null, retentionValue), "");
+        Assert.assertEquals(new KeyValuePipe("MemTotal").pipe(null, retentionValue), "");
+        Assert.assertEquals(new LineRangePipe(2, 3).pipe(null, retentionValue), "");
+        Assert.assertNull(new LineFilterPipe("^model name").pipe(null, (String)null));
+    }
+
+    public void testPipeSerialization() throws Exception{
+        List<AbstractOutputPipe> pipes = Arrays.asList(
+            new LineFilterPipe("^model name", true),
+            new RegexCapturePipe("(?<serial>\\S+)$", "serial"),
+            new FieldSplitPipe(3, 4).withFieldDelimiter("[\\s,]+"),
+            new LineRangePipe(2, -2),
+            new KeyValuePipe("model name", "=")
+        );
+
+        //Pipes are compared by their parameters, so a deserialized pipe must equal the original pipe (and behave identically)
+        for(AbstractOutputPipe pipe : pipes){
+            String asJson = PolymorphicJsonMapper.serialize(pipe);
+            AbstractOutputPipe deserialized = PolymorphicJsonMapper.deserialize(asJson, AbstractOutputPipe.class);
+            Assert.assertEquals(deserialized, pipe);
+        }
+    }
+}
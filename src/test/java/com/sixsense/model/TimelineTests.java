@@ -0,0 +1,91 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.logic.ResultStatus;
+import com.sixsense.model.timeline.ExecutionSpan;
+import com.sixsense.model.timeline.OperationTimeline;
+import com.sixsense.model.timeline.SpanKind;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {"model"})
+public class TimelineTests extends SixSenseBaseTest {
+
+    public void testSpanNesting(){
+        OperationTimeline timeline = new OperationTimeline("operation-id");
+        timeline.openSpan(SpanKind.Operation, "operation");
+        timeline.openSpan(SpanKind.Block, "block");
+        timeline.openSpan(SpanKind.Command, "first command");
+        timeline.closeSpan(SpanKind.Command, ResultStatus.SUCCESS);
+        timeline.openSpan(SpanKind.Command, "second command");
+        timeline.closeSpan(SpanKind.Command, ResultStatus.FAILURE);
+        timeline.closeSpan(SpanKind.Block, ResultStatus.FAILURE);
+        timeline.closeSpan(SpanKind.Operation, ResultStatus.FAILURE);
+
+        ExecutionSpan operationSpan = timeline.getOperationSpan();
+        Assert.assertEquals(operationSpan.getKind(), SpanKind.Operation);
+        Assert.assertEquals(operationSpan.getChildren().size(), 1);
+
+        ExecutionSpan blockSpan = operationSpan.getChildren().get(0);
+        Assert.assertEquals(blockSpan.getChildren().size(), 2);
+        Assert.assertEquals(blockSpan.getChildren().get(0).getOutcome(), ResultStatus.SUCCESS);
+        Assert.assertEquals(blockSpan.getChildren().get(1).getName(), "second command");
+
+        ExecutionSpan secondCommand = blockSpan.getChildren().get(1);
+        Assert.assertTrue(secondCommand.getStartNanos() >= blockSpan.getChildren().get(0).getEndNanos());
+        Assert.assertTrue(operationSpan.getEndNanos() >= blockSpan.getEndNanos());
+    }
+
+    public void testRollup(){
+        OperationTimeline timeline = new OperationTimeline("operation-id");
+        timeline.openSpan(SpanKind.Operation, "operation");
+        timeline.openSpan(SpanKind.Command, "first command");
+        timeline.addBytes(10, 100);
+        timeline.addWaitingNanos(1000);
+        timeline.closeSpan(SpanKind.Command, ResultStatus.SUCCESS);
+        timeline.openSpan(SpanKind.Command, "second command");
+        timeline.addBytes(5, 50);
+        timeline.addWaitingNanos(500);
+        timeline.closeSpan(SpanKind.Command, ResultStatus.SUCCESS);
+        timeline.closeSpan(SpanKind.Operation, ResultStatus.SUCCESS);
+
+        ExecutionSpan operationSpan = timeline.getOperationSpan();
+        Assert.assertEquals(operationSpan.getBytesIn(), 15);
+        Assert.assertEquals(operationSpan.getBytesOut(), 150);
+        Assert.assertEquals(operationSpan.getWaitingNanos(), 1500);
+        Assert.assertEquals(operationSpan.getChildren().get(0).getWaitingNanos(), 1000);
+    }
+
+    //If an exception skips the closure of a command or block, closing the operation closes them as well
+    public void testUnclosedSpans(){
+        OperationTimeline timeline = new OperationTimeline("operation-id");
+        timeline.openSpan(SpanKind.Operation, "operation");
+        timeline.openSpan(SpanKind.Block, "block");
+        timeline.openSpan(SpanKind.Command, "command");
+        timeline.closeSpan(SpanKind.Operation, ResultStatus.FAILURE);
+
+        ExecutionSpan commandSpan = timeline.getOperationSpan().getChildren().get(0).getChildren().get(0);
+        Assert.assertEquals(commandSpan.getOutcome(), ResultStatus.FAILURE);
+        Assert.assertTrue(commandSpan.getEndNanos() > 0);
+        Assert.assertEquals(timeline.getOperationSpan().getOutcome(), ResultStatus.FAILURE);
+    }
+
+    public void testSerialization() throws JsonProcessingException {
+        OperationTimeline timeline = new OperationTimeline("operation-id");
+        timeline.openSpan(SpanKind.Operation, "operation");
+        timeline.openSpan(SpanKind.Command, "command");
+        timeline.addBytes(3, 7);
+        timeline.closeSpan(SpanKind.Command, ResultStatus.SUCCESS);
+
+        //The snapshot of a running timeline holds the spans recorded so far
+        OperationTimeline snapshot = timeline.snapshot();
+        OperationTimeline deserialized = PolymorphicJsonMapper.deserialize(PolymorphicJsonMapper.serialize(snapshot), OperationTimeline.class);
+
+        Assert.assertEquals(deserialized.getOperationId(), "operation-id");
+        Assert.assertEquals(deserialized.getStartEpochMillis(), timeline.getStartEpochMillis());
+        Assert.assertEquals(deserialized.getOperationSpan().getEndNanos(), 0);
+        Assert.assertEquals(deserialized.getOperationSpan().getChildren().get(0).getBytesOut(), 7);
+    }
+}
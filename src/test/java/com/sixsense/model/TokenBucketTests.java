@@ -0,0 +1,56 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.threading.TokenBucket;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+@Test(groups = {"model"})
+public class TokenBucketTests extends SixSenseBaseTest {
+    private static final long Second = TimeUnit.SECONDS.toNanos(1);
+
+    public void testBurstAndDebt(){
+        //10 tokens per second, so every token past the burst waits another 100ms
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        Assert.assertEquals(bucket.reserve(0), 0L);
+        Assert.assertEquals(bucket.reserve(0), 0L);
+        Assert.assertEquals(bucket.reserve(0), Second / 10);
+        Assert.assertEquals(bucket.reserve(0), 2 * Second / 10);
+
+        //a reservation of several tokens waits for the last of them
+        Assert.assertEquals(bucket.reserve(0, 3), 5 * Second / 10);
+    }
+
+    public void testRefill(){
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        bucket.reserve(0, 4);
+        Assert.assertFalse(bucket.isFull(0));
+
+        //the debt is paid off first, and only then does the bucket refill
+        Assert.assertEquals(bucket.reserve(Second / 10), Second / 5);
+        Assert.assertFalse(bucket.isFull(4 * Second / 10));
+        Assert.assertTrue(bucket.isFull(Second / 2));
+
+        //the bucket never refills beyond it's burst, however long it stays idle
+        Assert.assertEquals(bucket.reserve(10 * Second, 2), 0L);
+        Assert.assertEquals(bucket.reserve(10 * Second), Second / 10);
+    }
+
+    public void testRefund(){
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        Assert.assertEquals(bucket.reserve(0), 0L);
+        Assert.assertEquals(bucket.reserve(0), Second / 10);
+
+        //a refunded reservation no longer delays the reservations after it
+        bucket.refund(1);
+        Assert.assertEquals(bucket.reserve(0), Second / 10);
+
+        //but a refund never fills the bucket beyond it's burst
+        bucket.refund(5);
+        Assert.assertTrue(bucket.isFull(0));
+        Assert.assertEquals(bucket.reserve(0), 0L);
+        Assert.assertEquals(bucket.reserve(0), Second / 10);
+    }
+}
@@ -0,0 +1,98 @@
+package com.sixsense.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.Operation;
+import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.devices.Device;
+import com.sixsense.model.pipes.*;
+import com.sixsense.utillity.PolymorphicJsonMapper;
+import com.sixsense.utillity.WireFormat;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Test(groups = {"model"})
+public class WireFormatTests extends SixSenseBaseTest {
+
+    public void testContentTypes(){
+        for(WireFormat wireFormat : WireFormat.values()){
+            Assert.assertEquals(WireFormat.fromContentType(wireFormat.getContentType()), wireFormat);
+            Assert.assertEquals(WireFormat.fromContentType(wireFormat.getContentType().toUpperCase()), wireFormat);
+        }
+
+        //parameters of the content type are ignored, and messages without a known content type are read as json
+        Assert.assertEquals(WireFormat.fromContentType("application/cbor; charset=utf-8"), WireFormat.Cbor);
+        Assert.assertEquals(WireFormat.fromContentType(null), WireFormat.Json);
+        Assert.assertEquals(WireFormat.fromContentType("text/plain"), WireFormat.Json);
+    }
+
+    public void testPipeRoundTrip() throws Exception{
+        List<AbstractOutputPipe> pipes = Arrays.asList(
+            new LineFilterPipe("^model name", true),
+            new RegexCapturePipe("(?<serial>\\S+)$", "serial"),
+            new FieldSplitPipe(3, 4).withFieldDelimiter("[\\s,]+"),
+            new LineRangePipe(2, -2),
+            new KeyValuePipe("model name", "=")
+        );
+
+        //Pipes are polymorphic, so each format must keep the pipe type as well as it's parameters
+        for(AbstractOutputPipe pipe : pipes){
+            for(WireFormat wireFormat : WireFormat.values()){
+                byte[] encoded = PolymorphicJsonMapper.serialize(pipe, wireFormat);
+                Assert.assertEquals(PolymorphicJsonMapper.deserialize(encoded, AbstractOutputPipe.class, wireFormat), pipe);
+            }
+        }
+    }
+
+    public void testOperationRoundTrip() throws Exception{
+        Operation operation = new Operation()
+            .withOperationName("Wire format round trip")
+            .withExecutionBlock(new Block()
+                .addChildBlock(new Command().withCommandText("uname -a").addOutputPipe(new LineFilterPipe("Linux")))
+                .addChildBlock(new Command().withCommandText("uptime"))
+            );
+        operation.addDynamicField("device", "10.0.0.1");
+
+        for(WireFormat wireFormat : WireFormat.values()){
+            byte[] encoded = PolymorphicJsonMapper.serialize(operation, wireFormat);
+            Operation deserialized = PolymorphicJsonMapper.deserialize(encoded, Operation.class, wireFormat);
+            Assert.assertEquals(deserialized, operation);
+            Assert.assertEquals(deserialized.getDynamicFields().get("device"), "10.0.0.1");
+        }
+
+        //the binary formats are the reason they exist - they should never be larger than the same operation as json
+        int jsonLength = PolymorphicJsonMapper.serialize(operation, WireFormat.Json).length;
+        Assert.assertTrue(PolymorphicJsonMapper.serialize(operation, WireFormat.Smile).length <= jsonLength);
+        Assert.assertTrue(PolymorphicJsonMapper.serialize(operation, WireFormat.Cbor).length <= jsonLength);
+    }
+
+    public void testStreamedValues() throws Exception{
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for(int device = 1; device <= 3; device++){
+            stream.write(PolymorphicJsonMapper.serialize(new Device().withCredentials(new Credentials().withHost("10.0.0." + device)), WireFormat.Json));
+            stream.write('\n');
+        }
+
+        //the first value is read on it's own, and the remaining values are read lazily from the same parser
+        try(JsonParser parser = PolymorphicJsonMapper.createParser(new ByteArrayInputStream(stream.toByteArray()), WireFormat.Json)){
+            Device first = PolymorphicJsonMapper.deserializeNext(parser, Device.class, WireFormat.Json);
+            Assert.assertEquals(first.getCredentials().getHost(), "10.0.0.1");
+
+            List<String> remainingHosts = new ArrayList<>();
+            MappingIterator<Device> remaining = PolymorphicJsonMapper.deserializeEach(parser, Device.class, WireFormat.Json);
+            while(remaining.hasNext()){
+                remainingHosts.add(remaining.next().getCredentials().getHost());
+            }
+            Assert.assertEquals(remainingHosts, Arrays.asList("10.0.0.2", "10.0.0.3"));
+        }
+    }
+}